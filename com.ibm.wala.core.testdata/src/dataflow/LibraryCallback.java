@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package dataflow;
+
+/**
+ * test case for summaries of library methods that call back into application code.
+ */
+public class LibraryCallback {
+
+  public String toString() {
+    return "callback";
+  }
+
+  public static void main(String[] args) {
+    String.valueOf(new LibraryCallback());
+  }
+}
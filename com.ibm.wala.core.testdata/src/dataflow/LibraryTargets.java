@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package dataflow;
+
+/**
+ * test case for summaries of library methods whose calls have different library targets in different programs: here
+ * String.valueOf(Object) calls Object.toString(), and in {@link Boxed} it calls Integer.toString().
+ */
+public class LibraryTargets {
+
+  public static void main(String[] args) {
+    String.valueOf(new Object());
+  }
+
+  public static class Boxed {
+    public static void main(String[] args) {
+      String.valueOf(Integer.valueOf(1));
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.graph.NumberedGraph;
+import com.ibm.wala.util.graph.impl.CompactNumberedGraph;
+import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Checks that a {@link CompactNumberedGraph} has the nodes, numbers and edges of the graph it copies.
+ */
+public class CompactNumberedGraphTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CompactNumberedGraphTest.class);
+  }
+
+  @Test
+  public void testEmpty() {
+    CompactNumberedGraph<String> g = CompactNumberedGraph.make(SlowSparseNumberedGraph.<String> make());
+    Assert.assertEquals(0, g.getNumberOfNodes());
+    Assert.assertEquals(0, g.getNumberOfEdges());
+    Assert.assertFalse(g.iterator().hasNext());
+    Assert.assertFalse(g.containsNode("a"));
+  }
+
+  @Test
+  public void testRandom() {
+    Random r = new Random(7);
+    SlowSparseNumberedGraph<String> g = SlowSparseNumberedGraph.make();
+    for (int i = 0; i < 500; i++) {
+      g.addNode("n" + i);
+    }
+    int edges = 0;
+    for (int i = 0; i < 3000; i++) {
+      String src = "n" + r.nextInt(500);
+      String dst = "n" + r.nextInt(500);
+      if (!g.hasEdge(src, dst)) {
+        g.addEdge(src, dst);
+        edges++;
+      }
+    }
+    CompactNumberedGraph<String> c = CompactNumberedGraph.make(g);
+    Assert.assertEquals(g.getNumberOfNodes(), c.getNumberOfNodes());
+    Assert.assertEquals(g.getMaxNumber(), c.getMaxNumber());
+    Assert.assertEquals(edges, c.getNumberOfEdges());
+    for (String n : g) {
+      Assert.assertTrue(c.containsNode(n));
+      Assert.assertEquals(g.getNumber(n), c.getNumber(n));
+      Assert.assertEquals(n, c.getNode(c.getNumber(n)));
+      Assert.assertEquals(succs(g, n), succs(c, n));
+      Assert.assertEquals(preds(g, n), preds(c, n));
+      Assert.assertEquals(g.getSuccNodeCount(n), c.getSuccNodeCount(n));
+      Assert.assertEquals(g.getPredNodeCount(n), c.getPredNodeCount(n));
+      Assert.assertTrue(sameValue(g.getSuccNodeNumbers(n), c.getSuccNodeNumbers(n)));
+      Assert.assertTrue(sameValue(g.getPredNodeNumbers(n), c.getPredNodeNumbers(n)));
+    }
+    for (int i = 0; i < 3000; i++) {
+      String src = "n" + r.nextInt(500);
+      String dst = "n" + r.nextInt(500);
+      Assert.assertEquals(g.hasEdge(src, dst), c.hasEdge(src, dst));
+    }
+    Assert.assertFalse(c.hasEdge("n0", "missing"));
+  }
+
+  @Test
+  public void testImmutable() {
+    SlowSparseNumberedGraph<String> g = SlowSparseNumberedGraph.make();
+    g.addNode("a");
+    g.addNode("b");
+    CompactNumberedGraph<String> c = CompactNumberedGraph.make(g);
+    try {
+      c.addEdge("a", "b");
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      c.getSuccNodes("c");
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * the sparse graphs return null for no edges
+   */
+  private static boolean sameValue(IntSet expected, IntSet actual) {
+    return expected == null ? actual.isEmpty() : expected.sameValue(actual);
+  }
+
+  private static Set<String> succs(NumberedGraph<String> g, String n) {
+    return Iterator2Collection.toSet(g.getSuccNodes(n));
+  }
+
+  private static Set<String> preds(NumberedGraph<String> g, String n) {
+    return Iterator2Collection.toSet(g.getPredNodes(n));
+  }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.MappedJarFileEntry;
+import com.ibm.wala.classLoader.MappedJarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileUtil;
+
+/**
+ * Checks that a {@link MappedJarFileModule} reads the same entries as a {@link JarFileModule}
+ */
+public class MappedJarFileModuleTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(MappedJarFileModuleTest.class);
+  }
+
+  private static byte[] randomBytes(Random r, int n, boolean compressible) {
+    byte[] b = new byte[n];
+    for (int i = 0; i < n; i++) {
+      b[i] = (byte) (compressible ? r.nextInt(4) : r.nextInt());
+    }
+    return b;
+  }
+
+  private static void addEntry(JarOutputStream out, String name, byte[] contents, boolean stored) throws IOException {
+    ZipEntry e = new ZipEntry(name);
+    if (stored) {
+      CRC32 crc = new CRC32();
+      crc.update(contents);
+      e.setMethod(ZipEntry.STORED);
+      e.setSize(contents.length);
+      e.setCompressedSize(contents.length);
+      e.setCrc(crc.getValue());
+    }
+    out.putNextEntry(e);
+    out.write(contents);
+    out.closeEntry();
+  }
+
+  private static Map<String, byte[]> makeEntries(Random r) {
+    Map<String, byte[]> result = HashMapFactory.make();
+    for (int i = 0; i < 50; i++) {
+      result.put("p/C" + i + ".class", randomBytes(r, r.nextInt(40000), i % 2 == 0));
+    }
+    result.put("p/Empty.class", new byte[0]);
+    return result;
+  }
+
+  private static void writeJar(OutputStream s, Map<String, byte[]> entries, Map<String, byte[]> nested) throws IOException {
+    JarOutputStream out = new JarOutputStream(s);
+    int i = 0;
+    for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+      addEntry(out, e.getKey(), e.getValue(), i++ % 3 == 0);
+    }
+    if (nested != null) {
+      ByteArrayOutputStream b = new ByteArrayOutputStream();
+      writeJar(b, nested, null);
+      addEntry(out, "lib/stored.jar", b.toByteArray(), true);
+      addEntry(out, "lib/deflated.jar", b.toByteArray(), false);
+    }
+    out.close();
+  }
+
+  private static void assertSameContents(Map<String, byte[]> expected, Module m) throws IOException {
+    int n = 0;
+    for (Iterator<ModuleEntry> it = m.getEntries(); it.hasNext();) {
+      ModuleEntry e = it.next();
+      if (e.isClassFile()) {
+        n++;
+        Assert.assertTrue(e.getName(), Arrays.equals(expected.get(e.getName()), ((MappedJarFileEntry) e).getContents()));
+        Assert.assertTrue(e.getName(), Arrays.equals(expected.get(e.getName()), FileUtil.readBytes(e.getInputStream())));
+      }
+    }
+    Assert.assertEquals(expected.size(), n);
+  }
+
+  @Test
+  public void testSameEntries() throws IOException {
+    Random r = new Random(3);
+    Map<String, byte[]> entries = makeEntries(r);
+    Map<String, byte[]> nested = makeEntries(r);
+    File f = File.createTempFile("mapped", ".jar");
+    f.deleteOnExit();
+    FileOutputStream s = new FileOutputStream(f);
+    writeJar(s, entries, nested);
+    s.close();
+
+    MappedJarFileModule mapped = new MappedJarFileModule(f);
+    JarFileModule jar = new JarFileModule(new JarFile(f));
+    Map<String, ModuleEntry> jarEntries = HashMapFactory.make();
+    for (Iterator<ModuleEntry> it = jar.getEntries(); it.hasNext();) {
+      ModuleEntry e = it.next();
+      jarEntries.put(e.getName(), e);
+    }
+    int n = 0;
+    for (Iterator<ModuleEntry> it = mapped.getEntries(); it.hasNext();) {
+      ModuleEntry e = it.next();
+      n++;
+      ModuleEntry j = jarEntries.get(e.getName());
+      Assert.assertNotNull(e.getName(), j);
+      Assert.assertEquals(j.isClassFile(), e.isClassFile());
+      Assert.assertEquals(j.isModuleFile(), e.isModuleFile());
+      Assert.assertEquals(j.getClassName(), e.getClassName());
+      Assert.assertTrue(e.getName(), Arrays.equals(FileUtil.readBytes(j.getInputStream()), FileUtil.readBytes(e.getInputStream())));
+      if (e.isModuleFile()) {
+        assertSameContents(nested, e.asModule());
+      }
+    }
+    Assert.assertEquals(jarEntries.size(), n);
+    assertSameContents(entries, mapped);
+  }
+
+  private static Set<String> applicationClasses(AnalysisScope scope) throws ClassHierarchyException {
+    Set<String> result = HashSetFactory.make();
+    for (IClass c : ClassHierarchy.make(scope)) {
+      if (c.getClassLoader().getReference().equals(scope.getApplicationLoader())) {
+        result.add(c.getName().toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * a mappedJarFile line of a scope file adds a {@link MappedJarFileModule}, which loads the same classes as a jarFile line
+   */
+  @Test
+  public void testScope() throws IOException, ClassHierarchyException {
+    ClassLoader loader = MappedJarFileModuleTest.class.getClassLoader();
+    AnalysisScope jarScope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, null, loader);
+    AnalysisScope mappedScope = AnalysisScopeReader.makePrimordialScope(null);
+    AnalysisScopeReader.processScopeDefLine(mappedScope, loader,
+        "Application,Java,mappedJarFile,com.ibm.wala.core.testdata_1.0.0.jar");
+    List<Module> modules = mappedScope.getModules(mappedScope.getApplicationLoader());
+    Assert.assertEquals(1, modules.size());
+    Assert.assertTrue(modules.get(0) instanceof MappedJarFileModule);
+
+    Set<String> classes = applicationClasses(jarScope);
+    Assert.assertFalse(classes.isEmpty());
+    Assert.assertEquals(classes, applicationClasses(mappedScope));
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAJar() throws IOException {
+    File f = File.createTempFile("mapped", ".jar");
+    f.deleteOnExit();
+    FileOutputStream s = new FileOutputStream(f);
+    s.write(randomBytes(new Random(1), 1000, false));
+    s.close();
+    new MappedJarFileModule(f);
+  }
+}
@@ -11,16 +11,25 @@
 package com.ibm.wala.core.tests.callGraph;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Iterable;
 import com.ibm.wala.util.config.AnalysisScopeReader;
 import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.perf.StopwatchGC;
@@ -163,4 +172,36 @@ public class CallGraphTestUtil {
     return cg;
   }
 
+  /**
+   * @return a map from the string form of each node of cg to the string forms of its successors, for comparing call graphs built
+   *         by different builders
+   */
+  public static Map<String, Set<String>> callGraphEdges(CallGraph cg) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (CGNode n : cg) {
+      Set<String> succs = HashSetFactory.make();
+      for (CGNode s : Iterator2Iterable.make(cg.getSuccNodes(n))) {
+        succs.add(s.toString());
+      }
+      result.put(n.toString(), succs);
+    }
+    return result;
+  }
+
+  /**
+   * @return a map from the string form of each pointer key of pa to the string forms of its points-to set, for comparing pointer
+   *         analyses computed by different builders
+   */
+  public static Map<String, Set<String>> pointsToSets(PointerAnalysis pa) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (PointerKey pk : pa.getPointerKeys()) {
+      Set<String> s = HashSetFactory.make();
+      for (InstanceKey ik : pa.getPointsToSet(pk)) {
+        s.add(ik.toString());
+      }
+      result.put(pk.toString(), s);
+    }
+    return result;
+  }
+
 }
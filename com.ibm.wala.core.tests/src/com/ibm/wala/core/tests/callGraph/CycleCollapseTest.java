@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Checks that collapsing assignment cycles during solving does not change the call graph or the points-to sets. See
+ * {@link PointerAnalysisBenchmark} for the solver times.
+ */
+public class CycleCollapseTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CycleCollapseTest.class);
+  }
+
+  @Test
+  public void testHello() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.HELLO_MAIN);
+  }
+
+  @Test
+  public void testMessageFormat() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.SLICE_TESTMESSAGEFORMAT);
+  }
+
+  private static void run(String scopeFile, String mainClass) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(scopeFile, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setCollapseAssignmentCycles(true);
+    SSAPropagationCallGraphBuilder collapsing = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph collapsedCG = collapsing.makeCallGraph(options, null);
+
+    // the library code these programs reach has assignment cycles, e.g. through loops
+    PropagationSystem system = collapsing.getPropagationSystem();
+    Assert.assertTrue(system.getNumberOfCollapsedCycles() > 0);
+    Assert.assertTrue(system.getNumberOfCollapsedVariables() >= 2 * system.getNumberOfCollapsedCycles());
+
+    Assert.assertEquals(CallGraphTestUtil.callGraphEdges(cg), CallGraphTestUtil.callGraphEdges(collapsedCG));
+    Assert.assertEquals(CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()), CallGraphTestUtil
+        .pointsToSets(collapsing.getPointerAnalysis()));
+  }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Checks that difference propagation computes the same 0-1-CFA call graph and points-to sets as full propagation. See
+ * {@link PointerAnalysisBenchmark} for the solver times.
+ */
+public class DifferencePropagationTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(DifferencePropagationTest.class);
+  }
+
+  @Test
+  public void testHello() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.HELLO_MAIN);
+  }
+
+  @Test
+  public void testMessageFormat() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.SLICE_TESTMESSAGEFORMAT);
+  }
+
+  private static void run(String scopeFile, String mainClass) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(scopeFile, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setDifferencePropagation(true);
+    SSAPropagationCallGraphBuilder diffBuilder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph diffCG = diffBuilder.makeCallGraph(options, null);
+    Assert.assertFalse(builder.getPropagationSystem().isDifferencePropagation());
+    Assert.assertTrue(diffBuilder.getPropagationSystem().isDifferencePropagation());
+
+    Assert.assertTrue(cg.getNumberOfNodes() > 0);
+    Assert.assertEquals(cg.getNumberOfNodes(), diffCG.getNumberOfNodes());
+    Assert.assertEquals(CallGraphTestUtil.callGraphEdges(cg), CallGraphTestUtil.callGraphEdges(diffCG));
+    Assert.assertEquals(CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()), CallGraphTestUtil.pointsToSets(diffBuilder
+        .getPointerAnalysis()));
+  }
+}
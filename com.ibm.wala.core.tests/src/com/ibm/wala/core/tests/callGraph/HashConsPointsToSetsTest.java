@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointsToSetVariable;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Checks that hash-consing points-to sets does not change the pointer analysis result, and that a shared points-to set is copied
+ * when one of the variables sharing it changes. See {@link PointerAnalysisBenchmark} for the number of canonical sets on larger
+ * programs.
+ */
+public class HashConsPointsToSetsTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(HashConsPointsToSetsTest.class);
+  }
+
+  @Test
+  public void testHello() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.HELLO_MAIN);
+  }
+
+  @Test
+  public void testMessageFormat() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.SLICE_TESTMESSAGEFORMAT);
+  }
+
+  private static void run(String scopeFile, String mainClass) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(scopeFile, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    builder.makeCallGraph(options, null);
+
+    options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setHashConsPointsToSets(true);
+    SSAPropagationCallGraphBuilder hashConsing = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    hashConsing.makeCallGraph(options, null);
+
+    PropagationSystem system = hashConsing.getPropagationSystem();
+    Assert.assertTrue(system.getPointsToSetRepository().getNumberOfCanonicalSets() < system.getPointsToSetRepository()
+        .getNumberOfQueries());
+    Assert.assertEquals(CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()), CallGraphTestUtil.pointsToSets(hashConsing
+        .getPointerAnalysis()));
+
+    // find two variables that share a points-to set, and change one of them
+    Map<IntSet, PointsToSetVariable> sharing = HashMapFactory.make();
+    for (Iterator<PointerKey> it = system.iteratePointerKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (system.isImplicit(key)) {
+        continue;
+      }
+      PointsToSetVariable v = system.findOrCreatePointsToSet(key);
+      if (v.getValue() == null) {
+        continue;
+      }
+      Assert.assertTrue(v.isShared());
+      PointsToSetVariable other = sharing.get(v.getValue());
+      if (other != null && other != v) {
+        IntSet shared = v.getValue();
+        int size = shared.size();
+        int fresh = shared.max() + 1;
+        v.add(fresh);
+        Assert.assertFalse(v.isShared());
+        Assert.assertTrue(v.contains(fresh));
+        Assert.assertSame(shared, other.getValue());
+        Assert.assertEquals(size, shared.size());
+        Assert.assertFalse(other.contains(fresh));
+        return;
+      }
+      sharing.put(v.getValue(), v);
+    }
+    Assert.fail("no shared points-to sets");
+  }
+}
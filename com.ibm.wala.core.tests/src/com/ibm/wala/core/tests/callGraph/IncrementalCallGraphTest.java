@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.shrikeBT.Constants;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.LoadInstruction;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.PopInstruction;
+import com.ibm.wala.shrikeBT.ReturnInstruction;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Iterator2Iterable;
+import com.ibm.wala.util.perf.Stopwatch;
+import com.ibm.wala.util.shrike.ShrikeClassReaderHandle;
+
+/**
+ * Tests {@link SSAPropagationCallGraphBuilder#updateCallGraph(java.util.Collection, com.ibm.wala.util.MonitorUtil.IProgressMonitor)}
+ */
+public class IncrementalCallGraphTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(IncrementalCallGraphTest.class);
+  }
+
+  /**
+   * An IR factory that pretends the methods of one class lost all their instructions
+   */
+  private static class EmptyingIRFactory implements IRFactory<IMethod> {
+    private final DefaultIRFactory delegate = new DefaultIRFactory();
+
+    IClass emptied;
+
+    public IR makeIR(IMethod method, Context c, SSAOptions options) {
+      return method.getDeclaringClass().equals(emptied) ? null : delegate.makeIR(method, c, options);
+    }
+
+    public boolean contextIsIrrelevant(IMethod method) {
+      return delegate.contextIsIrrelevant(method);
+    }
+  }
+
+  /**
+   * Re-analyzing an unchanged class must leave the solution as it was
+   */
+  @Test
+  public void testUnchangedClass() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setIncrementalUpdates(true);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    Stopwatch S = new Stopwatch();
+    S.start();
+    CallGraph cg = builder.makeCallGraph(options, null);
+    S.stop();
+    Map<String, Set<String>> edges = CallGraphTestUtil.callGraphEdges(cg);
+    Map<String, Set<String>> pointsTo = CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis());
+
+    IClass main = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.JLEX_MAIN));
+    Stopwatch U = new Stopwatch();
+    U.start();
+    Assert.assertEquals(SSAPropagationCallGraphBuilder.UpdateResult.UPDATED, builder.updateCallGraph(Collections.singleton(main),
+        null));
+    U.stop();
+    System.err.println("full build " + S.getElapsedMillis() + " ms, update " + U.getElapsedMillis() + " ms");
+
+    Assert.assertEquals(edges, CallGraphTestUtil.callGraphEdges(cg));
+    Assert.assertEquals(pointsTo, CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()));
+  }
+
+  /**
+   * Deleting instructions must be reported as needing a rebuild
+   */
+  @Test
+  public void testDeletedInstructions() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setIncrementalUpdates(true);
+    EmptyingIRFactory factory = new EmptyingIRFactory();
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(factory), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> edges = CallGraphTestUtil.callGraphEdges(cg);
+
+    IClass main = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.JLEX_MAIN));
+    factory.emptied = main;
+    Assert.assertEquals(SSAPropagationCallGraphBuilder.UpdateResult.NEEDS_REBUILD, builder.updateCallGraph(Collections
+        .singleton(main), null));
+    Assert.assertEquals(edges, CallGraphTestUtil.callGraphEdges(cg));
+  }
+
+  /**
+   * a call to System.gc()
+   */
+  private static class CallGC extends MethodEditor.Patch {
+    @Override
+    public void emitTo(MethodEditor.Output w) {
+      w.emit(com.ibm.wala.shrikeBT.Util.makeInvoke(System.class, "gc"));
+    }
+  }
+
+  /**
+   * a load of the first argument that is popped again, which moves the code after it without defining a value
+   */
+  private static class LoadAndPop extends MethodEditor.Patch {
+    @Override
+    public void emitTo(MethodEditor.Output w) {
+      w.emit(LoadInstruction.make(Constants.TYPE_Object, 0));
+      w.emit(PopInstruction.make(1));
+    }
+  }
+
+  private static enum Edit {
+    /**
+     * call System.gc() before main returns
+     */
+    CALL_LAST,
+    /**
+     * call System.gc() before all other code of main, which renumbers its values
+     */
+    CALL_FIRST,
+    /**
+     * load and pop the argument of main before all other code
+     */
+    LOAD_FIRST
+  }
+
+  /**
+   * @return a new version of klass, with its main method edited
+   */
+  private static IClass editMain(ShrikeClass klass, IClassHierarchy cha, Edit edit) throws InvalidClassFileException {
+    ClassInstrumenter ci = new ClassInstrumenter(klass.getReader());
+    for (int i = 0; i < ci.getReader().getMethodCount(); i++) {
+      if (ci.getReader().getMethodName(i).equals("main")) {
+        MethodEditor me = new MethodEditor(ci.visitMethod(i));
+        me.beginPass();
+        IInstruction[] instructions = me.getInstructions();
+        switch (edit) {
+        case CALL_LAST:
+          for (int j = 0; j < instructions.length; j++) {
+            if (instructions[j] instanceof ReturnInstruction) {
+              me.insertBefore(j, new CallGC());
+            }
+          }
+          break;
+        case CALL_FIRST:
+          me.insertBefore(0, new CallGC());
+          break;
+        case LOAD_FIRST:
+          me.insertBefore(0, new LoadAndPop());
+          break;
+        }
+        me.applyPatches();
+        me.endPass();
+      }
+    }
+    final byte[] bytes = ci.emitClass().makeBytes();
+    final String name = klass.getName().toString().substring(1);
+    ModuleEntry entry = new ModuleEntry() {
+      public String getName() {
+        return name + ".class";
+      }
+
+      public boolean isClassFile() {
+        return true;
+      }
+
+      public boolean isSourceFile() {
+        return false;
+      }
+
+      public InputStream getInputStream() {
+        return new ByteArrayInputStream(bytes);
+      }
+
+      public boolean isModuleFile() {
+        return false;
+      }
+
+      public Module asModule() {
+        return null;
+      }
+
+      public String getClassName() {
+        return name;
+      }
+    };
+    return new ShrikeClass(new ShrikeClassReaderHandle(entry), klass.getClassLoader(), cha);
+  }
+
+  /**
+   * @return does the node for main call System.gc()?
+   */
+  private static boolean mainCallsGC(CallGraph cg, IClass main) {
+    MethodReference gc = MethodReference.findOrCreate(TypeReference.JavaLangSystem, "gc", "()V");
+    for (CGNode n : cg.getNodes(MethodReference.findOrCreate(main.getReference(), "main", "([Ljava/lang/String;)V"))) {
+      for (CGNode s : Iterator2Iterable.make(cg.getSuccNodes(n))) {
+        if (s.getMethod().getReference().equals(gc)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static SSAPropagationCallGraphBuilder makeHelloBuilder(AnalysisScope scope, ClassHierarchy cha) {
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.HELLO_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setIncrementalUpdates(true);
+    return Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+  }
+
+  /**
+   * Adding a call must add its call graph edge
+   */
+  @Test
+  public void testAddedCall() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException,
+      InvalidClassFileException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    SSAPropagationCallGraphBuilder builder = makeHelloBuilder(scope, cha);
+    CallGraph cg = builder.makeCallGraph(builder.getOptions(), null);
+    IClass main = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.HELLO_MAIN));
+    Assert.assertFalse(mainCallsGC(cg, main));
+
+    Assert.assertEquals(SSAPropagationCallGraphBuilder.UpdateResult.UPDATED, builder.updateCallGraph(Collections
+        .singleton(editMain((ShrikeClass) main, cha, Edit.CALL_LAST)), null));
+    Assert.assertTrue(mainCallsGC(cg, main));
+  }
+
+  /**
+   * Code that moves to new program counters, with its calls, allocations and field accesses unchanged, must not force a rebuild
+   */
+  @Test
+  public void testMovedCode() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException,
+      InvalidClassFileException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    SSAPropagationCallGraphBuilder builder = makeHelloBuilder(scope, cha);
+    CallGraph cg = builder.makeCallGraph(builder.getOptions(), null);
+    Map<String, Set<String>> pointsTo = CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis());
+    IClass main = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.HELLO_MAIN));
+    int nodes = cg.getNumberOfNodes();
+
+    Assert.assertEquals(SSAPropagationCallGraphBuilder.UpdateResult.UPDATED, builder.updateCallGraph(Collections
+        .singleton(editMain((ShrikeClass) main, cha, Edit.LOAD_FIRST)), null));
+    Assert.assertEquals(nodes, cg.getNumberOfNodes());
+    Assert.assertEquals(pointsTo, CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()));
+  }
+
+  /**
+   * Code that renumbers the values of a method may turn a local whose points-to set is implicit into one that needs an explicit
+   * set, which must be reported as needing a rebuild
+   */
+  @Test
+  public void testRenumberedValues() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException,
+      InvalidClassFileException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    SSAPropagationCallGraphBuilder builder = makeHelloBuilder(scope, cha);
+    CallGraph cg = builder.makeCallGraph(builder.getOptions(), null);
+    Map<String, Set<String>> edges = CallGraphTestUtil.callGraphEdges(cg);
+    IClass main = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, TestConstants.HELLO_MAIN));
+
+    Assert.assertEquals(SSAPropagationCallGraphBuilder.UpdateResult.NEEDS_REBUILD, builder.updateCallGraph(Collections
+        .singleton(editMain((ShrikeClass) main, cha, Edit.CALL_FIRST)), null));
+    Assert.assertEquals(edges, CallGraphTestUtil.callGraphEdges(cg));
+  }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Checks that the parallel mode of the pointer analysis solver computes the same call graph and points-to sets as the sequential
+ * solver. See {@link PointerAnalysisBenchmark} for the speedups.
+ */
+public class ParallelSolverTest extends WalaTestCase {
+
+  private static final int[] THREADS = { 2, 4 };
+
+  public static void main(String[] args) {
+    justThisTest(ParallelSolverTest.class);
+  }
+
+  @Test
+  public void testHello() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.HELLO_MAIN);
+  }
+
+  @Test
+  public void testMessageFormat() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.WALA_TESTDATA, TestConstants.SLICE_TESTMESSAGEFORMAT);
+  }
+
+  private static void run(String scopeFile, String mainClass) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(scopeFile, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expectedCG = CallGraphTestUtil.callGraphEdges(cg);
+    Map<String, Set<String>> expectedPA = CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis());
+
+    for (int n : THREADS) {
+      options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      options.setNumberOfSolverThreads(n);
+      SSAPropagationCallGraphBuilder parallel = Util.makeZeroCFABuilder(options, new AnalysisCache(), cha, scope);
+      CallGraph parallelCG = parallel.makeCallGraph(options, null);
+      Assert.assertEquals(n, parallel.getPropagationSystem().getNumberOfThreads());
+      Assert.assertEquals("call graph differs with " + n + " threads", expectedCG, CallGraphTestUtil.callGraphEdges(parallelCG));
+      Assert.assertEquals("points-to sets differ with " + n + " threads", expectedPA, CallGraphTestUtil.pointsToSets(parallel
+          .getPointerAnalysis()));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.demandpa.TestInfo;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointsToSetVariable;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.intset.CompressedBitmapIntSet;
+import com.ibm.wala.util.intset.CompressedBitmapIntSetFactory;
+
+/**
+ * Checks that a call graph built with compressed bitmap points-to sets is the same as one built with the default representation.
+ * The filters of the container-sensitive builder and of pi nodes copy points-to sets, as does an inverse
+ * {@link FilteredPointerKey.SingleInstanceFilter}, which is checked on the solved sets.
+ */
+public class PointsToSetFactoryTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(PointsToSetFactoryTest.class);
+  }
+
+  @Test
+  public void testHashSet() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestInfo.TEST_HASH_SET, false);
+  }
+
+  @Test
+  public void testArrayList() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestInfo.TEST_ARRAY_LIST, false);
+  }
+
+  /**
+   * the pi nodes of instanceof and == tests add inverse filters
+   */
+  @Test
+  public void testPiNodes() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.PI_TEST_MAIN, true);
+  }
+
+  private static void run(String mainClass, boolean piNodes) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.getSSAOptions().setPiNodePolicy(piNodes ? SSAOptions.getAllBuiltInPiNodes() : null);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneContainerCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.getSSAOptions().setPiNodePolicy(piNodes ? SSAOptions.getAllBuiltInPiNodes() : null);
+    options.setPointsToSetFactory(new CompressedBitmapIntSetFactory());
+    SSAPropagationCallGraphBuilder compressedBuilder = Util.makeZeroOneContainerCFABuilder(options, new AnalysisCache(), cha,
+        scope);
+    CallGraph compressedCG = compressedBuilder.makeCallGraph(options, null);
+
+    Assert.assertEquals(CallGraphTestUtil.callGraphEdges(cg), CallGraphTestUtil.callGraphEdges(compressedCG));
+    Assert.assertEquals(CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()), CallGraphTestUtil
+        .pointsToSets(compressedBuilder.getPointerAnalysis()));
+
+    // the option reached the solver's points-to sets
+    PropagationSystem system = compressedBuilder.getPropagationSystem();
+    PointsToSetVariable big = null;
+    for (PointerKey pk : compressedBuilder.getPointerAnalysis().getPointerKeys()) {
+      if (!system.isImplicit(pk)) {
+        PointsToSetVariable v = system.findOrCreatePointsToSet(pk);
+        if (v.getValue() != null) {
+          Assert.assertTrue(pk.toString(), v.getValue() instanceof CompressedBitmapIntSet);
+          if (big == null || v.size() > big.size()) {
+            big = v;
+          }
+        }
+      }
+    }
+    Assert.assertNotNull(big);
+    Assert.assertTrue(big.size() > 1);
+
+    // an inverse single-instance filter copies its rhs
+    int removed = big.getValue().intIterator().next();
+    InstanceKey ik = system.getInstanceKey(removed);
+    PointsToSetVariable filtered = new PointsToSetVariable(big.getPointerKey(), options.getPointsToSetFactory());
+    Assert.assertTrue(new FilteredPointerKey.SingleInstanceFilter(ik).addInverseFiltered(system, filtered, big));
+    Assert.assertEquals(big.size() - 1, filtered.size());
+    Assert.assertFalse(filtered.contains(removed));
+  }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.core.tests.demandpa.TestInfo;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.ArrayContentsKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceFieldKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSnapshot;
+import com.ibm.wala.ipa.callgraph.propagation.ReturnValueKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.StaticFieldKey;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.ExceptionReturnValueKey;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * Checks that a {@link PropagationSnapshot} written and loaded back answers the same call graph and points-to queries as the analysis
+ * it was taken from, looking nodes, pointer keys and instance keys up by their numbers rather than their string forms.
+ */
+public class PropagationSnapshotTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(PropagationSnapshotTest.class);
+  }
+
+  @Test
+  public void testArrays() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestInfo.TEST_ARRAYS);
+  }
+
+  @Test
+  public void testGlobal() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    run(TestConstants.SLICE_TESTGLOBAL);
+  }
+
+  private static void run(String mainClass) throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis pa = builder.getPointerAnalysis();
+
+    File file = File.createTempFile("wala", ".snapshot");
+    file.deleteOnExit();
+    PropagationSnapshot.write(cg, pa, file);
+    PropagationSnapshot snapshot = PropagationSnapshot.load(file);
+
+    Assert.assertEquals(cg.getNumber(cg.getFakeRootNode()), snapshot.getFakeRootNode());
+    Assert.assertEquals(cg.getMaxNumber() + 1, snapshot.getNumberOfNodes());
+    for (CGNode n : cg) {
+      int i = cg.getNumber(n);
+      Assert.assertEquals(n.toString(), snapshot.getNodeDescription(i));
+      Assert.assertTrue(snapshot.getNodes(n.getMethod().getSignature()).contains(i));
+      MutableSparseIntSet pcs = MutableSparseIntSet.makeEmpty();
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        pcs.add(site.getProgramCounter());
+        Assert.assertEquals(site.getDeclaredTarget().getSignature(), snapshot.getDeclaredTarget(i, site.getProgramCounter()));
+        MutableSparseIntSet targets = MutableSparseIntSet.makeEmpty();
+        for (CGNode t : cg.getPossibleTargets(n, site)) {
+          targets.add(cg.getNumber(t));
+        }
+        Assert.assertTrue(site.toString(), targets.sameValue(snapshot.getPossibleTargets(i, site.getProgramCounter())));
+      }
+      Assert.assertTrue(pcs.sameValue(snapshot.getCallSites(i)));
+    }
+
+    OrdinalSetMapping<InstanceKey> mapping = pa.getInstanceKeyMapping();
+    int locals = 0;
+    int heap = 0;
+    for (PointerKey pk : pa.getPointerKeys()) {
+      int i = lookup(snapshot, pk, cg, mapping);
+      if (i < 0) {
+        continue;
+      }
+      if (pk instanceof LocalPointerKey) {
+        locals++;
+      } else {
+        heap++;
+      }
+      Assert.assertEquals(pk.toString(), snapshot.getPointerKey(i));
+      MutableSparseIntSet expected = MutableSparseIntSet.makeEmpty();
+      for (InstanceKey ik : pa.getPointsToSet(pk)) {
+        expected.add(mapping.getMappedIndex(ik));
+      }
+      IntSet actual = snapshot.getPointsToSet(i);
+      Assert.assertTrue(pk.toString(), expected.sameValue(actual));
+      for (String ik : snapshot.getInstanceKeys(actual)) {
+        Assert.assertNotNull(ik);
+      }
+    }
+    Assert.assertTrue(locals > 0);
+    Assert.assertTrue(heap > 0);
+    Assert.assertEquals(-1, snapshot.getLocalPointerKey(snapshot.getFakeRootNode(), Integer.MAX_VALUE));
+  }
+
+  /**
+   * @return the index of pk in snapshot, by the lookup for its kind, or -1 for other kinds of keys
+   */
+  private static int lookup(PropagationSnapshot snapshot, PointerKey pk, CallGraph cg, OrdinalSetMapping<InstanceKey> mapping) {
+    int result = -1;
+    if (pk instanceof LocalPointerKey) {
+      LocalPointerKey l = (LocalPointerKey) pk;
+      result = snapshot.getLocalPointerKey(cg.getNumber(l.getNode()), l.getValueNumber());
+    } else if (pk instanceof ExceptionReturnValueKey) {
+      result = snapshot.getExceptionalReturnValueKey(cg.getNumber(((ExceptionReturnValueKey) pk).getNode()));
+    } else if (pk instanceof ReturnValueKey) {
+      result = snapshot.getReturnValueKey(cg.getNumber(((ReturnValueKey) pk).getNode()));
+    } else if (pk.getClass() == InstanceFieldKey.class) {
+      InstanceFieldKey f = (InstanceFieldKey) pk;
+      result = snapshot.getInstanceFieldKey(mapping.getMappedIndex(f.getInstanceKey()), f.getField().getReference().getSignature());
+    } else if (pk instanceof StaticFieldKey) {
+      result = snapshot.getStaticFieldKey(((StaticFieldKey) pk).getField().getReference().getSignature());
+    } else if (pk instanceof ArrayContentsKey) {
+      result = snapshot.getArrayContentsKey(mapping.getMappedIndex(((ArrayContentsKey) pk).getInstanceKey()));
+    } else {
+      return -1;
+    }
+    Assert.assertTrue(pk.toString(), result >= 0);
+    return result;
+  }
+}
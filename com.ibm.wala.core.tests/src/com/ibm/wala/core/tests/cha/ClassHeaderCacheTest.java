@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2007 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassHeaderCache;
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.perf.Stopwatch;
+
+/**
+ * Checks that a class hierarchy built from cached class headers is the same as one built by parsing the class files.
+ */
+public class ClassHeaderCacheTest extends WalaTestCase {
+
+  private static final ClassLoader MY_CLASSLOADER = ClassHeaderCacheTest.class.getClassLoader();
+
+  public static void main(String[] args) {
+    justThisTest(ClassHeaderCacheTest.class);
+  }
+
+  private static ClassHierarchy make(AnalysisScope scope, ClassHeaderCache cache) throws Exception {
+    ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+    factory.setClassHeaderCache(cache);
+    Stopwatch S = new Stopwatch();
+    S.start();
+    ClassHierarchy cha = ClassHierarchy.make(scope, factory);
+    S.stop();
+    System.err.println((cache == null ? "no cache" : cache.toString()) + ": " + cha.getNumberOfClasses() + " classes in "
+        + S.getElapsedMillis() + " ms");
+    return cha;
+  }
+
+  private static Collection<String> fields(Collection<IField> fields) {
+    Collection<String> result = HashSetFactory.make();
+    for (IField f : fields) {
+      result.add(f.getReference().toString() + f.isStatic() + f.isFinal() + f.isVolatile());
+    }
+    return result;
+  }
+
+  @Test
+  public void testSameHierarchy() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, (new FileProvider())
+        .getFile("J2SEClassHierarchyExclusions.txt"), MY_CLASSLOADER);
+    File dir = File.createTempFile("headers", "");
+    dir.delete();
+    ClassHeaderCache cache = new ClassHeaderCache(dir);
+    try {
+      ClassHierarchy parsed = make(scope, null);
+      // the first build fills the cache, the second reads from it
+      make(scope, cache);
+      ClassHierarchy cached = make(scope, cache);
+
+      Assert.assertEquals(parsed.getNumberOfClasses(), cached.getNumberOfClasses());
+      Iterator<IClass> p = parsed.iterator();
+      Iterator<IClass> c = cached.iterator();
+      while (p.hasNext()) {
+        IClass pc = p.next();
+        IClass cc = c.next();
+        Assert.assertEquals(pc.getReference(), cc.getReference());
+        Assert.assertEquals(pc.getModifiers(), cc.getModifiers());
+        Assert.assertEquals(pc.getSuperclass() == null ? null : pc.getSuperclass().getReference(), cc.getSuperclass() == null ? null
+            : cc.getSuperclass().getReference());
+        Assert.assertEquals(pc.getAllImplementedInterfaces().size(), cc.getAllImplementedInterfaces().size());
+        Assert.assertEquals(fields(pc.getDeclaredInstanceFields()), fields(cc.getDeclaredInstanceFields()));
+        Assert.assertEquals(fields(pc.getDeclaredStaticFields()), fields(cc.getDeclaredStaticFields()));
+        Assert.assertEquals(pc.getDeclaredMethods().size(), cc.getDeclaredMethods().size());
+      }
+      Assert.assertFalse(c.hasNext());
+    } finally {
+      File[] files = dir.listFiles();
+      if (files != null) {
+        for (File f : files) {
+          f.delete();
+        }
+      }
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2007 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.perf.Stopwatch;
+
+/**
+ * Checks that parsing class files on several threads builds the same class hierarchy as parsing them on one thread.
+ */
+public class ParallelClassLoadingTest extends WalaTestCase {
+
+  private static final ClassLoader MY_CLASSLOADER = ParallelClassLoadingTest.class.getClassLoader();
+
+  public static void main(String[] args) {
+    justThisTest(ParallelClassLoadingTest.class);
+  }
+
+  private static ClassHierarchy make(AnalysisScope scope, int nThreads) throws Exception {
+    ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+    factory.setNumberOfThreads(nThreads);
+    Stopwatch S = new Stopwatch();
+    S.start();
+    ClassHierarchy cha = ClassHierarchy.make(scope, factory);
+    S.stop();
+    System.err.println(nThreads + " threads: " + cha.getNumberOfClasses() + " classes in " + S.getElapsedMillis() + " ms");
+    return cha;
+  }
+
+  @Test
+  public void testSameHierarchy() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, (new FileProvider())
+        .getFile("J2SEClassHierarchyExclusions.txt"), MY_CLASSLOADER);
+    ClassHierarchy sequential = make(scope, 1);
+    ClassHierarchy parallel = make(scope, 4);
+
+    Assert.assertEquals(sequential.getNumberOfClasses(), parallel.getNumberOfClasses());
+    Iterator<IClass> s = sequential.iterator();
+    Iterator<IClass> p = parallel.iterator();
+    while (s.hasNext()) {
+      IClass sc = s.next();
+      IClass pc = p.next();
+      Assert.assertEquals(sc.getReference(), pc.getReference());
+      Assert.assertEquals(sequential.getNumber(sc), parallel.getNumber(pc));
+      Assert.assertEquals(sc.getSuperclass() == null ? null : sc.getSuperclass().getReference(), pc.getSuperclass() == null ? null
+          : pc.getSuperclass().getReference());
+      Assert.assertEquals(sc.getAllImplementedInterfaces().size(), pc.getAllImplementedInterfaces().size());
+      Assert.assertEquals(sequential.getNumberOfImmediateSubclasses(sc), parallel.getNumberOfImmediateSubclasses(pc));
+    }
+    Assert.assertFalse(p.hasNext());
+  }
+}
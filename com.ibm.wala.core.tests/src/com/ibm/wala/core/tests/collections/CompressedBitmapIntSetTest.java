@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.collections;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.BitVectorIntSetFactory;
+import com.ibm.wala.util.intset.CompressedBitmapIntSet;
+import com.ibm.wala.util.intset.CompressedBitmapIntSetFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSet;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+import com.ibm.wala.util.intset.SemiSparseMutableIntSetFactory;
+
+/**
+ * Tests {@link CompressedBitmapIntSet} against {@link BitVectorIntSet}, and compares its results and size with the other
+ * {@link MutableIntSetFactory} implementations.
+ */
+public class CompressedBitmapIntSetTest extends WalaTestCase {
+
+  /**
+   * elements are drawn from this many clusters, spread over tens of millions of ids
+   */
+  private static final int CLUSTERS = 16;
+
+  private static final int CLUSTER_SPREAD = 3000000;
+
+  private static final int CLUSTER_WIDTH = 20000;
+
+  public static void main(String[] args) {
+    justThisTest(CompressedBitmapIntSetTest.class);
+  }
+
+  private static int clustered(Random r) {
+    return r.nextInt(CLUSTERS) * CLUSTER_SPREAD + r.nextInt(CLUSTER_WIDTH);
+  }
+
+  /**
+   * @return up to n clustered numbers, sorted and free of duplicates
+   */
+  private static int[] clusteredSet(Random r, int n) {
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = clustered(r);
+    }
+    Arrays.sort(result);
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      if (k == 0 || result[k - 1] != result[i]) {
+        result[k++] = result[i];
+      }
+    }
+    return Arrays.copyOf(result, k);
+  }
+
+  private static void assertSameElements(IntSet expected, IntSet actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected.max(), actual.max());
+    IntIterator e = expected.intIterator();
+    IntIterator a = actual.intIterator();
+    while (e.hasNext()) {
+      Assert.assertTrue(a.hasNext());
+      Assert.assertEquals(e.next(), a.next());
+    }
+    Assert.assertFalse(a.hasNext());
+  }
+
+  @Test
+  public void testAddRemove() {
+    Random r = new Random(17);
+    CompressedBitmapIntSet s = new CompressedBitmapIntSet();
+    BitVectorIntSet b = new BitVectorIntSet();
+    for (int i = 0; i < 200000; i++) {
+      int x = clustered(r);
+      if (r.nextInt(4) == 0) {
+        Assert.assertEquals(b.remove(x), s.remove(x));
+      } else {
+        Assert.assertEquals(b.add(x), s.add(x));
+      }
+    }
+    assertSameElements(b, s);
+    for (int i = 0; i < 10000; i++) {
+      int x = clustered(r);
+      Assert.assertEquals(b.contains(x), s.contains(x));
+    }
+  }
+
+  @Test
+  public void testDenseAndSparseContainers() {
+    CompressedBitmapIntSet s = new CompressedBitmapIntSet();
+    MutableSparseIntSet m = MutableSparseIntSet.makeEmpty();
+    // one chunk grows past the array limit into a bitmap, and shrinks back
+    for (int i = 0; i < 10000; i++) {
+      s.add(2 * i);
+      m.add(2 * i);
+    }
+    assertSameElements(m, s);
+    for (int i = 0; i < 9000; i++) {
+      s.remove(2 * i);
+      m.remove(2 * i);
+    }
+    assertSameElements(m, s);
+    Assert.assertFalse(s.contains(-1));
+    Assert.assertTrue(s.contains(19998));
+  }
+
+  @Test
+  public void testSetOperations() {
+    Random r = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      CompressedBitmapIntSet a = new CompressedBitmapIntSet();
+      CompressedBitmapIntSet b = new CompressedBitmapIntSet();
+      BitVectorIntSet ea = new BitVectorIntSet();
+      BitVectorIntSet eb = new BitVectorIntSet();
+      int n = r.nextInt(20000);
+      for (int i = 0; i < n; i++) {
+        int x = clustered(r);
+        a.add(x);
+        ea.add(x);
+        int y = clustered(r);
+        b.add(y);
+        eb.add(y);
+      }
+      if (round % 2 == 0) {
+        a.runOptimize();
+      }
+
+      assertSameElements(ea.intersection(eb), a.intersection(b));
+      assertSameElements(ea.intersection(eb), a.intersection(MutableSparseIntSet.make(eb)));
+      assertSameElements(ea.union(eb), a.union(b));
+      Assert.assertEquals(ea.containsAny(eb), a.containsAny(b));
+      Assert.assertTrue(a.intersection(b).isSubset(a));
+      Assert.assertTrue(a.isSubset(a.union(b)));
+      Assert.assertTrue(a.sameValue(new CompressedBitmapIntSet(ea)));
+      Assert.assertTrue(a.sameValue(ea));
+      // and the other representations compare equal to it
+      Assert.assertTrue(ea.sameValue(a));
+      Assert.assertTrue(MutableSparseIntSet.make(ea).sameValue(a));
+      Assert.assertTrue(new MutableSharedBitVectorIntSet(ea).sameValue(a));
+      Assert.assertEquals(ea.sameValue(eb), eb.sameValue(a));
+
+      CompressedBitmapIntSet c = new CompressedBitmapIntSet(a);
+      BitVectorIntSet ec = new BitVectorIntSet(ea);
+      Assert.assertEquals(ec.addAll(eb), c.addAll(b));
+      assertSameElements(ec, c);
+      // a must be unaffected by changes to its copy
+      assertSameElements(ea, a);
+
+      c.intersectWith(b);
+      ec.intersectWith(eb);
+      assertSameElements(ec, c);
+
+      CompressedBitmapIntSet d = new CompressedBitmapIntSet();
+      BitVectorIntSet ed = new BitVectorIntSet();
+      Assert.assertEquals(ed.addAllInIntersection(ea, eb), d.addAllInIntersection(a, b));
+      assertSameElements(ed, d);
+    }
+  }
+
+  @Test
+  public void testRunOptimize() {
+    CompressedBitmapIntSet s = new CompressedBitmapIntSet();
+    for (int i = 0; i < 1000000; i++) {
+      s.add(5000000 + i);
+    }
+    long before = s.getContainerBytes();
+    s.runOptimize();
+    long after = s.getContainerBytes();
+    System.err.println("one run of 10^6: " + before + " bytes, " + after + " bytes after run optimization");
+    Assert.assertTrue(after < before / 100);
+    Assert.assertEquals(1000000, s.size());
+    Assert.assertTrue(s.contains(5000000));
+    Assert.assertTrue(s.contains(5999999));
+    Assert.assertFalse(s.contains(6000000));
+    Assert.assertEquals(5999999, s.max());
+
+    // run containers are thawed by modification
+    Assert.assertTrue(s.remove(5500000));
+    Assert.assertFalse(s.contains(5500000));
+    Assert.assertTrue(s.add(7));
+    Assert.assertEquals(1000000, s.size());
+  }
+
+  @Test
+  public void testFactory() {
+    CompressedBitmapIntSetFactory f = new CompressedBitmapIntSetFactory();
+    CompressedBitmapIntSet s = f.make(new int[] { 7, 3, 70000, 3 });
+    Assert.assertEquals("{ 3 7 70000 }", s.toString());
+    Assert.assertTrue(s.sameValue(f.parse("{3,7,70000}")));
+    Assert.assertTrue(s.sameValue(f.makeCopy(s)));
+    Assert.assertTrue(f.make().isEmpty());
+  }
+
+  @Test
+  public void testMakeMutableCopy() {
+    CompressedBitmapIntSet s = new CompressedBitmapIntSetFactory().make(new int[] { 3, 7, 70000 });
+    MutableIntSet c = IntSetUtil.makeMutableCopy(s);
+    Assert.assertTrue(c instanceof CompressedBitmapIntSet);
+    Assert.assertTrue(s.sameValue(c));
+    c.add(8);
+    Assert.assertFalse(s.contains(8));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    Random r = new Random(5);
+    CompressedBitmapIntSet s = new CompressedBitmapIntSet();
+    for (int i = 0; i < 50000; i++) {
+      s.add(clustered(r));
+    }
+    for (int i = 0; i < 100000; i++) {
+      s.add(90000000 + i);
+    }
+    s.runOptimize();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    s.write(out);
+    new CompressedBitmapIntSet().write(out);
+    out.close();
+    ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+    assertSameElements(s, CompressedBitmapIntSet.read(in));
+    Assert.assertTrue(CompressedBitmapIntSet.read(in).isEmpty());
+    Assert.assertFalse(in.hasRemaining());
+  }
+
+  /**
+   * Checks that the factories agree on unions, intersections and containsAny over clustered sets, and that a compressed bitmap
+   * holds such sets in less space than a bit vector or a sorted int array. Timings are reported by IntSetBenchmark.
+   */
+  @Test
+  public void testCompareFactories() {
+    MutableIntSetFactory<?>[] factories = { new BitVectorIntSetFactory(), new MutableSparseIntSetFactory(),
+        new SemiSparseMutableIntSetFactory(), new MutableSharedBitVectorIntSetFactory(), new CompressedBitmapIntSetFactory() };
+    int nSets = 10;
+    int setSize = 1000;
+    Random r = new Random(1);
+    IntSet[] elements = new IntSet[nSets];
+    for (int i = 0; i < nSets; i++) {
+      elements[i] = new MutableSparseIntSetFactory().make(clusteredSet(r, setSize));
+    }
+    int[] expectedSizes = null;
+    for (MutableIntSetFactory<?> f : factories) {
+      MutableIntSet[] sets = new MutableIntSet[nSets];
+      for (int i = 0; i < nSets; i++) {
+        sets[i] = f.makeCopy(elements[i]);
+      }
+
+      int[] sizes = new int[3];
+      MutableIntSet union = f.make();
+      for (int i = 0; i < nSets; i++) {
+        union.addAll(sets[i]);
+        sizes[1] += sets[i].intersection(sets[(i + 1) % nSets]).size();
+        if (sets[i].containsAny(sets[(i + 7) % nSets])) {
+          sizes[2]++;
+        }
+      }
+      sizes[0] = union.size();
+      if (expectedSizes == null) {
+        expectedSizes = sizes;
+      } else {
+        Assert.assertTrue(Arrays.equals(expectedSizes, sizes));
+      }
+    }
+
+    for (int i = 0; i < nSets; i++) {
+      CompressedBitmapIntSet s = new CompressedBitmapIntSetFactory().makeCopy(elements[i]);
+      BitVectorIntSet b = new BitVectorIntSetFactory().makeCopy(elements[i]);
+      Assert.assertTrue(s.getContainerBytes() < 4L * s.size());
+      Assert.assertTrue(s.getContainerBytes() < b.getBitVector().length() / 8);
+    }
+  }
+}
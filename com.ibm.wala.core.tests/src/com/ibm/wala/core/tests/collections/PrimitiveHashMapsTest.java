@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.collections;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.IntObjectHashMap;
+import com.ibm.wala.util.collections.LongIntHashMap;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * Tests {@link IntObjectHashMap}, {@link ObjectIntHashMap} and {@link LongIntHashMap} against {@link java.util.HashMap}.
+ */
+public class PrimitiveHashMapsTest extends WalaTestCase {
+
+  private static final int OPS = 200000;
+
+  public static void main(String[] args) {
+    justThisTest(PrimitiveHashMapsTest.class);
+  }
+
+  /**
+   * a small key range, so that puts, removes and collisions are frequent
+   */
+  private static int key(Random r) {
+    return r.nextInt(2000) * (r.nextBoolean() ? 1 : -1) * 1024;
+  }
+
+  @Test
+  public void testIntObject() {
+    Random r = new Random(1);
+    IntObjectHashMap<Integer> m = new IntObjectHashMap<Integer>();
+    Map<Integer, Integer> expected = HashMapFactory.make();
+    for (int i = 0; i < OPS; i++) {
+      int k = key(r);
+      switch (r.nextInt(3)) {
+      case 0:
+        Assert.assertEquals(expected.put(k, i), m.put(k, i));
+        break;
+      case 1:
+        Assert.assertEquals(expected.remove(k), m.remove(k));
+        break;
+      default:
+        Assert.assertEquals(expected.get(k), m.get(k));
+        Assert.assertEquals(expected.containsKey(k), m.containsKey(k));
+      }
+      Assert.assertEquals(expected.size(), m.size());
+    }
+    Set<Integer> keys = HashSetFactory.make();
+    for (IntIterator it = m.keyIterator(); it.hasNext();) {
+      int k = it.next();
+      Assert.assertTrue(keys.add(k));
+      Assert.assertEquals(expected.get(k), m.get(k));
+    }
+    Assert.assertEquals(expected.keySet(), keys);
+    int values = 0;
+    for (Iterator<Integer> it = m.valueIterator(); it.hasNext(); it.next()) {
+      values++;
+    }
+    Assert.assertEquals(expected.size(), values);
+    m.clear();
+    Assert.assertTrue(m.isEmpty());
+    Assert.assertNull(m.get(keys.iterator().next()));
+  }
+
+  @Test
+  public void testObjectInt() {
+    Random r = new Random(2);
+    ObjectIntHashMap<String> m = new ObjectIntHashMap<String>(-1);
+    Map<String, Integer> expected = HashMapFactory.make();
+    for (int i = 0; i < OPS; i++) {
+      int n = key(r);
+      // include the null key
+      String k = n == 0 ? null : String.valueOf(n);
+      switch (r.nextInt(3)) {
+      case 0:
+        Integer old = expected.put(k, i);
+        Assert.assertEquals(old == null ? -1 : old.intValue(), m.put(k, i));
+        break;
+      case 1:
+        old = expected.remove(k);
+        Assert.assertEquals(old == null ? -1 : old.intValue(), m.remove(k));
+        break;
+      default:
+        Assert.assertEquals(expected.containsKey(k) ? expected.get(k).intValue() : -1, m.get(k));
+        Assert.assertEquals(expected.containsKey(k), m.containsKey(k));
+      }
+      Assert.assertEquals(expected.size(), m.size());
+    }
+    Assert.assertEquals(expected.keySet(), m.keySet());
+  }
+
+  @Test
+  public void testLongInt() {
+    Random r = new Random(3);
+    LongIntHashMap m = new LongIntHashMap(-1);
+    Map<Long, Integer> expected = HashMapFactory.make();
+    for (int i = 0; i < OPS; i++) {
+      long k = ((long) key(r) << 32) | (r.nextInt(4));
+      switch (r.nextInt(3)) {
+      case 0:
+        Integer old = expected.put(k, i);
+        Assert.assertEquals(old == null ? -1 : old.intValue(), m.put(k, i));
+        break;
+      case 1:
+        old = expected.remove(k);
+        Assert.assertEquals(old == null ? -1 : old.intValue(), m.remove(k));
+        break;
+      default:
+        Assert.assertEquals(expected.containsKey(k) ? expected.get(k).intValue() : -1, m.get(k));
+        Assert.assertEquals(expected.containsKey(k), m.containsKey(k));
+      }
+      Assert.assertEquals(expected.size(), m.size());
+    }
+  }
+}
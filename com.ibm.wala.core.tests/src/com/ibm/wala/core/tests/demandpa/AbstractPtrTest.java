@@ -38,8 +38,10 @@
 package com.ibm.wala.core.tests.demandpa;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -222,6 +224,14 @@ public abstract class AbstractPtrTest {
 
   protected DemandRefinementPointsTo makeDemandPointerAnalysis(String mainClass) throws ClassHierarchyException,
       IllegalArgumentException, CancelException, IOException {
+    return makeDemandPointerAnalyses(mainClass, 1).get(0);
+  }
+
+  /**
+   * @return n analyses of the same call graph, each with its own flow graph
+   */
+  protected List<DemandRefinementPointsTo> makeDemandPointerAnalyses(String mainClass, int n) throws ClassHierarchyException,
+      IllegalArgumentException, CancelException, IOException {
     AnalysisScope scope = findOrCreateAnalysisScope();
     // build a type hierarchy
     IClassHierarchy cha = findOrCreateCHA(scope);
@@ -240,10 +250,11 @@ public abstract class AbstractPtrTest {
     // cgBuilder.getPointerAnalysis().getHeapModel(), false);
     MemoryAccessMap mam = new PABasedMemoryAccessMap(cg, cgBuilder.getPointerAnalysis());
     SSAPropagationCallGraphBuilder builder = Util.makeVanillaZeroOneCFABuilder(options, analysisCache, cha, scope);
-    DemandRefinementPointsTo fullDemandPointsTo = DemandRefinementPointsTo.makeWithDefaultFlowGraph(cg, builder, mam, cha, options,
-        getStateMachineFactory());
-
-    return fullDemandPointsTo;
+    List<DemandRefinementPointsTo> result = new ArrayList<DemandRefinementPointsTo>(n);
+    for (int i = 0; i < n; i++) {
+      result.add(DemandRefinementPointsTo.makeWithDefaultFlowGraph(cg, builder, mam, cha, options, getStateMachineFactory()));
+    }
+    return result;
   }
 
   /**
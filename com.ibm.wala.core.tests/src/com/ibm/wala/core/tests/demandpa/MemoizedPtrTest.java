@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.demandpa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo;
+import com.ibm.wala.demandpa.alg.PointsToMemoTable;
+import com.ibm.wala.demandpa.alg.refinepolicy.AlwaysRefineFieldsPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.NeverRefineCGPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.SinglePassRefinementPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.TunedRefinementPolicy;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Checks that a {@link PointsToMemoTable} shared across queries does not change their answers.
+ */
+public class MemoizedPtrTest extends AbstractPtrTest {
+
+  public MemoizedPtrTest() {
+    super(TestInfo.SCOPE_FILE);
+  }
+
+  @Test
+  public void testNastyPtrs() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doMemoTest(TestInfo.TEST_NASTY_PTRS, new PointsToMemoTable(100000));
+  }
+
+  @Test
+  public void testHashSet() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doMemoTest(TestInfo.TEST_HASH_SET, new PointsToMemoTable(100000));
+  }
+
+  @Test
+  public void testEviction() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    PointsToMemoTable memo = new PointsToMemoTable(10);
+    doMemoTest(TestInfo.TEST_HASH_SET, memo);
+    Assert.assertTrue(memo.getSize() <= 10);
+  }
+
+  @Test
+  public void testTuned() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTunedTest(TestInfo.TEST_LINKED_LIST);
+  }
+
+  @Test
+  public void testTunedFieldsHarder() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTunedTest(TestInfo.TEST_FIELDS_HARDER);
+  }
+
+  @Test
+  public void testTunedGetterSetter() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTunedTest(TestInfo.TEST_GETTER_SETTER);
+  }
+
+  /**
+   * with the setup {@link DemandRefinementPointsTo#setMemoTable} recommends for {@link TunedRefinementPolicy}
+   */
+  private void doTunedTest(String mainClass) throws ClassHierarchyException, IllegalArgumentException, CancelException,
+      IOException {
+    DemandRefinementPointsTo dmp = makeDemandPointerAnalysis(mainClass);
+    dmp.setRefinementPolicyFactory(new TunedRefinementPolicy.Factory(dmp.getClassHierarchy()));
+    doMemoTest(dmp, new PointsToMemoTable(100000, 1));
+  }
+
+  private void doMemoTest(String mainClass, PointsToMemoTable memo) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    DemandRefinementPointsTo dmp = makeDemandPointerAnalysis(mainClass);
+    dmp
+        .setRefinementPolicyFactory(new SinglePassRefinementPolicy.Factory(new AlwaysRefineFieldsPolicy(),
+            new NeverRefineCGPolicy()));
+    doMemoTest(dmp, memo);
+  }
+
+  /**
+   * query every local of every application method, first without and then with the memo table
+   */
+  private void doMemoTest(DemandRefinementPointsTo dmp, PointsToMemoTable memo) {
+    List<PointerKey> queries = new ArrayList<PointerKey>();
+    for (CGNode node : dmp.getBaseCallGraph()) {
+      if (!node.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        continue;
+      }
+      IR ir = node.getIR();
+      if (ir == null) {
+        continue;
+      }
+      for (int v = 1; v <= ir.getSymbolTable().getMaxValueNumber(); v++) {
+        if (!ir.getSymbolTable().isConstant(v)) {
+          queries.add(dmp.getHeapModel().getPointerKeyForLocal(node, v));
+        }
+      }
+    }
+    List<Collection<InstanceKey>> expected = new ArrayList<Collection<InstanceKey>>();
+    for (PointerKey pk : queries) {
+      expected.add(dmp.getPointsTo(pk));
+    }
+    dmp.setMemoTable(memo);
+    // twice, so the second round is answered from the table
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < queries.size(); i++) {
+        Collection<InstanceKey> actual = dmp.getPointsTo(queries.get(i));
+        Assert.assertEquals(queries.get(i).toString(), set(expected.get(i)), set(actual));
+      }
+    }
+    if (debug) {
+      System.err.println(memo);
+    }
+    if (memo.getNumberOfEntries() > 0) {
+      Assert.assertTrue(memo.toString(), memo.getNumberOfHits() > 0);
+    }
+  }
+
+  private static Collection<InstanceKey> set(Collection<InstanceKey> c) {
+    return c == null ? null : HashSetFactory.make(c);
+  }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.demandpa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.demandpa.alg.ContextSensitiveStateMachine;
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo;
+import com.ibm.wala.demandpa.alg.ParallelDemandPointsTo;
+import com.ibm.wala.demandpa.alg.PointsToMemoTable;
+import com.ibm.wala.demandpa.alg.refinepolicy.AlwaysRefineFieldsPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.NeverRefineCGPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.SinglePassRefinementPolicy;
+import com.ibm.wala.demandpa.alg.statemachine.StateMachineFactory;
+import com.ibm.wala.demandpa.flowgraph.IFlowLabel;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Checks that {@link ParallelDemandPointsTo} gives the same answers as sequential queries.
+ */
+public class ParallelPtrTest extends AbstractPtrTest {
+
+  public ParallelPtrTest() {
+    super(TestInfo.SCOPE_FILE);
+  }
+
+  @Test
+  public void testNastyPtrs() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doParallelTest(TestInfo.TEST_NASTY_PTRS, null);
+  }
+
+  @Test
+  public void testHashSet() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doParallelTest(TestInfo.TEST_HASH_SET, null);
+  }
+
+  @Test
+  public void testHashSetMemoized() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doParallelTest(TestInfo.TEST_HASH_SET, new PointsToMemoTable(100000));
+  }
+
+  @Override
+  protected StateMachineFactory<IFlowLabel> getStateMachineFactory() {
+    return new ContextSensitiveStateMachine.Factory();
+  }
+
+  /**
+   * query every local of every application method on 4 threads, and then sequentially with another analysis of the same call
+   * graph. The parallel pass has a fresh flow graph, so that it builds the whole flow graph itself.
+   */
+  private void doParallelTest(String mainClass, PointsToMemoTable memo) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    List<DemandRefinementPointsTo> analyses = makeDemandPointerAnalyses(mainClass, 2);
+    for (DemandRefinementPointsTo dmp : analyses) {
+      dmp.setRefinementPolicyFactory(new SinglePassRefinementPolicy.Factory(new AlwaysRefineFieldsPolicy(),
+          new NeverRefineCGPolicy()));
+    }
+    DemandRefinementPointsTo parallel = analyses.get(0);
+    DemandRefinementPointsTo sequential = analyses.get(1);
+    parallel.setMemoTable(memo);
+    List<PointerKey> queries = new ArrayList<PointerKey>();
+    for (CGNode n : parallel.getBaseCallGraph()) {
+      IR ir = n.getIR();
+      if (n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application) && ir != null) {
+        for (int v = 1; v <= ir.getSymbolTable().getMaxValueNumber(); v++) {
+          if (!ir.getSymbolTable().isConstant(v)) {
+            queries.add(parallel.getHeapModel().getPointerKeyForLocal(n, v));
+          }
+        }
+      }
+    }
+    Map<PointerKey, Collection<InstanceKey>> actual = new ParallelDemandPointsTo(parallel, 4).getPointsTo(queries);
+
+    Assert.assertEquals(HashSetFactory.make(queries), actual.keySet());
+    for (PointerKey pk : queries) {
+      Assert.assertEquals(pk.toString(), set(sequential.getPointsTo(pk)), set(actual.get(pk)));
+    }
+  }
+
+  private static Collection<InstanceKey> set(Collection<InstanceKey> c) {
+    return c == null ? null : HashSetFactory.make(c);
+  }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.ifds.RandomTabulationProblem.Block;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.DemandTabulationSolver;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * Checks that {@link DemandTabulationSolver} answers queries consistently with an exhaustive {@link TabulationSolver}.
+ */
+public class DemandTabulationTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(DemandTabulationTest.class);
+  }
+
+  @Test
+  public void testSingleQueries() throws CancelException {
+    for (long seed = 0; seed < 20; seed++) {
+      RandomTabulationProblem p = new RandomTabulationProblem(seed, 10, 12, 8);
+      TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+      DemandTabulationSolver<Block, Integer, Integer> solver = DemandTabulationSolver.make(p);
+      List<Block> blocks = Iterator2Collection.toList(p.getSupergraph().iterator());
+      Random r = new Random(seed);
+      for (int i = 0; i < 50; i++) {
+        Block b = blocks.get(r.nextInt(blocks.size()));
+        int d = r.nextInt(p.getNumberOfFacts());
+        Assert.assertEquals(b + " " + d, expected.getResult(b).contains(d), solver.query(b, d));
+      }
+      // the remaining work is resumed, not redone
+      ParallelTabulationTest.assertSameResult(p, expected, solver.solve());
+      Assert.assertTrue(solver.isComplete());
+    }
+  }
+
+  @Test
+  public void testBatchQuery() throws CancelException {
+    RandomTabulationProblem p = new RandomTabulationProblem(5, 40, 16, 12);
+    TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+    Collection<Pair<Block, Integer>> targets = HashSetFactory.make();
+    Set<Pair<Block, Integer>> reached = HashSetFactory.make();
+    for (Block b : p.getSupergraph()) {
+      if (b.getLocal() % 5 == 2) {
+        for (int d = 0; d < p.getNumberOfFacts(); d += 3) {
+          Pair<Block, Integer> t = Pair.make(b, d);
+          targets.add(t);
+          if (expected.getResult(b).contains(d)) {
+            reached.add(t);
+          }
+        }
+      }
+    }
+    Assert.assertEquals(reached, DemandTabulationSolver.make(p).query(targets));
+  }
+
+  @Test
+  public void testStopsEarly() throws CancelException {
+    RandomTabulationProblem p = new RandomTabulationProblem(42, 100, 24, 16);
+    ISupergraph<Block, Integer> supergraph = p.getSupergraph();
+    TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+    DemandTabulationSolver<Block, Integer, Integer> solver = DemandTabulationSolver.make(p);
+    Block target = supergraph.getLocalBlock(0, 2);
+    Assert.assertTrue(solver.query(target, 0));
+    Assert.assertFalse(solver.isComplete());
+    int partial = solver.getPartialResult().getSupergraphNodesReached().size();
+    Assert.assertTrue(partial < expected.getSupergraphNodesReached().size());
+    // answered from the path edges already found
+    Assert.assertTrue(solver.query(target, 0));
+    Assert.assertEquals(partial, solver.getPartialResult().getSupergraphNodesReached().size());
+  }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.ifds.RandomTabulationProblem.Block;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.ParallelTabulationSolver;
+import com.ibm.wala.dataflow.IFDS.TabulationCancelException;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.perf.Stopwatch;
+
+/**
+ * Checks that {@link ParallelTabulationSolver} computes the same results as {@link TabulationSolver}.
+ */
+public class ParallelTabulationTest extends WalaTestCase {
+
+  private static final int[] THREADS = { 1, 2, 4, 8 };
+
+  public static void main(String[] args) {
+    justThisTest(ParallelTabulationTest.class);
+  }
+
+  @Test
+  public void testSmallProblems() throws CancelException {
+    for (long seed = 0; seed < 20; seed++) {
+      check(new RandomTabulationProblem(seed, 10, 12, 8));
+    }
+  }
+
+  @Test
+  public void testLargeProblem() throws CancelException {
+    check(new RandomTabulationProblem(42, 150, 24, 16));
+  }
+
+  @Test
+  public void testCancel() {
+    RandomTabulationProblem p = new RandomTabulationProblem(7, 200, 30, 24);
+    try {
+      ParallelTabulationSolver.make(p, 4, new CanceledMonitor()).solve();
+      Assert.fail("expected tabulation to be canceled");
+    } catch (TabulationCancelException e) {
+      Assert.assertNotNull(e.getResult());
+    } catch (CancelException e) {
+      Assert.fail("expected a partial result");
+    }
+  }
+
+  private static void check(RandomTabulationProblem p) throws CancelException {
+    Stopwatch S = new Stopwatch();
+    S.start();
+    TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+    S.stop();
+    System.err.println("sequential: " + S.getElapsedMillis() + "ms");
+    for (int n : THREADS) {
+      S = new Stopwatch();
+      S.start();
+      TabulationResult<Block, Integer, Integer> actual = ParallelTabulationSolver.make(p, n).solve();
+      S.stop();
+      System.err.println(n + " threads: " + S.getElapsedMillis() + "ms");
+      assertSameResult(p, expected, actual);
+    }
+  }
+
+  static void assertSameResult(RandomTabulationProblem p, TabulationResult<Block, Integer, Integer> expected,
+      TabulationResult<Block, Integer, Integer> actual) {
+    ISupergraph<Block, Integer> supergraph = p.getSupergraph();
+    Assert.assertEquals(expected.getSupergraphNodesReached(), actual.getSupergraphNodesReached());
+    for (Block b : supergraph) {
+      Assert.assertTrue(b.toString(), expected.getResult(b).sameValue(actual.getResult(b)));
+    }
+    for (Block b : supergraph) {
+      if (supergraph.isEntry(b)) {
+        for (Block x : supergraph.getExitsForProcedure(b.getProc())) {
+          for (int d = 0; d < p.getNumberOfFacts(); d++) {
+            IntSet e = expected.getSummaryTargets(b, d, x);
+            IntSet a = actual.getSummaryTargets(b, d, x);
+            Assert.assertTrue(b + " " + d, e == null ? a == null || a.isEmpty() : a != null && e.sameValue(a));
+          }
+        }
+      }
+    }
+  }
+
+  private static class CanceledMonitor implements IProgressMonitor {
+    public void beginTask(String task, int totalWork) {
+    }
+
+    public boolean isCanceled() {
+      return true;
+    }
+
+    public void done() {
+    }
+
+    public void worked(int units) {
+    }
+  }
+}
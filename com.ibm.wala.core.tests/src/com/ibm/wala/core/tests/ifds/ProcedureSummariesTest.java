@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.ifds.RandomTabulationProblem.Block;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.ISummaryNaming;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.LibrarySummaryNaming;
+import com.ibm.wala.dataflow.IFDS.ProcedureSummaries;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Checks that summaries exported by {@link ProcedureSummaries} can replace tabulation of the procedures they summarize.
+ */
+public class ProcedureSummariesTest extends WalaTestCase {
+
+  private static final int PROCS = 40;
+
+  public static void main(String[] args) {
+    justThisTest(ProcedureSummariesTest.class);
+  }
+
+  /**
+   * treats the upper half of the procedures, which never call the lower half, as a library
+   */
+  private static class Naming implements ISummaryNaming<Integer> {
+    private final String version;
+
+    Naming(String version) {
+      this.version = version;
+    }
+
+    public String getProcedureKey(Integer p) {
+      return p >= PROCS / 2 ? "P" + p : null;
+    }
+
+    public String getVersion(Integer p) {
+      return version;
+    }
+
+    public String getDomainEncoding() {
+      return "random";
+    }
+
+    public String getFactKey(int d) {
+      return "f" + d;
+    }
+
+    public int getFact(String key) {
+      return Integer.parseInt(key.substring(1));
+    }
+  }
+
+  @Test
+  public void testReuse() throws CancelException, IOException {
+    for (long seed = 0; seed < 10; seed++) {
+      RandomTabulationProblem p = new RandomTabulationProblem(seed, PROCS, 16, 10, true);
+      TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+
+      ProcedureSummaries summaries = new ProcedureSummaries();
+      TabulationSolver<Block, Integer, Integer> first = TabulationSolver.make(p);
+      first.solve();
+      int exported = summaries.exportSummaries(first, new Naming("1"));
+
+      // round trip through the persistent form
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      summaries.write(out);
+      summaries = ProcedureSummaries.read(new ByteArrayInputStream(out.toByteArray()));
+      Assert.assertEquals(exported, summaries.size());
+
+      TabulationSolver<Block, Integer, Integer> second = TabulationSolver.make(p);
+      int imported = summaries.importSummaries(second, new Naming("1"));
+      Assert.assertEquals(exported, imported);
+      TabulationResult<Block, Integer, Integer> actual = second.solve();
+
+      ISupergraph<Block, Integer> supergraph = p.getSupergraph();
+      for (Block b : supergraph) {
+        IntSet facts = actual.getResult(b);
+        if (b.getProc() >= PROCS / 2 && !supergraph.isEntry(b)) {
+          // not tabulated
+          Assert.assertTrue(b.toString(), facts.isEmpty());
+        } else {
+          Assert.assertTrue(b.toString(), expected.getResult(b).sameValue(facts));
+        }
+      }
+      if (exported > 0) {
+        Assert.assertTrue(actual.getSupergraphNodesReached().size() < expected.getSupergraphNodesReached().size());
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidation() throws CancelException {
+    RandomTabulationProblem p = new RandomTabulationProblem(3, PROCS, 16, 10, true);
+    TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+    ProcedureSummaries summaries = new ProcedureSummaries();
+    TabulationSolver<Block, Integer, Integer> first = TabulationSolver.make(p);
+    first.solve();
+    Assert.assertTrue(summaries.exportSummaries(first, new Naming("1")) > 0);
+
+    TabulationSolver<Block, Integer, Integer> second = TabulationSolver.make(p);
+    Assert.assertEquals(0, summaries.importSummaries(second, new Naming("2")));
+    Assert.assertEquals(0, summaries.size());
+    ParallelTabulationTest.assertSameResult(p, expected, second.solve());
+  }
+
+  /**
+   * @return the only node in cg of the method of type with the given name and descriptor
+   */
+  private static CGNode libraryNode(CallGraph cg, TypeReference type, String name, String descriptor) {
+    Set<CGNode> nodes = cg.getNodes(MethodReference.findOrCreate(type, name, descriptor));
+    Assert.assertEquals(1, nodes.size());
+    return nodes.iterator().next();
+  }
+
+  private static CallGraph makeCallGraph(String mainClass) throws ClassHierarchyException, IllegalArgumentException,
+      CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    return CallGraphTestUtil.buildZeroCFA(options, new AnalysisCache(), cha, scope, false);
+  }
+
+  private static LibrarySummaryNaming makeNaming(CallGraph cg) {
+    return new LibrarySummaryNaming(cg) {
+      public String getDomainEncoding() {
+        return "none";
+      }
+
+      public String getFactKey(int d) {
+        return null;
+      }
+
+      public int getFact(String key) {
+        return -1;
+      }
+    };
+  }
+
+  /**
+   * @return the part of a version from {@link LibrarySummaryNaming} that identifies the jar files
+   */
+  private static String jars(String version) {
+    return version.substring(0, version.indexOf('#'));
+  }
+
+  /**
+   * A library method that calls back into application code must not be summarized
+   */
+  @Test
+  public void testLibraryCallback() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    CallGraph cg = makeCallGraph("Ldataflow/LibraryCallback");
+    LibrarySummaryNaming naming = makeNaming(cg);
+
+    // String.valueOf(Object) calls LibraryCallback.toString()
+    CGNode valueOf = libraryNode(cg, TypeReference.JavaLangString, "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
+    Assert.assertNull(naming.getProcedureKey(valueOf));
+    CGNode init = libraryNode(cg, TypeReference.JavaLangObject, "<init>", "()V");
+    Assert.assertEquals(init.getMethod().getSignature(), naming.getProcedureKey(init));
+
+    // the version of valueOf also covers the jar of LibraryCallback
+    String initVersion = naming.getVersion(init);
+    String valueOfVersion = naming.getVersion(valueOf);
+    Assert.assertNotNull(initVersion);
+    Assert.assertNotNull(valueOfVersion);
+    Assert.assertTrue(jars(valueOfVersion).contains(jars(initVersion)));
+    Assert.assertFalse(jars(valueOfVersion).equals(jars(initVersion)));
+  }
+
+  /**
+   * The version of a library method must change with the library targets of its calls
+   */
+  @Test
+  public void testLibraryTargets() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    CallGraph objectCG = makeCallGraph("Ldataflow/LibraryTargets");
+    CallGraph boxedCG = makeCallGraph("Ldataflow/LibraryTargets$Boxed");
+    LibrarySummaryNaming objectNaming = makeNaming(objectCG);
+    LibrarySummaryNaming boxedNaming = makeNaming(boxedCG);
+
+    // String.valueOf(Object) calls Object.toString() in one program, and Integer.toString() in the other
+    CGNode objectValueOf = libraryNode(objectCG, TypeReference.JavaLangString, "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
+    CGNode boxedValueOf = libraryNode(boxedCG, TypeReference.JavaLangString, "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
+    Assert.assertNotNull(objectNaming.getProcedureKey(objectValueOf));
+    Assert.assertEquals(objectNaming.getProcedureKey(objectValueOf), boxedNaming.getProcedureKey(boxedValueOf));
+    String objectVersion = objectNaming.getVersion(objectValueOf);
+    String boxedVersion = boxedNaming.getVersion(boxedValueOf);
+    Assert.assertNotNull(objectVersion);
+    Assert.assertNotNull(boxedVersion);
+    Assert.assertFalse(objectVersion.equals(boxedVersion));
+
+    // Object.<init> calls nothing, so its version is the same in both programs
+    CGNode objectInit = libraryNode(objectCG, TypeReference.JavaLangObject, "<init>", "()V");
+    CGNode boxedInit = libraryNode(boxedCG, TypeReference.JavaLangObject, "<init>", "()V");
+    Assert.assertEquals(objectNaming.getVersion(objectInit), boxedNaming.getVersion(boxedInit));
+  }
+}
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.ibm.wala.dataflow.IFDS.IBinaryReturnFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IFlowFunctionMap;
+import com.ibm.wala.dataflow.IFDS.IMergeFunction;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.dataflow.IFDS.PathEdge;
+import com.ibm.wala.dataflow.IFDS.TabulationDomain;
+import com.ibm.wala.dataflow.IFDS.TabulationProblem;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.Filter;
+import com.ibm.wala.util.collections.FilterIterator;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.SparseIntSet;
+
+/**
+ * A randomly generated, but reproducible, IFDS problem over a synthetic supergraph, for testing tabulation solvers without a class
+ * hierarchy.
+ * <p>
+ * Each procedure has an entry, an exit, and a chain of blocks in between, with extra random (possibly backward) edges. Some blocks
+ * are calls to one or two random procedures, including recursive calls; the block after a call is its return site. The flow
+ * functions are pseudo-random functions of the edge and the fact, with fact 0 as the zero fact.
+ */
+public class RandomTabulationProblem implements TabulationProblem<RandomTabulationProblem.Block, Integer, Integer> {
+
+  public static class Block {
+    private final int proc;
+
+    private final int local;
+
+    private boolean isCall;
+
+    Block(int proc, int local) {
+      this.proc = proc;
+      this.local = local;
+    }
+
+    public int getProc() {
+      return proc;
+    }
+
+    public int getLocal() {
+      return local;
+    }
+
+    @Override
+    public String toString() {
+      return "P" + proc + ":" + local;
+    }
+  }
+
+  private final int nFacts;
+
+  private final long salt;
+
+  private final Supergraph supergraph;
+
+  private final Domain domain = new Domain();
+
+  private final FlowFunctions functions = new FlowFunctions();
+
+  private final PathEdge<Block> seed;
+
+  /**
+   * @param seed the random seed
+   * @param nProcs number of procedures
+   * @param nBlocks number of blocks in each procedure, at least 4
+   * @param nFacts number of dataflow facts, at least 2
+   */
+  public RandomTabulationProblem(long seed, int nProcs, int nBlocks, int nFacts) {
+    this(seed, nProcs, nBlocks, nFacts, false);
+  }
+
+  /**
+   * @param seed the random seed
+   * @param nProcs number of procedures
+   * @param nBlocks number of blocks in each procedure, at least 4
+   * @param nFacts number of dataflow facts, at least 2
+   * @param layered if true, a procedure only calls procedures with the same or a higher number
+   */
+  public RandomTabulationProblem(long seed, int nProcs, int nBlocks, int nFacts, boolean layered) {
+    if (nBlocks < 4 || nFacts < 2 || nProcs < 1) {
+      throw new IllegalArgumentException("problem too small");
+    }
+    this.nFacts = nFacts;
+    this.salt = seed;
+    Random r = new Random(seed);
+    this.supergraph = new Supergraph(r, nProcs, nBlocks, layered);
+    Block main = supergraph.blocks[0][0];
+    this.seed = PathEdge.createPathEdge(main, 0, main, 0);
+  }
+
+  public ISupergraph<Block, Integer> getSupergraph() {
+    return supergraph;
+  }
+
+  public TabulationDomain<Integer, Block> getDomain() {
+    return domain;
+  }
+
+  public IFlowFunctionMap<Block> getFunctionMap() {
+    return functions;
+  }
+
+  public Collection<PathEdge<Block>> initialSeeds() {
+    return Collections.singleton(seed);
+  }
+
+  public IMergeFunction getMergeFunction() {
+    return null;
+  }
+
+  public int getNumberOfFacts() {
+    return nFacts;
+  }
+
+  /**
+   * a pseudo-random hash of its arguments
+   */
+  private int hash(int a, int b, int c) {
+    long h = salt;
+    h = h * 0x9E3779B97F4A7C15L + a;
+    h = h * 0x9E3779B97F4A7C15L + b;
+    h = h * 0x9E3779B97F4A7C15L + c;
+    h ^= h >>> 29;
+    return (int) (h & 0x7fffffff);
+  }
+
+  private int id(Block b) {
+    return b == null ? -1 : supergraph.getNumber(b);
+  }
+
+  private class Domain implements TabulationDomain<Integer, Block> {
+    public boolean hasPriorityOver(PathEdge<Block> p1, PathEdge<Block> p2) {
+      return false;
+    }
+
+    public int add(Integer o) {
+      return o;
+    }
+
+    public Integer getMappedObject(int n) {
+      return n;
+    }
+
+    public int getMappedIndex(Integer o) {
+      return o;
+    }
+
+    public boolean hasMappedIndex(Integer o) {
+      return o >= 0 && o < nFacts;
+    }
+
+    public int getMaximumIndex() {
+      return nFacts - 1;
+    }
+
+    public int getSize() {
+      return nFacts;
+    }
+
+    public Iterator<Integer> iterator() {
+      List<Integer> result = new ArrayList<Integer>(nFacts);
+      for (int i = 0; i < nFacts; i++) {
+        result.add(i);
+      }
+      return result.iterator();
+    }
+  }
+
+  /**
+   * maps d to itself, unless killed, and to one generated fact; the zero fact is never killed
+   */
+  private class Function implements IUnaryFlowFunction {
+    private final int a;
+
+    private final int b;
+
+    Function(int a, int b) {
+      this.a = a;
+      this.b = b;
+    }
+
+    public SparseIntSet getTargets(int d) {
+      int h = hash(a, b, d);
+      MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+      if (d == 0 || h % 5 != 0) {
+        result.add(d);
+      }
+      if (h % 3 == 0) {
+        result.add(1 + (h >> 4) % (nFacts - 1));
+      }
+      return result;
+    }
+  }
+
+  private class BinaryFunction implements IBinaryReturnFlowFunction {
+    private final int a;
+
+    private final int b;
+
+    BinaryFunction(int a, int b) {
+      this.a = a;
+      this.b = b;
+    }
+
+    public SparseIntSet getTargets(int call_d, int exit_d) {
+      int h = hash(a, b, call_d * nFacts + exit_d);
+      MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+      if (exit_d == 0 || h % 4 != 0) {
+        result.add(exit_d);
+      }
+      if (h % 3 == 0) {
+        result.add(call_d);
+      }
+      return result;
+    }
+  }
+
+  private class FlowFunctions implements IFlowFunctionMap<Block> {
+    public IUnaryFlowFunction getNormalFlowFunction(Block src, Block dest) {
+      return new Function(id(src), id(dest));
+    }
+
+    public IUnaryFlowFunction getCallFlowFunction(Block src, Block dest, Block ret) {
+      return new Function(id(src), id(dest) * 31 + id(ret));
+    }
+
+    public IFlowFunction getReturnFlowFunction(Block call, Block src, Block dest) {
+      int h = hash(id(call), id(src), id(dest));
+      return h % 2 == 0 ? new BinaryFunction(id(call), id(dest)) : new Function(id(src), id(dest));
+    }
+
+    public IUnaryFlowFunction getCallToReturnFlowFunction(Block src, Block dest) {
+      return new Function(-id(src), id(dest));
+    }
+
+    public IUnaryFlowFunction getCallNoneToReturnFlowFunction(Block src, Block dest) {
+      return new Function(-id(src), -id(dest));
+    }
+  }
+
+  private static class Supergraph extends SlowSparseNumberedGraph<Block> implements ISupergraph<Block, Integer> {
+
+    private final Block[][] blocks;
+
+    private final SlowSparseNumberedGraph<Integer> procedures = new SlowSparseNumberedGraph<Integer>(2);
+
+    Supergraph(Random r, int nProcs, int nBlocks, boolean layered) {
+      super(2);
+      blocks = new Block[nProcs][nBlocks];
+      for (int p = 0; p < nProcs; p++) {
+        procedures.addNode(p);
+        for (int i = 0; i < nBlocks; i++) {
+          blocks[p][i] = new Block(p, i);
+          addNode(blocks[p][i]);
+        }
+      }
+      for (int p = 0; p < nProcs; p++) {
+        Block exit = blocks[p][nBlocks - 1];
+        for (int i = 0; i < nBlocks - 1; i++) {
+          Block b = blocks[p][i];
+          Block next = blocks[p][i + 1];
+          // calls at odd positions, so that a return site is never a call
+          if (i % 2 == 1 && i + 1 < nBlocks - 1 && r.nextInt(3) == 0) {
+            b.isCall = true;
+            int nCallees = 1 + r.nextInt(2);
+            for (int c = 0; c < nCallees; c++) {
+              int q = layered ? p + r.nextInt(nProcs - p) : r.nextInt(nProcs);
+              procedures.addEdge(p, q);
+              addEdge(b, blocks[q][0]);
+              addEdge(blocks[q][nBlocks - 1], next);
+            }
+            addEdge(b, next);
+          } else {
+            addEdge(b, next);
+            if (i > 0 && r.nextInt(4) == 0) {
+              addEdge(b, blocks[p][1 + r.nextInt(nBlocks - 1)]);
+            }
+          }
+        }
+        assert !exit.isCall;
+      }
+    }
+
+    public Graph<? extends Integer> getProcedureGraph() {
+      return procedures;
+    }
+
+    public boolean isCall(Block n) {
+      return n.isCall;
+    }
+
+    public Iterator<? extends Block> getCalledNodes(Block call) {
+      return new FilterIterator<Block>(getSuccNodes(call), new Filter<Block>() {
+        public boolean accepts(Block o) {
+          return isEntry(o);
+        }
+      });
+    }
+
+    public Iterator<Block> getNormalSuccessors(Block call) {
+      return EmptyIterator.instance();
+    }
+
+    public Iterator<? extends Block> getReturnSites(Block call, Integer callee) {
+      return Collections.singleton(blocks[call.proc][call.local + 1]).iterator();
+    }
+
+    public Iterator<? extends Block> getCallSites(final Block ret, Integer callee) {
+      List<Block> result = Collections.singletonList(blocks[ret.proc][ret.local - 1]);
+      return result.get(0).isCall ? result.iterator() : EmptyIterator.<Block> instance();
+    }
+
+    public boolean isExit(Block n) {
+      return n.local == blocks[n.proc].length - 1;
+    }
+
+    public Integer getProcOf(Block n) {
+      return n.proc;
+    }
+
+    public Block[] getEntriesForProcedure(Integer procedure) {
+      return new Block[] { blocks[procedure][0] };
+    }
+
+    public Block[] getExitsForProcedure(Integer procedure) {
+      return new Block[] { blocks[procedure][blocks[procedure].length - 1] };
+    }
+
+    public int getNumberOfBlocks(Integer procedure) {
+      return blocks[procedure].length;
+    }
+
+    public int getLocalBlockNumber(Block n) {
+      return n.local;
+    }
+
+    public Block getLocalBlock(Integer procedure, int i) {
+      return blocks[procedure][i];
+    }
+
+    public boolean isReturn(Block n) {
+      return n.local > 0 && blocks[n.proc][n.local - 1].isCall;
+    }
+
+    public boolean isEntry(Block n) {
+      return n.local == 0;
+    }
+
+    public byte classifyEdge(Block src, Block dest) {
+      if (isCall(src)) {
+        return isEntry(dest) ? CALL_EDGE : CALL_TO_RETURN_EDGE;
+      } else if (isExit(src)) {
+        return RETURN_EDGE;
+      } else {
+        return OTHER;
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.ifds.RandomTabulationProblem.Block;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.EdgeSpillStore;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Checks that spilling edges to an {@link EdgeSpillStore} does not change the result of tabulation.
+ */
+public class SpillingTabulationTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(SpillingTabulationTest.class);
+  }
+
+  @Test
+  public void testSmallProblems() throws CancelException, IOException {
+    for (long seed = 0; seed < 20; seed++) {
+      check(new RandomTabulationProblem(seed, 10, 12, 8), 20);
+    }
+  }
+
+  @Test
+  public void testLargeProblem() throws CancelException, IOException {
+    check(new RandomTabulationProblem(42, 60, 24, 16), 2000);
+  }
+
+  @Test
+  public void testNoSpills() throws CancelException, IOException {
+    RandomTabulationProblem p = new RandomTabulationProblem(3, 10, 12, 8);
+    EdgeSpillStore store = new EdgeSpillStore(Long.MAX_VALUE);
+    try {
+      TabulationSolver<Block, Integer, Integer> solver = TabulationSolver.make(p);
+      solver.setSpillStore(store);
+      ParallelTabulationTest.assertSameResult(p, TabulationSolver.make(p).solve(), solver.solve());
+      Assert.assertEquals(0, store.getNumberOfSpills());
+      Assert.assertEquals(0, store.getBytesOnDisk());
+    } finally {
+      store.close();
+    }
+  }
+
+  private static void check(RandomTabulationProblem p, long maxResidentEdges) throws CancelException, IOException {
+    TabulationResult<Block, Integer, Integer> expected = TabulationSolver.make(p).solve();
+    EdgeSpillStore store = new EdgeSpillStore(maxResidentEdges);
+    try {
+      TabulationSolver<Block, Integer, Integer> solver = TabulationSolver.make(p);
+      solver.setSpillStore(store);
+      TabulationResult<Block, Integer, Integer> actual = solver.solve();
+      System.err.println(store);
+      ParallelTabulationTest.assertSameResult(p, expected, actual);
+      if (expected.getSupergraphNodesReached().size() > p.getSupergraph().getNumberOfBlocks(0)) {
+        Assert.assertTrue(store.getNumberOfSpills() > 0);
+        Assert.assertTrue(store.getNumberOfFaults() > 0);
+      }
+    } finally {
+      store.close();
+    }
+  }
+}
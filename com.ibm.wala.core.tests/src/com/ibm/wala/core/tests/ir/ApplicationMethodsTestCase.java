@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.warnings.Warnings;
+
+/**
+ * Base class for tests that build the IRs of all concrete methods of the application classes in the test data.
+ */
+public abstract class ApplicationMethodsTestCase extends WalaTestCase {
+
+  private static final ClassLoader MY_CLASSLOADER = ApplicationMethodsTestCase.class.getClassLoader();
+
+  protected static SSAOptions options;
+
+  /**
+   * the methods with bytecodes declared by application classes
+   */
+  protected static List<IMethod> methods;
+
+  @BeforeClass
+  public static void makeMethods() throws Exception {
+    options = new AnalysisOptions().getSSAOptions();
+    methods = makeApplicationMethods();
+  }
+
+  /**
+   * @return the methods with bytecodes declared by application classes in the test data
+   */
+  public static List<IMethod> makeApplicationMethods() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, (new FileProvider())
+        .getFile("J2SEClassHierarchyExclusions.txt"), MY_CLASSLOADER);
+    ClassHierarchy cha = ClassHierarchy.make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
+    List<IMethod> result = new ArrayList<IMethod>();
+    for (IClass klass : cha) {
+      if (klass.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        for (IMethod m : klass.getDeclaredMethods()) {
+          if (!m.isAbstract() && !m.isNative() && hasBytecodes(m)) {
+            result.add(m);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * the test data includes a class whose code was deleted on purpose; see CodeDeletedTest
+   */
+  private static boolean hasBytecodes(IMethod m) {
+    try {
+      ((IBytecodeMethod) m).getInstructions();
+      return true;
+    } catch (InvalidClassFileException e) {
+      return false;
+    }
+  }
+
+  @AfterClass
+  public static void clearMethods() throws Exception {
+    Warnings.clear();
+    options = null;
+    methods = null;
+  }
+
+  /**
+   * An IR factory that counts the IRs it builds for each method and context
+   */
+  public static class CountingIRFactory extends DefaultIRFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final ConcurrentHashMap<Pair<IMethod, Context>, AtomicInteger> counts = new ConcurrentHashMap<Pair<IMethod, Context>,
+        AtomicInteger>();
+
+    @Override
+    public IR makeIR(IMethod method, Context c, SSAOptions options) {
+      count.incrementAndGet();
+      Pair<IMethod, Context> key = Pair.make(method, c);
+      AtomicInteger n = counts.get(key);
+      if (n == null) {
+        n = new AtomicInteger();
+        AtomicInteger old = counts.putIfAbsent(key, n);
+        n = old == null ? n : old;
+      }
+      n.incrementAndGet();
+      return super.makeIR(method, c, options);
+    }
+
+    /**
+     * @return the number of IRs built
+     */
+    public int getCount() {
+      return count.get();
+    }
+
+    /**
+     * @return the number of IRs built for method in context c
+     */
+    public int getCount(IMethod method, Context c) {
+      AtomicInteger n = counts.get(Pair.make(method, c));
+      return n == null ? 0 : n.get();
+    }
+  }
+}
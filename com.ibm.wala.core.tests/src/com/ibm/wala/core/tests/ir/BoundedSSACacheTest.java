@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.BoundedAuxiliaryCache;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+
+/**
+ * Tests for an {@link SSACache} with a fixed budget.
+ */
+public class BoundedSSACacheTest extends ApplicationMethodsTestCase {
+
+  private static final long BUDGET = 64 * 1024;
+
+  public static void main(String[] args) {
+    justThisTest(BoundedSSACacheTest.class);
+  }
+
+  @Test
+  public void testBudget() {
+    SSACache cache = SSACache.makeBounded(new DefaultIRFactory(), BUDGET, BUDGET);
+    BoundedAuxiliaryCache irCache = (BoundedAuxiliaryCache) cache.getIRCache();
+    IR last = null;
+    for (IMethod m : methods) {
+      last = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      cache.findOrCreateDU(m, Everywhere.EVERYWHERE, options);
+      Assert.assertTrue(irCache.getSize() <= BUDGET);
+      Assert.assertTrue(((BoundedAuxiliaryCache) cache.getDUCache()).getSize() <= BUDGET);
+    }
+    System.err.println(irCache);
+    Assert.assertTrue(irCache.getEvictions() > 0);
+    Assert.assertFalse(cache.isSoft());
+
+    // the most recently used IR is still cached
+    IMethod m = methods.get(methods.size() - 1);
+    long hits = irCache.getHits();
+    Assert.assertSame(last, cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options));
+    Assert.assertEquals(hits + 1, irCache.getHits());
+  }
+
+  /**
+   * each lookup through the SSACache counts once, as a hit or a miss
+   */
+  @Test
+  public void testHitsAndMisses() {
+    SSACache cache = SSACache.makeBounded(new DefaultIRFactory(), Long.MAX_VALUE, Long.MAX_VALUE);
+    BoundedAuxiliaryCache irCache = (BoundedAuxiliaryCache) cache.getIRCache();
+    BoundedAuxiliaryCache duCache = (BoundedAuxiliaryCache) cache.getDUCache();
+    int n = Math.min(20, methods.size());
+    for (IMethod m : methods.subList(0, n)) {
+      // a miss, then a hit
+      IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      Assert.assertSame(ir, cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options));
+      // a DefUse miss and an IR hit, then a DefUse hit
+      DefUse du = cache.findOrCreateDU(m, Everywhere.EVERYWHERE, options);
+      Assert.assertSame(du, cache.findOrCreateDU(m, Everywhere.EVERYWHERE, options));
+      // a DefUse hit
+      Assert.assertSame(du, cache.findOrCreateDU(ir, Everywhere.EVERYWHERE));
+    }
+    Assert.assertEquals(n, irCache.getMisses());
+    Assert.assertEquals(2 * n, irCache.getHits());
+    Assert.assertEquals(n, duCache.getMisses());
+    Assert.assertEquals(2 * n, duCache.getHits());
+    Assert.assertEquals(0, irCache.getEvictions());
+  }
+
+  @Test
+  public void testInvalidate() {
+    SSACache cache = SSACache.makeBounded(new DefaultIRFactory(), BUDGET, BUDGET);
+    IMethod m = methods.get(0);
+    IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    Assert.assertSame(ir, cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options));
+    cache.invalidate(m, Everywhere.EVERYWHERE);
+    Assert.assertNotSame(ir, cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options));
+  }
+
+  @Test
+  public void testAnalysisCache() {
+    DefaultIRFactory factory = new DefaultIRFactory();
+    AnalysisCache cache = new AnalysisCache(factory, SSACache.makeBounded(factory, BUDGET, BUDGET));
+    IMethod m = methods.get(0);
+    IR ir = cache.getIR(m);
+    Assert.assertSame(ir, cache.getIR(m));
+    Assert.assertSame(cache.getDefUse(ir), cache.getDefUse(ir));
+  }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+
+/**
+ * Tests an {@link SSACache} used from several threads at once.
+ */
+public class ConcurrentSSACacheTest extends ApplicationMethodsTestCase {
+
+  private static final int N_THREADS = 4;
+
+  public static void main(String[] args) {
+    justThisTest(ConcurrentSSACacheTest.class);
+  }
+
+  /**
+   * Have nThreads threads each ask cache for the IR and DefUse of every method, starting at different points in the list.
+   */
+  private static void run(final SSACache cache, int nThreads) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < nThreads; t++) {
+        final int start = t * methods.size() / nThreads;
+        futures.add(pool.submit(new Runnable() {
+          public void run() {
+            for (int i = 0; i < methods.size(); i++) {
+              IMethod m = methods.get((start + i) % methods.size());
+              IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+              Assert.assertSame(cache.findOrCreateDU(ir, Everywhere.EVERYWHERE), cache.findOrCreateDU(m, Everywhere.EVERYWHERE,
+                  options));
+            }
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    CountingIRFactory factory = new CountingIRFactory();
+    // large enough to hold everything, so that nothing is built twice because it was evicted
+    SSACache cache = SSACache.makeBounded(factory, Long.MAX_VALUE, Long.MAX_VALUE);
+    run(cache, N_THREADS);
+    Assert.assertEquals(methods.size(), factory.getCount());
+    for (IMethod m : methods) {
+      Assert.assertEquals(m.toString(), 1, factory.getCount(m, Everywhere.EVERYWHERE));
+    }
+  }
+}
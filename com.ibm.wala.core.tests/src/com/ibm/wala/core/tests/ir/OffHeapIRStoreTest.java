@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.OffHeapIRStore;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAInstruction;
+
+/**
+ * Checks that IRs rebuilt from an {@link OffHeapIRStore} are the same as the IRs built from bytecode.
+ */
+public class OffHeapIRStoreTest extends ApplicationMethodsTestCase {
+
+  private static final int N_THREADS = 4;
+
+  public static void main(String[] args) {
+    justThisTest(OffHeapIRStoreTest.class);
+  }
+
+  /**
+   * @return a description of the blocks, phis and instructions of ir, without the source-level local names which
+   *         {@link IR#toString()} shows
+   */
+  private static String describeIR(IR ir) {
+    StringBuffer result = new StringBuffer();
+    for (ISSABasicBlock bb : ir.getControlFlowGraph()) {
+      result.append("BB").append(bb.getNumber()).append(' ').append(bb.getFirstInstructionIndex()).append('-')
+          .append(bb.getLastInstructionIndex()).append('\n');
+      for (Iterator<? extends SSAInstruction> it = bb.iterator(); it.hasNext();) {
+        SSAInstruction s = it.next();
+        if (s != null) {
+          result.append(s.toString(ir.getSymbolTable())).append('\n');
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return a description of the def-use information of ir
+   */
+  private static String describeDefUse(IR ir, DefUse du) {
+    StringBuffer result = new StringBuffer();
+    for (int v = 1; v <= ir.getSymbolTable().getMaxValueNumber(); v++) {
+      result.append(v).append(':').append(ir.getSymbolTable().getValueString(v)).append(' ').append(du.getDef(v)).append(' ')
+          .append(du.getNumberOfUses(v)).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static void checkRoundTrip(OffHeapIRStore store) {
+    CountingIRFactory factory = new CountingIRFactory();
+    SSACache cache = new SSACache(factory);
+    cache.setSecondLevelStore(store);
+    List<String> irs = new ArrayList<String>();
+    List<String> names = new ArrayList<String>();
+    List<String> dus = new ArrayList<String>();
+    for (IMethod m : methods) {
+      IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      irs.add(describeIR(ir));
+      names.add(ir.toString());
+      dus.add(describeDefUse(ir, cache.findOrCreateDU(ir, Everywhere.EVERYWHERE)));
+    }
+    Assert.assertEquals(0, store.getNumberOfRejectedIRs());
+    Assert.assertEquals(methods.size(), store.getNumberOfIRs());
+    Assert.assertEquals(methods.size(), factory.getCount());
+
+    // drop the first level, so that IRs come from the store and not from the factory
+    cache.wipe();
+    for (int i = 0; i < methods.size(); i++) {
+      IR ir = cache.findOrCreateIR(methods.get(i), Everywhere.EVERYWHERE, options);
+      Assert.assertEquals(irs.get(i), describeIR(ir));
+      Assert.assertEquals(dus.get(i), describeDefUse(ir, cache.findOrCreateDU(ir, Everywhere.EVERYWHERE)));
+    }
+    Assert.assertEquals(methods.size(), factory.getCount());
+
+    // local names are not stored, but come from at most one fresh build per IR
+    for (int i = 0; i < methods.size(); i++) {
+      IR ir = cache.findOrCreateIR(methods.get(i), Everywhere.EVERYWHERE, options);
+      Assert.assertEquals(names.get(i), ir.toString());
+    }
+    Assert.assertTrue(factory.getCount() <= 2 * methods.size());
+  }
+
+  @Test
+  public void testDirect() {
+    checkRoundTrip(new OffHeapIRStore(Integer.MAX_VALUE));
+  }
+
+  /**
+   * Wiping the store must empty its constant pool
+   */
+  @Test
+  public void testWipe() {
+    OffHeapIRStore store = new OffHeapIRStore(Integer.MAX_VALUE);
+    SSACache cache = new SSACache(new DefaultIRFactory());
+    cache.setSecondLevelStore(store);
+    for (IMethod m : methods) {
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    }
+    Assert.assertTrue(store.getNumberOfPooledObjects() > 0);
+    store.wipe();
+    Assert.assertEquals(0, store.getNumberOfPooledObjects());
+
+    // IRs stored after the wipe must not refer to the objects of the old pool
+    cache.wipe();
+    for (IMethod m : methods) {
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    }
+    cache.wipe();
+    SSACache plain = new SSACache(new DefaultIRFactory());
+    for (IMethod m : methods) {
+      Assert.assertEquals(describeIR(plain.findOrCreateIR(m, Everywhere.EVERYWHERE, options)), describeIR(cache.findOrCreateIR(m,
+          Everywhere.EVERYWHERE, options)));
+    }
+  }
+
+  @Test
+  public void testMapped() throws Exception {
+    File f = File.createTempFile("irs", ".bin");
+    OffHeapIRStore store = new OffHeapIRStore(f, Integer.MAX_VALUE);
+    try {
+      checkRoundTrip(store);
+    } finally {
+      store.close();
+      f.delete();
+    }
+  }
+
+  /**
+   * Rebuild IRs from a mapped store on several threads while the store is wiped over and over
+   */
+  @Test
+  public void testConcurrentWipe() throws Exception {
+    File f = File.createTempFile("irs", ".bin");
+    final OffHeapIRStore store = new OffHeapIRStore(f, Integer.MAX_VALUE);
+    try {
+      final List<String> irs = new ArrayList<String>();
+      SSACache plain = new SSACache(new DefaultIRFactory());
+      for (IMethod m : methods) {
+        irs.add(plain.findOrCreateIR(m, Everywhere.EVERYWHERE, options).toString());
+      }
+      final AtomicInteger running = new AtomicInteger(N_THREADS);
+      ExecutorService pool = Executors.newFixedThreadPool(N_THREADS);
+      try {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < N_THREADS; t++) {
+          futures.add(pool.submit(new Callable<Object>() {
+            public Object call() {
+              try {
+                SSACache cache = new SSACache(new DefaultIRFactory());
+                cache.setSecondLevelStore(store);
+                for (int round = 0; round < 5; round++) {
+                  for (int i = 0; i < methods.size(); i++) {
+                    Assert.assertEquals(irs.get(i), cache.findOrCreateIR(methods.get(i), Everywhere.EVERYWHERE, options).toString());
+                  }
+                  cache.wipe();
+                }
+                return null;
+              } finally {
+                running.decrementAndGet();
+              }
+            }
+          }));
+        }
+        while (running.get() > 0) {
+          store.wipe();
+          Thread.sleep(1);
+        }
+        for (Future<?> fut : futures) {
+          fut.get();
+        }
+      } finally {
+        pool.shutdown();
+      }
+    } finally {
+      store.close();
+      f.delete();
+    }
+  }
+
+  @Test
+  public void testFull() {
+    OffHeapIRStore store = new OffHeapIRStore(1);
+    SSACache cache = new SSACache(new DefaultIRFactory());
+    cache.setSecondLevelStore(store);
+    IR ir = cache.findOrCreateIR(methods.get(0), Everywhere.EVERYWHERE, options);
+    Assert.assertNotNull(ir);
+    Assert.assertEquals(0, store.getNumberOfIRs());
+    Assert.assertEquals(1, store.getNumberOfRejectedIRs());
+    // a rejected IR must not leave its constants in the pool
+    Assert.assertEquals(0, store.getNumberOfPooledObjects());
+  }
+}
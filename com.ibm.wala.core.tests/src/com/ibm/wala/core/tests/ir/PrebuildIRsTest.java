@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.BoundedAuxiliaryCache;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * Tests for {@link AnalysisCache#prebuildIRs(Collection, SSAOptions, int, float, IProgressMonitor)}
+ */
+public class PrebuildIRsTest extends ApplicationMethodsTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(PrebuildIRsTest.class);
+  }
+
+  private static class CountingMonitor implements IProgressMonitor {
+    int total;
+
+    int worked;
+
+    boolean canceled;
+
+    public void beginTask(String task, int totalWork) {
+      total = totalWork;
+    }
+
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    public void done() {
+    }
+
+    public void worked(int units) {
+      worked += units;
+    }
+  }
+
+  @Test
+  public void testPrebuild() throws CancelException {
+    DefaultIRFactory factory = new DefaultIRFactory();
+    SSACache ssaCache = SSACache.makeBounded(factory, Long.MAX_VALUE, Long.MAX_VALUE);
+    AnalysisCache cache = new AnalysisCache(factory, ssaCache);
+    CountingMonitor monitor = new CountingMonitor();
+    Assert.assertEquals(methods.size(), cache.prebuildIRs(methods, options, 4, 1f, monitor));
+    Assert.assertEquals(methods.size(), monitor.total);
+    Assert.assertEquals(methods.size(), monitor.worked);
+
+    // everything is cached now
+    BoundedAuxiliaryCache irCache = (BoundedAuxiliaryCache) ssaCache.getIRCache();
+    long misses = irCache.getMisses();
+    for (IMethod m : methods) {
+      ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    }
+    Assert.assertEquals(misses, irCache.getMisses());
+  }
+
+  @Test
+  public void testMemoryCap() throws CancelException {
+    // the heap is never this empty, so nothing is built
+    Assert.assertEquals(0, new AnalysisCache().prebuildIRs(methods, options, 4, Float.MIN_VALUE, null));
+  }
+
+  @Test(expected = CancelException.class)
+  public void testCancel() throws CancelException {
+    CountingMonitor monitor = new CountingMonitor();
+    monitor.canceled = true;
+    new AnalysisCache().prebuildIRs(methods, options, 4, 1f, monitor);
+  }
+}
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.demandpa.TestInfo;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.demandpa.alg.ContextSensitiveStateMachine;
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo;
+import com.ibm.wala.demandpa.alg.ParallelDemandPointsTo;
+import com.ibm.wala.demandpa.alg.refinepolicy.AlwaysRefineFieldsPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.NeverRefineCGPolicy;
+import com.ibm.wala.demandpa.alg.refinepolicy.SinglePassRefinementPolicy;
+import com.ibm.wala.demandpa.util.MemoryAccessMap;
+import com.ibm.wala.demandpa.util.PABasedMemoryAccessMap;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACheckCastInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * A headless benchmark of {@link ParallelDemandPointsTo} on a cast-check workload, in the style of {@link IntSetBenchmark}. For
+ * each fixture it builds the 0-CFA call graph of a test program, and collects one query per checkcast instruction of a reached
+ * method: the points-to set of the value being cast. It then answers all queries as one batch with each number of threads, each
+ * pass with a fresh analysis, so that the flow graph is built in every pass, and each query under the same traversal budget. It
+ * reports the mean time per pass and the speedup over the first number of threads.
+ *
+ * Usage:
+ *
+ * <pre>
+ * DemandPointsToBenchmark [-warmup n] [-iterations n] [-budget n] [-threads n]... [-fixture mainClass]...
+ * </pre>
+ */
+public class DemandPointsToBenchmark {
+
+  /**
+   * the test programs measured by default; they reach enough of the standard library to have a hundred casts or more
+   */
+  public static final String[] FIXTURES = { TestConstants.HELLO_MAIN, TestConstants.SLICE_TESTINETADDR,
+      TestConstants.SLICE_TESTMESSAGEFORMAT };
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final String fixture;
+
+    public final int threads;
+
+    public final int queries;
+
+    /**
+     * ms per pass
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * mean time per pass with the first number of threads, divided by mean
+     */
+    public final double speedup;
+
+    /**
+     * sum of the sizes of the points-to sets found in the last pass, which should not depend on the number of threads
+     */
+    public final int checksum;
+
+    Result(String fixture, int threads, int queries, double mean, double stddev, double speedup, int checksum) {
+      this.fixture = fixture;
+      this.threads = threads;
+      this.queries = queries;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.speedup = speedup;
+      this.checksum = checksum;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-28s %3d threads %6d queries %10.1f ms +- %.1f  x%.2f  (checksum %d)", fixture, threads, queries, mean,
+          stddev, speedup, checksum);
+    }
+  }
+
+  private int warmup = 2;
+
+  private int iterations = 5;
+
+  private int budget = 12000;
+
+  private List<Integer> threads = defaultThreads();
+
+  private List<String> fixtures = Arrays.asList(FIXTURES);
+
+  /**
+   * @return 1, 2, 4, ... up to the number of available processors, and that number
+   */
+  private static List<Integer> defaultThreads() {
+    List<Integer> result = new ArrayList<Integer>();
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int n = 1; n < cores; n *= 2) {
+      result.add(n);
+    }
+    result.add(cores);
+    return result;
+  }
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param budget maximum number of flow graph nodes traversed per query
+   */
+  public void setBudget(int budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("invalid budget: " + budget);
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * @param threads the numbers of threads to measure; the speedups are relative to the first
+   */
+  public void setThreads(List<Integer> threads) {
+    if (threads == null || threads.isEmpty()) {
+      throw new IllegalArgumentException("no thread counts");
+    }
+    for (int n : threads) {
+      if (n < 1) {
+        throw new IllegalArgumentException("invalid thread count: " + n);
+      }
+    }
+    this.threads = threads;
+  }
+
+  public void setFixtures(List<String> fixtures) {
+    if (fixtures == null || fixtures.isEmpty()) {
+      throw new IllegalArgumentException("no fixtures");
+    }
+    this.fixtures = fixtures;
+  }
+
+  /**
+   * measure all fixtures with all thread counts
+   */
+  public List<Result> run() throws IOException, ClassHierarchyException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestInfo.SCOPE_FILE, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    IClassHierarchy cha = ClassHierarchy.make(scope);
+    List<Result> results = new ArrayList<Result>();
+    for (String fixture : fixtures) {
+      Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, fixture);
+      AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      AnalysisCache cache = new AnalysisCache();
+      CallGraphBuilder cgBuilder = Util.makeZeroCFABuilder(options, cache, cha, scope);
+      CallGraph cg = cgBuilder.makeCallGraph(options, null);
+      MemoryAccessMap mam = new PABasedMemoryAccessMap(cg, cgBuilder.getPointerAnalysis());
+      SSAPropagationCallGraphBuilder builder = Util.makeVanillaZeroOneCFABuilder(options, cache, cha, scope);
+      List<PointerKey> queries = null;
+
+      double base = 0;
+      for (int n : threads) {
+        double[] samples = new double[iterations];
+        int checksum = 0;
+        for (int i = 0; i < warmup + iterations; i++) {
+          DemandRefinementPointsTo dmp = DemandRefinementPointsTo.makeWithDefaultFlowGraph(cg, builder, mam, cha, options,
+              new ContextSensitiveStateMachine.Factory());
+          dmp.setRefinementPolicyFactory(new SinglePassRefinementPolicy.Factory(new AlwaysRefineFieldsPolicy(),
+              new NeverRefineCGPolicy(), budget));
+          if (queries == null) {
+            queries = castChecks(dmp);
+          }
+          long start = System.nanoTime();
+          Map<PointerKey, Collection<InstanceKey>> p2sets = new ParallelDemandPointsTo(dmp, n).getPointsTo(queries);
+          long elapsed = System.nanoTime() - start;
+          if (i >= warmup) {
+            samples[i - warmup] = elapsed / 1e6;
+          }
+          checksum = 0;
+          for (Collection<InstanceKey> p2set : p2sets.values()) {
+            checksum += p2set == null ? 0 : p2set.size();
+          }
+        }
+        double mean = mean(samples);
+        if (base == 0) {
+          base = mean;
+        }
+        results.add(new Result(fixture, n, queries.size(), mean, stddev(samples), base / mean, checksum));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the values cast by the checkcast instructions of the call graph nodes
+   */
+  private static List<PointerKey> castChecks(DemandRefinementPointsTo dmp) {
+    List<PointerKey> result = new ArrayList<PointerKey>();
+    for (CGNode n : dmp.getBaseCallGraph()) {
+      IR ir = n.getIR();
+      if (ir == null) {
+        continue;
+      }
+      for (SSAInstruction s : ir.getInstructions()) {
+        if (s instanceof SSACheckCastInstruction) {
+          result.add(dmp.getHeapModel().getPointerKeyForLocal(n, s.getUse(0)));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static double mean(double[] samples) {
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    return mean / samples.length;
+  }
+
+  private static double stddev(double[] samples) {
+    double mean = mean(samples);
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    return samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+  }
+
+  public static void main(String[] args) throws IOException, ClassHierarchyException, CancelException {
+    DemandPointsToBenchmark b = new DemandPointsToBenchmark();
+    List<Integer> threads = new ArrayList<Integer>();
+    List<String> fixtures = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-budget")) {
+        b.setBudget(Integer.parseInt(v));
+      } else if (a.equals("-threads")) {
+        threads.add(Integer.parseInt(v));
+      } else if (a.equals("-fixture")) {
+        fixtures.add(v);
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    if (!threads.isEmpty()) {
+      b.setThreads(threads);
+    }
+    if (!fixtures.isEmpty()) {
+      b.setFixtures(fixtures);
+    }
+    for (Result r : b.run()) {
+      System.out.println(r);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.DemandPointsToBenchmark.Result;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+
+/**
+ * Runs {@link DemandPointsToBenchmark} once on a small program with one and with several threads, and checks that both find the
+ * same points-to sets.
+ */
+public class DemandPointsToBenchmarkTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(DemandPointsToBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() throws Exception {
+    DemandPointsToBenchmark b = new DemandPointsToBenchmark();
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    b.setThreads(Arrays.asList(1, 4));
+    b.setFixtures(Collections.singletonList(TestConstants.HELLO_MAIN));
+    List<Result> results = b.run();
+    Assert.assertEquals(2, results.size());
+    Assert.assertTrue(results.get(0).queries > 0);
+    Assert.assertTrue(results.get(0).checksum > 0);
+    Assert.assertEquals(results.get(1).toString(), results.get(0).checksum, results.get(1).checksum);
+  }
+}
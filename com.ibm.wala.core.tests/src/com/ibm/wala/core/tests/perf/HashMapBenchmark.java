@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.IntObjectHashMap;
+import com.ibm.wala.util.collections.LongIntHashMap;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
+import com.ibm.wala.util.intset.SparseLongIntVector;
+
+/**
+ * A headless micro-benchmark of the primitive hash maps against the boxed maps they replace, in the style of
+ * {@link IntSetBenchmark}. For each mapping it fills a map, then probes it with as many present as absent keys, and reports the
+ * mean time per put and per get and the bytes allocated per entry while filling, including resizes and boxing. Keys are built
+ * outside the timed region.
+ *
+ * The mappings are int-&gt;Object (HashMap vs. {@link IntObjectHashMap}), Object-&gt;int (HashMap vs. {@link ObjectIntHashMap}) and
+ * long-&gt;int ({@link SparseLongIntVector} vs. {@link LongIntHashMap}). Allocation is read from the JVM's per-thread allocation
+ * counter, and reported as -1 where the JVM has none.
+ *
+ * Usage:
+ *
+ * <pre>
+ * HashMapBenchmark [-warmup n] [-iterations n] [-size n] [-longSize n] [-seed n]
+ * </pre>
+ */
+public class HashMapBenchmark {
+
+  public static final String[] MAPPINGS = { "intObject", "objectInt", "longInt" };
+
+  public static final String[] OPERATIONS = { "put", "get" };
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final String mapping;
+
+    public final String impl;
+
+    public final String op;
+
+    /**
+     * ns/op
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * bytes allocated per entry by put, or -1 if not measured
+     */
+    public final double bytesPerEntry;
+
+    /**
+     * a digest of the values computed, which should not depend on the implementation
+     */
+    public final long checksum;
+
+    Result(String mapping, String impl, String op, double mean, double stddev, double bytesPerEntry, long checksum) {
+      this.mapping = mapping;
+      this.impl = impl;
+      this.op = op;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.bytesPerEntry = bytesPerEntry;
+      this.checksum = checksum;
+    }
+
+    @Override
+    public String toString() {
+      String s = String.format("%-10s %-24s %-4s %10.1f ns/op +- %.1f", mapping, impl, op, mean, stddev);
+      return bytesPerEntry < 0 ? s : s + String.format("  %6.1f B/entry", bytesPerEntry);
+    }
+  }
+
+  private int warmup = 3;
+
+  private int iterations = 5;
+
+  private int size = 1000000;
+
+  /**
+   * {@link SparseLongIntVector} inserts in linear time, so the long-&gt;int maps are smaller
+   */
+  private int longSize = 20000;
+
+  private long seed = 42;
+
+  /**
+   * sink for computed values
+   */
+  private volatile long blackhole;
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param size number of entries in the int-&gt;Object and Object-&gt;int maps
+   */
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("invalid size: " + size);
+    }
+    this.size = size;
+  }
+
+  /**
+   * @param longSize number of entries in the long-&gt;int maps
+   */
+  public void setLongSize(int longSize) {
+    if (longSize < 1) {
+      throw new IllegalArgumentException("invalid size: " + longSize);
+    }
+    this.longSize = longSize;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * run both operations on all mappings and implementations
+   */
+  public List<Result> run() {
+    List<Result> results = new ArrayList<Result>();
+    for (String mapping : MAPPINGS) {
+      for (String impl : implementations(mapping)) {
+        results.addAll(measure(mapping, impl));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the boxed implementation, then the primitive one
+   */
+  public static String[] implementations(String mapping) {
+    if (mapping.equals("intObject")) {
+      return new String[] { "HashMap<Integer,Object>", "IntObjectHashMap" };
+    } else if (mapping.equals("objectInt")) {
+      return new String[] { "HashMap<Object,Integer>", "ObjectIntHashMap" };
+    } else if (mapping.equals("longInt")) {
+      return new String[] { "SparseLongIntVector", "LongIntHashMap" };
+    } else {
+      throw new IllegalArgumentException("unknown mapping " + mapping + ", expected one of " + Arrays.toString(MAPPINGS));
+    }
+  }
+
+  private List<Result> measure(String mapping, String impl) {
+    int n = mapping.equals("longInt") ? longSize : size;
+    double[] puts = new double[iterations];
+    double[] gets = new double[iterations];
+    double bytes = 0;
+    long putSum = 0;
+    long getSum = 0;
+    for (int i = 0; i < warmup + iterations; i++) {
+      Invocation inv = new Invocation(mapping, impl, n, new Random(seed));
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      putSum = inv.put();
+      long elapsed = System.nanoTime() - start;
+      long afterPut = allocatedBytes();
+      long start2 = System.nanoTime();
+      getSum = inv.get();
+      long elapsed2 = System.nanoTime() - start2;
+      blackhole += putSum + getSum;
+      if (i >= warmup) {
+        puts[i - warmup] = (double) elapsed / n;
+        gets[i - warmup] = (double) elapsed2 / inv.probes();
+        bytes = allocated < 0 ? -1 : (double) (afterPut - allocated) / n;
+      }
+    }
+    List<Result> result = new ArrayList<Result>(2);
+    result.add(new Result(mapping, impl, "put", mean(puts), stddev(puts), bytes, putSum));
+    result.add(new Result(mapping, impl, "get", mean(gets), stddev(gets), -1, getSum));
+    return result;
+  }
+
+  private static double mean(double[] samples) {
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    return mean / samples.length;
+  }
+
+  private static double stddev(double[] samples) {
+    double mean = mean(samples);
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    return samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+  }
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private static final Method getThreadAllocatedBytes = findAllocationCounter();
+
+  /**
+   * the allocation counter is an extension of {@link ThreadMXBean} on HotSpot JVMs
+   */
+  private static Method findAllocationCounter() {
+    try {
+      return Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return bytes allocated so far by the current thread, or -1 if the JVM does not count them
+   */
+  private static long allocatedBytes() {
+    if (getThreadAllocatedBytes == null || !getThreadAllocatedBytes.getDeclaringClass().isInstance(threads)) {
+      return -1;
+    }
+    try {
+      return ((Long) getThreadAllocatedBytes.invoke(threads, Thread.currentThread().getId())).longValue();
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /**
+   * one timed fill and probe of a map; the constructor builds the keys
+   */
+  private static class Invocation {
+    private final String mapping;
+
+    private final int n;
+
+    /**
+     * is impl the boxed implementation of the mapping?
+     */
+    private final boolean boxed;
+
+    /**
+     * int keys to put, then int keys to probe
+     */
+    private int[] intKeys;
+
+    private int[] intProbes;
+
+    private Object[] objectKeys;
+
+    private Object[] objectProbes;
+
+    private long[] longKeys;
+
+    private long[] longProbes;
+
+    private Map<Integer, Object> boxedIntObject;
+
+    private IntObjectHashMap<Object> intObject;
+
+    private Map<Object, Integer> boxedObjectInt;
+
+    private ObjectIntHashMap<Object> objectInt;
+
+    private SparseLongIntVector sparseLongInt;
+
+    private LongIntHashMap longInt;
+
+    Invocation(String mapping, String impl, int n, Random r) {
+      this.mapping = mapping;
+      this.n = n;
+      this.boxed = impl.equals(implementations(mapping)[0]);
+      if (mapping.equals("intObject")) {
+        intKeys = new int[n];
+        objectKeys = new Object[n];
+        for (int i = 0; i < n; i++) {
+          intKeys[i] = 7 * i;
+          objectKeys[i] = new Object();
+        }
+        intProbes = new int[4 * n];
+        for (int i = 0; i < intProbes.length; i++) {
+          intProbes[i] = r.nextBoolean() ? intKeys[r.nextInt(n)] : 7 * r.nextInt(n) + 1;
+        }
+      } else if (mapping.equals("objectInt")) {
+        objectKeys = new Object[n];
+        for (int i = 0; i < n; i++) {
+          objectKeys[i] = new Object();
+        }
+        objectProbes = new Object[4 * n];
+        for (int i = 0; i < objectProbes.length; i++) {
+          objectProbes[i] = r.nextBoolean() ? objectKeys[r.nextInt(n)] : new Object();
+        }
+      } else {
+        longKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+          longKeys[i] = ((long) r.nextInt(n) << 32) | i;
+        }
+        longProbes = new long[4 * n];
+        for (int i = 0; i < longProbes.length; i++) {
+          longProbes[i] = r.nextBoolean() ? longKeys[r.nextInt(n)] : ((long) (n + r.nextInt(n)) << 32) | r.nextInt(n);
+        }
+      }
+    }
+
+    int probes() {
+      return 4 * n;
+    }
+
+    long put() {
+      long sum = 0;
+      if (mapping.equals("intObject")) {
+        if (boxed) {
+          boxedIntObject = HashMapFactory.make();
+          for (int i = 0; i < n; i++) {
+            boxedIntObject.put(intKeys[i], objectKeys[i]);
+          }
+          sum = boxedIntObject.size();
+        } else {
+          intObject = new IntObjectHashMap<Object>();
+          for (int i = 0; i < n; i++) {
+            intObject.put(intKeys[i], objectKeys[i]);
+          }
+          sum = intObject.size();
+        }
+      } else if (mapping.equals("objectInt")) {
+        if (boxed) {
+          boxedObjectInt = HashMapFactory.make();
+          for (int i = 0; i < n; i++) {
+            boxedObjectInt.put(objectKeys[i], i);
+          }
+          sum = boxedObjectInt.size();
+        } else {
+          objectInt = new ObjectIntHashMap<Object>(-1);
+          for (int i = 0; i < n; i++) {
+            objectInt.put(objectKeys[i], i);
+          }
+          sum = objectInt.size();
+        }
+      } else {
+        if (boxed) {
+          sparseLongInt = new SparseLongIntVector(-1);
+          for (int i = 0; i < n; i++) {
+            sparseLongInt.set(longKeys[i], i);
+          }
+        } else {
+          longInt = new LongIntHashMap(-1);
+          for (int i = 0; i < n; i++) {
+            longInt.put(longKeys[i], i);
+          }
+        }
+        sum = n;
+      }
+      return sum;
+    }
+
+    long get() {
+      long sum = 0;
+      if (mapping.equals("intObject")) {
+        if (boxed) {
+          for (int k : intProbes) {
+            if (boxedIntObject.get(k) != null) {
+              sum++;
+            }
+          }
+        } else {
+          for (int k : intProbes) {
+            if (intObject.get(k) != null) {
+              sum++;
+            }
+          }
+        }
+      } else if (mapping.equals("objectInt")) {
+        if (boxed) {
+          for (Object k : objectProbes) {
+            Integer v = boxedObjectInt.get(k);
+            sum += v == null ? -1 : v.intValue();
+          }
+        } else {
+          for (Object k : objectProbes) {
+            sum += objectInt.get(k);
+          }
+        }
+      } else {
+        if (boxed) {
+          for (long k : longProbes) {
+            sum += sparseLongInt.get(k);
+          }
+        } else {
+          for (long k : longProbes) {
+            sum += longInt.get(k);
+          }
+        }
+      }
+      return sum;
+    }
+  }
+
+  public static void main(String[] args) {
+    HashMapBenchmark b = new HashMapBenchmark();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-size")) {
+        b.setSize(Integer.parseInt(v));
+      } else if (a.equals("-longSize")) {
+        b.setLongSize(Integer.parseInt(v));
+      } else if (a.equals("-seed")) {
+        b.setSeed(Long.parseLong(v));
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    for (Result r : b.run()) {
+      System.out.println(r);
+    }
+  }
+}
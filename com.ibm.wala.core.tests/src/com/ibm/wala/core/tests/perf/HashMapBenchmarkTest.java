@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.HashMapBenchmark.Result;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * Runs {@link HashMapBenchmark} on small maps, and checks that the boxed and primitive maps compute the same values.
+ */
+public class HashMapBenchmarkTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(HashMapBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() {
+    HashMapBenchmark b = new HashMapBenchmark();
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    b.setSize(1000);
+    b.setLongSize(1000);
+    List<Result> results = b.run();
+    Assert.assertEquals(HashMapBenchmark.MAPPINGS.length * 2 * HashMapBenchmark.OPERATIONS.length, results.size());
+
+    Map<String, Long> checksums = HashMapFactory.make();
+    for (Result r : results) {
+      Long expected = checksums.put(r.mapping + " " + r.op, r.checksum);
+      if (expected != null) {
+        Assert.assertEquals(r.toString(), expected.longValue(), r.checksum);
+      }
+    }
+  }
+}
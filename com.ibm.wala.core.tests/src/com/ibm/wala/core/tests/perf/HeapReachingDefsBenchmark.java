@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.SetOfClasses;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.DelegatingExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.slicer.HeapExclusions;
+import com.ibm.wala.ipa.slicer.HeapReachingDefs;
+import com.ibm.wala.ipa.slicer.HeapStatement;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.PDG;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.intset.OrdinalSet;
+
+/**
+ * A headless benchmark of the two solvers of {@link HeapReachingDefs}, in the style of {@link IntSetBenchmark}. For each fixture
+ * it builds the 0-1-CFA call graph of a slicer test program, and, outside the timed region, the statements of the PDG of every
+ * node. It then times {@link HeapReachingDefs#computeReachingDefs} the way the PDG calls it: once per node and heap location the
+ * node's statements read or write, on the statements of that node that are not heap statements of other locations. It reports the
+ * mean time per pass over all nodes and locations.
+ *
+ * Usage:
+ *
+ * <pre>
+ * HeapReachingDefsBenchmark [-warmup n] [-iterations n] [-fixture mainClass]...
+ * </pre>
+ */
+public class HeapReachingDefsBenchmark {
+
+  public static final String[] ENGINES = { "bitVector", "sparse" };
+
+  /**
+   * the slicer test programs measured by default
+   */
+  public static final String[] FIXTURES = { TestConstants.SLICE1_MAIN, TestConstants.SLICE2_MAIN, TestConstants.SLICE_TESTFIELDS,
+      TestConstants.SLICE_TESTGLOBAL };
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final String fixture;
+
+    public final String engine;
+
+    /**
+     * number of calls to computeReachingDefs per pass
+     */
+    public final int calls;
+
+    /**
+     * ms per pass
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * number of (def, use) pairs computed in a pass, which should not depend on the engine
+     */
+    public final long checksum;
+
+    Result(String fixture, String engine, int calls, double mean, double stddev, long checksum) {
+      this.fixture = fixture;
+      this.engine = engine;
+      this.calls = calls;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.checksum = checksum;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-22s %-10s %6d calls %10.1f ms +- %.1f  %d defs", fixture, engine, calls, mean, stddev, checksum);
+    }
+  }
+
+  private int warmup = 2;
+
+  private int iterations = 5;
+
+  private List<String> fixtures = Arrays.asList(FIXTURES);
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param fixtures main classes of the programs to measure, e.g. {@link TestConstants#SLICE1_MAIN}
+   */
+  public void setFixtures(List<String> fixtures) {
+    if (fixtures == null || fixtures.isEmpty()) {
+      throw new IllegalArgumentException("no fixtures");
+    }
+    this.fixtures = fixtures;
+  }
+
+  /**
+   * measure all engines on all fixtures
+   */
+  public List<Result> run() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    List<Result> results = new ArrayList<Result>();
+    for (String fixture : fixtures) {
+      Workload w = new Workload(fixture);
+      for (String engine : ENGINES) {
+        results.add(measure(w, engine));
+      }
+    }
+    return results;
+  }
+
+  private Result measure(Workload w, String engine) {
+    boolean sparse = engine.equals("sparse");
+    double[] samples = new double[iterations];
+    long checksum = 0;
+    for (int i = 0; i < warmup + iterations; i++) {
+      long start = System.nanoTime();
+      checksum = w.solve(new HeapReachingDefs(w.modRef, sparse));
+      long elapsed = System.nanoTime() - start;
+      if (i >= warmup) {
+        samples[i - warmup] = elapsed / 1e6;
+      }
+    }
+    return new Result(w.fixture, engine, w.calls.size(), mean(samples), stddev(samples), checksum);
+  }
+
+  private static double mean(double[] samples) {
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    return mean / samples.length;
+  }
+
+  private static double stddev(double[] samples) {
+    double mean = mean(samples);
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    return samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+  }
+
+  /**
+   * the calls to computeReachingDefs made while building all the PDGs of one program
+   */
+  private static class Workload {
+    private final String fixture;
+
+    private final CallGraph cg;
+
+    private final PointerAnalysis pa;
+
+    private final ModRef modRef = ModRef.make();
+
+    private final Map<CGNode, OrdinalSet<PointerKey>> mod;
+
+    private final List<Call> calls = new ArrayList<Call>();
+
+    Workload(String fixture) throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+      this.fixture = fixture;
+      AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, "Java60RegressionExclusions.txt");
+      IClassHierarchy cha = ClassHierarchy.make(scope);
+      Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, fixture);
+      AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+      cg = builder.makeCallGraph(options, null);
+      pa = builder.getPointerAnalysis();
+      mod = modRef.computeMod(cg, pa);
+      Map<CGNode, OrdinalSet<PointerKey>> ref = modRef.computeRef(cg, pa);
+      ExtendedHeapModel h = new DelegatingExtendedHeapModel(pa.getHeapModel());
+
+      for (CGNode node : cg) {
+        IR ir = node.getIR();
+        if (ir == null) {
+          continue;
+        }
+        PDG pdg = new PDG(node, pa, mod, ref, DataDependenceOptions.FULL, ControlDependenceOptions.NONE, null, cg, modRef);
+        Collection<Statement> statements = Iterator2Collection.toSet(pdg.iterator());
+        // the locations the PDG computes heap dependences for
+        Set<PointerKey> locations = HashSetFactory.make();
+        for (Statement s : statements) {
+          if (s instanceof HeapStatement) {
+            locations.add(((HeapStatement) s).getLocation());
+          } else if (s instanceof NormalStatement) {
+            locations.addAll(modRef.getMod(node, h, pa, ((NormalStatement) s).getInstruction(), null));
+            locations.addAll(modRef.getRef(node, h, pa, ((NormalStatement) s).getInstruction(), null));
+          }
+        }
+        for (PointerKey pk : locations) {
+          TypeReference t = HeapExclusions.getType(pk);
+          if (t == null) {
+            continue;
+          }
+          List<Statement> relevant = new ArrayList<Statement>();
+          for (Statement s : statements) {
+            if (!(s instanceof HeapStatement) || ((HeapStatement) s).getLocation().equals(pk)) {
+              relevant.add(s);
+            }
+          }
+          calls.add(new Call(node, ir, relevant, new HeapExclusions(new AllBut(t))));
+        }
+      }
+    }
+
+    /**
+     * @return the number of (def, use) pairs found
+     */
+    long solve(HeapReachingDefs rd) {
+      long result = 0;
+      for (Call c : calls) {
+        Map<Statement, OrdinalSet<Statement>> defs = rd.computeReachingDefs(c.node, c.ir, pa, mod, c.statements, c.exclusions, cg);
+        for (Statement s : c.statements) {
+          result += defs.get(s).size();
+        }
+      }
+      return result;
+    }
+  }
+
+  private static class Call {
+    private final CGNode node;
+
+    private final IR ir;
+
+    private final Collection<Statement> statements;
+
+    private final HeapExclusions exclusions;
+
+    Call(CGNode node, IR ir, Collection<Statement> statements, HeapExclusions exclusions) {
+      this.node = node;
+      this.ir = ir;
+      this.statements = statements;
+      this.exclusions = exclusions;
+    }
+  }
+
+  /**
+   * all types but one, as the PDG excludes them while it computes the heap dependences of one location
+   */
+  private static class AllBut extends SetOfClasses {
+
+    private static final long serialVersionUID = -1806457917387322826L;
+
+    private final TypeReference t;
+
+    AllBut(TypeReference t) {
+      this.t = t;
+    }
+
+    @Override
+    public void add(IClass klass) {
+      Assertions.UNREACHABLE();
+    }
+
+    @Override
+    public boolean contains(String klassName) {
+      Assertions.UNREACHABLE();
+      return false;
+    }
+
+    @Override
+    public boolean contains(TypeReference klass) {
+      return !t.equals(klass);
+    }
+  }
+
+  public static void main(String[] args) throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    HeapReachingDefsBenchmark b = new HeapReachingDefsBenchmark();
+    List<String> fixtures = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-fixture")) {
+        fixtures.add(v);
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    if (!fixtures.isEmpty()) {
+      b.setFixtures(fixtures);
+    }
+    for (Result r : b.run()) {
+      System.out.println(r);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.HeapReachingDefsBenchmark.Result;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+
+/**
+ * Runs {@link HeapReachingDefsBenchmark} once on a small program, and checks that both engines find the same defs.
+ */
+public class HeapReachingDefsBenchmarkTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(HeapReachingDefsBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() throws Exception {
+    HeapReachingDefsBenchmark b = new HeapReachingDefsBenchmark();
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    b.setFixtures(Collections.singletonList(TestConstants.SLICE_TESTGLOBAL));
+    List<Result> results = b.run();
+    Assert.assertEquals(HeapReachingDefsBenchmark.ENGINES.length, results.size());
+    Assert.assertTrue(results.get(0).checksum > 0);
+    for (Result r : results) {
+      Assert.assertEquals(r.toString(), results.get(0).checksum, r.checksum);
+    }
+  }
+}
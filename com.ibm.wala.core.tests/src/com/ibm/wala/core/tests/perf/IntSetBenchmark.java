@@ -0,0 +1,618 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSnapshot;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.BimodalMutableIntSetFactory;
+import com.ibm.wala.util.intset.BitVectorIntSetFactory;
+import com.ibm.wala.util.intset.CompressedBitmapIntSetFactory;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+import com.ibm.wala.util.intset.SemiSparseMutableIntSetFactory;
+import com.ibm.wala.util.intset.TunedMutableSparseIntSet;
+
+/**
+ * A headless micro-benchmark of the {@link MutableIntSet} implementations, in the style of JMH: for each workload, implementation
+ * and operation it runs warmup iterations, then measured iterations, and reports the mean and standard deviation in ns/op. Set
+ * construction for an operation is done outside the timed region, and results are consumed by a checksum so the JIT cannot drop
+ * them.
+ *
+ * Workloads are lists of sets, either synthetic (with size and density distributions modeled on points-to sets) or replayed from the
+ * points-to sets of a {@link PropagationSnapshot}.
+ *
+ * Usage:
+ *
+ * <pre>
+ * IntSetBenchmark [-warmup n] [-iterations n] [-scale f] [-label l] [-out report.tsv] [-baseline old.tsv]
+ *                 [-snapshot file] [-workloads w,...] [-impls i,...] [-ops o,...]
+ * </pre>
+ *
+ * The report is tab-separated, one row per workload, implementation and operation, so that reports from different commits can be
+ * compared with -baseline.
+ */
+public class IntSetBenchmark {
+
+  public static final String[] OPERATIONS = { "add", "addAll", "contains", "intersection", "foreach", "sameValue" };
+
+  public static final String[] WORKLOADS = { "sparse", "dense", "clustered", "powerlaw" };
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final String workload;
+
+    public final String impl;
+
+    public final String op;
+
+    /**
+     * ns/op
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * a digest of the values computed, which should not depend on the implementation
+     */
+    public final long checksum;
+
+    Result(String workload, String impl, String op, double mean, double stddev, long checksum) {
+      this.workload = workload;
+      this.impl = impl;
+      this.op = op;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.checksum = checksum;
+    }
+
+    String key() {
+      return workload + "\t" + impl + "\t" + op;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-12s %-16s %-12s %12.1f ns/op +- %.1f", workload, impl, op, mean, stddev);
+    }
+  }
+
+  private int warmup = 3;
+
+  private int iterations = 5;
+
+  private double scale = 1.0;
+
+  private long seed = 42;
+
+  private final Map<String, List<int[]>> workloads = new LinkedHashMap<String, List<int[]>>();
+
+  private final Map<String, MutableIntSetFactory<?>> impls = new LinkedHashMap<String, MutableIntSetFactory<?>>();
+
+  private final List<String> ops = new ArrayList<String>(Arrays.asList(OPERATIONS));
+
+  /**
+   * sink for computed values
+   */
+  private volatile long blackhole;
+
+  public IntSetBenchmark() {
+    impls.put("sharedBitVector", new MutableSharedBitVectorIntSetFactory());
+    impls.put("semiSparse", new SemiSparseMutableIntSetFactory());
+    impls.put("bimodal", new BimodalMutableIntSetFactory());
+    impls.put("sparse", new MutableSparseIntSetFactory());
+    impls.put("tunedSparse", new TunedSparseFactory());
+    impls.put("bitVector", new BitVectorIntSetFactory());
+    impls.put("compressedBitmap", new CompressedBitmapIntSetFactory());
+  }
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param scale factor applied to the number of sets in the synthetic workloads
+   */
+  public void setScale(double scale) {
+    if (scale <= 0) {
+      throw new IllegalArgumentException("invalid scale: " + scale);
+    }
+    this.scale = scale;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * restrict the benchmark to the named implementations
+   */
+  public void retainImplementations(List<String> names) {
+    for (String n : names) {
+      if (!impls.containsKey(n)) {
+        throw new IllegalArgumentException("unknown implementation " + n + ", expected one of " + impls.keySet());
+      }
+    }
+    impls.keySet().retainAll(names);
+  }
+
+  /**
+   * restrict the benchmark to the named operations
+   */
+  public void retainOperations(List<String> names) {
+    for (String n : names) {
+      if (!Arrays.asList(OPERATIONS).contains(n)) {
+        throw new IllegalArgumentException("unknown operation " + n + ", expected one of " + Arrays.toString(OPERATIONS));
+      }
+    }
+    ops.retainAll(names);
+  }
+
+  /**
+   * add a workload of the given sets, each sorted and free of duplicates
+   */
+  public void addWorkload(String name, List<int[]> sets) {
+    if (sets == null || sets.isEmpty()) {
+      throw new IllegalArgumentException("empty workload " + name);
+    }
+    workloads.put(name, sets);
+  }
+
+  /**
+   * add one of the {@link #WORKLOADS synthetic workloads}
+   */
+  public void addSyntheticWorkload(String name) {
+    Random r = new Random(seed);
+    List<int[]> sets = new ArrayList<int[]>();
+    if (name.equals("sparse")) {
+      // many small sets over a large universe, as for most local pointers
+      for (int i = 0; i < count(4000); i++) {
+        sets.add(random(r, 1 + r.nextInt(16), 100000));
+      }
+    } else if (name.equals("dense")) {
+      // a few sets covering much of a small universe
+      for (int i = 0; i < count(100); i++) {
+        sets.add(random(r, 1024 + r.nextInt(2048), 4096));
+      }
+    } else if (name.equals("clustered")) {
+      // runs of consecutive numbers, as when instance keys are allocated per class
+      for (int i = 0; i < count(1000); i++) {
+        int[] runs = new int[0];
+        for (int j = 1 + r.nextInt(8); j > 0; j--) {
+          int start = r.nextInt(50000);
+          runs = union(runs, range(start, start + 1 + r.nextInt(64)));
+        }
+        sets.add(runs);
+      }
+    } else if (name.equals("powerlaw")) {
+      // sizes with a heavy tail, as in the points-to sets of a whole program
+      for (int i = 0; i < count(2000); i++) {
+        int size = (int) Math.min(10000, 1 / Math.pow(1 - r.nextDouble(), 1.5));
+        sets.add(random(r, size, 20000));
+      }
+    } else {
+      throw new IllegalArgumentException("unknown workload " + name + ", expected one of " + Arrays.toString(WORKLOADS));
+    }
+    addWorkload(name, sets);
+  }
+
+  /**
+   * add a workload of the non-empty points-to sets in a snapshot, i.e. the final contents of the points-to set variables
+   */
+  public void addSnapshotWorkload(File snapshot) throws IOException {
+    PropagationSnapshot s = PropagationSnapshot.load(snapshot);
+    List<int[]> sets = new ArrayList<int[]>();
+    for (int i = 0; i < s.getNumberOfPointerKeys(); i++) {
+      IntSet pts = s.getPointsToSet(i);
+      if (pts != null && !pts.isEmpty()) {
+        sets.add(toArray(pts));
+      }
+    }
+    addWorkload("snapshot:" + snapshot.getName(), sets);
+  }
+
+  private int count(int n) {
+    return Math.max(2, (int) (n * scale));
+  }
+
+  private static int[] random(Random r, int size, int universe) {
+    int[] result = new int[Math.min(size, universe)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = r.nextInt(universe);
+    }
+    return dedup(result);
+  }
+
+  private static int[] range(int from, int to) {
+    int[] result = new int[to - from];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = from + i;
+    }
+    return result;
+  }
+
+  private static int[] union(int[] a, int[] b) {
+    int[] result = new int[a.length + b.length];
+    System.arraycopy(a, 0, result, 0, a.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return dedup(result);
+  }
+
+  private static int[] dedup(int[] a) {
+    Arrays.sort(a);
+    int n = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (n == 0 || a[n - 1] != a[i]) {
+        a[n++] = a[i];
+      }
+    }
+    return n == a.length ? a : Arrays.copyOf(a, n);
+  }
+
+  private static int[] toArray(IntSet s) {
+    final int[] result = new int[s.size()];
+    s.foreach(new IntSetAction() {
+      int i = 0;
+
+      public void act(int x) {
+        result[i++] = x;
+      }
+    });
+    return dedup(result);
+  }
+
+  /**
+   * run all selected operations on all workloads and implementations
+   */
+  public List<Result> run() {
+    if (workloads.isEmpty()) {
+      for (String w : WORKLOADS) {
+        addSyntheticWorkload(w);
+      }
+    }
+    List<Result> results = new ArrayList<Result>();
+    for (Map.Entry<String, List<int[]>> w : workloads.entrySet()) {
+      for (Map.Entry<String, MutableIntSetFactory<?>> impl : impls.entrySet()) {
+        for (String op : ops) {
+          results.add(measure(w.getKey(), w.getValue(), impl.getKey(), impl.getValue(), op));
+        }
+      }
+    }
+    return results;
+  }
+
+  private Result measure(String workload, List<int[]> sets, String implName, MutableIntSetFactory<?> impl, String op) {
+    double[] samples = new double[iterations];
+    long checksum = 0;
+    for (int i = 0; i < warmup + iterations; i++) {
+      Invocation inv = new Invocation(sets, impl, op);
+      long start = System.nanoTime();
+      long sum = inv.run();
+      long elapsed = System.nanoTime() - start;
+      blackhole += sum;
+      checksum = sum;
+      if (i >= warmup) {
+        samples[i - warmup] = (double) elapsed / inv.count;
+      }
+    }
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    mean /= samples.length;
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    double stddev = samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+    return new Result(workload, implName, op, mean, stddev, checksum);
+  }
+
+  /**
+   * one timed pass of an operation over a workload; the constructor does the untimed setup
+   */
+  private static class Invocation {
+    private final String op;
+
+    private final List<int[]> elements;
+
+    private final MutableIntSetFactory<?> impl;
+
+    private final MutableIntSet[] sets;
+
+    /**
+     * the second operand of binary operations
+     */
+    private final MutableIntSet[] others;
+
+    private final int[] probes;
+
+    /**
+     * number of operations in {@link #run()}
+     */
+    final int count;
+
+    Invocation(List<int[]> elements, MutableIntSetFactory<?> impl, String op) {
+      this.op = op;
+      this.elements = elements;
+      this.impl = impl;
+      int n = elements.size();
+      sets = new MutableIntSet[n];
+      others = new MutableIntSet[n];
+      probes = op.equals("contains") ? makeProbes(elements) : null;
+      if (op.equals("add")) {
+        count = total(elements);
+        return;
+      }
+      for (int i = 0; i < n; i++) {
+        sets[i] = impl.make(elements.get(i));
+      }
+      if (op.equals("sameValue")) {
+        // compare each set with an equal copy and with its neighbor
+        for (int i = 0; i < n; i++) {
+          others[i] = impl.make(elements.get(i));
+        }
+        count = 2 * n;
+      } else if (op.equals("addAll") || op.equals("intersection")) {
+        for (int i = 0; i < n; i++) {
+          others[i] = impl.make(elements.get((i + 1) % n));
+        }
+        count = n;
+      } else if (op.equals("contains")) {
+        count = probes.length;
+      } else {
+        count = n;
+      }
+    }
+
+    private static int total(List<int[]> elements) {
+      int result = 0;
+      for (int[] e : elements) {
+        result += e.length;
+      }
+      return result;
+    }
+
+    /**
+     * for each set, its own elements and as many random numbers from the same range
+     */
+    private static int[] makeProbes(List<int[]> elements) {
+      Random r = new Random(elements.size());
+      int[] result = new int[2 * total(elements)];
+      int k = 0;
+      for (int[] e : elements) {
+        int bound = e.length == 0 ? 1 : e[e.length - 1] + 1;
+        for (int x : e) {
+          result[k++] = x;
+          result[k++] = r.nextInt(bound);
+        }
+      }
+      return result;
+    }
+
+    long run() {
+      long sum = 0;
+      int n = sets.length;
+      if (op.equals("add")) {
+        for (int[] e : elements) {
+          MutableIntSet s = impl.make();
+          for (int x : e) {
+            if (s.add(x)) {
+              sum++;
+            }
+          }
+          sum += s.size();
+        }
+      } else if (op.equals("addAll")) {
+        for (int i = 0; i < n; i++) {
+          if (sets[i].addAll(others[i])) {
+            sum++;
+          }
+          sum += sets[i].size();
+        }
+      } else if (op.equals("contains")) {
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+          int len = 2 * elements.get(i).length;
+          for (int j = 0; j < len; j++) {
+            if (sets[i].contains(probes[k++])) {
+              sum++;
+            }
+          }
+        }
+      } else if (op.equals("intersection")) {
+        for (int i = 0; i < n; i++) {
+          IntSet x = sets[i].intersection(others[i]);
+          sum += x == null ? 0 : x.size();
+        }
+      } else if (op.equals("foreach")) {
+        final long[] acc = new long[1];
+        IntSetAction action = new IntSetAction() {
+          public void act(int x) {
+            acc[0] += x;
+          }
+        };
+        for (int i = 0; i < n; i++) {
+          sets[i].foreach(action);
+        }
+        sum = acc[0];
+      } else if (op.equals("sameValue")) {
+        for (int i = 0; i < n; i++) {
+          if (sets[i].sameValue(others[i])) {
+            sum++;
+          }
+          if (sets[i].sameValue(others[(i + 1) % n])) {
+            sum += 2;
+          }
+        }
+      } else {
+        throw new IllegalArgumentException("unknown operation " + op);
+      }
+      return sum;
+    }
+  }
+
+  /**
+   * {@link TunedMutableSparseIntSet} has no factory of its own
+   */
+  private static class TunedSparseFactory implements MutableIntSetFactory<TunedMutableSparseIntSet> {
+    public TunedMutableSparseIntSet make() {
+      return new TunedMutableSparseIntSet(4, 1.5f);
+    }
+
+    public TunedMutableSparseIntSet make(int[] set) {
+      TunedMutableSparseIntSet result = make();
+      for (int x : set) {
+        result.add(x);
+      }
+      return result;
+    }
+
+    public TunedMutableSparseIntSet makeCopy(IntSet x) {
+      TunedMutableSparseIntSet result = make();
+      result.addAll(x);
+      return result;
+    }
+
+    public TunedMutableSparseIntSet parse(String string) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * write results as tab-separated rows of label, workload, implementation, operation, mean and standard deviation
+   */
+  public static void writeReport(List<Result> results, String label, File file) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println("# label\tworkload\timpl\top\tns/op\tstddev");
+      for (Result r : results) {
+        out.println(label + "\t" + r.key() + "\t" + String.format("%.2f\t%.2f", r.mean, r.stddev));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @return mean ns/op of a report, keyed by workload, implementation and operation
+   */
+  public static Map<String, Double> readReport(File file) throws IOException {
+    Map<String, Double> result = HashMapFactory.make();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (line.startsWith("#") || line.trim().length() == 0) {
+          continue;
+        }
+        String[] f = line.split("\t");
+        if (f.length < 6) {
+          throw new IOException("malformed report line: " + line);
+        }
+        result.put(f[1] + "\t" + f[2] + "\t" + f[3], Double.parseDouble(f[4]));
+      }
+    } finally {
+      in.close();
+    }
+    return result;
+  }
+
+  private static List<String> list(String s) {
+    return Arrays.asList(s.split(","));
+  }
+
+  public static void main(String[] args) throws IOException {
+    IntSetBenchmark b = new IntSetBenchmark();
+    String label = "current";
+    File out = null;
+    File baseline = null;
+    List<String> synthetic = null;
+    List<File> snapshots = new ArrayList<File>();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-scale")) {
+        b.setScale(Double.parseDouble(v));
+      } else if (a.equals("-seed")) {
+        b.setSeed(Long.parseLong(v));
+      } else if (a.equals("-label")) {
+        label = v;
+      } else if (a.equals("-out")) {
+        out = new File(v);
+      } else if (a.equals("-baseline")) {
+        baseline = new File(v);
+      } else if (a.equals("-snapshot")) {
+        snapshots.add(new File(v));
+      } else if (a.equals("-workloads")) {
+        synthetic = list(v);
+      } else if (a.equals("-impls")) {
+        b.retainImplementations(list(v));
+      } else if (a.equals("-ops")) {
+        b.retainOperations(list(v));
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    if (synthetic != null || snapshots.isEmpty()) {
+      for (String w : synthetic == null ? Arrays.asList(WORKLOADS) : synthetic) {
+        b.addSyntheticWorkload(w);
+      }
+    }
+    for (File f : snapshots) {
+      b.addSnapshotWorkload(f);
+    }
+
+    List<Result> results = b.run();
+    Map<String, Double> old = baseline == null ? null : readReport(baseline);
+    for (Result r : results) {
+      Double before = old == null ? null : old.get(r.key());
+      System.out.println(before == null ? r.toString() : String.format("%s  (%.2fx baseline)", r, r.mean / before));
+    }
+    if (out != null) {
+      writeReport(results, label, out);
+    }
+  }
+}
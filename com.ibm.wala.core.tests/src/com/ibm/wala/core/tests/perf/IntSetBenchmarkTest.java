@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.IntSetBenchmark.Result;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * Runs {@link IntSetBenchmark} on small workloads, and checks that all set implementations compute the same values.
+ */
+public class IntSetBenchmarkTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(IntSetBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() throws IOException {
+    IntSetBenchmark b = new IntSetBenchmark();
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    b.setScale(0.05);
+    List<Result> results = b.run();
+    Assert.assertEquals(IntSetBenchmark.WORKLOADS.length * 7 * IntSetBenchmark.OPERATIONS.length, results.size());
+
+    Map<String, Long> checksums = HashMapFactory.make();
+    for (Result r : results) {
+      Long expected = checksums.put(r.workload + " " + r.op, r.checksum);
+      if (expected != null) {
+        Assert.assertEquals(r.toString(), expected.longValue(), r.checksum);
+      }
+    }
+
+    File report = File.createTempFile("intsets", ".tsv");
+    report.deleteOnExit();
+    IntSetBenchmark.writeReport(results, "test", report);
+    Assert.assertEquals(results.size(), IntSetBenchmark.readReport(report).size());
+  }
+}
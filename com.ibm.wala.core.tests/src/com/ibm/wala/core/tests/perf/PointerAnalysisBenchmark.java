@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystem;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * A headless benchmark of the solver configurations of the pointer analysis, in the style of {@link IntSetBenchmark}. For each
+ * fixture, a scope file and a main class, it builds the call graph with each configuration, 0-CFA unless told otherwise, and
+ * reports the mean time per build, the speedup over the first configuration, and a checksum of the call graph and points-to sets, which should not depend on
+ * the configuration.
+ *
+ * Configurations are named:
+ * <ul>
+ * <li>sequential: the default solver
+ * <li>parallel:n: the solver with n threads; see {@link AnalysisOptions#setNumberOfSolverThreads(int)}
+ * <li>collapse: the solver collapsing assignment cycles; see {@link AnalysisOptions#setCollapseAssignmentCycles(boolean)}
+ * <li>difference: the solver propagating only the changes of points-to sets; see
+ * {@link AnalysisOptions#setDifferencePropagation(boolean)}
+ * <li>hashcons: the solver replacing the points-to sets with canonical shared sets once solved; see
+ * {@link AnalysisOptions#setHashConsPointsToSets(boolean)}
+ * </ul>
+ *
+ * Usage:
+ *
+ * <pre>
+ * PointerAnalysisBenchmark [-warmup n] [-iterations n] [-builder 0-CFA|0-1-CFA] [-config name]... [-fixture scopeFile:mainClass]...
+ * </pre>
+ */
+public class PointerAnalysisBenchmark {
+
+  /**
+   * the programs measured by default, as pairs of a scope file and a main class
+   */
+  public static final String[][] FIXTURES = { { TestConstants.JLEX, TestConstants.JLEX_MAIN },
+      { TestConstants.JAVA_CUP, TestConstants.JAVA_CUP_MAIN } };
+
+  /**
+   * a way to set up the solver
+   */
+  public static abstract class Configuration {
+    private final String name;
+
+    protected Configuration(String name) {
+      this.name = name;
+    }
+
+    protected abstract void configure(AnalysisOptions options);
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if there is no configuration with the given name
+   */
+  public static Configuration configuration(String name) {
+    if (name.equals("sequential")) {
+      return new Configuration(name) {
+        @Override
+        protected void configure(AnalysisOptions options) {
+        }
+      };
+    } else if (name.startsWith("parallel:")) {
+      final int n = Integer.parseInt(name.substring("parallel:".length()));
+      if (n < 1) {
+        throw new IllegalArgumentException("invalid thread count: " + n);
+      }
+      return new Configuration(name) {
+        @Override
+        protected void configure(AnalysisOptions options) {
+          options.setNumberOfSolverThreads(n);
+        }
+      };
+    } else if (name.equals("collapse")) {
+      return new Configuration(name) {
+        @Override
+        protected void configure(AnalysisOptions options) {
+          options.setCollapseAssignmentCycles(true);
+        }
+      };
+    } else if (name.equals("difference")) {
+      return new Configuration(name) {
+        @Override
+        protected void configure(AnalysisOptions options) {
+          options.setDifferencePropagation(true);
+        }
+      };
+    } else if (name.equals("hashcons")) {
+      return new Configuration(name) {
+        @Override
+        protected void configure(AnalysisOptions options) {
+          options.setHashConsPointsToSets(true);
+        }
+      };
+    } else {
+      throw new IllegalArgumentException("unknown configuration " + name);
+    }
+  }
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final String fixture;
+
+    public final String configuration;
+
+    /**
+     * ms per call graph build
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * mean time of the first configuration on the fixture, divided by mean
+     */
+    public final double speedup;
+
+    /**
+     * number of call graph nodes
+     */
+    public final int nodes;
+
+    /**
+     * number of pointer variables merged into others by cycle collapsing in the last build
+     */
+    public final int collapsed;
+
+    /**
+     * number of distinct points-to sets left by hash-consing in the last build, or 0 without hash-consing
+     */
+    public final int canonicalSets;
+
+    /**
+     * hash of the string forms of the call graph edges and the points-to sets of the last build
+     */
+    public final long checksum;
+
+    Result(String fixture, String configuration, double mean, double stddev, double speedup, int nodes, int collapsed,
+        int canonicalSets, long checksum) {
+      this.fixture = fixture;
+      this.configuration = configuration;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.speedup = speedup;
+      this.nodes = nodes;
+      this.collapsed = collapsed;
+      this.canonicalSets = canonicalSets;
+      this.checksum = checksum;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-24s %-12s %10.1f ms +- %.1f  x%.2f  %6d nodes  %6d collapsed  %6d canonical sets  (checksum %d)",
+          fixture, configuration, mean, stddev, speedup, nodes, collapsed, canonicalSets, checksum);
+    }
+  }
+
+  private int warmup = 1;
+
+  private int iterations = 3;
+
+  private boolean zeroOneCFA = false;
+
+  private List<Configuration> configurations = defaultConfigurations();
+
+  private List<String[]> fixtures = Arrays.asList(FIXTURES);
+
+  /**
+   * @return the sequential solver, the parallel one with 2, 4, ... threads up to the number of available processors, and the
+   *         other options of the solver
+   */
+  private static List<Configuration> defaultConfigurations() {
+    List<Configuration> result = new ArrayList<Configuration>();
+    result.add(configuration("sequential"));
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int n = 2; n < cores; n *= 2) {
+      result.add(configuration("parallel:" + n));
+    }
+    if (cores > 1) {
+      result.add(configuration("parallel:" + cores));
+    }
+    result.add(configuration("collapse"));
+    result.add(configuration("difference"));
+    result.add(configuration("hashcons"));
+    return result;
+  }
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param builder "0-CFA" or "0-1-CFA", the call graph builder to measure
+   */
+  public void setBuilder(String builder) {
+    if (builder.equals("0-CFA")) {
+      zeroOneCFA = false;
+    } else if (builder.equals("0-1-CFA")) {
+      zeroOneCFA = true;
+    } else {
+      throw new IllegalArgumentException("unknown builder " + builder);
+    }
+  }
+
+  /**
+   * @param configurations the configurations to measure; the speedups are relative to the first
+   */
+  public void setConfigurations(List<Configuration> configurations) {
+    if (configurations == null || configurations.isEmpty()) {
+      throw new IllegalArgumentException("no configurations");
+    }
+    this.configurations = configurations;
+  }
+
+  /**
+   * @param fixtures pairs of a scope file and a main class
+   */
+  public void setFixtures(List<String[]> fixtures) {
+    if (fixtures == null || fixtures.isEmpty()) {
+      throw new IllegalArgumentException("no fixtures");
+    }
+    for (String[] f : fixtures) {
+      if (f.length != 2) {
+        throw new IllegalArgumentException("fixture is not a scope file and a main class: " + Arrays.toString(f));
+      }
+    }
+    this.fixtures = fixtures;
+  }
+
+  /**
+   * measure all fixtures with all configurations
+   */
+  public List<Result> run() throws IOException, ClassHierarchyException, CancelException {
+    List<Result> results = new ArrayList<Result>();
+    for (String[] fixture : fixtures) {
+      AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(fixture[0], CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+      ClassHierarchy cha = ClassHierarchy.make(scope);
+      Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, fixture[1]);
+      double base = 0;
+      for (Configuration c : configurations) {
+        double[] samples = new double[iterations];
+        CallGraph cg = null;
+        SSAPropagationCallGraphBuilder builder = null;
+        for (int i = 0; i < warmup + iterations; i++) {
+          AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+          c.configure(options);
+          builder = zeroOneCFA ? Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope) : Util.makeZeroCFABuilder(
+              options, new AnalysisCache(), cha, scope);
+          long start = System.nanoTime();
+          cg = builder.makeCallGraph(options, null);
+          long elapsed = System.nanoTime() - start;
+          if (i >= warmup) {
+            samples[i - warmup] = elapsed / 1e6;
+          }
+        }
+        long checksum = 31L * CallGraphTestUtil.callGraphEdges(cg).hashCode()
+            + CallGraphTestUtil.pointsToSets(builder.getPointerAnalysis()).hashCode();
+        double mean = mean(samples);
+        if (base == 0) {
+          base = mean;
+        }
+        PropagationSystem system = builder.getPropagationSystem();
+        int canonicalSets = system.getPointsToSetRepository() == null ? 0 : system.getPointsToSetRepository()
+            .getNumberOfCanonicalSets();
+        results.add(new Result(fixture[1], c.toString(), mean, stddev(samples), base / mean, cg.getNumberOfNodes(), system
+            .getNumberOfCollapsedVariables(), canonicalSets, checksum));
+      }
+    }
+    return results;
+  }
+
+  private static double mean(double[] samples) {
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    return mean / samples.length;
+  }
+
+  private static double stddev(double[] samples) {
+    double mean = mean(samples);
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    return samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+  }
+
+  public static void main(String[] args) throws IOException, ClassHierarchyException, CancelException {
+    PointerAnalysisBenchmark b = new PointerAnalysisBenchmark();
+    List<Configuration> configurations = new ArrayList<Configuration>();
+    List<String[]> fixtures = new ArrayList<String[]>();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-builder")) {
+        b.setBuilder(v);
+      } else if (a.equals("-config")) {
+        configurations.add(configuration(v));
+      } else if (a.equals("-fixture")) {
+        int colon = v.indexOf(':');
+        if (colon < 0) {
+          throw new IllegalArgumentException("fixture is not scopeFile:mainClass: " + v);
+        }
+        fixtures.add(new String[] { v.substring(0, colon), v.substring(colon + 1) });
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    if (!configurations.isEmpty()) {
+      b.setConfigurations(configurations);
+    }
+    if (!fixtures.isEmpty()) {
+      b.setFixtures(fixtures);
+    }
+    for (Result r : b.run()) {
+      System.out.println(r);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark.Configuration;
+import com.ibm.wala.core.tests.perf.PointerAnalysisBenchmark.Result;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+
+/**
+ * Runs {@link PointerAnalysisBenchmark} once on a small program with each configuration, and checks that all configurations
+ * compute the same call graph and points-to sets.
+ */
+public class PointerAnalysisBenchmarkTest extends WalaTestCase {
+
+  private static final String[] CONFIGURATIONS = { "sequential", "parallel:2", "parallel:4", "collapse", "difference", "hashcons" };
+
+  public static void main(String[] args) {
+    justThisTest(PointerAnalysisBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() throws Exception {
+    check(run(new PointerAnalysisBenchmark(), CONFIGURATIONS));
+  }
+
+  @Test
+  public void testZeroOneCFA() throws Exception {
+    PointerAnalysisBenchmark b = new PointerAnalysisBenchmark();
+    b.setBuilder("0-1-CFA");
+    check(run(b, new String[] { "sequential", "difference" }));
+  }
+
+  private static List<Result> run(PointerAnalysisBenchmark b, String[] configurationNames) throws Exception {
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    List<Configuration> configurations = new ArrayList<Configuration>();
+    for (String c : configurationNames) {
+      configurations.add(PointerAnalysisBenchmark.configuration(c));
+    }
+    b.setConfigurations(configurations);
+    b.setFixtures(Collections.singletonList(new String[] { TestConstants.WALA_TESTDATA, TestConstants.HELLO_MAIN }));
+    List<Result> results = b.run();
+    Assert.assertEquals(configurationNames.length, results.size());
+    return results;
+  }
+
+  private static void check(List<Result> results) {
+    Assert.assertTrue(results.get(0).nodes > 0);
+    for (Result r : results) {
+      Assert.assertEquals(r.toString(), results.get(0).nodes, r.nodes);
+      Assert.assertEquals(r.toString(), results.get(0).checksum, r.checksum);
+      Assert.assertEquals(r.toString(), r.configuration.equals("hashcons"), r.canonicalSets > 0);
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.ir.ApplicationMethodsTestCase;
+import com.ibm.wala.core.tests.ir.ApplicationMethodsTestCase.CountingIRFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.util.ThreadUtil;
+
+/**
+ * A headless benchmark of an {@link SSACache} used from several threads at once, in the style of {@link IntSetBenchmark}. Each
+ * pass starts from an empty cache, and has every thread ask it for the IR and DefUse of every application method in the test data,
+ * each thread starting at a different point in the list, so that threads both build different IRs concurrently and wait for IRs
+ * another thread is building. It reports the mean time per pass for each number of threads, and the speedup over one thread.
+ *
+ * Usage:
+ *
+ * <pre>
+ * SSACacheBenchmark [-warmup n] [-iterations n] [-threads n]...
+ * </pre>
+ */
+public class SSACacheBenchmark {
+
+  /**
+   * one measurement
+   */
+  public static class Result {
+    public final int threads;
+
+    /**
+     * ms per pass
+     */
+    public final double mean;
+
+    public final double stddev;
+
+    /**
+     * mean time per pass with one thread, divided by mean
+     */
+    public final double speedup;
+
+    /**
+     * number of IRs built in a pass, which should be the number of methods, whatever the number of threads
+     */
+    public final int irs;
+
+    Result(int threads, double mean, double stddev, double speedup, int irs) {
+      this.threads = threads;
+      this.mean = mean;
+      this.stddev = stddev;
+      this.speedup = speedup;
+      this.irs = irs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%3d threads %10.1f ms +- %.1f  x%.2f  %d IRs", threads, mean, stddev, speedup, irs);
+    }
+  }
+
+  private int warmup = 2;
+
+  private int iterations = 5;
+
+  private List<Integer> threads = defaultThreads();
+
+  /**
+   * @return 1, 2, 4, ... up to the number of available processors, and that number
+   */
+  private static List<Integer> defaultThreads() {
+    List<Integer> result = new ArrayList<Integer>();
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int n = 1; n < cores; n *= 2) {
+      result.add(n);
+    }
+    result.add(cores);
+    return result;
+  }
+
+  public void setWarmupIterations(int warmup) {
+    if (warmup < 0) {
+      throw new IllegalArgumentException("invalid warmup: " + warmup);
+    }
+    this.warmup = warmup;
+  }
+
+  public void setIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("invalid iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * @param threads the numbers of threads to measure; the speedups are relative to the first
+   */
+  public void setThreads(List<Integer> threads) {
+    if (threads == null || threads.isEmpty()) {
+      throw new IllegalArgumentException("no thread counts");
+    }
+    for (int n : threads) {
+      if (n < 1) {
+        throw new IllegalArgumentException("invalid thread count: " + n);
+      }
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * measure all thread counts
+   */
+  public List<Result> run() throws IOException, ClassHierarchyException {
+    List<IMethod> methods = ApplicationMethodsTestCase.makeApplicationMethods();
+    SSAOptions options = new AnalysisOptions().getSSAOptions();
+    List<Result> results = new ArrayList<Result>();
+    double base = 0;
+    for (int n : threads) {
+      double[] samples = new double[iterations];
+      int irs = 0;
+      for (int i = 0; i < warmup + iterations; i++) {
+        CountingIRFactory factory = new CountingIRFactory();
+        SSACache cache = SSACache.makeBounded(factory, Long.MAX_VALUE, Long.MAX_VALUE);
+        long start = System.nanoTime();
+        pass(cache, methods, options, n);
+        long elapsed = System.nanoTime() - start;
+        if (i >= warmup) {
+          samples[i - warmup] = elapsed / 1e6;
+        }
+        irs = factory.getCount();
+      }
+      double mean = mean(samples);
+      if (results.isEmpty()) {
+        base = mean;
+      }
+      results.add(new Result(n, mean, stddev(samples), base / mean, irs));
+    }
+    return results;
+  }
+
+  private static void pass(final SSACache cache, final List<IMethod> methods, final SSAOptions options, int nThreads) {
+    ExecutorService pool = ThreadUtil.makeDaemonPool(nThreads, "IR builder");
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < nThreads; t++) {
+        final int start = t * methods.size() / nThreads;
+        futures.add(pool.submit(new Runnable() {
+          public void run() {
+            for (int i = 0; i < methods.size(); i++) {
+              IMethod m = methods.get((start + i) % methods.size());
+              IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+              cache.findOrCreateDU(ir, Everywhere.EVERYWHERE);
+            }
+          }
+        }));
+      }
+      ThreadUtil.getAll(futures, "building IRs");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static double mean(double[] samples) {
+    double mean = 0;
+    for (double s : samples) {
+      mean += s;
+    }
+    return mean / samples.length;
+  }
+
+  private static double stddev(double[] samples) {
+    double mean = mean(samples);
+    double var = 0;
+    for (double s : samples) {
+      var += (s - mean) * (s - mean);
+    }
+    return samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+  }
+
+  public static void main(String[] args) throws IOException, ClassHierarchyException {
+    SSACacheBenchmark b = new SSACacheBenchmark();
+    List<Integer> threads = new ArrayList<Integer>();
+    for (int i = 0; i < args.length; i++) {
+      String a = args[i];
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("missing value for " + a);
+      }
+      String v = args[++i];
+      if (a.equals("-warmup")) {
+        b.setWarmupIterations(Integer.parseInt(v));
+      } else if (a.equals("-iterations")) {
+        b.setIterations(Integer.parseInt(v));
+      } else if (a.equals("-threads")) {
+        threads.add(Integer.parseInt(v));
+      } else {
+        throw new IllegalArgumentException("unknown option " + a);
+      }
+    }
+    if (!threads.isEmpty()) {
+      b.setThreads(threads);
+    }
+    for (Result r : b.run()) {
+      System.out.println(r);
+    }
+  }
+}
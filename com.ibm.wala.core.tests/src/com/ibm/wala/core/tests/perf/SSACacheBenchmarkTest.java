@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.perf;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.ir.ApplicationMethodsTestCase;
+import com.ibm.wala.core.tests.perf.SSACacheBenchmark.Result;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+
+/**
+ * Runs {@link SSACacheBenchmark} once with one and with several threads, and checks that each pass builds every IR exactly once.
+ */
+public class SSACacheBenchmarkTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(SSACacheBenchmarkTest.class);
+  }
+
+  @Test
+  public void testSmallRun() throws Exception {
+    SSACacheBenchmark b = new SSACacheBenchmark();
+    b.setWarmupIterations(0);
+    b.setIterations(1);
+    b.setThreads(Arrays.asList(1, 4));
+    List<Result> results = b.run();
+    Assert.assertEquals(2, results.size());
+    int methods = ApplicationMethodsTestCase.makeApplicationMethods().size();
+    for (Result r : results) {
+      Assert.assertEquals(r.toString(), methods, r.irs);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.slicer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.SetOfClasses;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.slicer.HeapExclusions;
+import com.ibm.wala.ipa.slicer.HeapReachingDefs;
+import com.ibm.wala.ipa.slicer.HeapStatement;
+import com.ibm.wala.ipa.slicer.PDG;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.intset.OrdinalSet;
+
+/**
+ * Checks that the sparse, per-location solution of {@link HeapReachingDefs} gives the same reaching defs as the bit-vector
+ * solution, for the statements of the PDGs of the application methods.
+ */
+public class HeapReachingDefsTest {
+
+  @Test
+  public void testGlobal() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(TestConstants.SLICE_TESTGLOBAL);
+  }
+
+  @Test
+  public void testFields() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(TestConstants.SLICE_TESTFIELDS);
+  }
+
+  @Test
+  public void testArrays() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(TestConstants.SLICE_TESTARRAYS);
+  }
+
+  @Test
+  public void testRecursion() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(TestConstants.SLICE_TESTRECURSION);
+  }
+
+  private void doTest(String mainClass) throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, "Java60RegressionExclusions.txt");
+    IClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis pa = builder.getPointerAnalysis();
+
+    ModRef modRef = ModRef.make();
+    Map<CGNode, OrdinalSet<PointerKey>> mod = modRef.computeMod(cg, pa);
+    Map<CGNode, OrdinalSet<PointerKey>> ref = modRef.computeRef(cg, pa);
+    int compared = 0;
+    for (CGNode node : cg) {
+      if (!node.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        continue;
+      }
+      IR ir = node.getIR();
+      if (ir == null) {
+        continue;
+      }
+      PDG pdg = new PDG(node, pa, mod, ref, DataDependenceOptions.FULL, ControlDependenceOptions.NONE, null, cg, modRef);
+      Collection<Statement> statements = Iterator2Collection.toSet(pdg.iterator());
+
+      // all locations at once, as well as one location at a time as the PDG asks
+      compared += compare(node, ir, pa, mod, statements, null, cg, modRef);
+      Set<PointerKey> locations = HashSetFactory.make();
+      for (Statement s : statements) {
+        if (s instanceof HeapStatement) {
+          locations.add(((HeapStatement) s).getLocation());
+        }
+      }
+      for (PointerKey pk : locations) {
+        Collection<Statement> relevant = HashSetFactory.make();
+        for (Statement s : statements) {
+          if (!(s instanceof HeapStatement) || ((HeapStatement) s).getLocation().equals(pk)) {
+            relevant.add(s);
+          }
+        }
+        TypeReference t = HeapExclusions.getType(pk);
+        HeapExclusions exclusions = t == null ? null : new HeapExclusions(new AllBut(t));
+        compared += compare(node, ir, pa, mod, relevant, exclusions, cg, modRef);
+      }
+    }
+    Assert.assertTrue("no reaching defs compared", compared > 0);
+  }
+
+  /**
+   * @return the number of statements some def reaches
+   */
+  private static int compare(CGNode node, IR ir, PointerAnalysis pa, Map<CGNode, OrdinalSet<PointerKey>> mod,
+      Collection<Statement> statements, HeapExclusions exclusions, CallGraph cg, ModRef modRef) {
+    Map<Statement, OrdinalSet<Statement>> bitVector = new HeapReachingDefs(modRef, false).computeReachingDefs(node, ir, pa, mod,
+        statements, exclusions, cg);
+    Map<Statement, OrdinalSet<Statement>> sparse = new HeapReachingDefs(modRef, true).computeReachingDefs(node, ir, pa, mod,
+        statements, exclusions, cg);
+    int result = 0;
+    for (Statement s : statements) {
+      Set<Statement> expected = Iterator2Collection.toSet(bitVector.get(s).iterator());
+      Assert.assertEquals(s.toString(), expected, Iterator2Collection.toSet(sparse.get(s).iterator()));
+      if (!expected.isEmpty()) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * all types but one, as the PDG excludes them while it computes the heap dependences of one location
+   */
+  private static class AllBut extends SetOfClasses {
+
+    private static final long serialVersionUID = 6406124463219536826L;
+
+    private final TypeReference t;
+
+    AllBut(TypeReference t) {
+      this.t = t;
+    }
+
+    @Override
+    public void add(IClass klass) {
+      Assertions.UNREACHABLE();
+    }
+
+    @Override
+    public boolean contains(String klassName) {
+      Assertions.UNREACHABLE();
+      return false;
+    }
+
+    @Override
+    public boolean contains(TypeReference klass) {
+      return !t.equals(klass);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.slicer;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.slicer.PDG;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+
+/**
+ * Checks that PDGs built ahead of time in parallel, compacted, or dropped from a bounded SDG give the same slices as the default
+ * lazy construction.
+ */
+public class SDGConstructionTest {
+
+  private static final boolean DEBUG = false;
+
+  @Test
+  public void testParallelCompact() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(true, Integer.MAX_VALUE, Integer.MAX_VALUE, 4);
+  }
+
+  @Test
+  public void testBounded() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(false, 5, Integer.MAX_VALUE, 1);
+  }
+
+  @Test
+  public void testBoundedCompact() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(true, 5, Integer.MAX_VALUE, 4);
+  }
+
+  @Test
+  public void testStatementBound() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    doTest(false, Integer.MAX_VALUE, 100, 4);
+  }
+
+  private void doTest(boolean compact, int maxPDGs, int maxStatements, int nThreads) throws ClassHierarchyException,
+      IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, "Java60RegressionExclusions.txt");
+    IClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.SLICE_TESTGLOBAL);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    CGNode main = SlicerTest.findMainMethod(cg);
+    Statement s = SlicerTest.findCallTo(main, "doNothing");
+
+    SDG expected = new SDG(cg, builder.getPointerAnalysis(), ModRef.make(), DataDependenceOptions.NO_BASE_PTRS,
+        ControlDependenceOptions.NONE);
+    SDG actual = new SDG(cg, builder.getPointerAnalysis(), ModRef.make(), DataDependenceOptions.NO_BASE_PTRS,
+        ControlDependenceOptions.NONE);
+    actual.setCompactPDGs(compact);
+    actual.setMaxPDGs(maxPDGs);
+    actual.setMaxPDGStatements(maxStatements);
+    Collection<CGNode> nodes = Iterator2Collection.toSet(cg.iterator());
+    Assert.assertEquals(nodes.size(), actual.buildPDGs(nodes, nThreads));
+    checkBounds(actual);
+    Assert.assertEquals(compact, actual.getPDG(main).isCompact());
+
+    Assert.assertEquals(HashSetFactory.make(Slicer.computeBackwardSlice(expected, s)), HashSetFactory.make(Slicer
+        .computeBackwardSlice(actual, s)));
+    Assert.assertEquals(HashSetFactory.make(Slicer.computeForwardSlice(expected, s)), HashSetFactory.make(Slicer
+        .computeForwardSlice(actual, s)));
+    checkBounds(actual);
+
+    // the bounds hold PDGs, not the SDG: both SDGs retain every statement the slices reached
+    int retained = Iterator2Collection.toSet(actual.iterateLazyNodes()).size();
+    if (DEBUG) {
+      System.err.println("max PDGs " + maxPDGs + ", max statements " + maxStatements + ": " + actual.getNumberOfPDGs()
+          + " PDGs held with " + actual.getNumberOfPDGStatements() + " statements, " + actual.getNumberOfPDGsBuilt() + " built, "
+          + retained + " statements retained");
+    }
+    Assert.assertEquals(Iterator2Collection.toSet(expected.iterateLazyNodes()).size(), retained);
+    Assert.assertTrue(actual.getNumberOfPDGsBuilt() >= nodes.size());
+
+    // a statement has the same successors whether its PDG was built lazily or completely
+    PDG lazy = expected.getPDG(main);
+    PDG built = actual.getPDG(main);
+    for (Statement st : Iterator2Collection.toSet(built.iterator())) {
+      Assert.assertEquals(st.toString(), Iterator2Collection.toSet(lazy.getSuccNodes(st)), Iterator2Collection.toSet(built
+          .getSuccNodes(st)));
+    }
+  }
+
+  /**
+   * the PDGs held are within the bounds, except that the one most recently used is held however large it is
+   */
+  private static void checkBounds(SDG sdg) {
+    Assert.assertTrue(sdg.getNumberOfPDGs() <= sdg.getMaxPDGs());
+    Assert.assertTrue(sdg.getNumberOfPDGs() == 1 || sdg.getNumberOfPDGStatements() <= sdg.getMaxPDGStatements());
+  }
+}
@@ -15,9 +15,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -59,6 +62,7 @@ import com.ibm.wala.ssa.SSAPutInstruction;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.graph.GraphIntegrity;
 import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
@@ -692,6 +696,40 @@ public class SlicerTest {
     GraphIntegrity.check(sdg);
   }
 
+  /**
+   * slicing from every call in main at once should give each call its own slice
+   */
+  @Test
+  public void testBatchSlices() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    CGNode main = findMainMethod(cg);
+    List<Statement> roots = new ArrayList<Statement>();
+    SSAInstruction[] instructions = main.getIR().getInstructions();
+    for (int i = 0; i < instructions.length; i++) {
+      if (instructions[i] instanceof SSAAbstractInvokeInstruction) {
+        roots.add(new NormalStatement(main, i));
+      }
+    }
+    Assert.assertTrue(roots.size() > 1);
+
+    SDG sdg = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.FULL, ControlDependenceOptions.FULL);
+    Map<Statement, Collection<Statement>> backward = Slicer.computeBackwardSlices(sdg, roots);
+    Map<Statement, Collection<Statement>> forward = Slicer.computeForwardSlices(sdg, roots);
+    Assert.assertEquals(HashSetFactory.make(roots), backward.keySet());
+    for (Statement s : roots) {
+      Assert.assertEquals(s.toString(), HashSetFactory.make(Slicer.computeBackwardSlice(sdg, s)), backward.get(s));
+      Assert.assertEquals(s.toString(), HashSetFactory.make(Slicer.computeForwardSlice(sdg, s)), forward.get(s));
+    }
+  }
+
   public static int countAllocations(Collection<Statement> slice) {
     int count = 0;
     for (Statement s : slice) {
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * An on-disk cache of the class headers found in jar files: for each class, its name, modifiers, superclass, interfaces and
+ * declared fields, which is all a {@link com.ibm.wala.ipa.cha.ClassHierarchy} needs. A {@link ClassLoaderImpl} with a cache creates
+ * classes from cached headers without parsing their class files; a class file is then parsed only when its methods or annotations
+ * are first needed.
+ *
+ * Jar files are identified by a hash of their contents, so a changed jar simply misses in the cache. Classes with annotated fields
+ * are not cached.
+ */
+public class ClassHeaderCache {
+
+  private final static int MAGIC = 0x57414C48;
+
+  private final static int VERSION = 1;
+
+  private final static String SUFFIX = ".headers";
+
+  /**
+   * The cached information about one class
+   */
+  static class Header {
+    /**
+     * type name, as in "Ljava/lang/Object"
+     */
+    final String name;
+
+    final int modifiers;
+
+    /**
+     * superclass type name, or null
+     */
+    final String superName;
+
+    final String[] interfaceNames;
+
+    /**
+     * declared fields, instance fields first, each in class file order
+     */
+    final String[] fieldNames;
+
+    final String[] fieldTypes;
+
+    final int[] fieldFlags;
+
+    Header(String name, int modifiers, String superName, String[] interfaceNames, String[] fieldNames, String[] fieldTypes,
+        int[] fieldFlags) {
+      this.name = name;
+      this.modifiers = modifiers;
+      this.superName = superName;
+      this.interfaceNames = interfaceNames;
+      this.fieldNames = fieldNames;
+      this.fieldTypes = fieldTypes;
+      this.fieldFlags = fieldFlags;
+    }
+  }
+
+  private final File directory;
+
+  /**
+   * @param directory where to keep the cache files; created if necessary
+   * @throws IllegalArgumentException if directory is null
+   */
+  public ClassHeaderCache(File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory is null");
+    }
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return a hash of the contents of jar, identifying its cache file; also usable to tell whether a jar has changed
+   */
+  public static String key(File jar) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    InputStream s = new FileInputStream(jar);
+    try {
+      byte[] buffer = new byte[65536];
+      for (int n = s.read(buffer); n != -1; n = s.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    } finally {
+      s.close();
+    }
+    StringBuffer result = new StringBuffer();
+    for (byte b : digest.digest()) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return the cached headers for the jar with the given key, as a mapping from module entry name to header, or null if there are
+   *         none or the cache file cannot be read
+   */
+  Map<String, Header> find(String key) {
+    File f = new File(directory, key + SUFFIX);
+    if (!f.isFile()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          return null;
+        }
+        int n = in.readInt();
+        Map<String, Header> result = HashMapFactory.make(n);
+        for (int i = 0; i < n; i++) {
+          String entry = in.readUTF();
+          String name = in.readUTF();
+          int modifiers = in.readInt();
+          String superName = in.readBoolean() ? in.readUTF() : null;
+          String[] interfaceNames = new String[in.readInt()];
+          for (int j = 0; j < interfaceNames.length; j++) {
+            interfaceNames[j] = in.readUTF();
+          }
+          int nFields = in.readInt();
+          String[] fieldNames = new String[nFields];
+          String[] fieldTypes = new String[nFields];
+          int[] fieldFlags = new int[nFields];
+          for (int j = 0; j < nFields; j++) {
+            fieldNames[j] = in.readUTF();
+            fieldTypes[j] = in.readUTF();
+            fieldFlags[j] = in.readInt();
+          }
+          result.put(entry, new Header(name, modifiers, superName, interfaceNames, fieldNames, fieldTypes, fieldFlags));
+        }
+        return result;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // treat a damaged cache file as a miss
+      return null;
+    }
+  }
+
+  /**
+   * Save the headers for the jar with the given key, replacing any previous cache file.
+   *
+   * @param headers mapping from module entry name to header
+   */
+  void store(String key, Map<String, Header> headers) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("cannot create " + directory);
+    }
+    // write to a temporary file first, so that concurrent readers never see a partial file
+    File tmp = File.createTempFile(key, ".tmp", directory);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(headers.size());
+      for (Map.Entry<String, Header> e : headers.entrySet()) {
+        Header h = e.getValue();
+        out.writeUTF(e.getKey());
+        out.writeUTF(h.name);
+        out.writeInt(h.modifiers);
+        out.writeBoolean(h.superName != null);
+        if (h.superName != null) {
+          out.writeUTF(h.superName);
+        }
+        out.writeInt(h.interfaceNames.length);
+        for (String s : h.interfaceNames) {
+          out.writeUTF(s);
+        }
+        out.writeInt(h.fieldNames.length);
+        for (int i = 0; i < h.fieldNames.length; i++) {
+          out.writeUTF(h.fieldNames[i]);
+          out.writeUTF(h.fieldTypes[i]);
+          out.writeInt(h.fieldFlags[i]);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    File f = new File(directory, key + SUFFIX);
+    if (!tmp.renameTo(f)) {
+      // another process may have stored the same headers first
+      tmp.delete();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ClassHeaderCache:" + directory;
+  }
+}
@@ -38,6 +38,13 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
    */
   final private HashMap<ClassLoaderReference, IClassLoader> map = HashMapFactory.make(3);
 
+  /**
+   * number of threads on which each {@link ClassLoaderImpl} parses its class files
+   */
+  private int numberOfThreads = 1;
+
+  private ClassHeaderCache headerCache;
+
   /**
    * @param exclusions
    *          A set of classes that class loaders should pretend don't exist.
@@ -46,6 +53,36 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
     this.exclusions = exclusions;
   }
 
+  /**
+   * Parse the class files of each new {@link ClassLoaderImpl} on n threads. The class hierarchy built from the loaders is the same
+   * as with one thread.
+   * 
+   * @throws IllegalArgumentException if n < 1
+   */
+  public void setNumberOfThreads(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + n);
+    }
+    numberOfThreads = n;
+  }
+
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * Have each new {@link ClassLoaderImpl} use the given cache of class headers; see {@link ClassLoaderImpl#setClassHeaderCache}.
+   * 
+   * @param cache the cache to use, or null for none
+   */
+  public void setClassHeaderCache(ClassHeaderCache cache) {
+    headerCache = cache;
+  }
+
+  public ClassHeaderCache getClassHeaderCache() {
+    return headerCache;
+  }
+
   /**
    * Return a class loader corresponding to a given class loader identifier.
    * Create one if necessary.
@@ -111,6 +148,10 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
           cl = new ClassLoaderImpl(classLoaderReference, scope.getArrayClassLoader(), parent, exclusions, cha);
         }
       }
+    if (cl instanceof ClassLoaderImpl) {
+      ((ClassLoaderImpl) cl).setNumberOfThreads(numberOfThreads);
+      ((ClassLoaderImpl) cl).setClassHeaderCache(headerCache);
+    }
     cl.init(scope.getModules(classLoaderReference));
     return cl;
   }
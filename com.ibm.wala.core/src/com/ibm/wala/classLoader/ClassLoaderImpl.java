@@ -10,13 +10,12 @@
  *******************************************************************************/
 package com.ibm.wala.classLoader;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,6 +23,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
@@ -34,12 +37,12 @@ import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.SSAInstructionFactory;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.TypeName;
+import com.ibm.wala.util.ThreadUtil;
 import com.ibm.wala.util.collections.HashCodeComparator;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.Iterator2Iterable;
-import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.io.FileSuffixes;
 import com.ibm.wala.util.shrike.ShrikeClassReaderHandle;
 import com.ibm.wala.util.strings.Atom;
@@ -89,6 +92,16 @@ public class ClassLoaderImpl implements IClassLoader {
    */
   private final ArrayClassLoader arrayClassLoader;
 
+  /**
+   * number of threads on which to parse class files during {@link #init(List)}
+   */
+  private int numberOfThreads = 1;
+
+  /**
+   * cache of class headers to use during {@link #init(List)}, or null
+   */
+  private ClassHeaderCache headerCache;
+
   /**
    * @param loader class loader reference identifying this loader
    * @param parent parent loader for delegation
@@ -242,61 +255,77 @@ public class ClassLoaderImpl implements IClassLoader {
   }
 
   /**
-   * Set up the set of classes loaded by this object.
+   * Parse class files on n threads during {@link #init(List)}. Parsing is the only parallel phase: classes are entered in the same
+   * order as with one thread, so the loaded classes and warnings do not depend on n.
+   * 
+   * @throws IllegalArgumentException if n < 1
    */
-  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents) {
-    for (Iterator<ModuleEntry> it = moduleEntries.iterator(); it.hasNext();) {
-      ModuleEntry entry = it.next();
-      if (!entry.isClassFile()) {
-        continue;
-      }
+  public void setNumberOfThreads(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + n);
+    }
+    numberOfThreads = n;
+  }
 
-      String className = entry.getClassName().replace('.', '/');
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
 
-      if (DEBUG_LEVEL > 0) {
-        System.err.println("Consider " + className);
-      }
+  /**
+   * Create classes from the class headers in cache, when it has them for a jar file, rather than parsing the class files; and save
+   * the headers of jar files that are not in the cache yet. Must be set before {@link #init(List)}.
+   * 
+   * @param cache the cache to use, or null for none
+   */
+  public void setClassHeaderCache(ClassHeaderCache cache) {
+    headerCache = cache;
+  }
 
-      if (exclusions != null && exclusions.contains(className)) {
-        if (DEBUG_LEVEL > 0) {
-          System.err.println("Excluding " + className);
-        }
-        continue;
-      }
+  public ClassHeaderCache getClassHeaderCache() {
+    return headerCache;
+  }
 
-      ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
+  /**
+   * @return the file of a module that a {@link ClassHeaderCache} can identify, or null
+   */
+  private static File getJarFile(Module archive) {
+    File result = null;
+    if (archive instanceof JarFileModule) {
+      result = new File(((JarFileModule) archive).getAbsolutePath());
+    } else if (archive instanceof MappedJarFileModule && ((MappedJarFileModule) archive).getName() != null) {
+      result = new File(((MappedJarFileModule) archive).getName());
+    }
+    return result != null && result.isFile() ? result : null;
+  }
 
-      className = "L" + className;
-      if (DEBUG_LEVEL > 0) {
-        System.err.println("Load class " + className);
+  /**
+   * Set up the set of classes loaded by this object.
+   * 
+   * @param headers cached class headers for the module entries, or null
+   * @param newHeaders if non-null, a map in which to record the headers of the loaded classes
+   */
+  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents,
+      Map<String, ClassHeaderCache.Header> headers, Map<String, ClassHeaderCache.Header> newHeaders) {
+    if (numberOfThreads > 1) {
+      loadAllClassesInParallel(moduleEntries, fileContents, headers, newHeaders);
+      return;
+    }
+    for (Iterator<ModuleEntry> it = moduleEntries.iterator(); it.hasNext();) {
+      ModuleEntry entry = it.next();
+      String className = getClassNameToLoad(entry);
+      if (className == null) {
+        continue;
       }
       try {
         TypeName T = TypeName.string2TypeName(className);
-        if (loadedClasses.get(T) != null) {
-          Warnings.add(MultipleImplementationsWarning.create(className));
-        } else if (parent != null && parent.lookupClass(T) != null) {
-          Warnings.add(MultipleImplementationsWarning.create(className));
+        if (isAlreadyDefined(T, className)) {
+          continue;
+        }
+        ShrikeClass klass = parseClass(entry, T, className, fileContents, headers);
+        if (klass != null) {
+          enterClass(T, klass, entry, newHeaders);
         } else {
-          // try to read from memory
-          ShrikeClassReaderHandle reader = entryReader;
-          if (fileContents != null) {
-            final Object contents = fileContents.get(entry.getName());
-            if (contents != null) {
-              // reader that uses the in-memory bytes
-              reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
-            }
-          }
-          ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
-          if (tmpKlass.getReference().getName().equals(T)) {
-            // always used the reader based on the entry after this point,
-            // so we can null out and re-read class file contents
-            loadedClasses.put(T, new ShrikeClass(entryReader, this, cha));
-            if (DEBUG_LEVEL > 1) {
-              System.err.println("put " + T + " ");
-            }
-          } else {
-            Warnings.add(InvalidClassFile.create(className));
-          }
+          Warnings.add(InvalidClassFile.create(className));
         }
       } catch (InvalidClassFileException e) {
         if (DEBUG_LEVEL > 0) {
@@ -307,6 +336,151 @@ public class ClassLoaderImpl implements IClassLoader {
     }
   }
 
+  /**
+   * Like {@link #loadAllClasses(Collection, Map, Map, Map)}, but parse the class files on a pool of threads first, and then enter the
+   * parsed classes in the order of moduleEntries.
+   */
+  private void loadAllClassesInParallel(Collection<ModuleEntry> moduleEntries, final Map<String, Object> fileContents,
+      final Map<String, ClassHeaderCache.Header> headers, Map<String, ClassHeaderCache.Header> newHeaders) {
+    final List<ModuleEntry> entries = new ArrayList<ModuleEntry>();
+    final List<String> classNames = new ArrayList<String>();
+    for (ModuleEntry entry : moduleEntries) {
+      String className = getClassNameToLoad(entry);
+      if (className != null) {
+        entries.add(entry);
+        classNames.add(className);
+      }
+    }
+
+    // parse: a null result means the class file was invalid
+    final ShrikeClass[] parsed = new ShrikeClass[entries.size()];
+    final AtomicInteger next = new AtomicInteger();
+    ExecutorService pool = ThreadUtil.makeDaemonPool(numberOfThreads, "class file parser");
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(numberOfThreads);
+      for (int i = 0; i < numberOfThreads; i++) {
+        futures.add(pool.submit(new Callable<Object>() {
+          public Object call() {
+            for (int j = next.getAndIncrement(); j < parsed.length; j = next.getAndIncrement()) {
+              try {
+                String className = classNames.get(j);
+                parsed[j] = parseClass(entries.get(j), TypeName.string2TypeName(className), className, fileContents, headers);
+              } catch (InvalidClassFileException e) {
+                parsed[j] = null;
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      ThreadUtil.getAll(futures, "parsing class files");
+    } finally {
+      pool.shutdown();
+    }
+
+    // enter the classes sequentially, so that the first definition of a class wins as in the sequential case
+    for (int i = 0; i < parsed.length; i++) {
+      String className = classNames.get(i);
+      TypeName T = TypeName.string2TypeName(className);
+      if (isAlreadyDefined(T, className)) {
+        continue;
+      }
+      if (parsed[i] != null) {
+        enterClass(T, parsed[i], entries.get(i), newHeaders);
+      } else {
+        Warnings.add(InvalidClassFile.create(className));
+      }
+    }
+  }
+
+  /**
+   * @return the name, in the form "Lp/C", of the class that should be loaded from entry, or null if the entry is not a class file
+   *         or the class is excluded
+   */
+  private String getClassNameToLoad(ModuleEntry entry) {
+    if (!entry.isClassFile()) {
+      return null;
+    }
+
+    String className = entry.getClassName().replace('.', '/');
+
+    if (DEBUG_LEVEL > 0) {
+      System.err.println("Consider " + className);
+    }
+
+    if (exclusions != null && exclusions.contains(className)) {
+      if (DEBUG_LEVEL > 0) {
+        System.err.println("Excluding " + className);
+      }
+      return null;
+    }
+
+    className = "L" + className;
+    if (DEBUG_LEVEL > 0) {
+      System.err.println("Load class " + className);
+    }
+    return className;
+  }
+
+  /**
+   * @return true if this loader or its parent already defines T, in which case a warning is issued
+   */
+  private boolean isAlreadyDefined(TypeName T, String className) {
+    if (loadedClasses.get(T) != null) {
+      Warnings.add(MultipleImplementationsWarning.create(className));
+      return true;
+    } else if (parent != null && parent.lookupClass(T) != null) {
+      Warnings.add(MultipleImplementationsWarning.create(className));
+      return true;
+    }
+    return false;
+  }
+
+  private void enterClass(TypeName T, ShrikeClass klass, ModuleEntry entry, Map<String, ClassHeaderCache.Header> newHeaders) {
+    loadedClasses.put(T, klass);
+    if (DEBUG_LEVEL > 1) {
+      System.err.println("put " + T + " ");
+    }
+    if (newHeaders != null) {
+      ClassHeaderCache.Header h = klass.getHeader();
+      if (h != null) {
+        newHeaders.put(entry.getName(), h);
+      }
+    }
+  }
+
+  /**
+   * Parse the class file in entry, or create the class from its cached header. May be called concurrently for different entries.
+   * 
+   * @return the class, or null if the class file does not define class T
+   */
+  private ShrikeClass parseClass(ModuleEntry entry, TypeName T, String className, Map<String, Object> fileContents,
+      Map<String, ClassHeaderCache.Header> headers) throws InvalidClassFileException {
+    ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
+    if (headers != null) {
+      ClassHeaderCache.Header h = headers.get(entry.getName());
+      if (h != null && h.name.equals(className)) {
+        return new ShrikeClass(entryReader, this, cha, h);
+      }
+    }
+    // try to read from memory
+    ShrikeClassReaderHandle reader = entryReader;
+    if (fileContents != null) {
+      final Object contents = fileContents.get(entry.getName());
+      if (contents != null) {
+        // reader that uses the in-memory bytes
+        reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
+      }
+    }
+    ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
+    if (!tmpKlass.getReference().getName().equals(T)) {
+      return null;
+    }
+    // always used the reader based on the entry after this point,
+    // so we can null out and re-read class file contents
+    return reader == entryReader ? tmpKlass : new ShrikeClass(entryReader, this, cha);
+  }
+
   @SuppressWarnings("unused")
   private Map<String, Object> getAllClassAndSourceFileContents(byte[] jarFileContents, String fileName,
       Map<String, Map<String, Long>> entrySizes) {
@@ -447,17 +621,8 @@ public class ClassLoaderImpl implements IClassLoader {
       }
       // byte[] jarFileContents = null;
       if (OPTIMIZE_JAR_FILE_IO && archive instanceof JarFileModule) {
-        // if we have a jar file, we read the whole thing into memory and operate on that; enables more
-        // efficient sequential I/O
-        // this is work in progress; for now, we read the file into memory and throw away the contents, which
-        // still gives a speedup for large jar files since it reads sequentially and warms up the FS cache. we get a small slowdown
-        // for smaller jar files or for jar files already in the FS cache. eventually, we should
-        // actually use the bytes read and eliminate the slowdown
-        // 11/22/10: I can't figure out a way to actually use the bytes without hurting performance.  Apparently,
-        // extracting files from a jar stored in memory via a JarInputStream is really slow compared to using
-        // a JarFile.  Will leave this as is for now.  --MS
-        // jarFileContents = archive instanceof JarFileModule ? getJarFileContents((JarFileModule) archive) : null;
-        getJarFileContents((JarFileModule) archive);
+        // read the entries of a jar file straight from a memory mapping of it, rather than through the streams of a JarFile
+        archive = mapJarFile((JarFileModule) archive);
       }
       Set<ModuleEntry> classFiles = getClassFiles(archive);
       removeClassFiles(classFiles, classModuleEntries);
@@ -473,7 +638,24 @@ public class ClassLoaderImpl implements IClassLoader {
         // }
         // jarFileContents = null;
       }
-      loadAllClasses(classFiles, allClassAndSourceFileContents);
+      final File jar = headerCache == null ? null : getJarFile(archive);
+      String headerKey = jar == null ? null : ClassHeaderCache.key(jar);
+      Map<String, ClassHeaderCache.Header> headers = headerKey == null ? null : headerCache.find(headerKey);
+      Map<String, ClassHeaderCache.Header> newHeaders = headerKey != null && headers == null ? HashMapFactory
+          .<String, ClassHeaderCache.Header> make() : null;
+      loadAllClasses(classFiles, allClassAndSourceFileContents, headers, newHeaders);
+      if (newHeaders != null) {
+        try {
+          headerCache.store(headerKey, newHeaders);
+        } catch (IOException e) {
+          Warnings.add(new Warning() {
+            @Override
+            public String getMsg() {
+              return "could not save class headers of " + jar + " in " + headerCache;
+            }
+          });
+        }
+      }
       loadAllSources(sourceFiles);
       for (Iterator<ModuleEntry> it2 = classFiles.iterator(); it2.hasNext();) {
         ModuleEntry file = it2.next();
@@ -504,28 +686,18 @@ public class ClassLoaderImpl implements IClassLoader {
   }
 
   /**
-   * get the contents of a jar file. if any IO exceptions occur, catch and return null.
+   * @return a {@link MappedJarFileModule} of the file of archive, or archive itself if that is not a plain file or cannot be
+   *         mapped, e.g. because it is a ZIP64 archive
    */
-  private void getJarFileContents(JarFileModule archive) {
-    String jarFileName = archive.getJarFile().getName();
-    InputStream s = null;
+  private static Module mapJarFile(JarFileModule archive) {
+    File f = new File(archive.getAbsolutePath());
+    if (!f.isFile()) {
+      return archive;
+    }
     try {
-      File jarFile = (new FileProvider()).getFile(jarFileName);
-      int bufferSize = 65536;
-      s = new BufferedInputStream(new FileInputStream(jarFile), bufferSize);
-      byte[] b = new byte[1024];
-      int n = s.read(b);
-      while (n != -1) {
-        n = s.read(b);
-      }
+      return new MappedJarFileModule(f);
     } catch (IOException e) {
-    } finally {
-      try {
-        if (s != null) {
-          s.close();
-        }
-      } catch (IOException e) {
-      }
+      return archive;
     }
   }
 
@@ -125,6 +125,10 @@ public final class FieldImpl implements IField {
     return declaringClass.getClassHierarchy();
   }
 
+  int getAccessFlags() {
+    return accessFlags;
+  }
+
   public Collection<Annotation> getAnnotations() {
     return annotations == null ? null : Collections.unmodifiableCollection(annotations);
   }
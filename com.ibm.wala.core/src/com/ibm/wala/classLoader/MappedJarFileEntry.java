@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.ibm.wala.util.io.FileSuffixes;
+
+/**
+ * An entry of a {@link MappedJarFileModule}
+ */
+public class MappedJarFileEntry implements ModuleEntry {
+
+  /**
+   * size of the buffer through which compressed data is fed to an inflater
+   */
+  private final static int INPUT_BUFFER_SIZE = 8192;
+
+  /**
+   * maximum number of idle inflaters to keep
+   */
+  private final static int MAX_POOLED_INFLATERS = 16;
+
+  /**
+   * Idle inflaters, with their input buffers. Inflaters hold native memory, so they are reused rather than created per entry.
+   */
+  private final static List<PooledInflater> inflaters = new ArrayList<PooledInflater>();
+
+  private final MappedJarFileModule module;
+
+  private final String name;
+
+  private final boolean deflated;
+
+  /**
+   * offset of the entry's data in the archive
+   */
+  private final int offset;
+
+  private final int compressedSize;
+
+  private final int size;
+
+  MappedJarFileEntry(MappedJarFileModule module, String name, boolean deflated, int offset, int compressedSize, int size) {
+    this.module = module;
+    this.name = name;
+    this.deflated = deflated;
+    this.offset = offset;
+    this.compressedSize = compressedSize;
+    this.size = size;
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#getName()
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the uncompressed size of the entry
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#isClassFile()
+   */
+  public boolean isClassFile() {
+    return FileSuffixes.isClassFile(getName());
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#isSourceFile()
+   */
+  public boolean isSourceFile() {
+    return FileSuffixes.isSourceFile(getName());
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#isModuleFile()
+   */
+  public boolean isModuleFile() {
+    return FileSuffixes.isJarFile(getName()) || FileSuffixes.isWarFile(getName());
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#getClassName()
+   */
+  public String getClassName() {
+    return FileSuffixes.stripSuffix(getName());
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#getInputStream()
+   */
+  public InputStream getInputStream() {
+    return new ByteArrayInputStream(getContents());
+  }
+
+  /**
+   * @return the uncompressed contents of this entry, in a new array of exactly the entry's size
+   * @throws IllegalStateException if the compressed data is corrupt
+   */
+  public byte[] getContents() {
+    byte[] result = new byte[size];
+    ByteBuffer data = module.slice(offset, compressedSize);
+    if (!deflated) {
+      data.get(result);
+      return result;
+    }
+    PooledInflater p = takeInflater();
+    try {
+      Inflater inflater = p.inflater;
+      int n = 0;
+      while (n < size) {
+        if (inflater.needsInput()) {
+          int chunk = Math.min(data.remaining(), p.input.length);
+          if (chunk == 0) {
+            throw new IllegalStateException("truncated entry " + this);
+          }
+          data.get(p.input, 0, chunk);
+          inflater.setInput(p.input, 0, chunk);
+        }
+        int k = inflater.inflate(result, n, size - n);
+        n += k;
+        if (n < size && (inflater.finished() || (k == 0 && !inflater.needsInput()))) {
+          throw new IllegalStateException("short entry " + this);
+        }
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("corrupt entry " + this, e);
+    } finally {
+      returnInflater(p);
+    }
+  }
+
+  private static class PooledInflater {
+    // raw deflate data, without zlib header
+    final Inflater inflater = new Inflater(true);
+
+    final byte[] input = new byte[INPUT_BUFFER_SIZE];
+  }
+
+  private static PooledInflater takeInflater() {
+    synchronized (inflaters) {
+      if (!inflaters.isEmpty()) {
+        return inflaters.remove(inflaters.size() - 1);
+      }
+    }
+    return new PooledInflater();
+  }
+
+  private static void returnInflater(PooledInflater p) {
+    p.inflater.reset();
+    synchronized (inflaters) {
+      if (inflaters.size() < MAX_POOLED_INFLATERS) {
+        inflaters.add(p);
+        return;
+      }
+    }
+    p.inflater.end();
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#asModule()
+   */
+  public Module asModule() {
+    try {
+      // a stored archive is read in place
+      ByteBuffer contents = deflated ? ByteBuffer.wrap(getContents()) : module.slice(offset, size);
+      return new MappedJarFileModule(module.getName() + ":" + name, contents);
+    } catch (IOException e) {
+      throw new IllegalStateException("bad nested archive " + this, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return module.getName() + ":" + getName();
+  }
+
+  @Override
+  public int hashCode() {
+    return name.hashCode() * 5059 + module.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return this == obj;
+  }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * A jar file that is memory-mapped rather than opened as a {@link java.util.jar.JarFile}. The central directory is read directly
+ * from the mapped buffer, and entry contents are copied (stored entries) or inflated (deflated entries) from it straight into
+ * arrays of the exact size, without intermediate streams; see {@link MappedJarFileEntry#getContents()}.
+ *
+ * Nested archives that are stored uncompressed are read in place, without copying. ZIP64 archives, and archives larger than 2GB,
+ * are not supported; use a {@link JarFileModule} for those.
+ *
+ * {@link ClassLoaderImpl} loads the classes of a {@link JarFileModule} of a plain file through a module of this class. A scope file
+ * line of type mappedJarFile adds one to an analysis scope directly.
+ */
+public class MappedJarFileModule implements Module {
+
+  private final static int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+  private final static int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+
+  private final static int LOCAL_FILE_HEADER = 0x04034b50;
+
+  private final static int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  private final static int LOCAL_FILE_HEADER_SIZE = 30;
+
+  private final static int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+  /**
+   * the name of the archive
+   */
+  private final String name;
+
+  /**
+   * the whole archive, little-endian
+   */
+  private final ByteBuffer archive;
+
+  private final List<ModuleEntry> entries;
+
+  /**
+   * Map the given jar file.
+   *
+   * @throws IllegalArgumentException if file is null
+   * @throws IOException if the file cannot be read or is not a supported zip archive
+   */
+  public MappedJarFileModule(File file) throws IOException {
+    this(file == null ? null : file.getAbsolutePath(), map(file));
+  }
+
+  /**
+   * @param name the name of the archive
+   * @param archive the contents of a jar file
+   * @throws IllegalArgumentException if archive is null
+   * @throws IOException if archive is not a supported zip archive
+   */
+  public MappedJarFileModule(String name, ByteBuffer archive) throws IOException {
+    if (archive == null) {
+      throw new IllegalArgumentException("null archive");
+    }
+    this.name = name;
+    this.archive = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    this.entries = Collections.unmodifiableList(readCentralDirectory());
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("null file");
+    }
+    RandomAccessFile f = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = f.getChannel();
+      // the mapping remains valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      f.close();
+    }
+  }
+
+  private List<ModuleEntry> readCentralDirectory() throws IOException {
+    int eocd = findEndOfCentralDirectory();
+    int count = archive.getShort(eocd + 10) & 0xffff;
+    long size = archive.getInt(eocd + 12) & 0xffffffffL;
+    long offset = archive.getInt(eocd + 16) & 0xffffffffL;
+    if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+      throw new IOException(name + ": ZIP64 archives are not supported");
+    }
+    List<ModuleEntry> result = new ArrayList<ModuleEntry>(count);
+    int p = (int) offset;
+    for (int i = 0; i < count; i++) {
+      if (p + CENTRAL_DIRECTORY_HEADER_SIZE > archive.limit() || archive.getInt(p) != CENTRAL_DIRECTORY_HEADER) {
+        throw new IOException(name + ": bad central directory");
+      }
+      int method = archive.getShort(p + 10) & 0xffff;
+      long compressedSize = archive.getInt(p + 20) & 0xffffffffL;
+      long uncompressedSize = archive.getInt(p + 24) & 0xffffffffL;
+      int nameLength = archive.getShort(p + 28) & 0xffff;
+      int extraLength = archive.getShort(p + 30) & 0xffff;
+      int commentLength = archive.getShort(p + 32) & 0xffff;
+      long localHeader = archive.getInt(p + 42) & 0xffffffffL;
+      String entryName = readName(p + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+      p += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+      if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+        throw new IOException(name + ": unsupported compression method " + method + " for " + entryName);
+      }
+      int lh = (int) localHeader;
+      if (localHeader + LOCAL_FILE_HEADER_SIZE > archive.limit() || archive.getInt(lh) != LOCAL_FILE_HEADER) {
+        throw new IOException(name + ": bad local header for " + entryName);
+      }
+      // the local header may have a different extra field than the central directory
+      long data = localHeader + LOCAL_FILE_HEADER_SIZE + (archive.getShort(lh + 26) & 0xffff) + (archive.getShort(lh + 28) & 0xffff);
+      if (data + compressedSize > archive.limit() || uncompressedSize > Integer.MAX_VALUE) {
+        throw new IOException(name + ": bad sizes for " + entryName);
+      }
+      result.add(new MappedJarFileEntry(this, entryName, method == ZipEntry.DEFLATED, (int) data, (int) compressedSize,
+          (int) uncompressedSize));
+    }
+    return result;
+  }
+
+  private int findEndOfCentralDirectory() throws IOException {
+    int last = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    // the archive comment is at most 64K long
+    int first = Math.max(0, last - 0xffff);
+    for (int p = last; p >= first; p--) {
+      if (archive.getInt(p) == END_OF_CENTRAL_DIRECTORY) {
+        return p;
+      }
+    }
+    throw new IOException(name + ": not a zip archive");
+  }
+
+  private String readName(int offset, int length) {
+    byte[] b = new byte[length];
+    ByteBuffer d = archive.duplicate();
+    d.position(offset);
+    d.get(b);
+    try {
+      return new String(b, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return a view of length bytes of the archive, starting at offset
+   */
+  ByteBuffer slice(int offset, int length) {
+    ByteBuffer d = archive.duplicate();
+    d.position(offset);
+    d.limit(offset + length);
+    return d.slice();
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.Module#getEntries()
+   */
+  public Iterator<ModuleEntry> getEntries() {
+    return entries.iterator();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return "MappedJarFileModule:" + name;
+  }
+
+  @Override
+  public int hashCode() {
+    return name == null ? 0 : name.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    final MappedJarFileModule other = (MappedJarFileModule) obj;
+    if (name == null || !name.equals(other.name))
+      return false;
+    return true;
+  }
+}
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package com.ibm.wala.classLoader;
 
+import java.io.UTFDataFormatException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -35,6 +36,7 @@ import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.shrike.ShrikeClassReaderHandle;
 import com.ibm.wala.util.strings.Atom;
 import com.ibm.wala.util.strings.ImmutableByteArray;
+import com.ibm.wala.util.strings.UTF8Convert;
 
 /**
  * A class read from Shrike
@@ -67,6 +69,71 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
     computeFields();
   }
 
+  /**
+   * Create a class from a header saved by a {@link ClassHeaderCache}, without reading the class file. The class file is read when
+   * the methods or annotations of the class are first needed.
+   */
+  ShrikeClass(ShrikeClassReaderHandle reader, IClassLoader loader, IClassHierarchy cha, ClassHeaderCache.Header header) {
+    super(loader, cha);
+    this.reader = reader;
+    typeReference = TypeReference.findOrCreate(getClassLoader().getReference(), TypeName.findOrCreate(ImmutableByteArray
+        .make(header.name)));
+    this.hashCode = 2161 * getReference().hashCode();
+    if (header.superName != null) {
+      superName = ImmutableByteArray.make(header.superName);
+    }
+    modifiers = header.modifiers;
+    interfaceNames = new ImmutableByteArray[header.interfaceNames.length];
+    for (int i = 0; i < interfaceNames.length; i++) {
+      interfaceNames[i] = ImmutableByteArray.make(header.interfaceNames[i]);
+    }
+    List<FieldImpl> instanceList = new ArrayList<FieldImpl>(header.fieldNames.length);
+    List<FieldImpl> staticList = new ArrayList<FieldImpl>(header.fieldNames.length);
+    for (int i = 0; i < header.fieldNames.length; i++) {
+      Atom name = Atom.findOrCreateUnicodeAtom(header.fieldNames[i]);
+      ImmutableByteArray b = ImmutableByteArray.make(header.fieldTypes[i]);
+      if ((header.fieldFlags[i] & ClassConstants.ACC_STATIC) == 0) {
+        addFieldToList(instanceList, name, b, header.fieldFlags[i], null);
+      } else {
+        addFieldToList(staticList, name, b, header.fieldFlags[i], null);
+      }
+    }
+    instanceFields = new IField[instanceList.size()];
+    populateFieldArrayFromList(instanceList, instanceFields);
+    staticFields = new IField[staticList.size()];
+    populateFieldArrayFromList(staticList, staticFields);
+  }
+
+  /**
+   * @return the header of this class for a {@link ClassHeaderCache}, or null if the class cannot be cached because it has annotated
+   *         fields
+   */
+  ClassHeaderCache.Header getHeader() {
+    int nFields = instanceFields.length + staticFields.length;
+    String[] fieldNames = new String[nFields];
+    String[] fieldTypes = new String[nFields];
+    int[] fieldFlags = new int[nFields];
+    for (int i = 0; i < nFields; i++) {
+      FieldImpl f = (FieldImpl) (i < instanceFields.length ? instanceFields[i] : staticFields[i - instanceFields.length]);
+      if (f.getAnnotations() != null) {
+        return null;
+      }
+      try {
+        fieldNames[i] = f.getName().toUnicodeString();
+      } catch (UTFDataFormatException e) {
+        return null;
+      }
+      fieldTypes[i] = f.getFieldTypeReference().getName().toUnicodeString();
+      fieldFlags[i] = f.getAccessFlags();
+    }
+    String[] interfaces = new String[interfaceNames.length];
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = UTF8Convert.fromUTF8(interfaceNames[i]);
+    }
+    return new ClassHeaderCache.Header(getName().toUnicodeString(), modifiers, superName == null ? null : UTF8Convert
+        .fromUTF8(superName), interfaces, fieldNames, fieldTypes, fieldFlags);
+  }
+
   /**
    * Compute the fields declared by this class
    * 
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.CancelRuntimeException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Heap;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A {@link TabulationSolver} that answers queries of the form "which of these (node, fact) pairs are reached?", tabulating only
+ * until the answer is known.
+ * <p>
+ * While a query is pending, path edges are taken from the worklist in order of the distance in the supergraph from their target
+ * to the nearest node of the query. Tabulation stops as soon as all pairs of the query are reached; a pair is known not to be
+ * reached only once the worklist is empty. The path edges found and the worklist are kept, so each query resumes where the
+ * previous one stopped, and pairs reached by an earlier query are answered without further tabulation.
+ *
+ * @param <T> type of node in the supergraph
+ * @param <P> type of a procedure (like a box in an RSM)
+ * @param <F> type of factoids propagated when solving this problem
+ */
+public class DemandTabulationSolver<T, P, F> extends TabulationSolver<T, P, F> {
+
+  public static <T, P, F> DemandTabulationSolver<T, P, F> make(TabulationProblem<T, P, F> p) {
+    return new DemandTabulationSolver<T, P, F>(p, null);
+  }
+
+  public static <T, P, F> DemandTabulationSolver<T, P, F> make(TabulationProblem<T, P, F> p, IProgressMonitor monitor) {
+    return new DemandTabulationSolver<T, P, F>(p, monitor);
+  }
+
+  private boolean initialized = false;
+
+  /**
+   * node -> facts of the current query not yet reached at that node
+   */
+  private final Map<T, MutableIntSet> pending = HashMapFactory.make();
+
+  private int numberPending = 0;
+
+  /**
+   * for each node number, the length of the shortest supergraph path to a node of the current query; null if there is no query
+   */
+  private int[] distance;
+
+  protected DemandTabulationSolver(TabulationProblem<T, P, F> p, IProgressMonitor monitor) {
+    super(p, monitor);
+  }
+
+  /**
+   * Tabulate until it is known whether fact is reached at node.
+   */
+  public boolean query(T node, int fact) throws CancelException {
+    return !query(Collections.singleton(Pair.make(node, fact))).isEmpty();
+  }
+
+  /**
+   * Tabulate until it is known which of the targets are reached.
+   *
+   * @param targets (node, fact) pairs
+   * @return the targets that are reached
+   * @throws TabulationCancelException if canceled; the result so far can still be queried again
+   */
+  public Set<Pair<T, Integer>> query(Collection<Pair<T, Integer>> targets) throws CancelException {
+    if (targets == null) {
+      throw new IllegalArgumentException("null targets");
+    }
+    initializeOnce();
+    for (Pair<T, Integer> t : targets) {
+      if (!isReached(t.fst, t.snd)) {
+        MutableIntSet s = pending.get(t.fst);
+        if (s == null) {
+          s = MutableSparseIntSet.makeEmpty();
+          pending.put(t.fst, s);
+        }
+        if (s.add(t.snd)) {
+          numberPending++;
+        }
+      }
+    }
+    if (numberPending > 0 && hasPendingWork()) {
+      distance = computeDistances(pending.keySet());
+      rebuildWorklist();
+      try {
+        tabulate();
+      } finally {
+        pending.clear();
+        numberPending = 0;
+        distance = null;
+      }
+    }
+    Set<Pair<T, Integer>> result = HashSetFactory.make();
+    for (Pair<T, Integer> t : targets) {
+      if (isReached(t.fst, t.snd)) {
+        result.add(t);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Complete the tabulation, reusing the work done for previous queries.
+   */
+  @Override
+  public TabulationResult<T, P, F> solve() throws CancelException {
+    initializeOnce();
+    tabulate();
+    return getPartialResult();
+  }
+
+  /**
+   * @return the path edges found so far; complete only if {@link #isComplete()}
+   */
+  public TabulationResult<T, P, F> getPartialResult() {
+    return new Result();
+  }
+
+  /**
+   * @return true iff the tabulation has run to completion, so every query is answered without further work
+   */
+  public boolean isComplete() {
+    return initialized && !hasPendingWork();
+  }
+
+  private void initializeOnce() {
+    if (!initialized) {
+      initialized = true;
+      initialize();
+    }
+  }
+
+  private void tabulate() throws CancelException {
+    try {
+      forwardTabulateSLRPs();
+    } catch (CancelException e) {
+      throw new TabulationCancelException(e, getPartialResult());
+    } catch (CancelRuntimeException e) {
+      throw new TabulationCancelException(e, getPartialResult());
+    }
+  }
+
+  private boolean isReached(T node, int fact) {
+    return getResult(node).contains(fact);
+  }
+
+  @Override
+  protected boolean propagate(T s_p, int i, T n, int j) {
+    boolean result = super.propagate(s_p, i, n, j);
+    if (result && numberPending > 0) {
+      MutableIntSet s = pending.get(n);
+      if (s != null && s.remove(j)) {
+        numberPending--;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  protected boolean shouldStop() {
+    return distance != null && numberPending == 0;
+  }
+
+  /**
+   * breadth-first search backwards from the targets
+   */
+  private int[] computeDistances(Set<T> targets) {
+    int[] result = new int[supergraph.getMaxNumber() + 1];
+    Arrays.fill(result, Integer.MAX_VALUE);
+    int[] queue = new int[result.length];
+    int head = 0;
+    int tail = 0;
+    for (T t : targets) {
+      int n = supergraph.getNumber(t);
+      if (result[n] != 0) {
+        result[n] = 0;
+        queue[tail++] = n;
+      }
+    }
+    while (head < tail) {
+      int n = queue[head++];
+      for (Iterator<? extends T> it = supergraph.getPredNodes(supergraph.getNode(n)); it.hasNext();) {
+        int m = supergraph.getNumber(it.next());
+        if (result[m] == Integer.MAX_VALUE) {
+          result[m] = result[n] + 1;
+          queue[tail++] = m;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  protected ITabulationWorklist<T> makeWorklist() {
+    return new DistanceWorklist();
+  }
+
+  /**
+   * Orders path edges by the distance of their target to the current query, and then by the priority given by the domain.
+   */
+  private class DistanceWorklist extends Heap<PathEdge<T>> implements ITabulationWorklist<T> {
+
+    DistanceWorklist() {
+      super(100);
+    }
+
+    @Override
+    protected boolean compareElements(PathEdge<T> p1, PathEdge<T> p2) {
+      if (distance != null) {
+        int d1 = distance[supergraph.getNumber(p1.target)];
+        int d2 = distance[supergraph.getNumber(p2.target)];
+        if (d1 != d2) {
+          return d1 < d2;
+        }
+      }
+      return getProblem().getDomain().hasPriorityOver(p1, p2);
+    }
+  }
+}
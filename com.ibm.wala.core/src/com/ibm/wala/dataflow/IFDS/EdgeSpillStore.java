@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A file to which a {@link TabulationSolver} moves the {@link LocalPathEdges} and {@link LocalSummaryEdges} of procedures it has
+ * not touched recently, once the number of edges in memory exceeds a budget. Spilled edges are read back the next time the solver
+ * touches them.
+ * <p>
+ * Each structure is spilled as a whole, in a compact variable-length encoding. Its slot in the file, which leaves some room for
+ * growth, is reused when it is spilled again and still fits; otherwise a new slot is appended to the file.
+ * <p>
+ * This class is not thread-safe, and the store must stay open as long as the tabulation result is in use.
+ */
+public class EdgeSpillStore {
+
+  /**
+   * structures in memory, least recently touched first
+   */
+  private final LinkedHashMap<SpillableEdges, Object> resident = new LinkedHashMap<SpillableEdges, Object>(16, 0.75f, true);
+
+  private final RandomAccessFile file;
+
+  private final long maxResidentEdges;
+
+  private final SpillableEdges.Encoder encoder = new SpillableEdges.Encoder();
+
+  private SpillableEdges lastTouched;
+
+  private long residentEdges;
+
+  private long fileSize;
+
+  private int spills;
+
+  private int faults;
+
+  /**
+   * Spill to a temporary file, deleted on exit
+   *
+   * @param maxResidentEdges number of edges to keep in memory before spilling
+   */
+  public EdgeSpillStore(long maxResidentEdges) throws IOException {
+    this(tempFile(), maxResidentEdges);
+  }
+
+  private static File tempFile() throws IOException {
+    File f = File.createTempFile("wala-ifds", ".edges");
+    f.deleteOnExit();
+    return f;
+  }
+
+  /**
+   * @param f file to spill to; any previous contents are overwritten
+   * @param maxResidentEdges number of edges to keep in memory before spilling
+   */
+  public EdgeSpillStore(File f, long maxResidentEdges) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("null f");
+    }
+    if (maxResidentEdges < 0) {
+      throw new IllegalArgumentException("invalid maxResidentEdges: " + maxResidentEdges);
+    }
+    this.file = new RandomAccessFile(f, "rw");
+    this.file.setLength(0);
+    this.maxResidentEdges = maxResidentEdges;
+  }
+
+  /**
+   * Start managing the edges in s
+   */
+  void register(SpillableEdges s) {
+    assert s.store == null;
+    s.store = this;
+    resident.put(s, null);
+    account(s);
+  }
+
+  /**
+   * Called before each access to s: read s back in if it was spilled, and spill other structures if memory is over budget.
+   */
+  void touch(SpillableEdges s) {
+    if (s.spilled) {
+      fault(s);
+    }
+    if (s != lastTouched) {
+      resident.put(s, null);
+      lastTouched = s;
+    }
+    account(s);
+    if (residentEdges > maxResidentEdges) {
+      evict(s);
+    }
+  }
+
+  /**
+   * add to the resident count any edges s has gained since it was last accounted for
+   */
+  private void account(SpillableEdges s) {
+    residentEdges += s.numberOfEdges - s.accountedEdges;
+    s.accountedEdges = s.numberOfEdges;
+  }
+
+  private void evict(SpillableEdges keep) {
+    for (Iterator<SpillableEdges> it = resident.keySet().iterator(); it.hasNext() && residentEdges > maxResidentEdges;) {
+      SpillableEdges s = it.next();
+      if (s != keep) {
+        it.remove();
+        spill(s);
+      }
+    }
+  }
+
+  private void spill(SpillableEdges s) {
+    account(s);
+    encoder.size = 0;
+    s.write(encoder);
+    try {
+      if (s.offset < 0 || encoder.size > s.capacity) {
+        // leave room for growth, so that the slot can be reused next time
+        s.offset = fileSize;
+        s.capacity = encoder.size + encoder.size / 2;
+        fileSize += s.capacity;
+      }
+      file.seek(s.offset);
+      file.write(encoder.bytes, 0, encoder.size);
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to spill edges", e);
+    }
+    s.length = encoder.size;
+    s.discard();
+    s.spilled = true;
+    residentEdges -= s.accountedEdges;
+    s.accountedEdges = 0;
+    if (s == lastTouched) {
+      lastTouched = null;
+    }
+    spills++;
+  }
+
+  private void fault(SpillableEdges s) {
+    byte[] bytes = new byte[s.length];
+    try {
+      file.seek(s.offset);
+      file.readFully(bytes);
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to read spilled edges", e);
+    }
+    s.spilled = false;
+    s.read(ByteBuffer.wrap(bytes));
+    faults++;
+  }
+
+  /**
+   * Close the underlying file. Structures that are spilled can no longer be read.
+   */
+  public void close() throws IOException {
+    file.close();
+  }
+
+  public int getNumberOfSpills() {
+    return spills;
+  }
+
+  public int getNumberOfFaults() {
+    return faults;
+  }
+
+  public long getResidentEdges() {
+    return residentEdges;
+  }
+
+  public long getBytesOnDisk() {
+    return fileSize;
+  }
+
+  public long getMaxResidentEdges() {
+    return maxResidentEdges;
+  }
+
+  @Override
+  public String toString() {
+    return "resident edges: " + residentEdges + " spills: " + spills + " faults: " + faults + " bytes on disk: " + fileSize;
+  }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+/**
+ * Names for procedures and dataflow facts that are stable across runs, so that the summary edges of a procedure computed in one
+ * run can be reused in another. See {@link ProcedureSummaries}.
+ *
+ * @param <P> type of a procedure
+ */
+public interface ISummaryNaming<P> {
+
+  /**
+   * @return a name for p, e.g. its method signature, or null if summaries of p should not be persisted
+   */
+  String getProcedureKey(P p);
+
+  /**
+   * @return an identifier of the code of p and of the code it calls, e.g. hashes of the jars they come from, and of the targets of
+   *         the calls in this run, or null if unknown. Persisted summaries of p are discarded when it changes.
+   */
+  String getVersion(P p);
+
+  /**
+   * @return an identifier of the problem and of the way facts are named; summaries persisted with a different encoding are not used
+   */
+  String getDomainEncoding();
+
+  /**
+   * @return a name for fact d, or null if d cannot be named
+   */
+  String getFactKey(int d);
+
+  /**
+   * @return the number of the fact named key in this run, adding it to the domain if needed, or -1 if there is no such fact
+   */
+  int getFact(String key);
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.ClassHeaderCache;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.JarFileEntry;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
+import com.ibm.wala.util.intset.BitVector;
+
+/**
+ * Names the call graph nodes of library methods for {@link ProcedureSummaries}: a node of a method loaded by the primordial or
+ * extension loader, in the {@link Everywhere} context, is named by the method signature, unless it can reach a node of a method
+ * that is not from the library in the call graph, e.g. through a callback into application code.
+ * <p>
+ * The summary of a library method also depends on the targets its calls have in the call graph of the program, e.g. on the
+ * overrides of a virtual method that the program instantiates, and on their contexts. So the version of a node is made of the
+ * hashes of the jar files of the classes of all the nodes it can reach, and of a fingerprint of the call graph below the node: of
+ * the targets, with their contexts, of every call site of every node it can reach. Contexts are identified by their string form,
+ * so a context that does not print the same way in every run only prevents reuse. Subclasses name the facts of a particular
+ * problem.
+ */
+public abstract class LibrarySummaryNaming implements ISummaryNaming<CGNode> {
+
+  /**
+   * index that stands, in the sets of {@link #closureJars}, for classes that do not come from a jar file, and so have no version
+   */
+  private final static int UNKNOWN_JAR = 0;
+
+  private final CallGraph cg;
+
+  /**
+   * nodes that can reach a node of a method that is not from the library; computed on first use
+   */
+  private Set<CGNode> reachApplication;
+
+  /**
+   * node -> fingerprint of the call graph reachable from it; shared by the nodes of one strongly connected component
+   */
+  private Map<CGNode, String> fingerprints;
+
+  /**
+   * node -> the indices in {@link #jars} of the jar files of the classes of the nodes it can reach; shared by the nodes of one
+   * strongly connected component
+   */
+  private Map<CGNode, BitVector> closureJars;
+
+  /**
+   * jar file names, by index; index {@link #UNKNOWN_JAR} is unused
+   */
+  private final List<String> jars = new ArrayList<String>();
+
+  private final Map<String, Integer> jarIndex = HashMapFactory.make();
+
+  /**
+   * jar file name -> hash of its contents
+   */
+  private final Map<String, String> jarHashes = HashMapFactory.make();
+
+  /**
+   * @param cg the call graph whose nodes are named
+   * @throws IllegalArgumentException if cg is null
+   */
+  public LibrarySummaryNaming(CallGraph cg) {
+    if (cg == null) {
+      throw new IllegalArgumentException("null cg");
+    }
+    this.cg = cg;
+    jars.add(null);
+  }
+
+  public String getProcedureKey(CGNode n) {
+    if (n == null) {
+      throw new IllegalArgumentException("null n");
+    }
+    if (!n.getContext().equals(Everywhere.EVERYWHERE) || !isLibrary(n.getMethod().getDeclaringClass()) || !cg.containsNode(n)) {
+      return null;
+    }
+    computeClosures();
+    if (reachApplication.contains(n)) {
+      return null;
+    }
+    return n.getMethod().getSignature();
+  }
+
+  protected boolean isLibrary(IClass klass) {
+    ClassLoaderReference loader = klass.getClassLoader().getReference();
+    return loader.equals(ClassLoaderReference.Primordial) || loader.equals(ClassLoaderReference.Extension);
+  }
+
+  public String getVersion(CGNode n) {
+    if (n == null) {
+      throw new IllegalArgumentException("null n");
+    }
+    if (!(n.getMethod().getDeclaringClass() instanceof ShrikeClass) || !cg.containsNode(n)) {
+      return null;
+    }
+    computeClosures();
+    BitVector b = closureJars.get(n);
+    if (b.get(UNKNOWN_JAR)) {
+      return null;
+    }
+    List<String> names = new ArrayList<String>();
+    for (int i = b.nextSetBit(0); i != -1; i = b.nextSetBit(i + 1)) {
+      names.add(jars.get(i));
+    }
+    Collections.sort(names);
+    StringBuffer result = new StringBuffer();
+    for (String jar : names) {
+      String hash = jarHashes.get(jar);
+      if (hash == null) {
+        try {
+          hash = ClassHeaderCache.key(new File(jar));
+        } catch (IOException e) {
+          return null;
+        }
+        jarHashes.put(jar, hash);
+      }
+      if (result.length() > 0) {
+        result.append('+');
+      }
+      result.append(hash);
+    }
+    result.append('#').append(fingerprints.get(n));
+    return result.toString();
+  }
+
+  /**
+   * Compute {@link #reachApplication}, {@link #closureJars} and {@link #fingerprints} in one pass over the strongly connected
+   * components of the call graph, callees first.
+   */
+  private void computeClosures() {
+    if (closureJars != null) {
+      return;
+    }
+    reachApplication = HashSetFactory.make();
+    closureJars = HashMapFactory.make();
+    fingerprints = HashMapFactory.make();
+    // the components come callers first
+    List<Set<CGNode>> sccs = new ArrayList<Set<CGNode>>();
+    for (SCCIterator<CGNode> it = new SCCIterator<CGNode>(cg); it.hasNext();) {
+      sccs.add(it.next());
+    }
+    for (int i = sccs.size() - 1; i >= 0; i--) {
+      Set<CGNode> scc = sccs.get(i);
+      boolean reaches = false;
+      BitVector b = new BitVector();
+      Set<String> successors = new TreeSet<String>();
+      for (CGNode n : scc) {
+        IClass klass = n.getMethod().getDeclaringClass();
+        reaches |= !isLibrary(klass);
+        addJar(klass, b);
+        for (Iterator<? extends CGNode> succs = cg.getSuccNodes(n); succs.hasNext();) {
+          CGNode s = succs.next();
+          if (!scc.contains(s)) {
+            reaches |= reachApplication.contains(s);
+            b.or(closureJars.get(s));
+            successors.add(fingerprints.get(s));
+          }
+        }
+      }
+      String fingerprint = fingerprint(scc, successors);
+      for (CGNode n : scc) {
+        if (reaches) {
+          reachApplication.add(n);
+        }
+        closureJars.put(n, b);
+        fingerprints.put(n, fingerprint);
+      }
+    }
+  }
+
+  /**
+   * @param successors the fingerprints of the components called from scc
+   * @return a hash of the nodes of scc, of the targets of their call sites, and of the fingerprints of the components they call,
+   *         which does not depend on the order of nodes and edges in the call graph
+   */
+  private String fingerprint(Set<CGNode> scc, Set<String> successors) {
+    Set<String> calls = new TreeSet<String>();
+    for (CGNode n : scc) {
+      String caller = name(n);
+      calls.add(caller);
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        for (CGNode target : cg.getPossibleTargets(n, site)) {
+          calls.add(caller + '@' + site.getProgramCounter() + '>' + name(target));
+        }
+      }
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+      for (String c : calls) {
+        digest.update(c.getBytes("UTF-8"));
+        digest.update((byte) '\n');
+      }
+      for (String f : successors) {
+        digest.update(f.getBytes("UTF-8"));
+        digest.update((byte) '\n');
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    StringBuffer result = new StringBuffer();
+    for (byte x : digest.digest()) {
+      result.append(Character.forDigit((x >> 4) & 0xf, 16));
+      result.append(Character.forDigit(x & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  private static String name(CGNode n) {
+    return n.getMethod().getSignature() + ' ' + n.getContext();
+  }
+
+  /**
+   * Add the index of the jar file klass comes from to b; synthetic classes, which have no class file, add nothing.
+   */
+  private void addJar(IClass klass, BitVector b) {
+    if (!(klass instanceof ShrikeClass)) {
+      return;
+    }
+    ModuleEntry entry = ((ShrikeClass) klass).getModuleEntry();
+    if (!(entry instanceof JarFileEntry)) {
+      b.set(UNKNOWN_JAR);
+      return;
+    }
+    String jar = ((JarFileEntry) entry).getJarFile().getName();
+    Integer index = jarIndex.get(jar);
+    if (index == null) {
+      index = jars.size();
+      jars.add(jar);
+      jarIndex.put(jar, index);
+    }
+    b.set(index);
+  }
+}
@@ -10,22 +10,25 @@
  *******************************************************************************/
 package com.ibm.wala.dataflow.IFDS;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import com.ibm.wala.util.collections.SparseVector;
 import com.ibm.wala.util.intset.BasicNaturalRelation;
-import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.BitVectorIntSetFactory;
 import com.ibm.wala.util.intset.IBinaryNaturalRelation;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntPair;
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
 import com.ibm.wala.util.intset.SparseIntSet;
 
 /**
  * A set of path edges for a particular procedure entry s_p.
  */
-public class LocalPathEdges {
+public class LocalPathEdges extends SpillableEdges {
 
   /**
    * Do paranoid error checking? (slow)
@@ -84,11 +87,28 @@ public class LocalPathEdges {
    */
   private final SparseVector<IntSet> zeroPaths = new SparseVector<IntSet>(1, 1.1f);
 
+  /**
+   * factory for the sets of block numbers in {@link #identityPaths} and {@link #zeroPaths}
+   */
+  private final MutableIntSetFactory<?> setFactory;
+
   /**
    * @param fastMerge if true, the representation uses extra space in order to support faster merge operations
    */
   public LocalPathEdges(boolean fastMerge) {
+    this(fastMerge, new BitVectorIntSetFactory());
+  }
+
+  /**
+   * @param fastMerge if true, the representation uses extra space in order to support faster merge operations
+   * @param setFactory factory for the sets of block numbers reached by identity and zero path edges
+   */
+  public LocalPathEdges(boolean fastMerge, MutableIntSetFactory<?> setFactory) {
+    if (setFactory == null) {
+      throw new IllegalArgumentException("null setFactory");
+    }
     altPaths = fastMerge ? new SparseVector<IBinaryNaturalRelation>(1, 1.1f) : null;
+    this.setFactory = setFactory;
   }
 
   /**
@@ -100,7 +120,11 @@ public class LocalPathEdges {
    * @param j
    */
   public void addPathEdge(int i, int n, int j) {
+    touch();
+    add(i, n, j);
+  }
 
+  private void add(int i, int n, int j) {
     if (i == 0) {
       addZeroPathEdge(n, j);
     } else {
@@ -113,7 +137,9 @@ public class LocalPathEdges {
           R = new BasicNaturalRelation(new byte[] { BasicNaturalRelation.SIMPLE_SPACE_STINGY }, BasicNaturalRelation.TWO_LEVEL);
           paths.set(j, R);
         }
-        R.add(n, i);
+        if (R.add(n, i)) {
+          numberOfEdges++;
+        }
 
         if (altPaths != null) {
           IBinaryNaturalRelation R2 = altPaths.get(i);
@@ -138,12 +164,14 @@ public class LocalPathEdges {
    * @param n local block number of the basic block n
    */
   private void addIdentityPathEdge(int i, int n) {
-    BitVectorIntSet s = (BitVectorIntSet) identityPaths.get(i);
+    MutableIntSet s = (MutableIntSet) identityPaths.get(i);
     if (s == null) {
-      s = new BitVectorIntSet();
+      s = setFactory.make();
       identityPaths.set(i, s);
     }
-    s.add(n);
+    if (s.add(n)) {
+      numberOfEdges++;
+    }
 
     if (altPaths != null) {
       IBinaryNaturalRelation R2 = altPaths.get(i);
@@ -169,12 +197,14 @@ public class LocalPathEdges {
    */
   private void addZeroPathEdge(int n, int j) {
 
-    BitVectorIntSet z = (BitVectorIntSet) zeroPaths.get(j);
+    MutableIntSet z = (MutableIntSet) zeroPaths.get(j);
     if (z == null) {
-      z = new BitVectorIntSet();
+      z = setFactory.make();
       zeroPaths.set(j, z);
     }
-    z.add(n);
+    if (z.add(n)) {
+      numberOfEdges++;
+    }
     if (altPaths != null) {
       IBinaryNaturalRelation R = altPaths.get(0);
       if (R == null) {
@@ -202,9 +232,10 @@ public class LocalPathEdges {
    * @return the sparse int set of d1 s.t. <s_p, d1> -> <n, d2> are recorded as path edges. null if none found
    */
   public IntSet getInverse(int n, int d2) {
+    touch();
     IBinaryNaturalRelation R = paths.get(d2);
-    BitVectorIntSet s = (BitVectorIntSet) identityPaths.get(d2);
-    BitVectorIntSet z = (BitVectorIntSet) zeroPaths.get(d2);
+    MutableIntSet s = (MutableIntSet) identityPaths.get(d2);
+    MutableIntSet z = (MutableIntSet) zeroPaths.get(d2);
     if (R == null) {
       if (s == null) {
         if (z == null) {
@@ -220,7 +251,7 @@ public class LocalPathEdges {
             return z.contains(n) ? SparseIntSet.pair(0, d2) : SparseIntSet.singleton(d2);
           }
         } else {
-          return null;
+          return (z != null && z.contains(n)) ? SparseIntSet.singleton(0) : null;
         }
       }
     } else {
@@ -279,12 +310,12 @@ public class LocalPathEdges {
    * @return true iff we have a path edge <s_p,i>-><n, j>
    */
   public boolean contains(int i, int n, int j) {
-
+    touch();
     if (n < 0) {
       throw new IllegalArgumentException("invalid n: " + n);
     }
     if (i == 0) {
-      BitVectorIntSet z = (BitVectorIntSet) zeroPaths.get(j);
+      MutableIntSet z = (MutableIntSet) zeroPaths.get(j);
       if (z != null && z.contains(n)) {
         return true;
       } else {
@@ -292,7 +323,7 @@ public class LocalPathEdges {
       }
     } else {
       if (i == j) {
-        BitVectorIntSet s = (BitVectorIntSet) identityPaths.get(i);
+        MutableIntSet s = (MutableIntSet) identityPaths.get(i);
         if (s != null && s.contains(n)) {
           return true;
         } else {
@@ -314,6 +345,7 @@ public class LocalPathEdges {
    * @return set of d2 s.t. d1->d2 is a path edge for node n.
    */
   public IntSet getReachable(int n, int d1) {
+    touch();
     if (PARANOID) {
       assert getReachableSlow(n, d1).sameValue(getReachableFast(n, d1));
     }
@@ -341,7 +373,7 @@ public class LocalPathEdges {
       }
     }
     if (identityPaths.size() > 0) {
-      BitVectorIntSet s = (BitVectorIntSet) identityPaths.get(d1);
+      MutableIntSet s = (MutableIntSet) identityPaths.get(d1);
       if (s != null && s.contains(n)) {
         result.add(d1);
       }
@@ -353,7 +385,7 @@ public class LocalPathEdges {
       Iterator contents = zeroPaths.iterator();
       for (IntIterator it = zeroPaths.iterateIndices(); it.hasNext();) {
         int d2 = it.next();
-        BitVectorIntSet s = (BitVectorIntSet) contents.next();
+        MutableIntSet s = (MutableIntSet) contents.next();
         if (s != null && s.contains(n)) {
           result.add(d2);
         }
@@ -381,6 +413,7 @@ public class LocalPathEdges {
    * @return set of d2 s.t \exists d1 s.t. d1->d2 is a path edge for node n
    */
   public IntSet getReachable(int n) {
+    touch();
     MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
     if (paths.size() > 0) {
       // this is convoluted on purpose for efficiency: to avoid random access to
@@ -402,7 +435,7 @@ public class LocalPathEdges {
       Iterator contents = identityPaths.iterator();
       for (IntIterator it = identityPaths.iterateIndices(); it.hasNext();) {
         int d1 = it.next();
-        BitVectorIntSet s = (BitVectorIntSet) contents.next();
+        MutableIntSet s = (MutableIntSet) contents.next();
         if (s != null && s.contains(n)) {
           result.add(d1);
         }
@@ -415,7 +448,7 @@ public class LocalPathEdges {
       Iterator contents = zeroPaths.iterator();
       for (IntIterator it = zeroPaths.iterateIndices(); it.hasNext();) {
         int d2 = it.next();
-        BitVectorIntSet s = (BitVectorIntSet) contents.next();
+        MutableIntSet s = (MutableIntSet) contents.next();
         if (s != null && s.contains(n)) {
           result.add(d2);
         }
@@ -430,6 +463,7 @@ public class LocalPathEdges {
    * @return set of node numbers that are reached by any fact
    */
   public IntSet getReachedNodeNumbers() {
+    touch();
     MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
     if (paths.size() > 0) {
       for (IBinaryNaturalRelation R : paths) {
@@ -450,4 +484,78 @@ public class LocalPathEdges {
     }
     return result;
   }
-}
\ No newline at end of file
+
+  @Override
+  void write(Encoder out) {
+    writeSets(out, zeroPaths);
+    writeSets(out, identityPaths);
+    out.writeInt(paths.size());
+    for (IntIterator it = paths.iterateIndices(); it.hasNext();) {
+      int j = it.next();
+      IBinaryNaturalRelation R = paths.get(j);
+      int rows = 0;
+      for (int n = 0; n <= R.maxKeyValue(); n++) {
+        if (R.anyRelated(n)) {
+          rows++;
+        }
+      }
+      out.writeInt(j);
+      out.writeInt(rows);
+      int last = 0;
+      for (int n = 0; n <= R.maxKeyValue(); n++) {
+        IntSet s = R.getRelated(n);
+        if (s != null && !s.isEmpty()) {
+          out.writeInt(n - last);
+          out.writeSet(s);
+          last = n;
+        }
+      }
+    }
+  }
+
+  private static void writeSets(Encoder out, SparseVector<IntSet> v) {
+    out.writeInt(v.size());
+    for (IntIterator it = v.iterateIndices(); it.hasNext();) {
+      int d = it.next();
+      out.writeInt(d);
+      out.writeSet(v.get(d));
+    }
+  }
+
+  @Override
+  void read(ByteBuffer in) {
+    for (int k = readInt(in); k > 0; k--) {
+      int j = readInt(in);
+      for (int n : readSet(in)) {
+        add(0, n, j);
+      }
+    }
+    for (int k = readInt(in); k > 0; k--) {
+      int i = readInt(in);
+      for (int n : readSet(in)) {
+        add(i, n, i);
+      }
+    }
+    for (int k = readInt(in); k > 0; k--) {
+      int j = readInt(in);
+      int n = 0;
+      for (int rows = readInt(in); rows > 0; rows--) {
+        n += readInt(in);
+        for (int i : readSet(in)) {
+          add(i, n, j);
+        }
+      }
+    }
+  }
+
+  @Override
+  void discard() {
+    paths.clear();
+    if (altPaths != null) {
+      altPaths.clear();
+    }
+    identityPaths.clear();
+    zeroPaths.clear();
+    numberOfEdges = 0;
+  }
+}
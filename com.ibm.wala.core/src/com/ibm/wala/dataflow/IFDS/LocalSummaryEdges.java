@@ -10,21 +10,23 @@
  *******************************************************************************/
 package com.ibm.wala.dataflow.IFDS;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
+import com.ibm.wala.util.collections.LongIntHashMap;
 import com.ibm.wala.util.collections.SparseVector;
 import com.ibm.wala.util.intset.BasicNaturalRelation;
 import com.ibm.wala.util.intset.IBinaryNaturalRelation;
+import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntPair;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
-import com.ibm.wala.util.intset.SparseLongIntVector;
 import com.ibm.wala.util.math.LongUtil;
 
 /**
  * A set of summary edges for a particular procedure.
  */
-public class LocalSummaryEdges {
+public class LocalSummaryEdges extends SpillableEdges {
 
   /**
    * A map from integer n -> (IBinaryNonNegativeIntRelation)
@@ -52,7 +54,7 @@ public class LocalSummaryEdges {
    */
   private final static int UNASSIGNED = -1;
 
-  private final SparseLongIntVector entryExitMap = new SparseLongIntVector(UNASSIGNED);
+  private final LongIntHashMap entryExitMap = new LongIntHashMap(UNASSIGNED);
 
   private int nextEntryExitIndex = 0;
 
@@ -71,14 +73,8 @@ public class LocalSummaryEdges {
    * @param d2 target dataflow fact
    */
   public void insertSummaryEdge(int s_p, int x, int d1, int d2) {
-    int n = getIndexForEntryExitPair(s_p, x);
-    IBinaryNaturalRelation R = summaries.get(n);
-    if (R == null) {
-      // we expect R to usually be sparse
-      R = new BasicNaturalRelation(new byte[] { BasicNaturalRelation.SIMPLE_SPACE_STINGY }, BasicNaturalRelation.SIMPLE);
-      summaries.set(n, R);
-    }
-    R.add(d1, d2);
+    touch();
+    add(getIndexForEntryExitPair(s_p, x), d1, d2);
     if (TabulationSolver.DEBUG_LEVEL > 1) {
       // System.err.println("recording summary edge, now n=" + n + " summarized by " + R);
     }
@@ -93,6 +89,7 @@ public class LocalSummaryEdges {
    * @param d2 target dataflow fact
    */
   public boolean contains(int s_p, int x, int d1, int d2) {
+    touch();
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -109,6 +106,7 @@ public class LocalSummaryEdges {
    * @return set of d2 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
   public IntSet getSummaryEdges(int s_p, int x, int d1) {
+    touch();
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -127,6 +125,7 @@ public class LocalSummaryEdges {
    * @return set of d1 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
   public IntSet getInvertedSummaryEdgesForTarget(int s_p, int x, int d2) {
+    touch();
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -143,6 +142,18 @@ public class LocalSummaryEdges {
     }
   }
 
+  private void add(int n, int d1, int d2) {
+    IBinaryNaturalRelation R = summaries.get(n);
+    if (R == null) {
+      // we expect R to usually be sparse
+      R = new BasicNaturalRelation(new byte[] { BasicNaturalRelation.SIMPLE_SPACE_STINGY }, BasicNaturalRelation.SIMPLE);
+      summaries.set(n, R);
+    }
+    if (R.add(d1, d2)) {
+      numberOfEdges++;
+    }
+  }
+
   /**
    * @return unique id n that represents the pair (s_p,x)
    */
@@ -151,9 +162,57 @@ public class LocalSummaryEdges {
     int result = entryExitMap.get(id);
     if (result == UNASSIGNED) {
       result = nextEntryExitIndex++;
-      entryExitMap.set(id, result);
+      entryExitMap.put(id, result);
     }
     return result;
   }
 
-}
\ No newline at end of file
+  /**
+   * Only the summary relations are written; the entry-exit indices stay in memory.
+   */
+  @Override
+  void write(Encoder out) {
+    out.writeInt(summaries.size());
+    for (IntIterator it = summaries.iterateIndices(); it.hasNext();) {
+      int n = it.next();
+      IBinaryNaturalRelation R = summaries.get(n);
+      int rows = 0;
+      for (int d1 = 0; d1 <= R.maxKeyValue(); d1++) {
+        if (R.anyRelated(d1)) {
+          rows++;
+        }
+      }
+      out.writeInt(n);
+      out.writeInt(rows);
+      int last = 0;
+      for (int d1 = 0; d1 <= R.maxKeyValue(); d1++) {
+        IntSet s = R.getRelated(d1);
+        if (s != null && !s.isEmpty()) {
+          out.writeInt(d1 - last);
+          out.writeSet(s);
+          last = d1;
+        }
+      }
+    }
+  }
+
+  @Override
+  void read(ByteBuffer in) {
+    for (int k = readInt(in); k > 0; k--) {
+      int n = readInt(in);
+      int d1 = 0;
+      for (int rows = readInt(in); rows > 0; rows--) {
+        d1 += readInt(in);
+        for (int d2 : readSet(in)) {
+          add(n, d1, d2);
+        }
+      }
+    }
+  }
+
+  @Override
+  void discard() {
+    summaries.clear();
+    numberOfEdges = 0;
+  }
+}
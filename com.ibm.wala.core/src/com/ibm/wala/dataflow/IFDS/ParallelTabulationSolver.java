@@ -0,0 +1,612 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ThreadUtil;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A tabulation solver that processes path edges on several threads. It computes the same {@link TabulationResult} as
+ * {@link TabulationSolver}: without a merge function the tabulation is a fixed point that does not depend on the order in which path
+ * edges are processed.
+ * <p>
+ * Each worker thread pushes the path edges it discovers onto its own deque and takes work from it last-in first-out; an idle worker
+ * steals the oldest edges from the other workers. Worklist priorities from the {@link TabulationDomain} are ignored.
+ * <p>
+ * The {@link LocalPathEdges}, {@link CallFlowEdges} and {@link LocalSummaryEdges} are kept per procedure entry (or procedure) as in
+ * {@link TabulationSolver}, and each is guarded by its own monitor, so threads only contend when they work in the same procedure.
+ * When processing an exit, the summary edge is recorded and the callers are read while holding the lock on the callee's
+ * {@link CallFlowEdges}; processing a call records the call flow and reads the summaries under the same lock. So each summary edge
+ * is applied either by the exit or by the call, as in the sequential algorithm.
+ * <p>
+ * Limitations:
+ * <ul>
+ * <li>the supergraph is constructed fully before tabulation starts, and the flow functions must tolerate concurrent queries.
+ * <li>problems with a {@link IMergeFunction merge function} are solved sequentially, since merging depends on the processing order.
+ * <li>unbalanced returns, as in {@link PartiallyBalancedTabulationSolver}, are not supported.
+ * </ul>
+ *
+ * @param <T> type of node in the supergraph
+ * @param <P> type of a procedure (like a box in an RSM)
+ * @param <F> type of factoids propagated when solving this problem
+ */
+public class ParallelTabulationSolver<T, P, F> {
+
+  /**
+   * number of path edges a worker processes between checks of the progress monitor
+   */
+  private final static int CANCEL_CHECK_INTERVAL = 1024;
+
+  private final TabulationProblem<T, P, F> problem;
+
+  private final ISupergraph<T, P> supergraph;
+
+  private final IFlowFunctionMap<T> flowFunctionMap;
+
+  private final int nThreads;
+
+  /**
+   * A progress monitor. can be null.
+   */
+  private final IProgressMonitor progressMonitor;
+
+  /**
+   * A map from entry node in supergraph -> LocalPathEdges; see {@link TabulationSolver}
+   */
+  private final ConcurrentMap<T, LocalPathEdges> pathEdges = new ConcurrentHashMap<T, LocalPathEdges>();
+
+  /**
+   * A map from entry node in supergraph -> CallFlowEdges; see {@link TabulationSolver}
+   */
+  private final ConcurrentMap<T, CallFlowEdges> callFlowEdges = new ConcurrentHashMap<T, CallFlowEdges>();
+
+  /**
+   * A map from procedure -> LocalSummaryEdges; see {@link TabulationSolver}
+   */
+  private final ConcurrentMap<P, LocalSummaryEdges> summaryEdges = new ConcurrentHashMap<P, LocalSummaryEdges>();
+
+  /**
+   * the seeds of the tabulation, grouped by procedure
+   */
+  private final Map<P, Set<PathEdge<T>>> seeds = HashMapFactory.make();
+
+  /**
+   * All seeds, stored redundantly for quick access.
+   */
+  private final Set<PathEdge<T>> allSeeds = HashSetFactory.make();
+
+  /**
+   * path edges discovered but not yet processed, including those being processed
+   */
+  private final AtomicLong pending = new AtomicLong();
+
+  /**
+   * set when the tabulation is canceled or a worker fails, to stop the other workers
+   */
+  private volatile boolean stop;
+
+  private volatile boolean canceled;
+
+  private List<Worker> workers;
+
+  /**
+   * @param p a description of the dataflow problem to solve
+   * @param nThreads number of worker threads
+   * @param monitor a progress monitor, or null
+   * @throws IllegalArgumentException if p is null or nThreads < 1
+   */
+  protected ParallelTabulationSolver(TabulationProblem<T, P, F> p, int nThreads, IProgressMonitor monitor) {
+    if (p == null) {
+      throw new IllegalArgumentException("p is null");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + nThreads);
+    }
+    this.problem = p;
+    this.supergraph = p.getSupergraph();
+    this.flowFunctionMap = p.getFunctionMap();
+    this.nThreads = nThreads;
+    this.progressMonitor = monitor;
+  }
+
+  /**
+   * @param p a description of the dataflow problem to solve
+   * @param nThreads number of worker threads
+   * @throws IllegalArgumentException if p is null or nThreads < 1
+   */
+  public static <T, P, F> ParallelTabulationSolver<T, P, F> make(TabulationProblem<T, P, F> p, int nThreads) {
+    return new ParallelTabulationSolver<T, P, F>(p, nThreads, null);
+  }
+
+  /**
+   * @param p a description of the dataflow problem to solve
+   * @param nThreads number of worker threads
+   * @param monitor a progress monitor, or null
+   * @throws IllegalArgumentException if p is null or nThreads < 1
+   */
+  public static <T, P, F> ParallelTabulationSolver<T, P, F> make(TabulationProblem<T, P, F> p, int nThreads,
+      IProgressMonitor monitor) {
+    return new ParallelTabulationSolver<T, P, F>(p, nThreads, monitor);
+  }
+
+  /**
+   * Solve the dataflow problem. This may be called only once.
+   *
+   * @return a representation of the result
+   * @throws TabulationCancelException, holding a partial result, if the progress monitor cancels the tabulation
+   */
+  public TabulationResult<T, P, F> solve() throws CancelException {
+    if (workers != null) {
+      throw new IllegalStateException("already solved");
+    }
+    if (problem.getMergeFunction() != null) {
+      return new TabulationSolver<T, P, F>(problem, progressMonitor).solve();
+    }
+    // ICFG-based supergraphs are built lazily, and not thread-safe while they are being built
+    supergraph.getNumberOfNodes();
+
+    workers = new ArrayList<Worker>(nThreads);
+    for (int i = 0; i < nThreads; i++) {
+      workers.add(new Worker(i));
+    }
+    int k = 0;
+    for (PathEdge<T> seed : problem.initialSeeds()) {
+      MapUtil.findOrCreateSet(seeds, supergraph.getProcOf(seed.entry)).add(seed);
+      allSeeds.add(seed);
+      workers.get(k++ % nThreads).propagate(seed.entry, seed.d1, seed.target, seed.d2);
+    }
+
+    ExecutorService pool = ThreadUtil.makeDaemonPool(nThreads, "tabulation worker");
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(nThreads);
+      for (Worker w : workers) {
+        futures.add(pool.submit(w));
+      }
+      ThreadUtil.getAll(futures, "tabulating");
+    } finally {
+      stop = true;
+      pool.shutdown();
+    }
+    if (canceled) {
+      throw new TabulationCancelException(CancelException.make("tabulation canceled"), new Result());
+    }
+    return new Result();
+  }
+
+  private boolean isCanceled() {
+    if (progressMonitor == null) {
+      return false;
+    }
+    synchronized (progressMonitor) {
+      return progressMonitor.isCanceled();
+    }
+  }
+
+  private LocalPathEdges findOrCreateLocalPathEdges(T s_p) {
+    LocalPathEdges result = pathEdges.get(s_p);
+    if (result == null) {
+      LocalPathEdges l = new LocalPathEdges(false);
+      result = pathEdges.putIfAbsent(s_p, l);
+      if (result == null) {
+        result = l;
+      }
+    }
+    return result;
+  }
+
+  private CallFlowEdges findOrCreateCallFlowEdges(T s_p) {
+    CallFlowEdges result = callFlowEdges.get(s_p);
+    if (result == null) {
+      CallFlowEdges c = new CallFlowEdges();
+      result = callFlowEdges.putIfAbsent(s_p, c);
+      if (result == null) {
+        result = c;
+      }
+    }
+    return result;
+  }
+
+  private LocalSummaryEdges findOrCreateLocalSummaryEdges(P proc) {
+    LocalSummaryEdges result = summaryEdges.get(proc);
+    if (result == null) {
+      LocalSummaryEdges s = new LocalSummaryEdges();
+      result = summaryEdges.putIfAbsent(proc, s);
+      if (result == null) {
+        result = s;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return a private copy of s, or null if s is null
+   */
+  private static IntSet copy(IntSet s) {
+    return s == null ? null : MutableSparseIntSet.make(s);
+  }
+
+  /**
+   * A worker thread's view of the tabulation; the processing methods mirror those of {@link TabulationSolver}, but only read the
+   * shared edge structures through private copies taken under their locks.
+   */
+  private class Worker implements Callable<Object> {
+
+    private final int id;
+
+    /**
+     * path edges discovered by this worker; guarded by itself
+     */
+    private final LinkedList<PathEdge<T>> deque = new LinkedList<PathEdge<T>>();
+
+    Worker(int id) {
+      this.id = id;
+    }
+
+    public Object call() throws Exception {
+      try {
+        int count = 0;
+        while (!stop) {
+          PathEdge<T> edge = take();
+          if (edge == null) {
+            if (pending.get() == 0) {
+              break;
+            }
+            Thread.yield();
+            continue;
+          }
+          try {
+            if (++count % CANCEL_CHECK_INTERVAL == 0 && isCanceled()) {
+              canceled = true;
+              stop = true;
+            }
+            process(edge);
+          } finally {
+            pending.decrementAndGet();
+          }
+        }
+        return null;
+      } catch (Throwable t) {
+        stop = true;
+        if (t instanceof Exception) {
+          throw (Exception) t;
+        } else {
+          throw (Error) t;
+        }
+      }
+    }
+
+    /**
+     * @return the newest edge from this worker's deque, or else the oldest edge stolen from another worker, or null if none found
+     */
+    private PathEdge<T> take() {
+      synchronized (deque) {
+        if (!deque.isEmpty()) {
+          return deque.removeLast();
+        }
+      }
+      for (int i = 1; i < nThreads; i++) {
+        Worker victim = workers.get((id + i) % nThreads);
+        synchronized (victim.deque) {
+          if (!victim.deque.isEmpty()) {
+            return victim.deque.removeFirst();
+          }
+        }
+      }
+      return null;
+    }
+
+    private void process(PathEdge<T> edge) {
+      if (supergraph.isCall(edge.target)) {
+        processCall(edge);
+      } else if (supergraph.isExit(edge.target)) {
+        processExit(edge);
+      } else {
+        processNormal(edge);
+      }
+    }
+
+    /**
+     * Record the path edge <s_p,i> -> <n, j> and add it to this worker's deque, unless it was previously observed.
+     *
+     * @return true iff the path edge was not previously observed
+     */
+    boolean propagate(T s_p, int i, T n, int j) {
+      int number = supergraph.getLocalBlockNumber(n);
+      assert number >= 0;
+      assert j >= 0;
+      LocalPathEdges pLocal = findOrCreateLocalPathEdges(s_p);
+      synchronized (pLocal) {
+        if (pLocal.contains(i, number, j)) {
+          return false;
+        }
+        pLocal.addPathEdge(i, number, j);
+      }
+      pending.incrementAndGet();
+      synchronized (deque) {
+        deque.addLast(PathEdge.createPathEdge(s_p, i, n, j));
+      }
+      return true;
+    }
+
+    private void propagateAll(T s_p, int i, T n, IntSet D) {
+      if (D != null) {
+        for (IntIterator it = D.intIterator(); it.hasNext();) {
+          propagate(s_p, i, n, it.next());
+        }
+      }
+    }
+
+    private void processNormal(PathEdge<T> edge) {
+      for (Iterator<? extends T> it = supergraph.getSuccNodes(edge.target); it.hasNext();) {
+        T m = it.next();
+        IUnaryFlowFunction f = flowFunctionMap.getNormalFlowFunction(edge.target, m);
+        propagateAll(edge.entry, edge.d1, m, f.getTargets(edge.d2));
+      }
+    }
+
+    private void processExit(PathEdge<T> edge) {
+      LocalSummaryEdges summaries = findOrCreateLocalSummaryEdges(supergraph.getProcOf(edge.target));
+      CallFlowEdges callFlow = findOrCreateCallFlowEdges(edge.entry);
+      int s_p_n = supergraph.getLocalBlockNumber(edge.entry);
+      int x = supergraph.getLocalBlockNumber(edge.target);
+
+      // record the summary edge and read the callers atomically with respect to processParticularCallee
+      IntSet callFlowSourceNodes;
+      List<IntSet> D4s = new ArrayList<IntSet>();
+      synchronized (callFlow) {
+        synchronized (summaries) {
+          if (!summaries.contains(s_p_n, x, edge.d1, edge.d2)) {
+            summaries.insertSummaryEdge(s_p_n, x, edge.d1, edge.d2);
+          }
+        }
+        callFlowSourceNodes = copy(callFlow.getCallFlowSourceNodes(edge.d1));
+        if (callFlowSourceNodes != null) {
+          for (IntIterator it = callFlowSourceNodes.intIterator(); it.hasNext();) {
+            D4s.add(copy(callFlow.getCallFlowSources(it.next(), edge.d1)));
+          }
+        }
+      }
+      if (callFlowSourceNodes != null) {
+        Iterator<IntSet> d4 = D4s.iterator();
+        for (IntIterator it = callFlowSourceNodes.intIterator(); it.hasNext();) {
+          propagateToReturnSites(edge, supergraph.getNode(it.next()), d4.next());
+        }
+      }
+    }
+
+    private void propagateToReturnSites(PathEdge<T> edge, T c, IntSet D4) {
+      T[] entries = supergraph.getEntriesForProcedure(supergraph.getProcOf(c));
+      for (Iterator<? extends T> retSites = supergraph.getReturnSites(c, supergraph.getProcOf(edge.target)); retSites.hasNext();) {
+        T retSite = retSites.next();
+        if (!supergraph.hasEdge(edge.target, retSite)) {
+          continue;
+        }
+        IFlowFunction retf = flowFunctionMap.getReturnFlowFunction(c, edge.target, retSite);
+        IntSet D5 = retf instanceof IBinaryReturnFlowFunction ? null : ((IUnaryFlowFunction) retf).getTargets(edge.d2);
+        for (IntIterator it = D4.intIterator(); it.hasNext();) {
+          int d4 = it.next();
+          if (retf instanceof IBinaryReturnFlowFunction) {
+            D5 = ((IBinaryReturnFlowFunction) retf).getTargets(d4, edge.d2);
+          }
+          if (D5 != null) {
+            for (T s_p : entries) {
+              IntSet D3 = getInversePathEdges(s_p, c, d4);
+              if (D3 != null) {
+                for (IntIterator it3 = D3.intIterator(); it3.hasNext();) {
+                  propagateAll(s_p, it3.next(), retSite, D5);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private IntSet getInversePathEdges(T s_p, T n, int d2) {
+      LocalPathEdges lp = pathEdges.get(s_p);
+      if (lp == null) {
+        return null;
+      }
+      synchronized (lp) {
+        return copy(lp.getInverse(supergraph.getLocalBlockNumber(n), d2));
+      }
+    }
+
+    private void processCall(PathEdge<T> edge) {
+      int c = supergraph.getNumber(edge.target);
+
+      Collection<T> allReturnSites = HashSetFactory.make();
+      for (Iterator<? extends T> it = supergraph.getReturnSites(edge.target, null); it.hasNext();) {
+        allReturnSites.add(it.next());
+      }
+      boolean hasCallee = false;
+      for (Iterator<? extends T> it = supergraph.getCalledNodes(edge.target); it.hasNext();) {
+        hasCallee = true;
+        processParticularCallee(edge, c, allReturnSites, it.next());
+      }
+      // in backwards problems, a "call" node can have "normal" successors as well
+      for (Iterator<? extends T> it = supergraph.getNormalSuccessors(edge.target); it.hasNext();) {
+        T m = it.next();
+        IUnaryFlowFunction f = flowFunctionMap.getNormalFlowFunction(edge.target, m);
+        propagateAll(edge.entry, edge.d1, m, f.getTargets(edge.d2));
+      }
+      for (T returnSite : allReturnSites) {
+        IUnaryFlowFunction f = hasCallee ? flowFunctionMap.getCallToReturnFlowFunction(edge.target, returnSite) : flowFunctionMap
+            .getCallNoneToReturnFlowFunction(edge.target, returnSite);
+        propagateAll(edge.entry, edge.d1, returnSite, f.getTargets(edge.d2));
+      }
+    }
+
+    private void processParticularCallee(PathEdge<T> edge, int callNodeNum, Collection<T> allReturnSites, T calleeEntry) {
+      MutableSparseIntSet reached = MutableSparseIntSet.makeEmpty();
+      P callee = supergraph.getProcOf(calleeEntry);
+      Collection<T> returnSitesForCallee = Iterator2Collection.toSet(supergraph.getReturnSites(edge.target, callee));
+      allReturnSites.addAll(returnSitesForCallee);
+      for (T returnSite : returnSitesForCallee) {
+        IntSet r = flowFunctionMap.getCallFlowFunction(edge.target, calleeEntry, returnSite).getTargets(edge.d2);
+        if (r != null) {
+          reached.addAll(r);
+        }
+      }
+      // flow into a callee that can never flow out via a return
+      IntSet r = flowFunctionMap.getCallFlowFunction(edge.target, calleeEntry, null).getTargets(edge.d2);
+      if (r != null) {
+        reached.addAll(r);
+      }
+
+      CallFlowEdges callFlow = findOrCreateCallFlowEdges(calleeEntry);
+      int s_p_num = supergraph.getLocalBlockNumber(calleeEntry);
+      T[] exits = supergraph.getExitsForProcedure(callee);
+      for (IntIterator it = reached.intIterator(); it.hasNext();) {
+        int d1 = it.next();
+        propagate(calleeEntry, d1, calleeEntry, d1);
+
+        // record the call flow and read the summaries atomically with respect to processExit
+        IntSet[] reachedBySummary = new IntSet[exits.length];
+        synchronized (callFlow) {
+          callFlow.addCallEdge(callNodeNum, edge.d2, d1);
+          LocalSummaryEdges summaries = summaryEdges.get(callee);
+          if (summaries != null) {
+            synchronized (summaries) {
+              for (int e = 0; e < exits.length; e++) {
+                reachedBySummary[e] = copy(summaries.getSummaryEdges(s_p_num, supergraph.getLocalBlockNumber(exits[e]), d1));
+              }
+            }
+          }
+        }
+        for (int e = 0; e < exits.length; e++) {
+          if (reachedBySummary[e] != null) {
+            for (T returnSite : returnSitesForCallee) {
+              if (supergraph.hasEdge(exits[e], returnSite)) {
+                IFlowFunction retf = flowFunctionMap.getReturnFlowFunction(edge.target, exits[e], returnSite);
+                for (IntIterator it2 = reachedBySummary[e].intIterator(); it2.hasNext();) {
+                  int d2 = it2.next();
+                  IntSet D5 = retf instanceof IBinaryReturnFlowFunction ? ((IBinaryReturnFlowFunction) retf).getTargets(edge.d2, d2)
+                      : ((IUnaryFlowFunction) retf).getTargets(d2);
+                  propagateAll(edge.entry, edge.d1, returnSite, D5);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * get the bitvector of facts that hold at the entry to a given node
+   *
+   * @return IntSet representing the bitvector
+   */
+  public IntSet getResult(T node) {
+    P proc = supergraph.getProcOf(node);
+    int n = supergraph.getLocalBlockNumber(node);
+    MutableIntSet result = MutableSparseIntSet.makeEmpty();
+
+    Set<T> allEntries = HashSetFactory.make(Arrays.asList(supergraph.getEntriesForProcedure(proc)));
+    Set<PathEdge<T>> pSeeds = seeds.get(proc);
+    if (pSeeds != null) {
+      for (PathEdge<T> seed : pSeeds) {
+        allEntries.add(seed.entry);
+      }
+    }
+    for (T entry : allEntries) {
+      LocalPathEdges lp = pathEdges.get(entry);
+      if (lp != null) {
+        synchronized (lp) {
+          result.addAll(lp.getReachable(n));
+        }
+      }
+    }
+    return result;
+  }
+
+  private class Result implements TabulationResult<T, P, F> {
+
+    public IntSet getResult(T node) {
+      return ParallelTabulationSolver.this.getResult(node);
+    }
+
+    public TabulationProblem<T, P, F> getProblem() {
+      return problem;
+    }
+
+    public Collection<T> getSupergraphNodesReached() {
+      Collection<T> result = HashSetFactory.make();
+      for (Map.Entry<T, LocalPathEdges> e : pathEdges.entrySet()) {
+        P proc = supergraph.getProcOf(e.getKey());
+        IntSet reached;
+        synchronized (e.getValue()) {
+          reached = e.getValue().getReachedNodeNumbers();
+        }
+        for (IntIterator ii = reached.intIterator(); ii.hasNext();) {
+          result.add(supergraph.getLocalBlock(proc, ii.next()));
+        }
+      }
+      return result;
+    }
+
+    public IntSet getSummaryTargets(T n1, int d1, T n2) {
+      LocalSummaryEdges summaries = summaryEdges.get(supergraph.getProcOf(n1));
+      if (summaries == null) {
+        return null;
+      }
+      synchronized (summaries) {
+        return copy(summaries.getSummaryEdges(supergraph.getLocalBlockNumber(n1), supergraph.getLocalBlockNumber(n2), d1));
+      }
+    }
+
+    public Collection<PathEdge<T>> getSeeds() {
+      return ParallelTabulationSolver.this.getSeeds();
+    }
+  }
+
+  public Collection<PathEdge<T>> getSeeds() {
+    return Collections.unmodifiableCollection(allSeeds);
+  }
+
+  public TabulationProblem<T, P, F> getProblem() {
+    return problem;
+  }
+
+  public ISupergraph<T, P> getSupergraph() {
+    return supergraph;
+  }
+
+  public int getNumberOfThreads() {
+    return nThreads;
+  }
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Summary edges of procedures, e.g. of library methods, saved from one {@link TabulationSolver} run to be reused in later runs of
+ * the same problem over other programs.
+ * <p>
+ * For each procedure, identified by the key from an {@link ISummaryNaming} and its domain encoding, this records each (entry, fact)
+ * pair that was tabulated, with the summary edges from it. Importing them into a new solver, before it starts, makes the solver
+ * apply these summary edges at calls to the procedure instead of tabulating it again. Summaries are only exported from a complete
+ * tabulation, and are discarded on import when the version of the procedure, e.g. the hash of its jar, has changed.
+ * <p>
+ * The summary of a procedure depends on everything it calls, so only procedures that never call back into code that differs
+ * between runs should be named, and their version must identify the targets their calls have, as well as the code. Facts at nodes
+ * inside an imported procedure, other than its entries, are not computed.
+ */
+public class ProcedureSummaries {
+
+  private final static int MAGIC = 0x57494653;
+
+  private final static int VERSION = 1;
+
+  /**
+   * The summary edges from a tabulated (entry, fact) pair
+   */
+  private static class EntryFact {
+    /**
+     * local block number of the entry
+     */
+    final int entry;
+
+    final String fact;
+
+    /**
+     * local block numbers of the exits reached, in parallel with {@link #targets}
+     */
+    final int[] exits;
+
+    final String[] targets;
+
+    EntryFact(int entry, String fact, int[] exits, String[] targets) {
+      this.entry = entry;
+      this.fact = fact;
+      this.exits = exits;
+      this.targets = targets;
+    }
+  }
+
+  private static class Summary {
+    final String version;
+
+    final List<EntryFact> entryFacts;
+
+    Summary(String version, List<EntryFact> entryFacts) {
+      this.version = version;
+      this.entryFacts = entryFacts;
+    }
+  }
+
+  /**
+   * (domain encoding, procedure key) -> summary
+   */
+  private final Map<Pair<String, String>, Summary> summaries = HashMapFactory.make();
+
+  public ProcedureSummaries() {
+  }
+
+  /**
+   * @return the number of procedures with a summary
+   */
+  public int size() {
+    return summaries.size();
+  }
+
+  public boolean contains(String domainEncoding, String procedureKey) {
+    return summaries.containsKey(Pair.make(domainEncoding, procedureKey));
+  }
+
+  /**
+   * Record the summaries of all procedures with a key and a version in a complete tabulation, replacing previous ones.
+   *
+   * @return the number of procedures recorded
+   * @throws IllegalStateException if the tabulation is not complete
+   */
+  public <T, P> int exportSummaries(TabulationSolver<T, P, ?> solver, ISummaryNaming<P> naming) {
+    if (solver == null) {
+      throw new IllegalArgumentException("null solver");
+    }
+    if (naming == null) {
+      throw new IllegalArgumentException("null naming");
+    }
+    if (solver.getSeeds().isEmpty() || solver.hasPendingWork()) {
+      throw new IllegalStateException("tabulation is not complete");
+    }
+    ISupergraph<T, P> supergraph = solver.getSupergraph();
+    String encoding = naming.getDomainEncoding();
+    int result = 0;
+    Set<P> done = HashSetFactory.make();
+    for (T node : supergraph) {
+      if (!supergraph.isEntry(node) || solver.getLocalPathEdges(node) == null) {
+        continue;
+      }
+      P p = supergraph.getProcOf(node);
+      if (!done.add(p)) {
+        continue;
+      }
+      String key = naming.getProcedureKey(p);
+      String version = naming.getVersion(p);
+      if (key != null && version != null) {
+        List<EntryFact> entryFacts = summarize(solver, naming, p);
+        if (entryFacts != null) {
+          summaries.put(Pair.make(encoding, key), new Summary(version, entryFacts));
+          result++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the summary edges from each tabulated (entry, fact) pair of p, or null if some fact cannot be named
+   */
+  private static <T, P> List<EntryFact> summarize(TabulationSolver<T, P, ?> solver, ISummaryNaming<P> naming, P p) {
+    ISupergraph<T, P> supergraph = solver.getSupergraph();
+    LocalSummaryEdges summaries = solver.summaryEdges.get(p);
+    T[] exits = supergraph.getExitsForProcedure(p);
+    List<EntryFact> result = new ArrayList<EntryFact>();
+    for (T entry : supergraph.getEntriesForProcedure(p)) {
+      LocalPathEdges lp = solver.getLocalPathEdges(entry);
+      if (lp == null) {
+        continue;
+      }
+      int s_p = supergraph.getLocalBlockNumber(entry);
+      for (IntIterator it = lp.getReachable(s_p).intIterator(); it.hasNext();) {
+        int d1 = it.next();
+        if (!lp.contains(d1, s_p, d1)) {
+          continue;
+        }
+        String fact = naming.getFactKey(d1);
+        if (fact == null) {
+          return null;
+        }
+        List<Integer> exitNumbers = new ArrayList<Integer>();
+        List<String> targets = new ArrayList<String>();
+        for (T exit : exits) {
+          int x = supergraph.getLocalBlockNumber(exit);
+          IntSet D2 = summaries == null ? null : summaries.getSummaryEdges(s_p, x, d1);
+          if (D2 != null) {
+            for (IntIterator it2 = D2.intIterator(); it2.hasNext();) {
+              String target = naming.getFactKey(it2.next());
+              if (target == null) {
+                return null;
+              }
+              exitNumbers.add(x);
+              targets.add(target);
+            }
+          }
+        }
+        int[] exitArray = new int[exitNumbers.size()];
+        for (int i = 0; i < exitArray.length; i++) {
+          exitArray[i] = exitNumbers.get(i);
+        }
+        result.add(new EntryFact(s_p, fact, exitArray, targets.toArray(new String[targets.size()])));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Install the recorded summaries of the procedures in the solver's supergraph, so the solver does not tabulate them again. Must be
+   * called before the solver starts. Summaries whose version differs from the current one are discarded, and procedures containing
+   * an initial seed are skipped.
+   *
+   * @return the number of procedures whose summaries were installed
+   * @throws IllegalStateException if the solver has already started
+   */
+  public <T, P> int importSummaries(TabulationSolver<T, P, ?> solver, ISummaryNaming<P> naming) {
+    if (solver == null) {
+      throw new IllegalArgumentException("null solver");
+    }
+    if (naming == null) {
+      throw new IllegalArgumentException("null naming");
+    }
+    if (!solver.getSeeds().isEmpty()) {
+      throw new IllegalStateException("summaries must be imported before tabulation starts");
+    }
+    ISupergraph<T, P> supergraph = solver.getSupergraph();
+    Set<P> seeded = HashSetFactory.make();
+    for (PathEdge<T> seed : solver.getProblem().initialSeeds()) {
+      seeded.add(supergraph.getProcOf(seed.entry));
+    }
+    String encoding = naming.getDomainEncoding();
+    int result = 0;
+    for (Iterator<? extends P> it = supergraph.getProcedureGraph().iterator(); it.hasNext();) {
+      P p = it.next();
+      String key = naming.getProcedureKey(p);
+      if (key == null || seeded.contains(p)) {
+        continue;
+      }
+      Pair<String, String> k = Pair.make(encoding, key);
+      Summary s = summaries.get(k);
+      if (s == null) {
+        continue;
+      }
+      if (!s.version.equals(naming.getVersion(p))) {
+        summaries.remove(k);
+        continue;
+      }
+      if (install(solver, naming, p, s)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private static <T, P> boolean install(TabulationSolver<T, P, ?> solver, ISummaryNaming<P> naming, P p, Summary s) {
+    ISupergraph<T, P> supergraph = solver.getSupergraph();
+    int nBlocks = supergraph.getNumberOfBlocks(p);
+    boolean result = false;
+    outer: for (EntryFact e : s.entryFacts) {
+      if (e.entry >= nBlocks || !supergraph.isEntry(supergraph.getLocalBlock(p, e.entry))) {
+        continue;
+      }
+      int d1 = naming.getFact(e.fact);
+      if (d1 < 0) {
+        continue;
+      }
+      int[] d2 = new int[e.targets.length];
+      for (int i = 0; i < d2.length; i++) {
+        d2[i] = naming.getFact(e.targets[i]);
+        if (d2[i] < 0 || e.exits[i] >= nBlocks || !supergraph.isExit(supergraph.getLocalBlock(p, e.exits[i]))) {
+          continue outer;
+        }
+      }
+      // the identity path edge at the entry makes calls with d1 reuse the summary edges instead of tabulating p
+      solver.findOrCreateLocalPathEdges(supergraph.getLocalBlock(p, e.entry)).addPathEdge(d1, e.entry, d1);
+      LocalSummaryEdges summaries = solver.findOrCreateLocalSummaryEdges(p);
+      for (int i = 0; i < d2.length; i++) {
+        summaries.insertSummaryEdge(e.entry, e.exits[i], d1, d2[i]);
+      }
+      result = true;
+    }
+    return result;
+  }
+
+  public void write(OutputStream s) throws IOException {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(summaries.size());
+    for (Map.Entry<Pair<String, String>, Summary> e : summaries.entrySet()) {
+      out.writeUTF(e.getKey().fst);
+      out.writeUTF(e.getKey().snd);
+      Summary summary = e.getValue();
+      out.writeUTF(summary.version);
+      out.writeInt(summary.entryFacts.size());
+      for (EntryFact f : summary.entryFacts) {
+        out.writeInt(f.entry);
+        out.writeUTF(f.fact);
+        out.writeInt(f.exits.length);
+        for (int i = 0; i < f.exits.length; i++) {
+          out.writeInt(f.exits[i]);
+          out.writeUTF(f.targets[i]);
+        }
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * @throws IOException if s does not hold summaries written by {@link #write(OutputStream)}
+   */
+  public static ProcedureSummaries read(InputStream s) throws IOException {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(s));
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("not a summary file");
+    }
+    ProcedureSummaries result = new ProcedureSummaries();
+    for (int n = in.readInt(); n > 0; n--) {
+      String encoding = in.readUTF();
+      String key = in.readUTF();
+      String version = in.readUTF();
+      int nFacts = in.readInt();
+      List<EntryFact> entryFacts = new ArrayList<EntryFact>(nFacts);
+      for (int i = 0; i < nFacts; i++) {
+        int entry = in.readInt();
+        String fact = in.readUTF();
+        int[] exits = new int[in.readInt()];
+        String[] targets = new String[exits.length];
+        for (int j = 0; j < exits.length; j++) {
+          exits[j] = in.readInt();
+          targets[j] = in.readUTF();
+        }
+        entryFacts.add(new EntryFact(entry, fact, exits, targets));
+      }
+      result.summaries.put(Pair.make(encoding, key), new Summary(version, entryFacts));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcedureSummaries: " + summaries.size() + " procedures";
+  }
+}
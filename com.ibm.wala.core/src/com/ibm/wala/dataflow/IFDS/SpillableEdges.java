@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.nio.ByteBuffer;
+
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * A set of edges that an {@link EdgeSpillStore} can move to disk and back. Subclasses call {@link #touch()} on entry to each public
+ * method, which faults the edges back in if they were spilled.
+ */
+abstract class SpillableEdges {
+
+  /**
+   * the store managing these edges, or null if they always stay in memory
+   */
+  EdgeSpillStore store;
+
+  /**
+   * number of edges recorded, as a measure of size
+   */
+  int numberOfEdges;
+
+  /**
+   * number of edges the store has accounted for
+   */
+  int accountedEdges;
+
+  /**
+   * true iff the edges are on disk rather than in memory
+   */
+  boolean spilled;
+
+  /**
+   * location and size of the slot on disk last used for these edges, or -1 if none
+   */
+  long offset = -1;
+
+  int capacity;
+
+  int length;
+
+  final void touch() {
+    if (store != null) {
+      store.touch(this);
+    }
+  }
+
+  /**
+   * append an encoding of the edges to out
+   */
+  abstract void write(Encoder out);
+
+  /**
+   * add the edges encoded in in; called on an empty instance
+   */
+  abstract void read(ByteBuffer in);
+
+  /**
+   * forget all edges; afterwards, the instance is empty
+   */
+  abstract void discard();
+
+  /**
+   * A growable byte array holding variable-length integers
+   */
+  static class Encoder {
+    byte[] bytes = new byte[256];
+
+    int size = 0;
+
+    void writeByte(int b) {
+      if (size == bytes.length) {
+        byte[] old = bytes;
+        bytes = new byte[2 * old.length];
+        System.arraycopy(old, 0, bytes, 0, size);
+      }
+      bytes[size++] = (byte) b;
+    }
+
+    /**
+     * write a zigzag-encoded variable length integer, so that small values, including small negative deltas, take one byte
+     */
+    void writeInt(int i) {
+      int v = (i << 1) ^ (i >> 31);
+      while ((v & ~0x7f) != 0) {
+        writeByte((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      writeByte(v);
+    }
+
+    /**
+     * write the size of s and then its elements, each as the difference to the previous one
+     */
+    void writeSet(IntSet s) {
+      writeInt(s.size());
+      int last = 0;
+      for (IntIterator it = s.intIterator(); it.hasNext();) {
+        int x = it.next();
+        writeInt(x - last);
+        last = x;
+      }
+    }
+  }
+
+  static int readInt(ByteBuffer b) {
+    int v = 0;
+    int shift = 0;
+    int x;
+    do {
+      x = b.get();
+      v |= (x & 0x7f) << shift;
+      shift += 7;
+    } while ((x & 0x80) != 0);
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /**
+   * read a set written by {@link Encoder#writeSet(IntSet)}
+   */
+  static int[] readSet(ByteBuffer b) {
+    int[] result = new int[readInt(b)];
+    int last = 0;
+    for (int i = 0; i < result.length; i++) {
+      last += readInt(b);
+      result[i] = last;
+    }
+    return result;
+  }
+}
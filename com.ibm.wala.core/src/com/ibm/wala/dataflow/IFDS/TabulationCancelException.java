@@ -10,23 +10,22 @@
  *******************************************************************************/
 package com.ibm.wala.dataflow.IFDS;
 
-import com.ibm.wala.dataflow.IFDS.TabulationSolver.Result;
 import com.ibm.wala.util.CancelException;
 
 /**
- * A {@link CancelException} thrown during tabulation; holds a pointer to a partial {@link Result}. Use with care, this can hold on
- * to a lot of memory.
+ * A {@link CancelException} thrown during tabulation; holds a pointer to a partial {@link TabulationResult}. Use with care, this
+ * can hold on to a lot of memory.
  */
 public class TabulationCancelException extends CancelException {
 
-  private final Result result;
+  private final TabulationResult result;
 
-  protected TabulationCancelException(Exception cause, Result r) {
+  protected TabulationCancelException(Exception cause, TabulationResult r) {
     super(cause);
     this.result = r;
   }
 
-  public Result getResult() {
+  public TabulationResult getResult() {
     return result;
   }
 
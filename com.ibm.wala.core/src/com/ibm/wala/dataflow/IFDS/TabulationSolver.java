@@ -165,6 +165,11 @@ public class TabulationSolver<T, P, F> {
    */
   private PathEdge<T> curSummaryEdge;
 
+  /**
+   * if non-null, the store to which cold path and summary edges are spilled
+   */
+  private EdgeSpillStore spillStore;
+
   /**
    * @param p a description of the dataflow problem to solve
    * @throws IllegalArgumentException if p is null
@@ -239,14 +244,24 @@ public class TabulationSolver<T, P, F> {
   /**
    * See POPL 95 paper for this algorithm, Figure 3
    * 
+   * Stops early if {@link #shouldStop()} holds; calling this method again then resumes tabulation.
+   * 
    * @throws CancelException
    */
-  private void forwardTabulateSLRPs() throws CancelException {
+  protected void forwardTabulateSLRPs() throws CancelException {
     assert curPathEdge == null : "curPathEdge should not be non-null here";
     if (worklist == null) {
       worklist = makeWorklist();
     }
-    while (worklist.size() > 0) {
+    try {
+      tabulate();
+    } finally {
+      curPathEdge = null;
+    }
+  }
+
+  private void tabulate() throws CancelException {
+    while (worklist.size() > 0 && !shouldStop()) {
       MonitorUtil.throwExceptionIfCanceled(progressMonitor);
       if (verbose) {
         performVerboseAction();
@@ -287,7 +302,34 @@ public class TabulationSolver<T, P, F> {
         }
       }
     }
-    curPathEdge = null;
+  }
+
+  /**
+   * Subclasses can override this to end tabulation before the worklist is empty, e.g. once the facts they are interested in have
+   * been reached.
+   */
+  protected boolean shouldStop() {
+    return false;
+  }
+
+  /**
+   * @return true iff there are path edges left to process
+   */
+  protected boolean hasPendingWork() {
+    return worklist != null && worklist.size() > 0;
+  }
+
+  /**
+   * Move the contents of the worklist to a fresh one from {@link #makeWorklist()}; call this when the priority order changes.
+   */
+  protected void rebuildWorklist() {
+    ITabulationWorklist<T> old = worklist;
+    worklist = makeWorklist();
+    if (old != null) {
+      while (old.size() > 0) {
+        worklist.insert(old.take());
+      }
+    }
   }
 
   /**
@@ -843,12 +885,19 @@ public class TabulationSolver<T, P, F> {
     LocalPathEdges result = pathEdges.get(s_p);
     if (result == null) {
       result = makeLocalPathEdges();
+      if (spillStore != null) {
+        spillStore.register(result);
+      }
       pathEdges.put(s_p, result);
     }
     return result;
   }
 
-  private LocalPathEdges makeLocalPathEdges() {
+  /**
+   * Subclasses may override this to choose the set representation of path edges, e.g. with
+   * {@link LocalPathEdges#LocalPathEdges(boolean, com.ibm.wala.util.intset.MutableIntSetFactory)}.
+   */
+  protected LocalPathEdges makeLocalPathEdges() {
     return problem.getMergeFunction() == null ? new LocalPathEdges(false) : new LocalPathEdges(true);
   }
 
@@ -856,6 +905,9 @@ public class TabulationSolver<T, P, F> {
     LocalSummaryEdges result = summaryEdges.get(proc);
     if (result == null) {
       result = new LocalSummaryEdges();
+      if (spillStore != null) {
+        spillStore.register(result);
+      }
       summaryEdges.put(proc, result);
     }
     return result;
@@ -1040,6 +1092,21 @@ public class TabulationSolver<T, P, F> {
     return progressMonitor;
   }
 
+  /**
+   * Spill the path and summary edges of procedures not touched recently to s, to bound the memory used by the tabulation. Must be
+   * called before {@link #solve()}; s must stay open while the result is in use.
+   */
+  public void setSpillStore(EdgeSpillStore s) {
+    if (!pathEdges.isEmpty() || !summaryEdges.isEmpty()) {
+      throw new IllegalStateException("spill store must be set before tabulation starts");
+    }
+    this.spillStore = s;
+  }
+
+  public EdgeSpillStore getSpillStore() {
+    return spillStore;
+  }
+
   protected PathEdge<T> getCurPathEdge() {
     return curPathEdge;
   }
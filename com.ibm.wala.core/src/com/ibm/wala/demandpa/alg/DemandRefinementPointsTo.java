@@ -88,6 +88,7 @@ import com.ibm.wala.demandpa.util.PointerParamValueNumIterator;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
 import com.ibm.wala.ipa.callgraph.propagation.AbstractLocalPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey.MultipleClassesFilter;
@@ -164,10 +165,32 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
 
   private RefinementPolicyFactory refinementPolicyFactory;
 
+  /**
+   * points-to sets shared across queries, or null if none
+   */
+  private PointsToMemoTable memoTable;
+
+  /**
+   * the refinement pass being run, for keying {@link #memoTable}
+   */
+  private int curPass;
+
+  /**
+   * has the refinement policy declined to refine a field or call on the current pass? If so, the policy may have recorded it to
+   * choose what to refine on the next pass, so the sets of the pass are not memoized: a query reusing them would not repeat the
+   * call to the policy.
+   */
+  private boolean declinedRefinement;
+
   public RefinementPolicy getRefinementPolicy() {
     return refinementPolicy;
   }
 
+  private void startPass(int passNum) {
+    curPass = passNum;
+    declinedRefinement = false;
+  }
+
   private DemandRefinementPointsTo(CallGraph cg, ThisFilteringHeapModel model, MemoryAccessMap fam, IClassHierarchy cha,
       AnalysisOptions options, StateMachineFactory<IFlowLabel> stateMachineFactory, IFlowGraph flowGraph) {
     super(cg, model, fam, cha, options);
@@ -177,6 +200,49 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     sanityCheckCG();
   }
 
+  /**
+   * an analysis sharing the flow graph, factories and memo table of other, but with its own per-query state
+   */
+  private DemandRefinementPointsTo(DemandRefinementPointsTo other) {
+    super(other.cg, other.heapModel, other.mam, other.cha, other.options);
+    this.stateMachineFactory = other.stateMachineFactory;
+    this.refinementPolicyFactory = other.refinementPolicyFactory;
+    this.memoTable = other.memoTable;
+    g = other.g;
+  }
+
+  /**
+   * Add to the flow graph the subgraph of every call graph node with an IR, so that queries only read it. Then this analysis and its
+   * {@link #makeConcurrentCopy() copies} can answer queries on different threads.
+   */
+  void completeFlowGraph() {
+    synchronized (g) {
+      for (CGNode node : cg) {
+        if (!hasNullIR(node)) {
+          g.addSubgraphForNode(node);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return an analysis sharing the flow graph with this one, for answering queries on another thread after
+   *         {@link #completeFlowGraph()}
+   */
+  DemandRefinementPointsTo makeConcurrentCopy() {
+    return new DemandRefinementPointsTo(this);
+  }
+
+  /**
+   * the target selector may cache what it creates, so calls to it are serialized across concurrent copies of this analysis
+   */
+  private IMethod getCalleeTarget(CGNode caller, CallSiteReference site, IClass receiver) {
+    MethodTargetSelector selector = options.getMethodTargetSelector();
+    synchronized (selector) {
+      return selector.getCalleeTarget(caller, site, receiver);
+    }
+  }
+
   private void sanityCheckCG() {
     if (PARANOID) {
       for (CGNode callee : cg) {
@@ -256,7 +322,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       throws IllegalArgumentException {
     Pair<PointsToResult, Collection<InstanceKeyAndState>> p = getPointsToWithStates(pk, ikeyPred);
     final Collection<InstanceKeyAndState> p2SetWithStates = p.snd;
-    Collection<InstanceKey> finalP2Set = removeStates(p2SetWithStates);
+    Collection<InstanceKey> finalP2Set = p2SetWithStates == null ? null : removeStates(p2SetWithStates);
     return Pair.make(p.fst, finalP2Set);
   }
 
@@ -319,6 +385,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     for (; passNum < numPasses; passNum++) {
       setNumNodesTraversed(0);
       setTraversalBudget(refinementPolicy.getBudgetForPass(passNum));
+      startPass(passNum);
       Collection<InstanceKeyAndState> curP2Set = null;
       PointsToComputer computer = null;
       boolean completedPassInBudget = false;
@@ -327,6 +394,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
           try {
             computer = new PointsToComputer(queried);
             computer.compute();
+            computer.memoizeP2Sets();
             curP2Set = computer.getComputedP2Set(queried);
             // System.err.println("completed pass");
             if (DEBUG) {
@@ -425,6 +493,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     for (; passNum < numPasses; passNum++) {
       setNumNodesTraversed(0);
       setTraversalBudget(refinementPolicy.getBudgetForPass(passNum));
+      startPass(passNum);
       boolean completedPassInBudget = false;
       boolean passed = false;
       long initialMemory = 0;
@@ -567,6 +636,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     for (; passNum < numPasses; passNum++) {
       setNumNodesTraversed(0);
       setTraversalBudget(refinementPolicy.getBudgetForPass(passNum));
+      startPass(passNum);
       Collection<PointerKeyAndState> curFlowsToSet = null;
       FlowsToComputer computer = null;
       try {
@@ -574,6 +644,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
           try {
             computer = new FlowsToComputer(ikAndState);
             computer.compute();
+            computer.memoizeP2Sets();
             curFlowsToSet = computer.getComputedFlowsToSet();
             // System.err.println("completed pass");
             if (DEBUG) {
@@ -961,6 +1032,22 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       worklistLoop();
     }
 
+    /**
+     * record in the memo table, if any, the points-to sets of all variables queried; they are complete once {@link #compute()} has
+     * returned. Nothing is recorded if the refinement policy declined a refinement on this pass; see {@link #declinedRefinement}.
+     */
+    protected void memoizeP2Sets() {
+      if (memoTable == null || !memoTable.memoizes(curPass) || declinedRefinement) {
+        return;
+      }
+      for (PointerKey pk : pointsToQueried.keySet()) {
+        for (State state : pointsToQueried.get(pk)) {
+          PointerKeyAndState pkAndState = new PointerKeyAndState(pk, state);
+          memoTable.put(pkAndState, curPass, OrdinalSet.toCollection(makeOrdinalSet(find(pkToP2Set, pkAndState))));
+        }
+      }
+    }
+
     protected void worklistLoop() {
       do {
         while (!initWorklist.isEmpty() || !pointsToWorklist.isEmpty() || !trackedPointsToWorklist.isEmpty()) {
@@ -1075,6 +1162,18 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
         if (DEBUG) {
           // System.err.println("adding to init_ " + pkAndState);
         }
+        if (memoTable != null) {
+          InstanceKeyAndState[] memoized = memoTable.get(pkAndState, curPass);
+          if (memoized != null) {
+            // the points-to set is complete, so there is no need to traverse its sources
+            MutableIntSet p2set = findOrCreate(pkToP2Set, pkAndState);
+            for (InstanceKeyAndState ikAndState : memoized) {
+              p2set.add(ikAndStates.add(ikAndState));
+            }
+            addToPToWorklist(pkAndState);
+            return true;
+          }
+        }
         initWorklist.add(pkAndState);
         // if (pkAndStates.getMappedIndex(pkAndState) == -1) {
         // pkAndStates.add(pkAndState);
@@ -1113,7 +1212,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
       OrdinalSet<InstanceKeyAndState> p2set = makeOrdinalSet(find(pkToP2Set, receiverAndState));
       for (InstanceKeyAndState ikAndState : p2set) {
         InstanceKey ik = ikAndState.getInstanceKey();
-        IMethod targetMethod = options.getMethodTargetSelector().getCalleeTarget(caller, call, ik.getConcreteType());
+        IMethod targetMethod = getCalleeTarget(caller, call, ik.getConcreteType());
         if (targetMethod == null) {
           // NOTE: target method can be null because we don't
           // always have type filters
@@ -2008,6 +2107,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
 
   public void setStateMachineFactory(StateMachineFactory<IFlowLabel> stateMachineFactory) {
     this.stateMachineFactory = stateMachineFactory;
+    clearMemoTable();
   }
 
   public RefinementPolicyFactory getRefinementPolicyFactory() {
@@ -2016,6 +2116,30 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
 
   public void setRefinementPolicyFactory(RefinementPolicyFactory refinementPolicyFactory) {
     this.refinementPolicyFactory = refinementPolicyFactory;
+    clearMemoTable();
+  }
+
+  public PointsToMemoTable getMemoTable() {
+    return memoTable;
+  }
+
+  /**
+   * Share points-to sets computed by one query with later queries. A memoized set is reused on the same refinement pass it was
+   * computed on, so the refinement policy should refine the same fields and calls on a given pass for every query. Sets are only
+   * memoized from passes on which the policy refined every field and call it was asked about, since a policy like
+   * {@link com.ibm.wala.demandpa.alg.refinepolicy.TunedRefinementPolicy} records what it declines to choose what to refine next, and
+   * a query reusing the sets would not make those calls. The table is cleared when the state machine or refinement policy changes.
+   * 
+   * @param memoTable the table, or null to stop memoizing
+   */
+  public void setMemoTable(PointsToMemoTable memoTable) {
+    this.memoTable = memoTable;
+  }
+
+  private void clearMemoTable() {
+    if (memoTable != null) {
+      memoTable.clear();
+    }
   }
 
   /**
@@ -2067,7 +2191,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
           OrdinalSet<InstanceKeyAndState> thisPToSet = getPToSetFromComputer(ptoComputer, thisArgAndState);
           for (InstanceKeyAndState ikAndState : thisPToSet) {
             InstanceKey ik = ikAndState.getInstanceKey();
-            IMethod targetMethod = options.getMethodTargetSelector().getCalleeTarget(caller, call, ik.getConcreteType());
+            IMethod targetMethod = getCalleeTarget(caller, call, ik.getConcreteType());
             if (targetMethod == null) {
               // NOTE: target method can be null because we don't
               // always have type filters
@@ -2447,6 +2571,9 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
 
   private boolean refineFieldAccesses(IField field, PointerKey basePtr, PointerKey val, IFlowLabel label, State state) {
     boolean shouldRefine = refinementPolicy.getFieldRefinePolicy().shouldRefine(field, basePtr, val, label, state);
+    if (!shouldRefine) {
+      declinedRefinement = true;
+    }
     if (DEBUG) {
       if (shouldRefine) {
         System.err.println("refining access to " + field);
@@ -2462,6 +2589,7 @@ public class DemandRefinementPointsTo extends AbstractDemandPointsTo {
     // we shouldn't rely on possibleTargets here (since there may be
     // zero targets)
     if (!refinementPolicy.getCallGraphRefinePolicy().shouldRefine(call)) {
+      declinedRefinement = true;
       return true;
     }
     // here we compute the number of unique *method* targets, as opposed to call graph nodes.
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.demandpa.alg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.wala.demandpa.alg.DemandRefinementPointsTo.PointsToResult;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.ThreadUtil;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * Answers batches of points-to queries with a {@link DemandRefinementPointsTo} on a pool of worker threads.
+ *
+ * The flow graph is built completely before the first batch, and is then only read. Each worker has its own copy of the analysis,
+ * so the traversal state and budget of a query stay on one thread. The workers share the analysis' {@link PointsToMemoTable}, if
+ * any. The field and call graph refinement policies shared by the analysis' {@link RefinementPolicyFactory}, if any, must be
+ * thread-safe; the stateless ones are.
+ *
+ * Each query is answered as by {@link DemandRefinementPointsTo#getPointsTo(PointerKey, Predicate)}, under the budget of the
+ * refinement policy, and reported to a {@link IQueryListener} as soon as it completes.
+ */
+public class ParallelDemandPointsTo {
+
+  /**
+   * Receives answers to queries, in the order they complete. Calls are serialized.
+   */
+  public interface IQueryListener {
+    /**
+     * @param p2set the last computed points-to set for pk, or null if none could be computed in the budget
+     */
+    void queryAnswered(PointerKey pk, PointsToResult result, Collection<InstanceKey> p2set);
+  }
+
+  private final DemandRefinementPointsTo analysis;
+
+  private final int nThreads;
+
+  private boolean flowGraphComplete = false;
+
+  /**
+   * @param nThreads number of worker threads
+   * @throws IllegalArgumentException if analysis is null or nThreads < 1
+   */
+  public ParallelDemandPointsTo(DemandRefinementPointsTo analysis, int nThreads) {
+    if (analysis == null) {
+      throw new IllegalArgumentException("null analysis");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + nThreads);
+    }
+    this.analysis = analysis;
+    this.nThreads = nThreads;
+  }
+
+  /**
+   * Answer the given queries, reporting each answer to listener as it completes. Returns when all queries are answered.
+   *
+   * @param ikeyPred the desired predicate that each instance key in a points-to set should ideally satisfy
+   * @throws IllegalArgumentException if some query is not a {@link LocalPointerKey}
+   */
+  public void getPointsTo(Collection<? extends PointerKey> queries, final Predicate<InstanceKey> ikeyPred,
+      final IQueryListener listener) {
+    if (queries == null) {
+      throw new IllegalArgumentException("null queries");
+    }
+    if (ikeyPred == null) {
+      throw new IllegalArgumentException("null ikeyPred");
+    }
+    if (listener == null) {
+      throw new IllegalArgumentException("null listener");
+    }
+    for (PointerKey pk : queries) {
+      if (!(pk instanceof LocalPointerKey)) {
+        throw new IllegalArgumentException("only locals for now: " + pk);
+      }
+    }
+    if (queries.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      if (!flowGraphComplete) {
+        analysis.completeFlowGraph();
+        flowGraphComplete = true;
+      }
+    }
+
+    final List<PointerKey> todo = new ArrayList<PointerKey>(queries);
+    final AtomicInteger next = new AtomicInteger();
+    int n = Math.min(nThreads, todo.size());
+    ExecutorService pool = ThreadUtil.makeDaemonPool(n, "demand points-to worker");
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(n);
+      for (int i = 0; i < n; i++) {
+        final DemandRefinementPointsTo worker = analysis.makeConcurrentCopy();
+        futures.add(pool.submit(new Callable<Object>() {
+          public Object call() {
+            for (int k = next.getAndIncrement(); k < todo.size() && !Thread.currentThread().isInterrupted(); k = next
+                .getAndIncrement()) {
+              PointerKey pk = todo.get(k);
+              Pair<PointsToResult, Collection<InstanceKey>> p = worker.getPointsTo(pk, ikeyPred);
+              synchronized (listener) {
+                listener.queryAnswered(pk, p.fst, p.snd);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      ThreadUtil.getAll(futures, "answering points-to queries");
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Answer the given queries, and return all answers once they are complete.
+   *
+   * @return map from each query to its result and last computed points-to set, as in
+   *         {@link DemandRefinementPointsTo#getPointsTo(PointerKey, Predicate)}
+   * @throws IllegalArgumentException if some query is not a {@link LocalPointerKey}
+   */
+  public Map<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> getPointsTo(Collection<? extends PointerKey> queries,
+      Predicate<InstanceKey> ikeyPred) {
+    final Map<PointerKey, Pair<PointsToResult, Collection<InstanceKey>>> result = HashMapFactory.make();
+    getPointsTo(queries, ikeyPred, new IQueryListener() {
+      public void queryAnswered(PointerKey pk, PointsToResult r, Collection<InstanceKey> p2set) {
+        result.put(pk, Pair.make(r, p2set));
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Compute the points-to sets of the given queries
+   *
+   * @return map from each query to its points-to set, or to null if it could not be computed in the budget
+   */
+  public Map<PointerKey, Collection<InstanceKey>> getPointsTo(Collection<? extends PointerKey> queries) {
+    final Map<PointerKey, Collection<InstanceKey>> result = HashMapFactory.make();
+    getPointsTo(queries, Predicate.<InstanceKey> falsePred(), new IQueryListener() {
+      public void queryAnswered(PointerKey pk, PointsToResult r, Collection<InstanceKey> p2set) {
+        result.put(pk, p2set);
+      }
+    });
+    return result;
+  }
+
+  public DemandRefinementPointsTo getAnalysis() {
+    return analysis;
+  }
+
+  public int getNumberOfThreads() {
+    return nThreads;
+  }
+}
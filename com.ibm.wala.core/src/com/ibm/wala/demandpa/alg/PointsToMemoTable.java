@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.demandpa.alg;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * Points-to sets computed by {@link DemandRefinementPointsTo}, shared across queries. An entry is the complete points-to set of a
+ * {@link PointerKeyAndState} as computed on some refinement pass, so a later query can use it on the same pass instead of traversing
+ * the flow graph again.
+ *
+ * The table holds at most a given number of instance keys over all entries, and evicts the least recently used entries to stay
+ * within that budget. Only passes numbered below a given bound are memoized, since with policies like
+ * {@link com.ibm.wala.demandpa.alg.refinepolicy.TunedRefinementPolicy} what a later pass refines depends on the query.
+ *
+ * This class is thread-safe.
+ */
+public class PointsToMemoTable {
+
+  private static final InstanceKeyAndState[] EMPTY = new InstanceKeyAndState[0];
+
+  /**
+   * entries, least recently used first
+   */
+  private final LinkedHashMap<Pair<PointerKeyAndState, Integer>, InstanceKeyAndState[]> table = new LinkedHashMap<Pair<PointerKeyAndState, Integer>, InstanceKeyAndState[]>(
+      16, 0.75f, true);
+
+  private final long maxInstanceKeys;
+
+  private final int maxPass;
+
+  /**
+   * number of instance keys over all entries
+   */
+  private long size = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long evictions = 0;
+
+  /**
+   * Memoize all passes
+   *
+   * @param maxInstanceKeys number of instance keys, over all entries, to keep
+   */
+  public PointsToMemoTable(long maxInstanceKeys) {
+    this(maxInstanceKeys, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxInstanceKeys number of instance keys, over all entries, to keep
+   * @param maxPass memoize only passes numbered below this
+   */
+  public PointsToMemoTable(long maxInstanceKeys, int maxPass) {
+    if (maxInstanceKeys < 0) {
+      throw new IllegalArgumentException("invalid maxInstanceKeys: " + maxInstanceKeys);
+    }
+    if (maxPass < 0) {
+      throw new IllegalArgumentException("invalid maxPass: " + maxPass);
+    }
+    this.maxInstanceKeys = maxInstanceKeys;
+    this.maxPass = maxPass;
+  }
+
+  /**
+   * @return true if results of pass passNum are memoized
+   */
+  public boolean memoizes(int passNum) {
+    return passNum < maxPass;
+  }
+
+  /**
+   * @return the points-to set of pkAndState computed on pass passNum, or null if none is memoized
+   */
+  public synchronized InstanceKeyAndState[] get(PointerKeyAndState pkAndState, int passNum) {
+    if (!memoizes(passNum)) {
+      return null;
+    }
+    InstanceKeyAndState[] result = table.get(Pair.make(pkAndState, passNum));
+    if (result == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return result;
+  }
+
+  /**
+   * record the complete points-to set of pkAndState computed on pass passNum
+   */
+  public synchronized void put(PointerKeyAndState pkAndState, int passNum, Collection<InstanceKeyAndState> p2set) {
+    if (pkAndState == null) {
+      throw new IllegalArgumentException("null pkAndState");
+    }
+    if (p2set == null) {
+      throw new IllegalArgumentException("null p2set");
+    }
+    if (!memoizes(passNum) || p2set.size() > maxInstanceKeys) {
+      return;
+    }
+    InstanceKeyAndState[] value = p2set.isEmpty() ? EMPTY : p2set.toArray(new InstanceKeyAndState[p2set.size()]);
+    InstanceKeyAndState[] old = table.put(Pair.make(pkAndState, passNum), value);
+    if (old != null) {
+      size -= old.length;
+    }
+    size += value.length;
+    evict();
+  }
+
+  /**
+   * drop least recently used entries until the table is within budget
+   */
+  private void evict() {
+    for (Iterator<Map.Entry<Pair<PointerKeyAndState, Integer>, InstanceKeyAndState[]>> it = table.entrySet().iterator(); size > maxInstanceKeys
+        && it.hasNext();) {
+      size -= it.next().getValue().length;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  public synchronized boolean contains(PointerKeyAndState pkAndState, int passNum) {
+    return table.containsKey(Pair.make(pkAndState, passNum));
+  }
+
+  /**
+   * drop all entries, e.g., because the analysis configuration has changed. Statistics are kept.
+   */
+  public synchronized void clear() {
+    table.clear();
+    size = 0;
+  }
+
+  public synchronized int getNumberOfEntries() {
+    return table.size();
+  }
+
+  /**
+   * @return number of instance keys over all entries
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public long getMaxInstanceKeys() {
+    return maxInstanceKeys;
+  }
+
+  public synchronized long getNumberOfHits() {
+    return hits;
+  }
+
+  public synchronized long getNumberOfMisses() {
+    return misses;
+  }
+
+  public synchronized long getNumberOfEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return the fraction of lookups that were hits, or 0 if there were none
+   */
+  public synchronized double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "entries: " + table.size() + " instance keys: " + size + "/" + maxInstanceKeys + " hits: " + hits + " misses: " + misses
+        + " evictions: " + evictions;
+  }
+}
@@ -361,19 +361,22 @@ public abstract class AbstractDemandFlowGraph extends AbstractFlowGraph {
     } else {
       throw new IllegalArgumentException("formalPk must represent a local");
     }
-    Set<CallerSiteContext> ret = callerCache.get(callee);
-    if (ret == null) {
-      ret = HashSetFactory.make();
-      for (Iterator<? extends CGNode> predNodes = cg.getPredNodes(callee); predNodes.hasNext();) {
-        CGNode caller = predNodes.next();
-        for (Iterator<CallSiteReference> iterator = cg.getPossibleSites(caller, callee); iterator.hasNext();) {
-          CallSiteReference call = iterator.next();
-          ret.add(new CallerSiteContext(caller, call));
+    // the cache is filled lazily, also when the rest of the graph is complete and read by several threads
+    synchronized (callerCache) {
+      Set<CallerSiteContext> ret = callerCache.get(callee);
+      if (ret == null) {
+        ret = HashSetFactory.make();
+        for (Iterator<? extends CGNode> predNodes = cg.getPredNodes(callee); predNodes.hasNext();) {
+          CGNode caller = predNodes.next();
+          for (Iterator<CallSiteReference> iterator = cg.getPossibleSites(caller, callee); iterator.hasNext();) {
+            CallSiteReference call = iterator.next();
+            ret.add(new CallerSiteContext(caller, call));
+          }
         }
+        callerCache.put(callee, ret);
       }
-      callerCache.put(callee, ret);
+      return ret;
     }
-    return ret;
   }
 
   public Set<CGNode> getPossibleTargets(CGNode node, CallSiteReference site, LocalPointerKey actualPk) {
@@ -10,6 +10,14 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ssa.DefUse;
@@ -18,6 +26,10 @@ import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.ssa.SSACache;
 import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ThreadUtil;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 
 /**
@@ -31,9 +43,20 @@ public class AnalysisCache {
   private final SSACache ssaCache;
 
   public AnalysisCache(IRFactory<IMethod> irFactory) {
+    this(irFactory, new SSACache(irFactory));
+  }
+
+  /**
+   * @param ssaCache the cache of IRs to use, e.g. one made by {@link SSACache#makeBounded(IRFactory, long, long)}
+   * @throws IllegalArgumentException if ssaCache is null
+   */
+  public AnalysisCache(IRFactory<IMethod> irFactory, SSACache ssaCache) {
     super();
+    if (ssaCache == null) {
+      throw new IllegalArgumentException("ssaCache is null");
+    }
     this.irFactory = irFactory;
-    this.ssaCache = new SSACache(irFactory);
+    this.ssaCache = ssaCache;
     ReferenceCleanser.registerCache(this);
   }
 
@@ -73,4 +96,88 @@ public class AnalysisCache {
     }
     return ssaCache.findOrCreateDU(ir, Everywhere.EVERYWHERE);
   }
+
+  /**
+   * Build the IRs and {@link DefUse}s of methods, using the {@link Everywhere} context, on nThreads threads, so that later requests
+   * (e.g. from a call graph builder) find them cached. Abstract and native methods are skipped.
+   * 
+   * Building stops early, without error, once the heap is more than maxOccupancy full; the remaining IRs are then built lazily as
+   * usual. With an {@link SSACache} of bounded size, its budget applies as well.
+   * 
+   * @param maxOccupancy fraction of the maximum heap size above which to stop building IRs
+   * @return the number of methods whose IR is built
+   * @throws IllegalArgumentException if methods or options is null, nThreads < 1 or maxOccupancy is not in (0,1]
+   * @throws CancelException if the monitor is canceled
+   */
+  public int prebuildIRs(Collection<? extends IMethod> methods, final SSAOptions options, int nThreads, final float maxOccupancy,
+      final IProgressMonitor monitor) throws CancelException {
+    if (methods == null) {
+      throw new IllegalArgumentException("methods is null");
+    }
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + nThreads);
+    }
+    if (maxOccupancy <= 0f || maxOccupancy > 1f) {
+      throw new IllegalArgumentException("invalid occupancy " + maxOccupancy);
+    }
+    final List<IMethod> todo = new ArrayList<IMethod>(methods.size());
+    for (IMethod m : methods) {
+      if (!m.isAbstract() && !m.isNative()) {
+        todo.add(m);
+      }
+    }
+    MonitorUtil.beginTask(monitor, "build IRs", todo.size());
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger built = new AtomicInteger();
+    ExecutorService pool = ThreadUtil.makeDaemonPool(nThreads, "IR builder");
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(nThreads);
+      for (int i = 0; i < nThreads; i++) {
+        futures.add(pool.submit(new Callable<Object>() {
+          public Object call() {
+            for (int j = next.getAndIncrement(); j < todo.size(); j = next.getAndIncrement()) {
+              if (occupancy() > maxOccupancy || isCanceled(monitor)) {
+                break;
+              }
+              IMethod m = todo.get(j);
+              IR ir = ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+              ssaCache.findOrCreateDU(ir, Everywhere.EVERYWHERE);
+              built.incrementAndGet();
+              if (monitor != null) {
+                synchronized (monitor) {
+                  monitor.worked(1);
+                }
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      ThreadUtil.getAll(futures, "building IRs");
+    } finally {
+      pool.shutdown();
+    }
+    MonitorUtil.done(monitor);
+    return built.get();
+  }
+
+  private static boolean isCanceled(IProgressMonitor monitor) {
+    if (monitor == null) {
+      return false;
+    }
+    synchronized (monitor) {
+      return monitor.isCanceled();
+    }
+  }
+
+  /**
+   * @return the fraction of the maximum heap size in use
+   */
+  private static float occupancy() {
+    Runtime r = Runtime.getRuntime();
+    return (float) (r.totalMemory() - r.freeMemory()) / (float) r.maxMemory();
+  }
 }
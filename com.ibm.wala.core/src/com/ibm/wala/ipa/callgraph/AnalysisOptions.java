@@ -15,6 +15,8 @@ import com.ibm.wala.analysis.reflection.ReflectionContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.ReflectionHandler;
 import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 
 /**
  * Basic interface for options that control call graph generation.
@@ -60,6 +62,39 @@ public class AnalysisOptions {
    */
   private int maxEvalBetweenTopo = 1000000000;
 
+  /**
+   * A tuning parameter: how many threads may the pointer analysis solver use to evaluate independent constraints concurrently? 1
+   * selects the sequential solver.
+   */
+  private int numberOfSolverThreads = 1;
+
+  /**
+   * Should the pointer analysis solver detect cycles of assignments during solving, and unify the points-to sets on them?
+   */
+  private boolean collapseAssignmentCycles = false;
+
+  /**
+   * Should the pointer analysis solver propagate only the newly discovered instance keys along assignments and filters (difference
+   * propagation), rather than whole points-to sets?
+   */
+  private boolean differencePropagation = false;
+
+  /**
+   * Should the points-to sets be hash-consed after solving, so that equal sets share one canonical representation?
+   */
+  private boolean hashConsPointsToSets = false;
+
+  /**
+   * The representation of the points-to sets of the pointer analysis solver; null means the default factory of {@link IntSetUtil}
+   */
+  private MutableIntSetFactory<?> pointsToSetFactory = null;
+
+  /**
+   * Should the call graph builder record the instructions behind each node's constraints, so that the call graph can be updated
+   * incrementally after classes change?
+   */
+  private boolean incrementalUpdates = false;
+
   /**
    * options for handling reflection during call graph construction
    */
@@ -293,6 +328,97 @@ public class AnalysisOptions {
   }
 
 
+  /**
+   * @return how many threads the pointer analysis solver may use to evaluate independent constraints concurrently
+   */
+  public int getNumberOfSolverThreads() {
+    return numberOfSolverThreads;
+  }
+
+  /**
+   * @param n how many threads the pointer analysis solver may use to evaluate independent constraints concurrently; 1 (the
+   *          default) selects the sequential solver
+   */
+  public void setNumberOfSolverThreads(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("invalid number of solver threads: " + n);
+    }
+    numberOfSolverThreads = n;
+  }
+
+  /**
+   * @return should the pointer analysis solver detect cycles of assignments during solving, and unify the points-to sets on them?
+   */
+  public boolean getCollapseAssignmentCycles() {
+    return collapseAssignmentCycles;
+  }
+
+  /**
+   * @param b should the pointer analysis solver detect cycles of assignments during solving, and unify the points-to sets on them?
+   */
+  public void setCollapseAssignmentCycles(boolean b) {
+    collapseAssignmentCycles = b;
+  }
+
+  /**
+   * @return should the pointer analysis solver propagate only newly discovered instance keys along assignments and filters?
+   */
+  public boolean getDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * @param b should the pointer analysis solver propagate only newly discovered instance keys along assignments and filters?
+   */
+  public void setDifferencePropagation(boolean b) {
+    differencePropagation = b;
+  }
+
+  /**
+   * @return should the points-to sets be hash-consed after solving, so that equal sets share one canonical representation?
+   */
+  public boolean getHashConsPointsToSets() {
+    return hashConsPointsToSets;
+  }
+
+  /**
+   * @param b should the points-to sets be hash-consed after solving, so that equal sets share one canonical representation?
+   */
+  public void setHashConsPointsToSets(boolean b) {
+    hashConsPointsToSets = b;
+  }
+
+  /**
+   * @return the representation of the points-to sets of the pointer analysis solver, or null for the default factory of
+   *         {@link IntSetUtil}
+   */
+  public MutableIntSetFactory<?> getPointsToSetFactory() {
+    return pointsToSetFactory;
+  }
+
+  /**
+   * @param factory the representation of the points-to sets of the pointer analysis solver, e.g. a
+   *          {@link com.ibm.wala.util.intset.CompressedBitmapIntSetFactory} for analyses with very many instance keys; null for
+   *          the default factory of {@link IntSetUtil}
+   */
+  public void setPointsToSetFactory(MutableIntSetFactory<?> factory) {
+    pointsToSetFactory = factory;
+  }
+
+  /**
+   * @return should the call graph builder record what it needs to update the call graph incrementally after classes change?
+   */
+  public boolean getIncrementalUpdates() {
+    return incrementalUpdates;
+  }
+
+  /**
+   * @param b should the call graph builder record what it needs to update the call graph incrementally after classes change?
+   */
+  public void setIncrementalUpdates(boolean b) {
+    incrementalUpdates = b;
+  }
+
   /**
    * @return options governing SSA construction
    */
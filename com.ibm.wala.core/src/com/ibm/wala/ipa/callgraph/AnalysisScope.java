@@ -11,6 +11,7 @@
 package com.ibm.wala.ipa.callgraph;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.NotSerializableException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,6 +32,7 @@ import com.ibm.wala.classLoader.ClassFileModule;
 import com.ibm.wala.classLoader.IClassLoader;
 import com.ibm.wala.classLoader.JarFileModule;
 import com.ibm.wala.classLoader.Language;
+import com.ibm.wala.classLoader.MappedJarFileModule;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.SourceDirectoryTreeModule;
 import com.ibm.wala.classLoader.SourceFileModule;
@@ -210,6 +212,19 @@ public class AnalysisScope {
     s.add(new ClassFileModule(file));
   }
 
+  /**
+   * Add a jar file to the scope for a loader, as a {@link MappedJarFileModule}
+   * 
+   * @throws IOException if the file cannot be mapped, e.g. because it is a ZIP64 archive
+   */
+  public void addMappedJarFileToScope(ClassLoaderReference loader, File file) throws IOException {
+    List<Module> s = MapUtil.findOrCreateList(moduleMap, loader);
+    if (DEBUG_LEVEL > 0) {
+      System.err.println(("AnalysisScope: add MappedJarFileModule " + file));
+    }
+    s.add(new MappedJarFileModule(file));
+  }
+
   /**
    * Add a jar file to the scope for a loader
    */
@@ -375,21 +390,34 @@ public class AnalysisScope {
       Module M = (Module) MS.next();
       if (M instanceof JarFileModule) {
         JarFile JF = ((JarFileModule) M).getJarFile();
-        if (JF.getName().endsWith(File.separator + "rt.jar")) {
+        if (isRtJar(JF.getName())) {
           return JF;
         }
-        if (JF.getName().endsWith(File.separator + "core.jar")) {
-          return JF;
-        }
-        // hack for Mac
-        if (PlatformUtil.onMacOSX() && JF.getName().endsWith(File.separator + "classes.jar")) {
-          return JF;
+      } else if (M instanceof MappedJarFileModule) {
+        String name = ((MappedJarFileModule) M).getName();
+        if (name != null && isRtJar(name)) {
+          try {
+            return new JarFile(name);
+          } catch (IOException e) {
+            Assertions.UNREACHABLE("error opening " + name);
+          }
         }
       }
     }
     return null;
   }
 
+  private static boolean isRtJar(String name) {
+    if (name.endsWith(File.separator + "rt.jar")) {
+      return true;
+    }
+    if (name.endsWith(File.separator + "core.jar")) {
+      return true;
+    }
+    // hack for Mac
+    return PlatformUtil.onMacOSX() && name.endsWith(File.separator + "classes.jar");
+  }
+
   public String getJavaLibraryVersion() throws IllegalStateException {
     JarFile rtJar = getRtJar();
     if (rtJar == null) {
@@ -454,6 +482,9 @@ public class AnalysisScope {
         if (m instanceof JarFileModule) {
           moduleType = "jarFile";
           modulePath = ((JarFileModule) m).getAbsolutePath();
+        } else if (m instanceof MappedJarFileModule && ((MappedJarFileModule) m).getName() != null) {
+          moduleType = "mappedJarFile";
+          modulePath = ((MappedJarFileModule) m).getName();
         } else if (m instanceof BinaryDirectoryTreeModule) {
           moduleType = "binaryDir";
           modulePath = ((BinaryDirectoryTreeModule) m).getPath();
@@ -20,6 +20,9 @@ import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
 
@@ -43,14 +46,40 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
    */
   public static MutableMapping<InstanceKey> instanceKeys = null;
 
+  /**
+   * the factory for the representation of this points-to set; null means the default factory of {@link IntSetUtil}
+   */
+  private final MutableIntSetFactory<?> intSetFactory;
+
   private PointerKey pointerKey;
 
+  /**
+   * For difference propagation: the instance keys added to this set since the last call to {@link #takeDelta()}. null if this
+   * variable does not track its delta.
+   */
+  private MutableIntSet delta;
+
   public PointsToSetVariable(PointerKey key) {
+    this(key, null);
+  }
+
+  /**
+   * @param intSetFactory the representation of the points-to set, e.g. a
+   *          {@link com.ibm.wala.util.intset.CompressedBitmapIntSetFactory} for analyses with very many instance keys; null to use
+   *          the default factory of {@link IntSetUtil}
+   */
+  public PointsToSetVariable(PointerKey key, MutableIntSetFactory<?> intSetFactory) {
     super();
     if (key == null) {
       throw new IllegalArgumentException("null key");
     }
     this.pointerKey = key;
+    this.intSetFactory = intSetFactory;
+  }
+
+  @Override
+  protected MutableIntSetFactory<?> getIntSetFactory() {
+    return (intSetFactory == null) ? super.getIntSetFactory() : intSetFactory;
   }
 
   public PointerKey getPointerKey() {
@@ -75,6 +104,46 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     }
   }
   
+  /**
+   * Start recording the instance keys added to this variable, for difference propagation.
+   */
+  void trackDelta() {
+    if (delta == null) {
+      delta = MutableSparseIntSet.makeEmpty();
+    }
+  }
+
+  boolean isTrackingDelta() {
+    return delta != null;
+  }
+
+  /**
+   * @return the instance keys added to this variable since the last call, which are forgotten
+   */
+  IntSet takeDelta() {
+    assert delta != null;
+    IntSet result = delta;
+    delta = MutableSparseIntSet.makeEmpty();
+    return result;
+  }
+
+  /**
+   * Add the elements of B that are not already in this set, recording them in the delta.
+   */
+  private boolean addNew(IntSet B) {
+    assert delta != null;
+    if (B == null || B.isEmpty()) {
+      return false;
+    }
+    IntSet d = (getValue() == null) ? B : IntSetUtil.diff(B, getValue());
+    if (d.isEmpty()) {
+      return false;
+    }
+    super.addAll(d);
+    delta.addAll(d);
+    return true;
+  }
+
   @Override
   public void add(int b) {
     if (PARANOID) {
@@ -82,6 +151,9 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
       m.add(b);
       checkTypes(m);
     }
+    if (delta != null && !contains(b)) {
+      delta.add(b);
+    }
     super.add(b);
     cryIfTooBig();
   }
@@ -91,7 +163,25 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(B);
     }
-    boolean v = super.addAll(B);
+    boolean v = (delta == null) ? super.addAll(B) : addNew(B);
+    cryIfTooBig();
+    return v;
+  }
+
+  @Override
+  public boolean addAllInIntersection(PointsToSetVariable other, IntSet filter) {
+    if (delta == null) {
+      return super.addAllInIntersection(other, filter);
+    }
+    return other.getValue() != null && addAllInIntersection(other.getValue(), filter);
+  }
+
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) {
+    if (delta == null) {
+      return super.addAllInIntersection(other, filter);
+    }
+    boolean v = addNew(other.intersection(filter));
     cryIfTooBig();
     return v;
   }
@@ -143,7 +233,7 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
       checkTypes(other.getValue());
     }
     // TODO Auto-generated method stub
-    boolean v = super.addAll(other);
+    boolean v = (delta == null) ? super.addAll(other) : addNew(other.getValue());
     cryIfTooBig();
     return v;
   }
@@ -234,6 +234,10 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
     system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
     system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
+    system.setNumberOfThreads(options.getNumberOfSolverThreads());
+    system.setCollapseCycles(options.getCollapseAssignmentCycles());
+    system.setDifferencePropagation(options.getDifferencePropagation());
+    system.setPointsToSetFactory(options.getPointsToSetFactory());
 
     discoveredNodes = HashSetFactory.make();
     discoveredNodes.add(callGraph.getFakeRootNode());
@@ -268,6 +272,9 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       throw c;
     }
 
+    if (options.getHashConsPointsToSets()) {
+      system.hashConsPointsToSets();
+    }
     return callGraph;
   }
 
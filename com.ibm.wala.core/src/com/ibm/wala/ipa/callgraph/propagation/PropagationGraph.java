@@ -13,6 +13,7 @@ package com.ibm.wala.ipa.callgraph.propagation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import com.ibm.wala.util.collections.EmptyIterator;
 import com.ibm.wala.util.collections.Filter;
 import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.collections.SmallMap;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
@@ -71,7 +73,13 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
 
   private final DelegateGraph delegateGraph = new DelegateGraph();
 
-  private final HashSet<AbstractStatement> delegateStatements = HashSetFactory.make();
+  private final HashSet<AbstractStatement<PointsToSetVariable, ?>> delegateStatements = HashSetFactory.make();
+
+  /**
+   * The explicit statements of each side effect operator. The hash code of a side effect depends on its fixed set, so this map is
+   * keyed by identity.
+   */
+  private final Map<UnarySideEffect, List<AbstractStatement<PointsToSetVariable, ?>>> sideEffectStatements = new IdentityHashMap<UnarySideEffect, List<AbstractStatement<PointsToSetVariable, ?>>>();
 
   /**
    * special representation for implicitly represented unary equations. This is a map from UnaryOperator ->
@@ -110,7 +118,7 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
   /**
    * @return a Relation object to track implicit equations using the operator
    */
-  private IBinaryNaturalRelation makeRelation(AbstractOperator op) {
+  private IBinaryNaturalRelation makeRelation(AbstractOperator<PointsToSetVariable> op) {
     byte[] implementation = null;
     if (op instanceof AssignOperator) {
       // lots of assignments.
@@ -213,6 +221,9 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
       PointsToSetVariable rhs = eq.getRightHandSide();
       delegateGraph.addEquation(eq);
       delegateStatements.add(eq);
+      if (eq.getOperator() instanceof UnarySideEffect) {
+        MapUtil.findOrCreateList(sideEffectStatements, (UnarySideEffect) eq.getOperator()).add(eq);
+      }
       if (lhs != null) {
         delegateGraph.addVariable(lhs);
         delegateGraph.addEdge(eq, lhs);
@@ -226,8 +237,8 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
    * @return true iff this equation should be represented implicitly in this data structure
    */
   private boolean useImplicitRepresentation(IFixedPointStatement s) {
-    AbstractStatement eq = (AbstractStatement) s;
-    AbstractOperator op = eq.getOperator();
+    AbstractStatement<?, ?> eq = (AbstractStatement<?, ?>) s;
+    AbstractOperator<?> op = eq.getOperator();
     return (op instanceof AssignOperator || op instanceof PropagationCallGraphBuilder.FilterOperator);
   }
 
@@ -235,6 +246,8 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     assert getNumberOfStatementsThatDef(p) == 0;
     assert getNumberOfStatementsThatUse(p) == 0;
     delegateGraph.removeNode(p);
+    // the node manager does not forget the number of a removed node, so that containsVariable(p) would fail
+    p.setGraphNodeId(-1);
   }
 
   private void addImplicitStatement(UnaryStatement<PointsToSetVariable> eq) {
@@ -421,6 +434,36 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     } else {
       delegateStatements.remove(eq);
       delegateGraph.removeNodeAndEdges(eq);
+      AbstractOperator<PointsToSetVariable> op = ((AbstractStatement<PointsToSetVariable, ?>) eq).getOperator();
+      if (op instanceof UnarySideEffect) {
+        List<AbstractStatement<PointsToSetVariable, ?>> statements = sideEffectStatements.get(op);
+        if (statements != null) {
+          statements.remove(eq);
+          if (statements.isEmpty()) {
+            sideEffectStatements.remove(op);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Replace the fixed set of op with p. The hash codes of the statements of op change with it, so re-insert just those statements
+   * into the hashed structures of this graph.
+   */
+  void replaceFixedSet(UnarySideEffect op, PointsToSetVariable p) {
+    List<AbstractStatement<PointsToSetVariable, ?>> statements = sideEffectStatements.get(op);
+    if (statements != null) {
+      for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = statements.iterator(); it.hasNext();) {
+        if (!delegateStatements.remove(it.next())) {
+          // removed from this graph through an equal statement with another operator instance
+          it.remove();
+        }
+      }
+    }
+    op.replaceFixedSet(p);
+    if (statements != null) {
+      delegateStatements.addAll(statements);
     }
   }
 
@@ -646,7 +689,7 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
   }
 
   @SuppressWarnings("unchecked")
-  public Iterator<AbstractStatement> getStatementsThatUse(PointsToSetVariable v) {
+  public Iterator<AbstractStatement<PointsToSetVariable, ?>> getStatementsThatUse(PointsToSetVariable v) {
     if (v == null) {
       throw new IllegalArgumentException("v is null");
     }
@@ -663,15 +706,15 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
         result = new CompoundIterator<INodeWithNumber>(new ImplicitUseIterator(op, v, s), result);
       }
     }
-    List<AbstractStatement> list = new ArrayList<AbstractStatement>();
+    List<AbstractStatement<PointsToSetVariable, ?>> list = new ArrayList<AbstractStatement<PointsToSetVariable, ?>>();
     while (result.hasNext()) {
-      list.add((AbstractStatement) result.next());
+      list.add((AbstractStatement<PointsToSetVariable, ?>) result.next());
     }
     return list.iterator();
   }
 
   @SuppressWarnings("unchecked")
-  public Iterator<AbstractStatement> getStatementsThatDef(PointsToSetVariable v) {
+  public Iterator<AbstractStatement<PointsToSetVariable, ?>> getStatementsThatDef(PointsToSetVariable v) {
     if (v == null) {
       throw new IllegalArgumentException("v is null");
     }
@@ -689,9 +732,9 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
       }
     }
 
-    List<AbstractStatement> list = new ArrayList<AbstractStatement>();
+    List<AbstractStatement<PointsToSetVariable, ?>> list = new ArrayList<AbstractStatement<PointsToSetVariable, ?>>();
     while (result.hasNext()) {
-      list.add((AbstractStatement) result.next());
+      list.add((AbstractStatement<PointsToSetVariable, ?>) result.next());
     }
     return list.iterator();
   }
@@ -0,0 +1,655 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.ExceptionReturnValueKey;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.CompressedBitmapIntSet;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.OrdinalSet;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * A read-only snapshot of a call graph and the points-to sets of a pointer analysis, saved in a compact binary file by
+ * {@link #write(CallGraph, PointerAnalysis, File)} and memory-mapped by {@link #load(File)}.
+ *
+ * A loaded snapshot needs no class hierarchy: nodes and instance keys are identified by the numbers they had in the analysis that
+ * wrote the snapshot, and pointer keys by their kind and those numbers, e.g. a local by its node number and value number; see
+ * {@link #getLocalPointerKey(int, int)} and the other lookups. String forms are kept only to describe these objects, since distinct
+ * objects may print the same. Sections of the file are decoded lazily, on first query.
+ *
+ * The file holds, in order: a header with the section offsets, a pool of UTF-8 strings, the node table, the call sites of each
+ * node, the pointer key table, the points-to sets, and the instance key table. Sets of node numbers and instance key numbers are
+ * written as {@link CompressedBitmapIntSet}s. Since the file is mapped with a single buffer, it may not exceed 2GB.
+ */
+public class PropagationSnapshot {
+
+  private final static int MAGIC = 0x57414C53;
+
+  private final static int VERSION = 2;
+
+  private final static int HEADER_SIZE = 4 * 9;
+
+  private final static int NODE_ENTRY_SIZE = 12;
+
+  private final static int SITE_ENTRY_SIZE = 12;
+
+  private final static int POINTER_KEY_ENTRY_SIZE = 12;
+
+  /**
+   * the mapped file
+   */
+  private final ByteBuffer buffer;
+
+  private final int fakeRootNode;
+
+  private final int stringsOffset;
+
+  private final int nodesOffset;
+
+  private final int sitesOffset;
+
+  private final int pointerKeysOffset;
+
+  private final int setsOffset;
+
+  private final int instanceKeysOffset;
+
+  /**
+   * lazily built: method signature -> numbers of the nodes for that method
+   */
+  private Map<String, MutableIntSet> nodesByMethod;
+
+  /**
+   * lazily built: identity of pointer key -> its index in the snapshot
+   */
+  private Map<String, Integer> pointerKeyIndex;
+
+  private PropagationSnapshot(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("not a propagation snapshot");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("unsupported snapshot version " + buffer.getInt(4));
+    }
+    fakeRootNode = buffer.getInt(8);
+    stringsOffset = buffer.getInt(12);
+    nodesOffset = buffer.getInt(16);
+    sitesOffset = buffer.getInt(20);
+    pointerKeysOffset = buffer.getInt(24);
+    setsOffset = buffer.getInt(28);
+    instanceKeysOffset = buffer.getInt(32);
+  }
+
+  /**
+   * Memory-map a snapshot file written by {@link #write(CallGraph, PointerAnalysis, File)}.
+   *
+   * @throws IllegalArgumentException if file is null
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public static PropagationSnapshot load(File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file is null");
+    }
+    RandomAccessFile f = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = f.getChannel();
+      // the mapping remains valid after the channel is closed
+      return new PropagationSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      f.close();
+    }
+  }
+
+  /**
+   * Save a snapshot of a call graph and its pointer analysis.
+   *
+   * @throws IllegalArgumentException if any argument is null, or if two pointer keys have the same identity, which can only happen
+   *           for kinds of keys that are identified by their string forms
+   */
+  public static void write(CallGraph cg, PointerAnalysis pa, File file) throws IOException {
+    if (cg == null) {
+      throw new IllegalArgumentException("cg is null");
+    }
+    if (pa == null) {
+      throw new IllegalArgumentException("pa is null");
+    }
+    if (file == null) {
+      throw new IllegalArgumentException("file is null");
+    }
+    StringPool strings = new StringPool();
+
+    // nodes, and the call sites of each node
+    ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+    DataOutputStream nodes = new DataOutputStream(nodeBytes);
+    ByteArrayOutputStream siteBytes = new ByteArrayOutputStream();
+    DataOutputStream sites = new DataOutputStream(siteBytes);
+    int nNodes = cg.getMaxNumber() + 1;
+    nodes.writeInt(nNodes);
+    for (int i = 0; i < nNodes; i++) {
+      CGNode n = cg.getNode(i);
+      if (n == null) {
+        nodes.writeInt(-1);
+        nodes.writeInt(-1);
+        nodes.writeInt(-1);
+        continue;
+      }
+      nodes.writeInt(strings.add(n.toString()));
+      nodes.writeInt(strings.add(n.getMethod().getSignature()));
+      nodes.writeInt(sites.size());
+      writeCallSites(cg, n, strings, sites);
+    }
+
+    // compute the points-to sets first: this may add instance keys to the mapping
+    List<PointerKey> keys = new ArrayList<PointerKey>();
+    List<IntSet> pointsTo = new ArrayList<IntSet>();
+    OrdinalSetMapping<InstanceKey> mapping = pa.getInstanceKeyMapping();
+    for (PointerKey pk : pa.getPointerKeys()) {
+      keys.add(pk);
+      pointsTo.add(toIntSet(pa.getPointsToSet(pk), mapping));
+    }
+    ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+    DataOutputStream pointerKeys = new DataOutputStream(keyBytes);
+    ByteArrayOutputStream setBytes = new ByteArrayOutputStream();
+    DataOutputStream sets = new DataOutputStream(setBytes);
+    Map<String, PointerKey> identities = HashMapFactory.make();
+    pointerKeys.writeInt(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      PointerKey pk = keys.get(i);
+      String id = identity(pk, cg, mapping);
+      PointerKey other = identities.put(id, pk);
+      if (other != null) {
+        throw new IllegalArgumentException("pointer keys " + other + " and " + pk + " have the same identity " + id);
+      }
+      pointerKeys.writeInt(strings.add(pk.toString()));
+      pointerKeys.writeInt(strings.add(id));
+      pointerKeys.writeInt(sets.size());
+      writeSet(pointsTo.get(i), sets);
+    }
+
+    ByteArrayOutputStream ikBytes = new ByteArrayOutputStream();
+    DataOutputStream instanceKeys = new DataOutputStream(ikBytes);
+    int nInstanceKeys = mapping.getMaximumIndex() + 1;
+    instanceKeys.writeInt(nInstanceKeys);
+    for (int i = 0; i < nInstanceKeys; i++) {
+      InstanceKey ik = mapping.getMappedObject(i);
+      instanceKeys.writeInt(ik == null ? -1 : strings.add(ik.toString()));
+    }
+
+    ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+    strings.write(new DataOutputStream(stringBytes));
+
+    long offset = HEADER_SIZE;
+    long[] offsets = new long[6];
+    ByteArrayOutputStream[] sections = { stringBytes, nodeBytes, siteBytes, keyBytes, setBytes, ikBytes };
+    for (int i = 0; i < sections.length; i++) {
+      offsets[i] = offset;
+      offset += sections[i].size();
+    }
+    if (offset > Integer.MAX_VALUE) {
+      throw new IOException("snapshot too large: " + offset + " bytes");
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(cg.getFakeRootNode() == null ? -1 : cg.getNumber(cg.getFakeRootNode()));
+      for (long o : offsets) {
+        out.writeInt((int) o);
+      }
+      for (ByteArrayOutputStream s : sections) {
+        s.writeTo(out);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Per node: the number of call sites, a table of (pc, declared target, offset of the target set), then the target sets.
+   */
+  private static void writeCallSites(CallGraph cg, CGNode n, StringPool strings, DataOutputStream sites) throws IOException {
+    List<CallSiteReference> refs = new ArrayList<CallSiteReference>();
+    for (Iterator<CallSiteReference> it = n.iterateCallSites(); it.hasNext();) {
+      refs.add(it.next());
+    }
+    List<IntSet> targets = new ArrayList<IntSet>(refs.size());
+    for (CallSiteReference site : refs) {
+      MutableSparseIntSet t = MutableSparseIntSet.makeEmpty();
+      for (CGNode target : cg.getPossibleTargets(n, site)) {
+        t.add(cg.getNumber(target));
+      }
+      targets.add(t);
+    }
+    ByteArrayOutputStream setBytes = new ByteArrayOutputStream();
+    DataOutputStream sets = new DataOutputStream(setBytes);
+    sites.writeInt(refs.size());
+    for (int i = 0; i < refs.size(); i++) {
+      CallSiteReference site = refs.get(i);
+      sites.writeInt(site.getProgramCounter());
+      sites.writeInt(strings.add(site.getDeclaredTarget().getSignature()));
+      sites.writeInt(sets.size());
+      writeSet(targets.get(i), sets);
+    }
+    setBytes.writeTo(sites);
+  }
+
+  /**
+   * @return the identity of pk in the snapshot: its kind, and the numbers of its node or instance key and the signature of its field,
+   *         as the key's equals method compares them; for other kinds of keys, the class and string form
+   */
+  private static String identity(PointerKey pk, CallGraph cg, OrdinalSetMapping<InstanceKey> mapping) {
+    if (pk instanceof LocalPointerKey) {
+      LocalPointerKey l = (LocalPointerKey) pk;
+      int n = cg.getNumber(l.getNode());
+      if (n >= 0) {
+        return localIdentity(n, l.getValueNumber());
+      }
+    } else if (pk instanceof ExceptionReturnValueKey) {
+      int n = cg.getNumber(((ExceptionReturnValueKey) pk).getNode());
+      if (n >= 0) {
+        return exceptionalReturnValueIdentity(n);
+      }
+    } else if (pk instanceof ReturnValueKey) {
+      int n = cg.getNumber(((ReturnValueKey) pk).getNode());
+      if (n >= 0) {
+        return returnValueIdentity(n);
+      }
+    } else if (pk.getClass() == InstanceFieldKey.class) {
+      InstanceFieldKey f = (InstanceFieldKey) pk;
+      int ik = mapping.getMappedIndex(f.getInstanceKey());
+      if (ik >= 0) {
+        return instanceFieldIdentity(ik, f.getField().getReference().getSignature());
+      }
+    } else if (pk instanceof StaticFieldKey) {
+      return staticFieldIdentity(((StaticFieldKey) pk).getField().getReference().getSignature());
+    } else if (pk instanceof ArrayContentsKey) {
+      int ik = mapping.getMappedIndex(((ArrayContentsKey) pk).getInstanceKey());
+      if (ik >= 0) {
+        return arrayContentsIdentity(ik);
+      }
+    }
+    return "O " + pk.getClass().getName() + " " + pk;
+  }
+
+  private static String localIdentity(int node, int valueNumber) {
+    return "L " + node + " " + valueNumber;
+  }
+
+  private static String returnValueIdentity(int node) {
+    return "R " + node;
+  }
+
+  private static String exceptionalReturnValueIdentity(int node) {
+    return "E " + node;
+  }
+
+  private static String instanceFieldIdentity(int instanceKey, String fieldSignature) {
+    return "F " + instanceKey + " " + fieldSignature;
+  }
+
+  private static String staticFieldIdentity(String fieldSignature) {
+    return "S " + fieldSignature;
+  }
+
+  private static String arrayContentsIdentity(int instanceKey) {
+    return "A " + instanceKey;
+  }
+
+  private static IntSet toIntSet(OrdinalSet<InstanceKey> s, OrdinalSetMapping<InstanceKey> mapping) {
+    if (s.getMapping() == mapping && s.getBackingSet() != null) {
+      return s.getBackingSet();
+    }
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    for (InstanceKey ik : s) {
+      result.add(mapping.getMappedIndex(ik));
+    }
+    return result;
+  }
+
+  private static void writeSet(IntSet s, DataOutputStream out) throws IOException {
+    CompressedBitmapIntSet c = new CompressedBitmapIntSet(s);
+    c.runOptimize();
+    c.write(out);
+  }
+
+  /**
+   * A pool of distinct strings. In the file: the number of strings, the end offset of each string in the blob that follows, and the
+   * UTF-8 blob.
+   */
+  private static class StringPool {
+    private final Map<String, Integer> index = HashMapFactory.make();
+
+    private final List<String> strings = new ArrayList<String>();
+
+    int add(String s) {
+      Integer i = index.get(s);
+      if (i == null) {
+        i = Integer.valueOf(strings.size());
+        strings.add(s);
+        index.put(s, i);
+      }
+      return i.intValue();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      ByteArrayOutputStream blob = new ByteArrayOutputStream();
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        blob.write(s.getBytes("UTF-8"));
+        out.writeInt(blob.size());
+      }
+      blob.writeTo(out);
+    }
+  }
+
+  private String getString(int i) {
+    if (i < 0) {
+      return null;
+    }
+    int n = buffer.getInt(stringsOffset);
+    int table = stringsOffset + 4;
+    int blob = table + 4 * n;
+    int start = i == 0 ? 0 : buffer.getInt(table + 4 * (i - 1));
+    int end = buffer.getInt(table + 4 * i);
+    byte[] bytes = new byte[end - start];
+    ByteBuffer b = buffer.duplicate();
+    b.position(blob + start);
+    b.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private IntSet readSet(int offset) {
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset);
+    return CompressedBitmapIntSet.read(b);
+  }
+
+  /**
+   * @return the number of the fake root node, or -1 if the call graph had none
+   */
+  public int getFakeRootNode() {
+    return fakeRootNode;
+  }
+
+  /**
+   * @return one more than the largest node number; numbers with no node have a null description
+   */
+  public int getNumberOfNodes() {
+    return buffer.getInt(nodesOffset);
+  }
+
+  private int nodeEntry(int node) {
+    if (node < 0 || node >= getNumberOfNodes()) {
+      throw new IllegalArgumentException("invalid node number " + node);
+    }
+    return nodesOffset + 4 + NODE_ENTRY_SIZE * node;
+  }
+
+  /**
+   * @return the string form of the given node, or null if there was no node with that number. Distinct nodes may have the same string
+   *         form.
+   */
+  public String getNodeDescription(int node) {
+    return getString(buffer.getInt(nodeEntry(node)));
+  }
+
+  /**
+   * @return the signature of the method of the given node, or null if there was no node with that number
+   */
+  public String getNodeMethod(int node) {
+    return getString(buffer.getInt(nodeEntry(node) + 4));
+  }
+
+  /**
+   * @return the numbers of the nodes for the method with the given signature
+   */
+  public IntSet getNodes(String methodSignature) {
+    if (nodesByMethod == null) {
+      Map<String, MutableIntSet> m = HashMapFactory.make();
+      for (int i = 0; i < getNumberOfNodes(); i++) {
+        String sig = getNodeMethod(i);
+        if (sig != null) {
+          MutableIntSet s = m.get(sig);
+          if (s == null) {
+            s = MutableSparseIntSet.makeEmpty();
+            m.put(sig, s);
+          }
+          s.add(i);
+        }
+      }
+      nodesByMethod = m;
+    }
+    IntSet result = nodesByMethod.get(methodSignature);
+    return result == null ? MutableSparseIntSet.makeEmpty() : result;
+  }
+
+  /**
+   * @return offset of the call site block of node, or -1 if none
+   */
+  private int siteBlock(int node) {
+    int o = buffer.getInt(nodeEntry(node) + 8);
+    return o < 0 ? -1 : sitesOffset + o;
+  }
+
+  /**
+   * @return the program counters of the call sites in the given node
+   */
+  public IntSet getCallSites(int node) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    int block = siteBlock(node);
+    if (block >= 0) {
+      int n = buffer.getInt(block);
+      for (int i = 0; i < n; i++) {
+        result.add(buffer.getInt(block + 4 + SITE_ENTRY_SIZE * i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the signature of the method declared as the target of the call at pc in node, or null if there is no such call
+   */
+  public String getDeclaredTarget(int node, int pc) {
+    int block = siteBlock(node);
+    if (block >= 0) {
+      int n = buffer.getInt(block);
+      for (int i = 0; i < n; i++) {
+        int entry = block + 4 + SITE_ENTRY_SIZE * i;
+        if (buffer.getInt(entry) == pc) {
+          return getString(buffer.getInt(entry + 4));
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the numbers of the nodes that the call at pc in node may invoke
+   */
+  public IntSet getPossibleTargets(int node, int pc) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    int block = siteBlock(node);
+    if (block >= 0) {
+      int n = buffer.getInt(block);
+      int sets = block + 4 + SITE_ENTRY_SIZE * n;
+      for (int i = 0; i < n; i++) {
+        int entry = block + 4 + SITE_ENTRY_SIZE * i;
+        if (buffer.getInt(entry) == pc) {
+          result.addAll(readSet(sets + buffer.getInt(entry + 8)));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the numbers of all nodes that calls in node may invoke
+   */
+  public IntSet getSuccNodes(int node) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    int block = siteBlock(node);
+    if (block >= 0) {
+      int n = buffer.getInt(block);
+      int sets = block + 4 + SITE_ENTRY_SIZE * n;
+      for (int i = 0; i < n; i++) {
+        result.addAll(readSet(sets + buffer.getInt(block + 4 + SITE_ENTRY_SIZE * i + 8)));
+      }
+    }
+    return result;
+  }
+
+  public int getNumberOfPointerKeys() {
+    return buffer.getInt(pointerKeysOffset);
+  }
+
+  private int pointerKeyEntry(int i) {
+    if (i < 0 || i >= getNumberOfPointerKeys()) {
+      throw new IllegalArgumentException("invalid pointer key index " + i);
+    }
+    return pointerKeysOffset + 4 + POINTER_KEY_ENTRY_SIZE * i;
+  }
+
+  /**
+   * @return the string form of the i'th pointer key. Distinct pointer keys may have the same string form.
+   */
+  public String getPointerKey(int i) {
+    return getString(buffer.getInt(pointerKeyEntry(i)));
+  }
+
+  private int getPointerKeyIndex(String identity) {
+    if (pointerKeyIndex == null) {
+      Map<String, Integer> m = HashMapFactory.make();
+      for (int i = 0; i < getNumberOfPointerKeys(); i++) {
+        m.put(getString(buffer.getInt(pointerKeyEntry(i) + 4)), Integer.valueOf(i));
+      }
+      pointerKeyIndex = m;
+    }
+    Integer result = pointerKeyIndex.get(identity);
+    return result == null ? -1 : result.intValue();
+  }
+
+  /**
+   * @return the index of the pointer key for the given local of the given node, with or without a type filter, or -1 if there is
+   *         none
+   */
+  public int getLocalPointerKey(int node, int valueNumber) {
+    return getPointerKeyIndex(localIdentity(node, valueNumber));
+  }
+
+  /**
+   * @return the index of the pointer key for the return value of the given node, or -1 if there is none
+   */
+  public int getReturnValueKey(int node) {
+    return getPointerKeyIndex(returnValueIdentity(node));
+  }
+
+  /**
+   * @return the index of the pointer key for the exceptional return value of the given node, or -1 if there is none
+   */
+  public int getExceptionalReturnValueKey(int node) {
+    return getPointerKeyIndex(exceptionalReturnValueIdentity(node));
+  }
+
+  /**
+   * @param fieldSignature the signature of the field's reference, as from {@link com.ibm.wala.types.FieldReference#getSignature()}
+   * @return the index of the pointer key for the field of the instance key with the given number, or -1 if there is none
+   */
+  public int getInstanceFieldKey(int instanceKey, String fieldSignature) {
+    return getPointerKeyIndex(instanceFieldIdentity(instanceKey, fieldSignature));
+  }
+
+  /**
+   * @param fieldSignature the signature of the field's reference, as from {@link com.ibm.wala.types.FieldReference#getSignature()}
+   * @return the index of the pointer key for the static field, or -1 if there is none
+   */
+  public int getStaticFieldKey(String fieldSignature) {
+    return getPointerKeyIndex(staticFieldIdentity(fieldSignature));
+  }
+
+  /**
+   * @return the index of the pointer key for the contents of the array instance key with the given number, or -1 if there is none
+   */
+  public int getArrayContentsKey(int instanceKey) {
+    return getPointerKeyIndex(arrayContentsIdentity(instanceKey));
+  }
+
+  /**
+   * @return the numbers of the instance keys in the points-to set of the i'th pointer key
+   */
+  public IntSet getPointsToSet(int i) {
+    return readSet(setsOffset + buffer.getInt(pointerKeyEntry(i) + 8));
+  }
+
+  /**
+   * @return one more than the largest instance key number
+   */
+  public int getNumberOfInstanceKeys() {
+    return buffer.getInt(instanceKeysOffset);
+  }
+
+  /**
+   * @return the string form of the instance key with number i. Distinct instance keys may have the same string form.
+   */
+  public String getInstanceKey(int i) {
+    if (i < 0 || i >= getNumberOfInstanceKeys()) {
+      throw new IllegalArgumentException("invalid instance key number " + i);
+    }
+    return getString(buffer.getInt(instanceKeysOffset + 4 + 4 * i));
+  }
+
+  /**
+   * @return the string forms of the instance keys in s
+   */
+  public List<String> getInstanceKeys(IntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("s is null");
+    }
+    List<String> result = new ArrayList<String>(s.size());
+    for (IntIterator it = s.intIterator(); it.hasNext();) {
+      result.add(getInstanceKey(it.next()));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "PropagationSnapshot: " + getNumberOfNodes() + " nodes, " + getNumberOfPointerKeys() + " pointer keys, "
+        + getNumberOfInstanceKeys() + " instance keys";
+  }
+}
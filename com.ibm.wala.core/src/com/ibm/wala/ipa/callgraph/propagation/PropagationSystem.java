@@ -10,6 +10,7 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -31,9 +32,12 @@ import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.fixpoint.UnaryStatement;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder.FilterOperator;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder.InverseFilterOperator;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyWarning;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
@@ -46,8 +50,10 @@ import com.ibm.wala.util.heapTrace.HeapTracer;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetRepository;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 import com.ibm.wala.util.warnings.Warnings;
@@ -117,6 +123,62 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
 
   private int periodicMaintainInterval = DEFAULT_PERIODIC_MAINTENANCE_INTERVAL;
 
+  /**
+   * How many cycle candidates must accumulate before the solver stops to search for and collapse cycles?
+   */
+  private final static int CYCLE_DETECTION_BATCH_SIZE = 64;
+
+  /**
+   * A bound on the number of variables visited by a single cycle search; searches that exceed it give up.
+   */
+  private final static int MAX_CYCLE_SEARCH = 10000;
+
+  /**
+   * Should cycles in the assignment graph be detected and collapsed during solving?
+   */
+  private boolean collapseCycles = false;
+
+  /**
+   * Assign equations whose lhs and rhs held the same points-to set after an evaluation. Each is a hint that the equation lies on a
+   * cycle of the assignment graph (lazy cycle detection); the cycle search happens at the next safe point.
+   */
+  private final List<AssignEquation> cycleCandidates = new ArrayList<AssignEquation>();
+
+  /**
+   * Assign equations that have already been recorded as cycle candidates. Each equation triggers at most one cycle search.
+   */
+  private final Set<AssignEquation> searchedEquations = HashSetFactory.make();
+
+  /**
+   * How many cycles have been collapsed?
+   */
+  private int nCollapsedCycles = 0;
+
+  /**
+   * How many variables have been unified into a cycle representative?
+   */
+  private int nCollapsedVariables = 0;
+
+  /**
+   * Should assignments and filters propagate only the instance keys added to their rhs since it was last propagated?
+   */
+  private boolean differencePropagation = false;
+
+  /**
+   * The representation of the points-to sets created from now on; null means the default factory of {@link IntSetUtil}
+   */
+  private MutableIntSetFactory<?> pointsToSetFactory = null;
+
+  /**
+   * The operator that pushes the delta of a variable along its assignments and filters; see {@link #changedVariable}.
+   */
+  private final DeltaOperator deltaOperator = new DeltaOperator();
+
+  /**
+   * Canonical points-to sets, once {@link #hashConsPointsToSets()} has been called
+   */
+  private IntSetRepository pointsToSetRepository;
+
   public PropagationSystem(CallGraph cg, PointerKeyFactory pointerKeyFactory, InstanceKeyFactory instanceKeyFactory) {
     if (cg == null) {
       throw new IllegalArgumentException("null cg");
@@ -143,17 +205,21 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     set.add(s);
   }
 
-  protected void updateSideEffects(PointsToSetVariable p, PointsToSetVariable rep) {
+  /**
+   * @return true iff some side effect changed
+   */
+  protected boolean updateSideEffects(PointsToSetVariable p, PointsToSetVariable rep) {
     Set<UnarySideEffect> set = fixedSetMap.get(p);
     if (set != null) {
-      for (Iterator it = set.iterator(); it.hasNext();) {
-        UnarySideEffect s = (UnarySideEffect) it.next();
-        s.replaceFixedSet(rep);
+      for (UnarySideEffect s : set) {
+        flowGraph.replaceFixedSet(s, rep);
       }
       Set<UnarySideEffect> s2 = MapUtil.findOrCreateSet(fixedSetMap, rep);
       s2.addAll(set);
       fixedSetMap.remove(p);
+      return true;
     }
+    return false;
   }
 
   /**
@@ -266,7 +332,10 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable result = pointsToMap.getPointsToSet(key);
     if (result == null) {
-      result = new PointsToSetVariable(key);
+      result = new PointsToSetVariable(key, pointsToSetFactory);
+      if (differencePropagation) {
+        result.trackDelta();
+      }
       pointsToMap.put(key, result);
     } else {
       // check that the filter for this variable remains unique
@@ -357,8 +426,8 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs);
+    assert !isUnexpectedlyUnified(lhs);
+    assert !isUnexpectedlyUnified(rhs);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R = findOrCreatePointsToSet(rhs);
     return newStatement(L, op, new PointsToSetVariable[] { R }, true, true);
@@ -380,9 +449,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs1 + ", " + rhs2);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs1);
-    assert !pointsToMap.isUnified(rhs2);
+    assert !isUnexpectedlyUnified(lhs);
+    assert !isUnexpectedlyUnified(rhs1);
+    assert !isUnexpectedlyUnified(rhs2);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R1 = findOrCreatePointsToSet(rhs1);
     PointsToSetVariable R2 = findOrCreatePointsToSet(rhs2);
@@ -567,7 +636,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
+    assert !isUnexpectedlyUnified(arg0);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     newStatement(null, op, v1, true, true);
   }
@@ -581,7 +650,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable[] vs = new PointsToSetVariable[ arg0.length ];
     for(int i = 0; i < arg0.length; i++) {
-      assert !pointsToMap.isUnified(arg0[i]);
+      assert !isUnexpectedlyUnified(arg0[i]);
       vs[i] = findOrCreatePointsToSet(arg0[i]);
     }
     newStatement(null, op, vs, true, true);
@@ -591,8 +660,8 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
-    assert !pointsToMap.isUnified(arg1);
+    assert !isUnexpectedlyUnified(arg0);
+    assert !isUnexpectedlyUnified(arg1);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     PointsToSetVariable v2 = findOrCreatePointsToSet(arg1);
     newStatement(null, op, v1, v2, true, true);
@@ -636,6 +705,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     System.err.println(printRHSInstances(s));
     workList.insertStatement(s);
     System.err.println("CGNodes: " + cg.getNumberOfNodes());
+    if (collapseCycles) {
+      System.err.println("Collapsed cycles: " + nCollapsedCycles + ", variables: " + nCollapsedVariables);
+    }
 
   }
 
@@ -693,11 +765,11 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return workList;
   }
 
-  public Iterator<AbstractStatement> getStatementsThatUse(PointsToSetVariable v) {
+  public Iterator<AbstractStatement<PointsToSetVariable, ?>> getStatementsThatUse(PointsToSetVariable v) {
     return flowGraph.getStatementsThatUse(v);
   }
 
-  public Iterator<AbstractStatement> getStatementsThatDef(PointsToSetVariable v) {
+  public Iterator<AbstractStatement<PointsToSetVariable, ?>> getStatementsThatDef(PointsToSetVariable v) {
     return flowGraph.getStatementsThatDef(v);
   }
 
@@ -904,10 +976,380 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return pointsToMap.isUnified(result);
   }
 
+  /**
+   * @return true iff the points-to set of key is represented implicitly, and so has no {@link PointsToSetVariable}
+   */
+  public boolean isImplicit(PointerKey key) {
+    return pointsToMap.isImplicit(key);
+  }
+
+  /**
+   * Constraints are normally generated before any variables are unified. When cycles are collapsed during solving, however, new
+   * constraints may mention unified keys, which then resolve to their representative.
+   */
+  boolean isUnexpectedlyUnified(PointerKey key) {
+    return !collapseCycles && pointsToMap.isUnified(key);
+  }
+
+  /**
+   * @param b should cycles in the assignment graph be detected and collapsed during solving?
+   */
+  public void setCollapseCycles(boolean b) {
+    collapseCycles = b;
+  }
+
+  public boolean isCollapseCycles() {
+    return collapseCycles;
+  }
+
+  /**
+   * @return how many cycles of the assignment graph have been collapsed during solving
+   */
+  public int getNumberOfCollapsedCycles() {
+    return nCollapsedCycles;
+  }
+
+  /**
+   * @return how many variables have been unified into the representatives of collapsed cycles
+   */
+  public int getNumberOfCollapsedVariables() {
+    return nCollapsedVariables;
+  }
+
+  /**
+   * @param b should assignments and filters propagate only the instance keys added to their rhs since the last propagation? Only
+   *          variables created after this is set track their deltas; the others are propagated in full.
+   */
+  public void setDifferencePropagation(boolean b) {
+    differencePropagation = b;
+  }
+
+  public boolean isDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * @param factory the representation of the points-to sets created from now on, or null for the default factory of
+   *          {@link IntSetUtil}
+   */
+  public void setPointsToSetFactory(MutableIntSetFactory<?> factory) {
+    pointsToSetFactory = factory;
+  }
+
+  public MutableIntSetFactory<?> getPointsToSetFactory() {
+    return pointsToSetFactory;
+  }
+
+  /**
+   * With difference propagation, a change to v schedules a single statement that pushes the new instance keys of v along all of its
+   * assignments and filters, rather than scheduling each of those statements to union in all of v.
+   */
+  @Override
+  public void changedVariable(PointsToSetVariable v) {
+    if (!v.isTrackingDelta()) {
+      super.changedVariable(v);
+      return;
+    }
+    addToWorkList(deltaOperator.makeEquation(v, v));
+    for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = getStatementsThatUse(v); it.hasNext();) {
+      AbstractStatement<PointsToSetVariable, ?> s = it.next();
+      if (!isDeltaPropagated(s)) {
+        addToWorkList(s);
+      }
+    }
+  }
+
+  /**
+   * @return true iff s only unions its rhs, possibly intersected with the fixed instance key set of a class, into its lhs, so
+   *         evaluating s on the delta of its rhs suffices.
+   */
+  private static boolean isDeltaPropagated(AbstractStatement<PointsToSetVariable, ?> s) {
+    if (!(s instanceof UnaryStatement)) {
+      return false;
+    }
+    AbstractOperator<PointsToSetVariable> op = s.getOperator();
+    if (op instanceof AssignOperator) {
+      return true;
+    } else if (op instanceof FilterOperator && !(op instanceof InverseFilterOperator)) {
+      PointerKey pk = ((PointsToSetVariable) s.getLHS()).getPointerKey();
+      return ((FilteredPointerKey) pk).getTypeFilter() instanceof FilteredPointerKey.SingleClassFilter;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Evaluates the statement v = v by propagating the delta of v to the lhs of each assignment and filter that uses v.
+   */
+  private final class DeltaOperator extends UnaryOperator<PointsToSetVariable> {
+
+    @Override
+    public byte evaluate(PointsToSetVariable lhs, PointsToSetVariable rhs) {
+      assert lhs == rhs;
+      IntSet d = rhs.takeDelta();
+      if (d.isEmpty()) {
+        return NOT_CHANGED;
+      }
+      for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = getStatementsThatUse(rhs); it.hasNext();) {
+        AbstractStatement<PointsToSetVariable, ?> s = it.next();
+        if (!isDeltaPropagated(s)) {
+          continue;
+        }
+        PointsToSetVariable L = s.getLHS();
+        boolean changed;
+        if (s.getOperator() instanceof AssignOperator) {
+          changed = L.addAll(d);
+        } else {
+          FilteredPointerKey.SingleClassFilter filter = (FilteredPointerKey.SingleClassFilter) ((FilteredPointerKey) L
+              .getPointerKey()).getTypeFilter();
+          IntSet f = getInstanceKeysForClass(filter.getConcreteType());
+          changed = (f == null) ? false : L.addAllInIntersection(d, f);
+        }
+        byte code = changed ? CHANGED : NOT_CHANGED;
+        statementEvaluated(s, code);
+        if (changed) {
+          changedVariable(L);
+        }
+      }
+      // the lhs is v itself, whose value has not changed
+      return NOT_CHANGED;
+    }
+
+    @Override
+    public String toString() {
+      return "Delta";
+    }
+
+    @Override
+    public int hashCode() {
+      return 9767;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o == this;
+    }
+  }
+
+  @Override
+  public boolean solve(IProgressMonitor monitor) throws CancelException {
+    boolean result = super.solve(monitor);
+    while (!cycleCandidates.isEmpty()) {
+      collapseCandidateCycles();
+      result |= super.solve(monitor);
+    }
+    return result;
+  }
+
+  @Override
+  public void orderStatements() {
+    if (cycleCandidates.size() >= CYCLE_DETECTION_BATCH_SIZE) {
+      collapseCandidateCycles();
+    }
+    super.orderStatements();
+  }
+
+  /**
+   * Lazy cycle detection: once an assignment leaves its lhs with the same points-to set as its rhs, the assignment probably lies on
+   * a cycle. Record it so that we search for that cycle at the next safe point.
+   */
+  @Override
+  protected void statementEvaluated(AbstractStatement<PointsToSetVariable, ?> s, byte code) {
+    if (collapseCycles && s instanceof AssignEquation) {
+      AssignEquation eq = (AssignEquation) s;
+      PointsToSetVariable lhs = eq.getLHS();
+      PointsToSetVariable rhs = eq.getRightHandSide();
+      // lhs is a superset of rhs after the evaluation, so equal sizes mean equal sets
+      if (rhs.size() > 0 && lhs.size() == rhs.size() && searchedEquations.add(eq)) {
+        cycleCandidates.add(eq);
+      }
+    }
+  }
+
+  /**
+   * For each cycle candidate, search for a cycle through it in the assignment graph, and unify the variables on it.
+   */
+  private void collapseCandidateCycles() {
+    List<PointsToSetVariable> reps = new ArrayList<PointsToSetVariable>();
+    NumberedGraph<PointsToSetVariable> g = getAssignmentGraph();
+    for (AssignEquation eq : cycleCandidates) {
+      // an earlier collapse may have swallowed this equation
+      if (!isRepresentative(eq.getLHS()) || !isRepresentative(eq.getRightHandSide()) || !flowGraph.containsStatement(eq)) {
+        continue;
+      }
+      Set<PointsToSetVariable> scc = findCycle(g, eq.getRightHandSide(), eq.getLHS());
+      if (scc == null || !isCollapsible(scc)) {
+        continue;
+      }
+      MutableIntSet s = IntSetUtil.make();
+      for (PointsToSetVariable v : scc) {
+        s.add(pointsToMap.getIndex(v.getPointerKey()));
+      }
+      if (s.size() < 2) {
+        // a self-assignment is no cycle to collapse
+        continue;
+      }
+      unify(s);
+      reps.add(pointsToMap.getPointsToSet(pointsToMap.getRepresentative(s.intIterator().next())));
+      nCollapsedCycles++;
+      nCollapsedVariables += scc.size();
+      if (DEBUG) {
+        System.err.println("collapsed cycle of " + scc.size() + " variables: " + scc);
+      }
+    }
+    cycleCandidates.clear();
+    if (!reps.isEmpty()) {
+      rebuildWorkList(reps);
+    }
+  }
+
+  /**
+   * @return true iff v is not unified, or is the representative of its unified set
+   */
+  private boolean isRepresentative(PointsToSetVariable v) {
+    int i = pointsToMap.getIndex(v.getPointerKey());
+    return i != -1 && pointsToMap.getPointsToSet(i) == v;
+  }
+
+  /**
+   * Unification must not merge different type filters, so we only collapse cycles without filtered variables.
+   */
+  private static boolean isCollapsible(Set<PointsToSetVariable> scc) {
+    for (PointsToSetVariable v : scc) {
+      if (v.getPointerKey() instanceof FilteredPointerKey) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the strongly connected component of g containing the edge src -> dst, or null if there is no such cycle or the search
+   *         exceeded {@link #MAX_CYCLE_SEARCH}
+   */
+  private static Set<PointsToSetVariable> findCycle(NumberedGraph<PointsToSetVariable> g, PointsToSetVariable src,
+      PointsToSetVariable dst) {
+    // forward: everything reachable from dst
+    Set<PointsToSetVariable> forward = HashSetFactory.make();
+    LinkedList<PointsToSetVariable> stack = new LinkedList<PointsToSetVariable>();
+    forward.add(dst);
+    stack.add(dst);
+    while (!stack.isEmpty()) {
+      PointsToSetVariable v = stack.removeLast();
+      for (Iterator<PointsToSetVariable> it = g.getSuccNodes(v); it.hasNext();) {
+        PointsToSetVariable w = it.next();
+        if (forward.add(w)) {
+          if (forward.size() > MAX_CYCLE_SEARCH) {
+            return null;
+          }
+          stack.add(w);
+        }
+      }
+    }
+    if (!forward.contains(src)) {
+      return null;
+    }
+    // backward: everything in forward that reaches src
+    Set<PointsToSetVariable> result = HashSetFactory.make();
+    result.add(src);
+    stack.add(src);
+    while (!stack.isEmpty()) {
+      PointsToSetVariable v = stack.removeLast();
+      for (Iterator<PointsToSetVariable> it = g.getPredNodes(v); it.hasNext();) {
+        PointsToSetVariable w = it.next();
+        if (forward.contains(w) && result.add(w)) {
+          stack.add(w);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * After unification, the work list may hold statements that have been removed from the system, and the order numbers of its
+   * statements may have changed. Rebuild it, and schedule every statement that defs or uses a new representative.
+   */
+  private void rebuildWorkList(List<PointsToSetVariable> reps) {
+    Worklist old = workList;
+    workList = new Worklist();
+    while (!old.isEmpty()) {
+      @SuppressWarnings("unchecked")
+      AbstractStatement<PointsToSetVariable, ?> s = old.takeStatement();
+      if (flowGraph.containsStatement(s)) {
+        workList.insertStatement(s);
+      } else if (s.getOperator() == deltaOperator && isRepresentative(s.getLHS())) {
+        // delta statements are not part of the flow graph
+        workList.insertStatement(s);
+      }
+    }
+    for (PointsToSetVariable rep : reps) {
+      if (isRepresentative(rep)) {
+        for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = getStatementsThatDef(rep); it.hasNext();) {
+          addToWorkList(it.next());
+        }
+        for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = getStatementsThatUse(rep); it.hasNext();) {
+          addToWorkList(it.next());
+        }
+      }
+    }
+  }
+
+  /**
+   * Replace the value of each points-to set variable with a canonical, shared set, so that variables with equal points-to sets
+   * share one compact representation. A variable copies its shared set before changing it, so the system may still be solved
+   * further afterwards.
+   */
+  public void hashConsPointsToSets() {
+    if (pointsToSetRepository == null) {
+      pointsToSetRepository = new IntSetRepository();
+    }
+    for (Iterator<PointerKey> it = pointsToMap.iterateKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (pointsToMap.isImplicit(key)) {
+        continue;
+      }
+      PointsToSetVariable v = pointsToMap.getPointsToSet(key);
+      if (v != null && v.getValue() != null && !v.isShared()) {
+        v.setSharedValue(pointsToSetRepository.findOrCreate(v.getValue()));
+      }
+    }
+    if (DEBUG) {
+      System.err.println(pointsToSetRepository);
+    }
+  }
+
+  /**
+   * @return the repository of canonical points-to sets, or null if {@link #hashConsPointsToSets()} has not been called
+   */
+  public IntSetRepository getPointsToSetRepository() {
+    return pointsToSetRepository;
+  }
+
   public int getNumber(PointerKey p) {
     return pointsToMap.getIndex(p);
   }
 
+  /**
+   * Assignments and single-class filters only union the rhs (possibly intersected with the fixed instance key set of a class) into
+   * the lhs, so they may be evaluated concurrently. All other statements may add constraints or call graph nodes, and are
+   * evaluated alone.
+   */
+  @Override
+  protected boolean isConcurrentlyEvaluable(AbstractStatement<PointsToSetVariable, ?> s) {
+    if (!(s instanceof UnaryStatement)) {
+      return false;
+    }
+    AbstractOperator<PointsToSetVariable> op = s.getOperator();
+    if (op instanceof AssignOperator) {
+      return true;
+    } else if (op instanceof FilterOperator) {
+      PointerKey pk = s.getLHS().getPointerKey();
+      return ((FilteredPointerKey) pk).getTypeFilter() instanceof FilteredPointerKey.SingleClassFilter;
+    } else {
+      return false;
+    }
+  }
+
   @Override
   protected PointsToSetVariable[] makeStmtRHS(int size) {
     return new PointsToSetVariable[size];
@@ -17,6 +17,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.ibm.wala.analysis.reflection.CloneInterpreter;
@@ -24,6 +25,8 @@ import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.cfg.IBasicBlock;
 import com.ibm.wala.classLoader.ArrayClass;
 import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.CodeScanner;
+import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IField;
 import com.ibm.wala.classLoader.IMethod;
@@ -36,11 +39,14 @@ import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.ContextKey;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
 import com.ibm.wala.ipa.callgraph.impl.FakeRootMethod;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeBT.ConditionalBranchInstruction;
 import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.ISSABasicBlock;
@@ -74,7 +80,9 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.functions.VoidFunction;
 import com.ibm.wala.util.intset.IntIterator;
@@ -154,6 +162,39 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
 
   private IProgressMonitor monitor;
 
+  /**
+   * When incremental updates are enabled: a mapping from each node to the sites of the instructions from which its constraints
+   * were generated; see {@link #sites(IR)}
+   */
+  private Map<CGNode, Set<Pair<SiteKind, Object>>> instructionSites;
+
+  /**
+   * The kinds of sites recorded for incremental updates
+   */
+  private static enum SiteKind {
+    CALL, NEW, GET, PUT
+  }
+
+  /**
+   * The latest version of each class passed to {@link #updateCallGraph(Collection, IProgressMonitor)}, by name
+   */
+  private Map<TypeReference, IClass> updatedClasses;
+
+  /**
+   * The outcome of {@link SSAPropagationCallGraphBuilder#updateCallGraph(Collection, IProgressMonitor)}
+   */
+  public static enum UpdateResult {
+    /**
+     * the call graph and pointer analysis have been updated in place
+     */
+    UPDATED,
+    /**
+     * the change removed instructions whose constraints cannot be retracted; the call graph and pointer analysis have not been
+     * updated, and must be rebuilt from scratch
+     */
+    NEEDS_REBUILD
+  }
+
   protected SSAPropagationCallGraphBuilder(IClassHierarchy cha, AnalysisOptions options, AnalysisCache cache,
       PointerKeyFactory pointerKeyFactory) {
     super(cha, options, cache, pointerKeyFactory);
@@ -226,6 +267,10 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
       return false;
     }
 
+    if (getOptions().getIncrementalUpdates()) {
+      recordInstructions(node, ir);
+    }
+
     addNodeInstructionConstraints(node, monitor);
 
     DefUse du = getCFAContextInterpreter().getDU(node);
@@ -234,6 +279,232 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     return true;
   }
 
+  /**
+   * Record the instructions of ir as the sources of the constraints of node. Constraints are never retracted, so the record
+   * accumulates over all the IRs seen for the node.
+   */
+  private void recordInstructions(CGNode node, IR ir) {
+    if (instructionSites == null) {
+      instructionSites = HashMapFactory.make();
+    }
+    Set<Pair<SiteKind, Object>> s = instructionSites.get(node);
+    if (s == null) {
+      instructionSites.put(node, sites(ir));
+    } else {
+      s.addAll(sites(ir));
+    }
+  }
+
+  /**
+   * @return the call sites, allocation sites and field accesses of ir, each identified by what it refers to: the invocation code
+   *         and declared target of a call, the declared type of an allocation, and the field of a get or put. Value numbers and
+   *         program counters are left out, so the sites of an instruction that merely moved compare equal.
+   */
+  private static Set<Pair<SiteKind, Object>> sites(IR ir) {
+    Set<Pair<SiteKind, Object>> result = HashSetFactory.make();
+    if (ir != null) {
+      for (Iterator<SSAInstruction> it = ir.iterateAllInstructions(); it.hasNext();) {
+        SSAInstruction s = it.next();
+        if (s instanceof SSAAbstractInvokeInstruction) {
+          CallSiteReference site = ((SSAAbstractInvokeInstruction) s).getCallSite();
+          result.add(Pair.<SiteKind, Object> make(SiteKind.CALL, Pair.make(site.getInvocationCode(), site.getDeclaredTarget())));
+        } else if (s instanceof SSANewInstruction) {
+          result.add(Pair.<SiteKind, Object> make(SiteKind.NEW, ((SSANewInstruction) s).getNewSite().getDeclaredType()));
+        } else if (s instanceof SSAGetInstruction) {
+          result.add(Pair.<SiteKind, Object> make(SiteKind.GET, ((SSAGetInstruction) s).getDeclaredField()));
+        } else if (s instanceof SSAPutInstruction) {
+          result.add(Pair.<SiteKind, Object> make(SiteKind.PUT, ((SSAPutInstruction) s).getDeclaredField()));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Update the call graph and pointer analysis built by the last call to {@link #makeCallGraph(AnalysisOptions, IProgressMonitor)}
+   * after the code of some classes has changed, without rebuilding the rest of the solution. This requires
+   * {@link AnalysisOptions#setIncrementalUpdates(boolean)} to have been set when the call graph was built.
+   * 
+   * Each node for a bytecode method of a changed class is re-analyzed with the IR of the method of the same selector in the new
+   * version of the class. If every instruction the node had before is still present, the constraints of the new instructions are
+   * added and the solver resumes from the current solution, so only the affected region of the propagation graph is evaluated
+   * again. From then on, nodes for methods of a changed class, including nodes created later, use the IRs of its new version.
+   * 
+   * Constraints cannot be retracted, so if a call, allocation or field access has been deleted, or a method of a node is missing
+   * from the new version of its class, nothing is updated and {@link UpdateResult#NEEDS_REBUILD} is returned. Sites are compared by
+   * the methods, types and fields they refer to (see {@link #sites(IR)}), so code that merely moves keeps the update incremental;
+   * the constraints generated for the old program counters and value numbers are kept, which may cost precision but not
+   * soundness.
+   * 
+   * The class hierarchy is not consulted again: calls are still resolved against the classes it holds, so changes that add or
+   * remove classes or methods, or that change supertypes, require a full rebuild.
+   * 
+   * @param changedClasses new versions of classes whose method bodies have changed, each named as a class in the class hierarchy
+   * @throws IllegalArgumentException if changedClasses is null
+   * @throws IllegalStateException if no call graph has been built with incremental updates enabled
+   */
+  public UpdateResult updateCallGraph(Collection<IClass> changedClasses, IProgressMonitor monitor) throws CancelException {
+    if (changedClasses == null) {
+      throw new IllegalArgumentException("changedClasses is null");
+    }
+    if (system == null || !getOptions().getIncrementalUpdates()) {
+      throw new IllegalStateException("no call graph has been built with incremental updates enabled");
+    }
+    Map<TypeReference, IClass> changed = HashMapFactory.make();
+    for (IClass klass : changedClasses) {
+      changed.put(klass.getReference(), klass);
+    }
+    List<CGNode> affected = new ArrayList<CGNode>();
+    for (CGNode node : callGraph) {
+      if (node.getMethod() instanceof IBytecodeMethod && changed.containsKey(node.getMethod().getDeclaringClass().getReference())) {
+        affected.add(node);
+      }
+    }
+
+    for (CGNode node : affected) {
+      IMethod m = changed.get(node.getMethod().getDeclaringClass().getReference()).getMethod(node.getMethod().getSelector());
+      if (m == null) {
+        if (DEBUG) {
+          System.err.println("method of " + node + " deleted, must rebuild");
+        }
+        return UpdateResult.NEEDS_REBUILD;
+      }
+      Set<Pair<SiteKind, Object>> before = instructionSites == null ? null : instructionSites.get(node);
+      if (before != null) {
+        IR ir = m.isAbstract() || m.isNative() ? null : getAnalysisCache().getIRFactory().makeIR(m, node.getContext(),
+            getOptions().getSSAOptions());
+        if (!sites(ir).containsAll(before)) {
+          if (DEBUG) {
+            System.err.println("sites deleted from " + node + ", must rebuild");
+          }
+          return UpdateResult.NEEDS_REBUILD;
+        }
+        if (ir != null && !implicitLocalsAgree(node, ir, new DefUse(ir))) {
+          if (DEBUG) {
+            System.err.println("values renumbered in " + node + ", must rebuild");
+          }
+          return UpdateResult.NEEDS_REBUILD;
+        }
+      }
+    }
+
+    if (updatedClasses == null) {
+      updatedClasses = HashMapFactory.make();
+      setContextInterpreter(new DelegatingSSAContextInterpreter(new UpdatedClassesInterpreter(), getCFAContextInterpreter()));
+    }
+    updatedClasses.putAll(changed);
+    for (CGNode node : affected) {
+      getAnalysisCache().invalidate(node.getMethod(), node.getContext());
+      getAnalysisCache().invalidate(node.getMethod(), Everywhere.EVERYWHERE);
+      markChanged(node);
+    }
+    getSolver().solve(monitor);
+    return UpdateResult.UPDATED;
+  }
+
+  /**
+   * Locals are identified by value number, which moved code may change. A local whose points-to set is represented implicitly
+   * cannot be given an explicit one later, so check that each such local of node is still invariant or unused in the new IR.
+   * 
+   * @return false if a local that is implicit for node would need an explicit points-to set with ir
+   */
+  private boolean implicitLocalsAgree(CGNode node, IR ir, DefUse du) {
+    SymbolTable symbolTable = ir.getSymbolTable();
+    for (int vn = 1; vn <= symbolTable.getMaxValueNumber(); vn++) {
+      if (system.isImplicit(getPointerKeyForLocal(node, vn)) && !contentsAreInvariant(symbolTable, du, vn)
+          && !hasNoInterestingUses(node, vn, du)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Models nodes for bytecode methods of the classes passed to {@link SSAPropagationCallGraphBuilder#updateCallGraph(Collection,
+   * IProgressMonitor)} with the same method of the latest version of the class. A node keeps the method it was created for, and
+   * that method is equal to the new one, so the IRs built here share cache entries with those of the old methods, which are
+   * invalidated when the class changes.
+   */
+  private class UpdatedClassesInterpreter implements SSAContextInterpreter {
+
+    /**
+     * @return the method of the latest version of the class of node, or null if the class has not been updated
+     */
+    private IMethod getMethod(CGNode node) {
+      if (!(node.getMethod() instanceof IBytecodeMethod)) {
+        return null;
+      }
+      IClass klass = updatedClasses.get(node.getMethod().getDeclaringClass().getReference());
+      return klass == null ? null : klass.getMethod(node.getMethod().getSelector());
+    }
+
+    public boolean understands(CGNode node) {
+      return getMethod(node) != null;
+    }
+
+    public IR getIR(CGNode node) {
+      return getAnalysisCache().getSSACache().findOrCreateIR(getMethod(node), node.getContext(), getOptions().getSSAOptions());
+    }
+
+    public DefUse getDU(CGNode node) {
+      return getAnalysisCache().getSSACache().findOrCreateDU(getMethod(node), node.getContext(), getOptions().getSSAOptions());
+    }
+
+    public int getNumberOfStatements(CGNode node) {
+      IR ir = getIR(node);
+      return (ir == null) ? -1 : ir.getInstructions().length;
+    }
+
+    public ControlFlowGraph<SSAInstruction, ISSABasicBlock> getCFG(CGNode node) {
+      IR ir = getIR(node);
+      return (ir == null) ? null : ir.getControlFlowGraph();
+    }
+
+    public Iterator<NewSiteReference> iterateNewSites(CGNode node) {
+      try {
+        return CodeScanner.getNewSites(getMethod(node)).iterator();
+      } catch (InvalidClassFileException e) {
+        e.printStackTrace();
+        Assertions.UNREACHABLE();
+        return null;
+      }
+    }
+
+    public Iterator<CallSiteReference> iterateCallSites(CGNode node) {
+      try {
+        return CodeScanner.getCallSites(getMethod(node)).iterator();
+      } catch (InvalidClassFileException e) {
+        e.printStackTrace();
+        Assertions.UNREACHABLE();
+        return null;
+      }
+    }
+
+    public Iterator<FieldReference> iterateFieldsRead(CGNode node) {
+      try {
+        return CodeScanner.getFieldsRead(getMethod(node)).iterator();
+      } catch (InvalidClassFileException e) {
+        e.printStackTrace();
+        Assertions.UNREACHABLE();
+        return null;
+      }
+    }
+
+    public Iterator<FieldReference> iterateFieldsWritten(CGNode node) {
+      try {
+        return CodeScanner.getFieldsWritten(getMethod(node)).iterator();
+      } catch (InvalidClassFileException e) {
+        e.printStackTrace();
+        Assertions.UNREACHABLE();
+        return null;
+      }
+    }
+
+    public boolean recordFactoryType(CGNode node, IClass klass) {
+      return false;
+    }
+  }
+
   /**
    * @return a visitor to examine instructions in the ir
    */
@@ -680,8 +951,8 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
             }
           }
         } else {
-          assert !system.isUnified(result);
-          assert !system.isUnified(arrayRefPtrKey);
+          assert !system.isUnexpectedlyUnified(result);
+          assert !system.isUnexpectedlyUnified(arrayRefPtrKey);
           system.newSideEffect(getBuilder().new ArrayLoadOperator(system.findOrCreatePointsToSet(result)), arrayRefPtrKey);
         }
       }
@@ -735,7 +1006,7 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
           InstanceKey[] ik = getInvariantContents(value);
           for (int i = 0; i < ik.length; i++) {
             system.findOrCreateIndexForInstanceKey(ik[i]);
-            assert !system.isUnified(arrayRefPtrKey);
+            assert !system.isUnexpectedlyUnified(arrayRefPtrKey);
             system.newSideEffect(getBuilder().new InstanceArrayStoreOperator(ik[i]), arrayRefPtrKey);
           }
         } else {
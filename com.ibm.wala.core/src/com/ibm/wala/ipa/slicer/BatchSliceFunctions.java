@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IPartiallyBalancedFlowFunctions;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IdentityFlowFunction;
+
+/**
+ * flow functions for slicing from many roots in one tabulation. Fact i stands for "reached from root i". Where the slice functions
+ * would make the reachability fact 0 hold, these carry the incoming fact unchanged, so the slices of different roots stay apart.
+ */
+public class BatchSliceFunctions implements IPartiallyBalancedFlowFunctions<Statement> {
+
+  private final IPartiallyBalancedFlowFunctions<Statement> delegate;
+
+  /**
+   * @param delegate slice functions over the single reachability fact 0
+   */
+  public BatchSliceFunctions(IPartiallyBalancedFlowFunctions<Statement> delegate) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("delegate is null");
+    }
+    this.delegate = delegate;
+  }
+
+  private static IUnaryFlowFunction tag(IUnaryFlowFunction f) {
+    return f == ReachabilityFunctions.FLOW_REACHES ? IdentityFlowFunction.identity() : f;
+  }
+
+  private static IFlowFunction tag(IFlowFunction f) {
+    return f == ReachabilityFunctions.FLOW_REACHES ? IdentityFlowFunction.identity() : f;
+  }
+
+  public IUnaryFlowFunction getCallFlowFunction(Statement src, Statement dest, Statement ret) {
+    return tag(delegate.getCallFlowFunction(src, dest, ret));
+  }
+
+  public IUnaryFlowFunction getCallNoneToReturnFlowFunction(Statement src, Statement dest) {
+    return tag(delegate.getCallNoneToReturnFlowFunction(src, dest));
+  }
+
+  public IUnaryFlowFunction getCallToReturnFlowFunction(Statement src, Statement dest) {
+    return tag(delegate.getCallToReturnFlowFunction(src, dest));
+  }
+
+  public IUnaryFlowFunction getNormalFlowFunction(Statement src, Statement dest) {
+    return tag(delegate.getNormalFlowFunction(src, dest));
+  }
+
+  public IFlowFunction getReturnFlowFunction(Statement call, Statement src, Statement dest) {
+    return tag(delegate.getReturnFlowFunction(call, src, dest));
+  }
+
+  public IFlowFunction getUnbalancedReturnFlowFunction(Statement src, Statement dest) {
+    return tag(delegate.getUnbalancedReturnFlowFunction(src, dest));
+  }
+}
@@ -10,8 +10,11 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,24 +40,23 @@ import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.ipa.slicer.HeapStatement.HeapReturnCaller;
 import com.ibm.wala.ipa.slicer.Statement.Kind;
 import com.ibm.wala.ssa.IR;
-import com.ibm.wala.ssa.ISSABasicBlock;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
 import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
-import com.ibm.wala.util.collections.Filter;
-import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.HashMapFactory;
-import com.ibm.wala.util.collections.Iterator2Collection;
-import com.ibm.wala.util.collections.Iterator2Iterable;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.IntObjectHashMap;
 import com.ibm.wala.util.collections.ObjectArrayMapping;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.BasicNaturalRelation;
 import com.ibm.wala.util.intset.BitVector;
 import com.ibm.wala.util.intset.BitVectorIntSet;
 import com.ibm.wala.util.intset.IBinaryNaturalRelation;
+import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
@@ -64,6 +66,11 @@ import com.ibm.wala.util.intset.SparseIntSet;
 
 /**
  * Computation of reaching definitions for heap locations, relying on pointer analysis
+ * 
+ * The heap locations each statement may def and read are computed once, and defs are indexed by {@link PointerKey}. Only
+ * statements that def a location read by some statement of interest take part in the problem, and the gen and kill sets of each
+ * instruction are built from the index rather than by scanning all statements. The problem is solved as one bit-vector problem
+ * over all locations, or optionally one location at a time.
  */
 public class HeapReachingDefs {
 
@@ -73,8 +80,25 @@ public class HeapReachingDefs {
 
   private final ModRef modRef;
 
+  /**
+   * if true, propagate the defs of each location on its own (see {@link #solveSparse}); otherwise solve one bit-vector problem for
+   * all locations
+   */
+  private final boolean sparse;
+
   public HeapReachingDefs(ModRef modRef) {
+    this(modRef, false);
+  }
+
+  /**
+   * @param sparse if true, propagate the defs of each location read only from the blocks that def it, as far as they reach;
+   *          otherwise solve one bit-vector problem over all blocks. The results are the same. The sparse solver is faster
+   *          when the PDG asks for one location at a time, but building the PDGs costs about as much either way, so the
+   *          bit-vector solver remains the default.
+   */
+  public HeapReachingDefs(ModRef modRef, boolean sparse) {
     this.modRef = modRef;
+    this.sparse = sparse;
   }
 
   /**
@@ -112,20 +136,53 @@ public class HeapReachingDefs {
     // create a control flow graph with one instruction per basic block.
     ExplodedControlFlowGraph cfg = ExplodedControlFlowGraph.make(ir);
 
-    // create a mapping between statements and integers, used in bit vectors
-    // shortly
-    OrdinalSetMapping<Statement> domain = createStatementDomain(statements);
+    ExtendedHeapModel h = new DelegatingExtendedHeapModel(pa.getHeapModel());
 
     // map SSAInstruction indices to statements
-    Map<Integer, NormalStatement> ssaInstructionIndex2Statement = mapInstructionsToStatements(domain);
+    IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement = mapInstructionsToStatements(statements);
+
+    // the heap locations each statement may def and read
+    Map<Statement, Collection<PointerKey>> mods = HashMapFactory.make();
+    Map<Statement, Collection<PointerKey>> refs = HashMapFactory.make();
+    Set<PointerKey> read = HashSetFactory.make();
+    for (Statement s : statements) {
+      Collection<PointerKey> m = getMod(s, node, h, pa, exclusions);
+      if (!m.isEmpty()) {
+        mods.put(s, m);
+      }
+      Collection<PointerKey> r = getRef(s, node, h, pa, exclusions);
+      if (!r.isEmpty()) {
+        refs.put(s, r);
+        read.addAll(r);
+      }
+    }
+
+    // create a mapping between the defs of locations that are read and integers, used in bit vectors shortly
+    OrdinalSetMapping<Statement> domain = createDefDomain(mods, read);
+
+    // for each location, which statements may def it
+    Map<PointerKey, MutableIntSet> pointerKeyMod = initPointerKeyMod(domain, mods);
+
+    Map<Statement, OrdinalSet<Statement>> result = HashMapFactory.make();
+    if (domain.getSize() == 0) {
+      for (Statement s : statements) {
+        result.put(s, OrdinalSet.<Statement> empty());
+      }
+      return new RDMap(result);
+    }
+    RD rd = new RD(node, cfg, pa, h, domain, mods, pointerKeyMod, ssaInstructionIndex2Statement, exclusions);
+    if (sparse) {
+      solveSparse(result, statements, refs, pointerKeyMod, domain, node, mod, cfg, ssaInstructionIndex2Statement, rd, cg);
+      return new RDMap(result);
+    }
 
     // solve reaching definitions as a dataflow problem
-    BitVectorFramework<IExplodedBasicBlock, Statement> rd = new BitVectorFramework<IExplodedBasicBlock, Statement>(cfg, new RD(node,
-        cfg, pa, domain, ssaInstructionIndex2Statement, exclusions), domain);
+    BitVectorFramework<IExplodedBasicBlock, Statement> framework = new BitVectorFramework<IExplodedBasicBlock, Statement>(cfg, rd,
+        domain);
     if (VERBOSE) {
       System.err.println("Solve ");
     }
-    BitVectorSolver<? extends ISSABasicBlock> solver = new BitVectorSolver<IExplodedBasicBlock>(rd);
+    BitVectorSolver<IExplodedBasicBlock> solver = new BitVectorSolver<IExplodedBasicBlock>(framework);
     try {
       solver.solve(null);
     } catch (CancelException e) {
@@ -134,79 +191,22 @@ public class HeapReachingDefs {
     if (VERBOSE) {
       System.err.println("Solved. ");
     }
-    return makeResult(solver, domain, node, new DelegatingExtendedHeapModel(pa.getHeapModel()), pa, mod, cfg,
-        ssaInstructionIndex2Statement, exclusions, cg);
-  }
-
-  private class RDMap implements Map<Statement, OrdinalSet<Statement>> {
-    final Map<Statement, OrdinalSet<Statement>> delegate = HashMapFactory.make();
-
-    private final HeapExclusions exclusions;
-
-    private final CallGraph cg;
-
-    RDMap(BitVectorSolver<? extends ISSABasicBlock> solver, OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h,
-        PointerAnalysis pa, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
-      if (VERBOSE) {
-        System.err.println("Init pointer Key mod ");
-      }
-      this.exclusions = exclusions;
-      this.cg = cg;
-      Map<PointerKey, MutableIntSet> pointerKeyMod = initPointerKeyMod(domain, node, h, pa);
-      if (VERBOSE) {
-        System.err.println("Eager populate");
-      }
-      eagerPopulate(pointerKeyMod, solver, domain, node, h, pa, mod, cfg, ssaInstructionIndex2Statement);
-      if (VERBOSE) {
-        System.err.println("Done populate");
-      }
-    }
-
-    private void eagerPopulate(Map<PointerKey, MutableIntSet> pointerKeyMod, BitVectorSolver<? extends ISSABasicBlock> solver,
-        OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h, PointerAnalysis pa,
-        Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstruction2Statement) {
-      for (Statement s : domain) {
-        delegate.put(s, computeResult(s, pointerKeyMod, solver, domain, node, h, pa, mod, cfg, ssaInstruction2Statement));
+    for (Statement s : statements) {
+      Collection<PointerKey> ref = refs.get(s);
+      if (ref == null) {
+        result.put(s, OrdinalSet.<Statement> empty());
+      } else {
+        result.put(s, computeResult(s, ref, pointerKeyMod, solver, domain, node, mod, cfg, ssaInstructionIndex2Statement, cg));
       }
     }
+    return new RDMap(result);
+  }
 
-    /**
-     * For each pointerKey, which statements may def it
-     */
-    private Map<PointerKey, MutableIntSet> initPointerKeyMod(OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h,
-        PointerAnalysis pa) {
-      Map<PointerKey, MutableIntSet> pointerKeyMod = HashMapFactory.make();
-      for (Statement s : domain) {
-        switch (s.getKind()) {
-        case HEAP_PARAM_CALLEE:
-        case HEAP_RET_CALLER: {
-          HeapStatement hs = (HeapStatement) s;
-          MutableIntSet set = findOrCreateIntSet(pointerKeyMod, hs.getLocation());
-          set.add(domain.getMappedIndex(s));
-          break;
-        }
-        default: {
-          Collection<PointerKey> m = getMod(s, node, h, pa, exclusions);
-          for (PointerKey p : m) {
-            MutableIntSet set = findOrCreateIntSet(pointerKeyMod, p);
-            set.add(domain.getMappedIndex(s));
-          }
-          break;
-        }
-        }
-      }
-      return pointerKeyMod;
-    }
+  private static class RDMap implements Map<Statement, OrdinalSet<Statement>> {
+    final Map<Statement, OrdinalSet<Statement>> delegate;
 
-    private MutableIntSet findOrCreateIntSet(Map<PointerKey, MutableIntSet> map, PointerKey key) {
-      MutableIntSet result = map.get(key);
-      if (result == null) {
-        result = MutableSparseIntSet.makeEmpty();
-        map.put(key, result);
-      }
-      return result;
+    RDMap(Map<Statement, OrdinalSet<Statement>> delegate) {
+      this.delegate = delegate;
     }
 
     @Override
@@ -283,108 +283,272 @@ public class HeapReachingDefs {
       Assertions.UNREACHABLE();
       return delegate.values();
     }
+  }
 
-    /**
-     * For a statement s, compute the set of statements that may def the heap value read by s.
-     */
-    OrdinalSet<Statement> computeResult(Statement s, Map<PointerKey, MutableIntSet> pointerKeyMod,
-        BitVectorSolver<? extends ISSABasicBlock> solver, OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h,
-        PointerAnalysis pa, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement) {
-      switch (s.getKind()) {
-      case NORMAL:
-        NormalStatement n = (NormalStatement) s;
-        Collection<PointerKey> ref = modRef.getRef(node, h, pa, n.getInstruction(), exclusions);
-        if (!ref.isEmpty()) {
-          ISSABasicBlock bb = cfg.getBlockForInstruction(n.getInstructionIndex());
-          BitVectorVariable v = solver.getIn(bb);
-          MutableSparseIntSet defs = MutableSparseIntSet.makeEmpty();
-          if (v.getValue() != null) {
-            for (PointerKey p : ref) {
-              if (pointerKeyMod.get(p) != null) {
-                defs.addAll(pointerKeyMod.get(p).intersection(v.getValue()));
-              }
-            }
+  /**
+   * For a statement s which reads the locations ref, compute the set of statements that may def the heap value read by s.
+   */
+  private static OrdinalSet<Statement> computeResult(Statement s, Collection<PointerKey> ref,
+      Map<PointerKey, MutableIntSet> pointerKeyMod, BitVectorSolver<IExplodedBasicBlock> solver, OrdinalSetMapping<Statement> domain,
+      CGNode node, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
+      IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement, CallGraph cg) {
+    switch (s.getKind()) {
+    case NORMAL: {
+      NormalStatement n = (NormalStatement) s;
+      IExplodedBasicBlock bb = cfg.getBlockForInstruction(n.getInstructionIndex());
+      IntSet v = solver.getIn(bb).getValue();
+      MutableSparseIntSet defs = MutableSparseIntSet.makeEmpty();
+      if (v != null) {
+        for (PointerKey p : ref) {
+          if (pointerKeyMod.get(p) != null) {
+            defs.addAll(pointerKeyMod.get(p).intersection(v));
           }
-          return new OrdinalSet<Statement>(defs, domain);
-        } else {
-          return OrdinalSet.empty();
-        }
-      case HEAP_RET_CALLEE: {
-        HeapStatement.HeapReturnCallee r = (HeapStatement.HeapReturnCallee) s;
-        PointerKey p = r.getLocation();
-        BitVectorVariable v = solver.getIn(cfg.exit());
-        if (DEBUG) {
-          System.err.println("computeResult " + cfg.exit() + " " + s + " " + pointerKeyMod.get(p) + " " + v);
         }
-        if (pointerKeyMod.get(p) == null) {
-          return OrdinalSet.empty();
+      }
+      return new OrdinalSet<Statement>(defs, domain);
+    }
+    case HEAP_RET_CALLEE: {
+      HeapStatement.HeapReturnCallee r = (HeapStatement.HeapReturnCallee) s;
+      IntSet v = solver.getIn(cfg.exit()).getValue();
+      if (DEBUG) {
+        System.err.println("computeResult " + cfg.exit() + " " + s + " " + pointerKeyMod.get(r.getLocation()) + " " + v);
+      }
+      return reaching(r.getLocation(), v, pointerKeyMod, domain);
+    }
+    case HEAP_RET_CALLER: {
+      HeapStatement.HeapReturnCaller r = (HeapStatement.HeapReturnCaller) s;
+      if (allCalleesMod(cg, r, mod)) {
+        // do nothing ... force flow into and out of the callees
+        return OrdinalSet.empty();
+      } else {
+        // the defs that flow to the call may flow to this return, since
+        // the callees may have no relevant effect.
+        IntSet v = solver.getIn(cfg.getBlockForInstruction(r.getCallIndex())).getValue();
+        return reaching(r.getLocation(), v, pointerKeyMod, domain);
+      }
+    }
+    case HEAP_PARAM_CALLER: {
+      HeapStatement.HeapParamCaller r = (HeapStatement.HeapParamCaller) s;
+      NormalStatement call = ssaInstructionIndex2Statement.get(r.getCallIndex());
+      IExplodedBasicBlock callBlock = cfg.getBlockForInstruction(call.getInstructionIndex());
+      if (callBlock.isEntryBlock()) {
+        int x = domain.getMappedIndex(new HeapStatement.HeapParamCallee(node, r.getLocation()));
+        assert x >= 0;
+        IntSet xset = SparseIntSet.singleton(x);
+        return new OrdinalSet<Statement>(xset, domain);
+      }
+      return reaching(r.getLocation(), solver.getIn(callBlock).getValue(), pointerKeyMod, domain);
+    }
+    default:
+      Assertions.UNREACHABLE(s.getKind().toString());
+      return null;
+    }
+  }
+
+  /**
+   * @param v reaching defs
+   * @return the reaching defs of location p
+   */
+  private static OrdinalSet<Statement> reaching(PointerKey p, IntSet v, Map<PointerKey, MutableIntSet> pointerKeyMod,
+      OrdinalSetMapping<Statement> domain) {
+    IntSet defs = pointerKeyMod.get(p);
+    if (defs == null || v == null) {
+      return OrdinalSet.empty();
+    }
+    return new OrdinalSet<Statement>(defs.intersection(v), domain);
+  }
+
+  /**
+   * Solve reaching definitions one location at a time. The defs of a location p are propagated from the blocks that gen them along
+   * the control-flow edges, with the transfer functions of {@link RD} restricted to the defs of p, and stop where the set reaching
+   * a block no longer grows. Since each def is killed and gen'ed on its own, the set reaching a block is the projection onto the
+   * defs of p of what the bit-vector solver computes, so each statement gets the same result as from {@link #computeResult}.
+   */
+  private static void solveSparse(Map<Statement, OrdinalSet<Statement>> result, Collection<Statement> statements,
+      Map<Statement, Collection<PointerKey>> refs, Map<PointerKey, MutableIntSet> pointerKeyMod,
+      OrdinalSetMapping<Statement> domain, CGNode node, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
+      IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement, RD rd, CallGraph cg) {
+    // for each location, the statements that read it, and the blocks at whose entry they read it
+    Map<PointerKey, List<Pair<Statement, IExplodedBasicBlock>>> uses = HashMapFactory.make();
+    Map<Statement, MutableSparseIntSet> reached = HashMapFactory.make();
+    for (Statement s : statements) {
+      Collection<PointerKey> ref = refs.get(s);
+      if (ref == null) {
+        continue;
+      }
+      switch (s.getKind()) {
+      case NORMAL: {
+        IExplodedBasicBlock bb = cfg.getBlockForInstruction(((NormalStatement) s).getInstructionIndex());
+        for (PointerKey p : ref) {
+          addUse(uses, pointerKeyMod, p, s, bb);
         }
-        return new OrdinalSet<Statement>(pointerKeyMod.get(p).intersection(v.getValue()), domain);
+        break;
+      }
+      case HEAP_RET_CALLEE: {
+        addUse(uses, pointerKeyMod, ((HeapStatement) s).getLocation(), s, cfg.exit());
+        break;
       }
       case HEAP_RET_CALLER: {
         HeapStatement.HeapReturnCaller r = (HeapStatement.HeapReturnCaller) s;
-        ISSABasicBlock bb = cfg.getBlockForInstruction(r.getCallIndex());
-        BitVectorVariable v = solver.getIn(bb);
-        if (allCalleesMod(cg, r, mod) || pointerKeyMod.get(r.getLocation()) == null || v.getValue() == null) {
-          // do nothing ... force flow into and out of the callees
-          return OrdinalSet.empty();
-        } else {
-          // the defs that flow to the call may flow to this return, since
-          // the callees may have no relevant effect.
-          return new OrdinalSet<Statement>(pointerKeyMod.get(r.getLocation()).intersection(v.getValue()), domain);
+        if (!allCalleesMod(cg, r, mod)) {
+          addUse(uses, pointerKeyMod, r.getLocation(), s, cfg.getBlockForInstruction(r.getCallIndex()));
         }
+        break;
       }
       case HEAP_PARAM_CALLER: {
         HeapStatement.HeapParamCaller r = (HeapStatement.HeapParamCaller) s;
         NormalStatement call = ssaInstructionIndex2Statement.get(r.getCallIndex());
-        ISSABasicBlock callBlock = cfg.getBlockForInstruction(call.getInstructionIndex());
+        IExplodedBasicBlock callBlock = cfg.getBlockForInstruction(call.getInstructionIndex());
         if (callBlock.isEntryBlock()) {
           int x = domain.getMappedIndex(new HeapStatement.HeapParamCallee(node, r.getLocation()));
           assert x >= 0;
-          IntSet xset = SparseIntSet.singleton(x);
-          return new OrdinalSet<Statement>(xset, domain);
-        }
-        BitVectorVariable v = solver.getIn(callBlock);
-        if (pointerKeyMod.get(r.getLocation()) == null || v.getValue() == null) {
-          // do nothing ... force flow into and out of the callees
-          return OrdinalSet.empty();
+          reached.put(s, MutableSparseIntSet.make(SparseIntSet.singleton(x)));
         } else {
-          return new OrdinalSet<Statement>(pointerKeyMod.get(r.getLocation()).intersection(v.getValue()), domain);
+          addUse(uses, pointerKeyMod, r.getLocation(), s, callBlock);
         }
+        break;
       }
-      case NORMAL_RET_CALLEE:
-      case NORMAL_RET_CALLER:
-      case PARAM_CALLEE:
-      case PARAM_CALLER:
-      case EXC_RET_CALLEE:
-      case EXC_RET_CALLER:
-      case PHI:
-      case PI:
-      case CATCH:
-      case METHOD_ENTRY:
-      case METHOD_EXIT:
-        return OrdinalSet.empty();
-      case HEAP_PARAM_CALLEE:
-        // no statements in this method will def the heap being passed in
-        return OrdinalSet.empty();
       default:
         Assertions.UNREACHABLE(s.getKind().toString());
-        return null;
       }
     }
 
+    IntSet heapEntry = rd.heapEntryStatements();
+    // the gen and kill sets of each block, by block number, computed on first use
+    IntSet[] gen = new IntSet[cfg.getMaxNumber() + 1];
+    BitVector[] kill = new BitVector[cfg.getMaxNumber() + 1];
+    BitVector genKillDone = new BitVector(cfg.getMaxNumber() + 1);
+    // the defs of the current location reaching the entry of each block, by block number
+    MutableSparseIntSet[] in = new MutableSparseIntSet[cfg.getMaxNumber() + 1];
+    List<IExplodedBasicBlock> visited = new ArrayList<IExplodedBasicBlock>();
+    // the blocks to visit, by block number; they are swept in increasing order, which is roughly program order, so that a def
+    // usually reaches the blocks after it in one sweep
+    BitVector worklist = new BitVector(cfg.getMaxNumber() + 1);
+    for (Map.Entry<PointerKey, List<Pair<Statement, IExplodedBasicBlock>>> e : uses.entrySet()) {
+      IntSet defs = pointerKeyMod.get(e.getKey());
+      for (IntIterator it = defs.intIterator(); it.hasNext();) {
+        worklist.set(cfg.getNumber(genBlock(domain.getMappedObject(it.next()), cfg)));
+      }
+      for (int next = 0;;) {
+        int n = worklist.nextSetBit(next);
+        if (n < 0) {
+          n = worklist.nextSetBit(0);
+          if (n < 0) {
+            break;
+          }
+        }
+        worklist.clear(n);
+        next = n + 1;
+        IExplodedBasicBlock src = cfg.getNode(n);
+        if (!genKillDone.get(n)) {
+          genKillDone.set(n);
+          gen[n] = rd.gen(src);
+          kill[n] = rd.kill(src);
+        }
+        // the same cases as RD.getEdgeTransferFunction; the set flowing out is only copied if the block changes it
+        IntSet v = in[n] == null ? EMPTY : in[n];
+        IntSet normalOut;
+        boolean exceptionalIdentity = false;
+        if (src.isEntryBlock()) {
+          normalOut = transfer(v, null, heapEntry, defs);
+        } else {
+          exceptionalIdentity = src.getInstruction() != null && !(src.getInstruction() instanceof SSAAbstractInvokeInstruction);
+          normalOut = transfer(v, kill[n], gen[n], defs);
+        }
+        Collection<IExplodedBasicBlock> normalSuccs = exceptionalIdentity && normalOut != v ? cfg.getNormalSuccessors(src) : null;
+        for (Iterator<? extends IExplodedBasicBlock> succs = cfg.getSuccNodes(src); succs.hasNext();) {
+          IExplodedBasicBlock dst = succs.next();
+          IntSet out = normalSuccs != null && !normalSuccs.contains(dst) ? v : normalOut;
+          int d = cfg.getNumber(dst);
+          if (in[d] == null) {
+            in[d] = MutableSparseIntSet.makeEmpty();
+            visited.add(dst);
+          }
+          if (in[d].addAll(out)) {
+            worklist.set(d);
+          }
+        }
+      }
+      for (Pair<Statement, IExplodedBasicBlock> use : e.getValue()) {
+        MutableSparseIntSet v = in[cfg.getNumber(use.snd)];
+        if (v != null && !v.isEmpty()) {
+          MutableSparseIntSet r = reached.get(use.fst);
+          if (r == null) {
+            reached.put(use.fst, MutableSparseIntSet.make(v));
+          } else {
+            r.addAll(v);
+          }
+        }
+      }
+      for (IExplodedBasicBlock b : visited) {
+        in[cfg.getNumber(b)] = null;
+      }
+      visited.clear();
+    }
+
+    for (Statement s : statements) {
+      MutableSparseIntSet r = reached.get(s);
+      result.put(s, r == null ? OrdinalSet.<Statement> empty() : new OrdinalSet<Statement>(r, domain));
+    }
   }
 
+  private static final IntSet EMPTY = new SparseIntSet();
+
   /**
-   * For each statement s, compute the set of statements that may def the heap value read by s.
+   * @return v without the elements of kill, and with the elements of gen that are in defs; v itself if that changes nothing
    */
-  private Map<Statement, OrdinalSet<Statement>> makeResult(BitVectorSolver<? extends ISSABasicBlock> solver,
-      OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h, PointerAnalysis pa,
-      Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-      Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
+  private static IntSet transfer(IntSet v, BitVector kill, IntSet gen, IntSet defs) {
+    boolean kills = false;
+    if (kill != null) {
+      for (IntIterator it = v.intIterator(); it.hasNext();) {
+        if (kill.get(it.next())) {
+          kills = true;
+          break;
+        }
+      }
+    }
+    if (!kills && (gen == null || !gen.containsAny(defs))) {
+      return v;
+    }
+    MutableSparseIntSet result = MutableSparseIntSet.make(v);
+    if (kills) {
+      result.removeAll(kill);
+    }
+    if (gen != null) {
+      result.addAllInIntersection(gen, defs);
+    }
+    return result;
+  }
 
-    return new RDMap(solver, domain, node, h, pa, mod, cfg, ssaInstructionIndex2Statement, exclusions, cg);
+  private static void addUse(Map<PointerKey, List<Pair<Statement, IExplodedBasicBlock>>> uses,
+      Map<PointerKey, MutableIntSet> pointerKeyMod, PointerKey p, Statement s, IExplodedBasicBlock b) {
+    if (pointerKeyMod.get(p) == null) {
+      // no def of p reaches anything
+      return;
+    }
+    List<Pair<Statement, IExplodedBasicBlock>> l = uses.get(p);
+    if (l == null) {
+      l = new ArrayList<Pair<Statement, IExplodedBasicBlock>>();
+      uses.put(p, l);
+    }
+    l.add(Pair.make(s, b));
+  }
+
+  /**
+   * @return the block whose out edges gen the def statement s; see {@link RD#gen}
+   */
+  private static IExplodedBasicBlock genBlock(Statement s, ExplodedControlFlowGraph cfg) {
+    switch (s.getKind()) {
+    case NORMAL:
+      return cfg.getBlockForInstruction(((NormalStatement) s).getInstructionIndex());
+    case HEAP_RET_CALLER:
+      return cfg.getBlockForInstruction(((HeapStatement.HeapReturnCaller) s).getCallIndex());
+    case HEAP_PARAM_CALLEE:
+      return cfg.entry();
+    default:
+      Assertions.UNREACHABLE(s.getKind().toString());
+      return null;
+    }
   }
 
   /**
@@ -433,12 +597,45 @@ public class HeapReachingDefs {
     }
   }
 
+  /**
+   * @return the heap locations whose reaching defs matter at s
+   */
+  private Collection<PointerKey> getRef(Statement s, CGNode n, ExtendedHeapModel h, PointerAnalysis pa, HeapExclusions exclusions) {
+    switch (s.getKind()) {
+    case NORMAL:
+      NormalStatement ns = (NormalStatement) s;
+      return modRef.getRef(n, h, pa, ns.getInstruction(), exclusions);
+    case HEAP_RET_CALLEE:
+    case HEAP_RET_CALLER:
+    case HEAP_PARAM_CALLER:
+      HeapStatement hs = (HeapStatement) s;
+      return Collections.singleton(hs.getLocation());
+    case HEAP_PARAM_CALLEE:
+      // no statements in this method will def the heap being passed in
+    case EXC_RET_CALLEE:
+    case EXC_RET_CALLER:
+    case NORMAL_RET_CALLEE:
+    case NORMAL_RET_CALLER:
+    case PARAM_CALLEE:
+    case PARAM_CALLER:
+    case PHI:
+    case PI:
+    case METHOD_ENTRY:
+    case METHOD_EXIT:
+    case CATCH:
+      return Collections.emptySet();
+    default:
+      Assertions.UNREACHABLE(s.getKind() + " " + s.toString());
+      return null;
+    }
+  }
+
   /**
    * map each SSAInstruction index to the NormalStatement which represents it.
    */
-  private static Map<Integer, NormalStatement> mapInstructionsToStatements(OrdinalSetMapping<Statement> domain) {
-    Map<Integer, NormalStatement> result = HashMapFactory.make();
-    for (Statement s : domain) {
+  private static IntObjectHashMap<NormalStatement> mapInstructionsToStatements(Collection<Statement> statements) {
+    IntObjectHashMap<NormalStatement> result = new IntObjectHashMap<NormalStatement>();
+    for (Statement s : statements) {
       if (s.getKind().equals(Kind.NORMAL)) {
         NormalStatement n = (NormalStatement) s;
         result.put(n.getInstructionIndex(), n);
@@ -447,10 +644,40 @@ public class HeapReachingDefs {
     return result;
   }
 
-  private static OrdinalSetMapping<Statement> createStatementDomain(Collection<Statement> statements) {
-    Statement[] arr = new Statement[statements.size()];
-    OrdinalSetMapping<Statement> domain = new ObjectArrayMapping<Statement>(statements.toArray(arr));
-    return domain;
+  /**
+   * Statements that def no location in read never reach a use, so they are left out of the bit vectors.
+   */
+  private static OrdinalSetMapping<Statement> createDefDomain(Map<Statement, Collection<PointerKey>> mods, Set<PointerKey> read) {
+    List<Statement> defs = new ArrayList<Statement>();
+    for (Map.Entry<Statement, Collection<PointerKey>> e : mods.entrySet()) {
+      for (PointerKey p : e.getValue()) {
+        if (read.contains(p)) {
+          defs.add(e.getKey());
+          break;
+        }
+      }
+    }
+    return new ObjectArrayMapping<Statement>(defs.toArray(new Statement[defs.size()]));
+  }
+
+  /**
+   * For each pointerKey, which statements in the domain may def it
+   */
+  private static Map<PointerKey, MutableIntSet> initPointerKeyMod(OrdinalSetMapping<Statement> domain,
+      Map<Statement, Collection<PointerKey>> mods) {
+    Map<PointerKey, MutableIntSet> pointerKeyMod = HashMapFactory.make();
+    for (Statement s : domain) {
+      int i = domain.getMappedIndex(s);
+      for (PointerKey p : mods.get(s)) {
+        MutableIntSet set = pointerKeyMod.get(p);
+        if (set == null) {
+          set = MutableSparseIntSet.makeEmpty();
+          pointerKeyMod.put(p, set);
+        }
+        set.add(i);
+      }
+    }
+    return pointerKeyMod;
   }
 
   /**
@@ -468,25 +695,41 @@ public class HeapReachingDefs {
 
     private final ExtendedHeapModel h;
 
-    private final Map<Integer, NormalStatement> ssaInstructionIndex2Statement;
+    private final Map<Statement, Collection<PointerKey>> mods;
+
+    private final Map<PointerKey, MutableIntSet> pointerKeyMod;
+
+    private final IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement;
 
     private final HeapExclusions exclusions;
 
     /**
-     * if (i,j) \in heapReturnCaller, then statement j is a HeapStatement.ReturnCaller for statement i, a NormalStatement
-     * representing an invoke
+     * if (i,j) \in heapReturnCaller, then statement j is a HeapStatement.ReturnCaller for the invoke at instruction index i
      */
     private final IBinaryNaturalRelation heapReturnCaller = new BasicNaturalRelation();
 
-    public RD(CGNode node, ExplodedControlFlowGraph cfg, PointerAnalysis pa, OrdinalSetMapping<Statement> domain,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions) {
+    /**
+     * transfer function along the normal out edges of each block, indexed by block number; built on first use
+     */
+    private final UnaryOperator<BitVectorVariable>[] normalTransfer;
+
+    private UnaryOperator<BitVectorVariable> entryTransfer;
+
+    @SuppressWarnings("unchecked")
+    public RD(CGNode node, ExplodedControlFlowGraph cfg, PointerAnalysis pa, ExtendedHeapModel h,
+        OrdinalSetMapping<Statement> domain, Map<Statement, Collection<PointerKey>> mods,
+        Map<PointerKey, MutableIntSet> pointerKeyMod, IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement,
+        HeapExclusions exclusions) {
       this.node = node;
       this.cfg = cfg;
       this.domain = domain;
       this.pa = pa;
-      this.h = new DelegatingExtendedHeapModel(pa.getHeapModel());
+      this.h = h;
+      this.mods = mods;
+      this.pointerKeyMod = pointerKeyMod;
       this.ssaInstructionIndex2Statement = ssaInstructionIndex2Statement;
       this.exclusions = exclusions;
+      this.normalTransfer = new UnaryOperator[cfg.getMaxNumber() + 1];
       initHeapReturnCaller();
     }
 
@@ -497,10 +740,7 @@ public class HeapReachingDefs {
             System.err.println("initHeapReturnCaller " + s);
           }
           HeapStatement.HeapReturnCaller r = (HeapReturnCaller) s;
-          NormalStatement call = ssaInstructionIndex2Statement.get(r.getCallIndex());
-          int i = domain.getMappedIndex(call);
-          int j = domain.getMappedIndex(r);
-          heapReturnCaller.add(i, j);
+          heapReturnCaller.add(r.getCallIndex(), domain.getMappedIndex(r));
         }
       }
     }
@@ -510,10 +750,14 @@ public class HeapReachingDefs {
         System.err.println("getEdgeXfer: " + src + " " + dst + " " + src.isEntryBlock());
       }
       if (src.isEntryBlock()) {
-        if (DEBUG) {
-          System.err.println("heapEntry " + heapEntryStatements());
+        if (entryTransfer == null) {
+          IntSet heapEntry = heapEntryStatements();
+          if (DEBUG) {
+            System.err.println("heapEntry " + heapEntry);
+          }
+          entryTransfer = new BitVectorUnionVector(new BitVectorIntSet(heapEntry).getBitVector());
         }
-        return new BitVectorUnionVector(new BitVectorIntSet(heapEntryStatements()).getBitVector());
+        return entryTransfer;
       }
       if (src.getInstruction() != null && !(src.getInstruction() instanceof SSAAbstractInvokeInstruction)
           && !cfg.getNormalSuccessors(src).contains(dst)) {
@@ -525,23 +769,31 @@ public class HeapReachingDefs {
         }
         return BitVectorIdentity.instance();
       } else {
-        BitVector kill = kill(src);
-        IntSet gen = gen(src);
-        if (DEBUG) {
-          System.err.println("gen: " + gen + " kill: " + kill);
+        int n = cfg.getNumber(src);
+        if (normalTransfer[n] == null) {
+          normalTransfer[n] = makeTransferFunction(src);
         }
-        if (kill == null) {
-          if (gen == null) {
-            return BitVectorIdentity.instance();
-          } else {
-            return new BitVectorUnionVector(new BitVectorIntSet(gen).getBitVector());
-          }
+        return normalTransfer[n];
+      }
+    }
+
+    private UnaryOperator<BitVectorVariable> makeTransferFunction(IExplodedBasicBlock src) {
+      BitVector kill = kill(src);
+      IntSet gen = gen(src);
+      if (DEBUG) {
+        System.err.println("gen: " + gen + " kill: " + kill);
+      }
+      if (kill == null) {
+        if (gen == null) {
+          return BitVectorIdentity.instance();
         } else {
-          if (gen == null) {
-            return new BitVectorMinusVector(kill);
-          } else {
-            return new BitVectorKillGen(kill, new BitVectorIntSet(gen).getBitVector());
-          }
+          return new BitVectorUnionVector(new BitVectorIntSet(gen).getBitVector());
+        }
+      } else {
+        if (gen == null) {
+          return new BitVectorMinusVector(kill);
+        } else {
+          return new BitVectorKillGen(kill, new BitVectorIntSet(gen).getBitVector());
         }
       }
     }
@@ -562,6 +814,19 @@ public class HeapReachingDefs {
       return false;
     }
 
+    /**
+     * @return the heap locations the instruction of b may def
+     */
+    private Collection<PointerKey> getMod(IExplodedBasicBlock b) {
+      SSAInstruction s = b.getInstruction();
+      NormalStatement st = ssaInstructionIndex2Statement.get(b.getLastInstructionIndex());
+      if (st == null) {
+        return modRef.getMod(node, h, pa, s, exclusions);
+      }
+      Collection<PointerKey> result = mods.get(st);
+      return result == null ? Collections.<PointerKey> emptySet() : result;
+    }
+
     /**
      * @return int set representing the heap def statements that are gen'ed by the basic block. null if none.
      */
@@ -575,27 +840,15 @@ public class HeapReachingDefs {
         return null;
       } else {
         if (s instanceof SSAAbstractInvokeInstruction) {
-          // it's a normal statement ... we better be able to find it in the
-          // domain.
-          Statement st = ssaInstructionIndex2Statement.get(b.getLastInstructionIndex());
-          if (st == null) {
-            System.err.println(ssaInstructionIndex2Statement);
-            Assertions.UNREACHABLE("bang " + b + " " + b.getLastInstructionIndex() + " " + s);
-          }
-          int domainIndex = domain.getMappedIndex(st);
-          assert (domainIndex != -1);
+          IntSet result = heapReturnCaller.getRelated(b.getLastInstructionIndex());
           if (DEBUG) {
-            System.err.println("GEN FOR " + s + " " + heapReturnCaller.getRelated(domainIndex));
+            System.err.println("GEN FOR " + s + " " + result);
           }
-          return heapReturnCaller.getRelated(domainIndex);
+          return result;
         } else {
-          Collection<PointerKey> gen = modRef.getMod(node, h, pa, s, exclusions);
-          if (gen.isEmpty()) {
-            return null;
-          } else {
-            NormalStatement n = ssaInstructionIndex2Statement.get(b.getLastInstructionIndex());
-            return SparseIntSet.singleton(domain.getMappedIndex(n));
-          }
+          NormalStatement n = ssaInstructionIndex2Statement.get(b.getLastInstructionIndex());
+          int i = n == null ? -1 : domain.getMappedIndex(n);
+          return i == -1 ? null : SparseIntSet.singleton(i);
         }
       }
     }
@@ -620,43 +873,23 @@ public class HeapReachingDefs {
       SSAInstruction s = b.getInstruction();
       if (s == null) {
         return null;
-      } else {
-        Collection<PointerKey> mod = modRef.getMod(node, h, pa, s, exclusions);
-        if (mod.isEmpty()) {
-          return null;
-        } else {
-          // only static fields are actually killed
-          Filter staticFilter = new Filter() {
-            public boolean accepts(Object o) {
-              return o instanceof StaticFieldKey;
+      }
+      // only static fields are actually killed. kill any statement which writes a killed location.
+      BitVector result = null;
+      for (PointerKey p : getMod(b)) {
+        if (p instanceof StaticFieldKey) {
+          IntSet defs = pointerKeyMod.get(p);
+          if (defs != null) {
+            if (result == null) {
+              result = new BitVector();
             }
-          };
-          final Collection<PointerKey> kill = Iterator2Collection
-              .toSet(new FilterIterator<PointerKey>(mod.iterator(), staticFilter));
-          if (kill.isEmpty()) {
-            return null;
-          } else {
-            Filter f = new Filter() {
-              // accept any statement which writes a killed location.
-              public boolean accepts(Object o) {
-                Statement s = (Statement) o;
-                Collection m = getMod(s, node, h, pa, exclusions);
-                for (PointerKey k : kill) {
-                  if (m.contains(k)) {
-                    return true;
-                  }
-                }
-                return false;
-              }
-            };
-            BitVector result = new BitVector();
-            for (Statement k : Iterator2Iterable.make(new FilterIterator<Statement>(domain.iterator(), f))) {
-              result.set(domain.getMappedIndex(k));
+            for (IntIterator it = defs.intIterator(); it.hasNext();) {
+              result.set(it.next());
             }
-            return result;
           }
         }
       }
+      return result;
     }
   }
 }
@@ -64,6 +64,7 @@ import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
 import com.ibm.wala.util.graph.NumberedGraph;
 import com.ibm.wala.util.graph.dominators.Dominators;
+import com.ibm.wala.util.graph.impl.CompactNumberedGraph;
 import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
 import com.ibm.wala.util.intset.BitVectorIntSet;
 import com.ibm.wala.util.intset.IntIterator;
@@ -75,7 +76,10 @@ import com.ibm.wala.util.intset.OrdinalSet;
  */
 public class PDG implements NumberedGraph<Statement> {
 
-  private final SlowSparseNumberedGraph<Statement> delegate = SlowSparseNumberedGraph.make();
+  /**
+   * the statements and edges; replaced by a {@link CompactNumberedGraph} by {@link #compact()}
+   */
+  private NumberedGraph<Statement> delegate = SlowSparseNumberedGraph.make();
 
   private final static boolean VERBOSE = false;
 
@@ -119,6 +123,11 @@ public class PDG implements NumberedGraph<Statement> {
 
   private boolean isPopulated = false;
 
+  /**
+   * have all heap data dependence edges been computed?
+   */
+  private boolean isComplete = false;
+
   /**
    * @param mod the set of heap locations which may be written (transitively) by this node. These are logically return values in the
    *          SDG.
@@ -176,6 +185,38 @@ public class PDG implements NumberedGraph<Statement> {
     }
   }
 
+  /**
+   * force construction of all edges, including the heap data dependence edges that are otherwise computed on demand
+   */
+  public void computeAllEdges() {
+    populate();
+    if (!isComplete) {
+      if (!dOptions.isIgnoreHeap()) {
+        for (Statement st : Iterator2Collection.toList(delegate.iterator())) {
+          computeIncomingHeapDependencies(st);
+          computeOutgoingHeapDependencies(st);
+        }
+      }
+      isComplete = true;
+    }
+  }
+
+  /**
+   * Build all edges, and then replace the mutable graph by a {@link CompactNumberedGraph}, which takes two ints per edge. Statement
+   * numbers are unchanged.
+   */
+  public void compact() {
+    computeAllEdges();
+    if (!isCompact()) {
+      delegate = CompactNumberedGraph.make(delegate);
+      locationsHandled.clear();
+    }
+  }
+
+  public boolean isCompact() {
+    return delegate instanceof CompactNumberedGraph;
+  }
+
   private void createScalarEdges(ControlDependenceOptions cOptions, IR ir, Map<SSAInstruction, Integer> instructionIndices) {
     createScalarDataDependenceEdges(ir, instructionIndices);
     createControlDependenceEdges(cOptions, ir, instructionIndices);
@@ -1081,7 +1122,7 @@ public class PDG implements NumberedGraph<Statement> {
 
   public Iterator<Statement> getPredNodes(Statement N) {
     populate();
-    if (!dOptions.isIgnoreHeap()) {
+    if (!isComplete && !dOptions.isIgnoreHeap()) {
       computeIncomingHeapDependencies(N);
     }
     return delegate.getPredNodes(N);
@@ -1135,7 +1176,7 @@ public class PDG implements NumberedGraph<Statement> {
 
   public Iterator<Statement> getSuccNodes(Statement N) {
     populate();
-    if (!dOptions.isIgnoreHeap()) {
+    if (!isComplete && !dOptions.isIgnoreHeap()) {
       computeOutgoingHeapDependencies(N);
     }
     return delegate.getSuccNodes(N);
@@ -10,10 +10,17 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.CGNode;
@@ -29,9 +36,9 @@ import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.ThreadUtil;
 import com.ibm.wala.util.collections.CompoundIterator;
 import com.ibm.wala.util.collections.EmptyIterator;
-import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.IteratorUtil;
@@ -80,9 +87,30 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
   private final PointerAnalysis pa;
 
   /**
-   * keeps track of PDG for each call graph node
+   * keeps track of PDG for each call graph node, least recently used first. Holds at most maxPDGs entries with at most
+   * maxPDGStatements statements in all, but always the PDG most recently added; a dropped PDG is built again when next needed.
+   * Dropping a PDG does not drop its statements from {@link #nodeMgr}.
    */
-  private final Map<CGNode, PDG> pdgMap = HashMapFactory.make();
+  private final Map<CGNode, PDG> pdgMap = new LinkedHashMap<CGNode, PDG>(16, 0.75f, true);
+
+  private int maxPDGs = Integer.MAX_VALUE;
+
+  private int maxPDGStatements = Integer.MAX_VALUE;
+
+  /**
+   * number of statements of the PDGs in pdgMap
+   */
+  private long pdgStatements = 0;
+
+  /**
+   * number of PDGs built, including PDGs built again after being dropped
+   */
+  private final AtomicInteger pdgsBuilt = new AtomicInteger();
+
+  /**
+   * Should each PDG be built completely and compacted when first needed?
+   */
+  private boolean compactPDGs = false;
 
   /**
    * governs data dependence edges in the graph
@@ -168,9 +196,8 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     // Assertions.UNREACHABLE();
     if (!eagerComputed) {
       eagerComputed = true;
-      computeAllPDGs();
-      for (PDG pdg : pdgMap.values()) {
-        addPDGStatementNodes(pdg.getCallGraphNode());
+      for (Iterator<? extends CGNode> it = cg.iterator(); it.hasNext();) {
+        addPDGStatementNodes(it.next());
       }
     }
   }
@@ -185,16 +212,6 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     }
   }
 
-  /**
-   * force computation of all PDGs in the SDG
-   */
-  private void computeAllPDGs() {
-    for (Iterator<? extends CGNode> it = cg.iterator(); it.hasNext();) {
-      CGNode n = it.next();
-      getPDG(n);
-    }
-  }
-
   /**
    * iterate over the nodes <bf>without</bf> constructing any new ones. Use with extreme care. May break graph traversals that
    * lazily add more nodes.
@@ -777,8 +794,8 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
   public PDG getPDG(CGNode node) {
     PDG result = pdgMap.get(node);
     if (result == null) {
-      result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef);
-      pdgMap.put(node, result);
+      result = makePDG(node);
+      hold(node, result);
       // Let's not eagerly add nodes, shall we?
       // for (Iterator<? extends Statement> it = result.iterator(); it.hasNext();) {
       // nodeMgr.addNode(it.next());
@@ -787,6 +804,173 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     return result;
   }
 
+  private PDG makePDG(CGNode node) {
+    pdgsBuilt.incrementAndGet();
+    PDG result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef);
+    if (compactPDGs) {
+      result.compact();
+    }
+    return result;
+  }
+
+  /**
+   * Build the PDGs of the given nodes on nThreads threads, instead of one at a time as the slice traversal reaches them. Each PDG
+   * is built completely, including heap data dependences and control dependences, and is compacted if
+   * {@link #setCompactPDGs(boolean)} is on. PDGs already held are not built again. If there are more nodes than
+   * {@link #getMaxPDGs()}, the PDGs built first are dropped again.
+   * 
+   * The workers read the call graph, pointer analysis and IRs concurrently; the IRs come from a thread-safe
+   * {@link com.ibm.wala.ssa.SSACache}.
+   * 
+   * @return the number of PDGs built
+   * @throws IllegalArgumentException if nodes is null or nThreads < 1
+   */
+  public int buildPDGs(Collection<? extends CGNode> nodes, int nThreads) {
+    if (nodes == null) {
+      throw new IllegalArgumentException("nodes is null");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + nThreads);
+    }
+    final List<CGNode> todo = new ArrayList<CGNode>(nodes.size());
+    for (CGNode n : HashSetFactory.make(nodes)) {
+      if (!pdgMap.containsKey(n)) {
+        todo.add(n);
+      }
+    }
+    if (todo.isEmpty()) {
+      return 0;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    int n = Math.min(nThreads, todo.size());
+    ExecutorService pool = ThreadUtil.makeDaemonPool(n, "PDG builder");
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(n);
+      for (int i = 0; i < n; i++) {
+        futures.add(pool.submit(new Callable<Object>() {
+          public Object call() {
+            for (int j = next.getAndIncrement(); j < todo.size() && !Thread.currentThread().isInterrupted(); j = next
+                .getAndIncrement()) {
+              CGNode node = todo.get(j);
+              PDG pdg = makePDG(node);
+              pdg.computeAllEdges();
+              synchronized (pdgMap) {
+                hold(node, pdg);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      ThreadUtil.getAll(futures, "building PDGs");
+    } finally {
+      pool.shutdownNow();
+    }
+    return todo.size();
+  }
+
+  /**
+   * Add pdg to the PDGs held, and drop the least recently used ones while the bounds are exceeded. The statements of pdg are
+   * created to count them, which callers of {@link #getPDG(CGNode)} need right away in any case.
+   */
+  private void hold(CGNode node, PDG pdg) {
+    PDG old = pdgMap.put(node, pdg);
+    if (old != null) {
+      pdgStatements -= old.getNumberOfNodes();
+    }
+    pdgStatements += pdg.getNumberOfNodes();
+    dropPDGs();
+  }
+
+  /**
+   * drop the least recently used PDGs while there are more than maxPDGs or they have more than maxPDGStatements statements, but
+   * keep the most recently used one
+   */
+  private void dropPDGs() {
+    for (Iterator<PDG> it = pdgMap.values().iterator(); pdgMap.size() > 1
+        && (pdgMap.size() > maxPDGs || pdgStatements > maxPDGStatements) && it.hasNext();) {
+      pdgStatements -= it.next().getNumberOfNodes();
+      it.remove();
+    }
+  }
+
+  /**
+   * Hold at most max PDGs. The least recently used PDG is dropped to make room, and is built again if needed.
+   * 
+   * This bounds the memory held by the dependence edges and heap reaching definitions of the PDGs, not the memory of the SDG: the
+   * statements of every PDG that has been needed stay in the SDG, which numbers them as its nodes, so they are retained however
+   * small max is.
+   * 
+   * A traversal that moves among more methods than max, e.g. a slice through a recursive cycle, builds the same PDGs again and
+   * again; see {@link #getNumberOfPDGsBuilt()}. With {@link #setCompactPDGs(boolean)} on, each rebuild also computes all heap data
+   * dependences of the method, so the cost of a bound below the working set of the slice is much higher.
+   * 
+   * @throws IllegalArgumentException if max < 1
+   */
+  public void setMaxPDGs(int max) {
+    if (max < 1) {
+      throw new IllegalArgumentException("invalid max " + max);
+    }
+    maxPDGs = max;
+    dropPDGs();
+  }
+
+  public int getMaxPDGs() {
+    return maxPDGs;
+  }
+
+  /**
+   * Hold PDGs with at most max statements in all, except that the PDG most recently needed is held however large it is. The least
+   * recently used PDGs are dropped to make room, and are built again if needed. This bounds the PDGs held by their size rather
+   * than their number; see {@link #setMaxPDGs(int)} for what it does not bound.
+   * 
+   * @throws IllegalArgumentException if max < 1
+   */
+  public void setMaxPDGStatements(int max) {
+    if (max < 1) {
+      throw new IllegalArgumentException("invalid max " + max);
+    }
+    maxPDGStatements = max;
+    dropPDGs();
+  }
+
+  public int getMaxPDGStatements() {
+    return maxPDGStatements;
+  }
+
+  /**
+   * @return number of statements of the PDGs currently held
+   */
+  public long getNumberOfPDGStatements() {
+    return pdgStatements;
+  }
+
+  /**
+   * If on, each PDG is built completely when first needed, and its edges are then held as int arrays; see {@link PDG#compact()}.
+   * This saves memory on large SDGs, but computes heap data dependences that a slice may not reach.
+   */
+  public void setCompactPDGs(boolean compactPDGs) {
+    this.compactPDGs = compactPDGs;
+  }
+
+  public boolean isCompactPDGs() {
+    return compactPDGs;
+  }
+
+  /**
+   * @return number of PDGs currently held
+   */
+  public int getNumberOfPDGs() {
+    return pdgMap.size();
+  }
+
+  /**
+   * @return number of PDGs built so far, counting each PDG built again after {@link #setMaxPDGs(int)} dropped it
+   */
+  public int getNumberOfPDGsBuilt() {
+    return pdgsBuilt.get();
+  }
+
   public ControlDependenceOptions getCOptions() {
     return cOptions;
   }
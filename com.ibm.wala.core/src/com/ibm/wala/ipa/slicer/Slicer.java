@@ -10,8 +10,11 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import com.ibm.wala.dataflow.IFDS.BackwardsSupergraph;
 import com.ibm.wala.dataflow.IFDS.IMergeFunction;
@@ -27,7 +30,9 @@ import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.IntIterator;
 
 /**
  * A demand-driven context-sensitive slicer.
@@ -172,6 +177,34 @@ public class Slicer {
     return computeSlice(sdg, ss, true);
   }
 
+  /**
+   * Compute the backward slice of each of the given statements, in one tabulation over the passed-in SDG.
+   * 
+   * @return map from each statement in ss to its backward slice
+   * @throws CancelException
+   */
+  public static Map<Statement, Collection<Statement>> computeBackwardSlices(SDG sdg, Collection<Statement> ss)
+      throws IllegalArgumentException, CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().sliceEach(sdg, ss, true);
+  }
+
+  /**
+   * Compute the forward slice of each of the given statements, in one tabulation over the passed-in SDG.
+   * 
+   * @return map from each statement in ss to its forward slice
+   * @throws CancelException
+   */
+  public static Map<Statement, Collection<Statement>> computeForwardSlices(SDG sdg, Collection<Statement> ss)
+      throws IllegalArgumentException, CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().sliceEach(sdg, ss, false);
+  }
+
   /**
    * @param ss a collection of statements of interest
    * @throws CancelException
@@ -212,6 +245,55 @@ public class Slicer {
     return slice;
   }
 
+  /**
+   * Compute a separate slice for each root, with one tabulation instead of one per root. Each root's slice is what
+   * {@link #slice(SDG, Collection, boolean)} would find from that root alone.
+   * 
+   * The roots are tagged with distinct facts, which the flow functions carry unchanged; see {@link BatchSliceFunctions}. The SDG,
+   * its PDGs and the supergraph are built once for all roots. Tabulation work is still proportional to the total size of the slices,
+   * since a summary edge for one root's fact does not apply to another's.
+   * 
+   * @return map from each root to its slice
+   * @throws CancelException
+   */
+  public Map<Statement, Collection<Statement>> sliceEach(SDG sdg, Collection<Statement> roots, boolean backward)
+      throws CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    if (roots == null) {
+      throw new IllegalArgumentException("roots cannot be null");
+    }
+    List<Statement> tagged = new ArrayList<Statement>(HashSetFactory.make(roots));
+    Map<Statement, Collection<Statement>> result = HashMapFactory.make();
+    if (tagged.isEmpty()) {
+      return result;
+    }
+
+    BatchSliceProblem p = makeBatchSliceProblem(tagged, sdg, backward);
+    PartiallyBalancedTabulationSolver<Statement, PDG, Object> solver = PartiallyBalancedTabulationSolver
+        .createPartiallyBalancedTabulationSolver(p, null);
+    TabulationResult<Statement, PDG, Object> tr = solver.solve();
+
+    List<Collection<Statement>> slices = new ArrayList<Collection<Statement>>(tagged.size());
+    for (Statement root : tagged) {
+      Collection<Statement> slice = HashSetFactory.make();
+      slices.add(slice);
+      result.put(root, slice);
+    }
+    for (Statement st : tr.getSupergraphNodesReached()) {
+      for (IntIterator it = tr.getResult(st).intIterator(); it.hasNext();) {
+        slices.get(it.next()).add(st);
+      }
+    }
+
+    if (VERBOSE) {
+      System.err.println("Slicer done: " + tagged.size() + " roots");
+    }
+
+    return result;
+  }
+
   /**
    * Return an object which encapsulates the tabulation logic for the slice problem. Subclasses can override this method to
    * implement special semantics.
@@ -220,6 +302,13 @@ public class Slicer {
     return new SliceProblem(roots, sdgView, backward);
   }
 
+  /**
+   * Return the tabulation problem for {@link #sliceEach(SDG, Collection, boolean)}; root i is tagged with fact i.
+   */
+  protected BatchSliceProblem makeBatchSliceProblem(List<Statement> roots, ISDG sdgView, boolean backward) {
+    return new BatchSliceProblem(roots, sdgView, backward);
+  }
+
   /**
    * @param s a statement of interest
    * @return the backward slice of s.
@@ -305,4 +394,39 @@ public class Slicer {
 
   }
 
+  /**
+   * Tabulation problem for slicing from many roots at once. Root i is seeded with fact i.
+   */
+  public static class BatchSliceProblem extends SliceProblem {
+
+    private final List<Statement> roots;
+
+    private final boolean backward;
+
+    private final IPartiallyBalancedFlowFunctions<Statement> f;
+
+    public BatchSliceProblem(List<Statement> roots, ISDG sdg, boolean backward) {
+      super(roots, sdg, backward);
+      this.roots = roots;
+      this.backward = backward;
+      this.f = new BatchSliceFunctions(super.getFunctionMap());
+    }
+
+    @Override
+    public IPartiallyBalancedFlowFunctions<Statement> getFunctionMap() {
+      return f;
+    }
+
+    @Override
+    public Collection<PathEdge<Statement>> initialSeeds() {
+      Collection<PathEdge<Statement>> result = HashSetFactory.make();
+      for (int i = 0; i < roots.size(); i++) {
+        Statement st = roots.get(i);
+        Statement entry = backward ? new MethodExitStatement(st.getNode()) : new MethodEntryStatement(st.getNode());
+        result.add(PathEdge.createPathEdge(entry, i, st, i));
+      }
+      return result;
+    }
+  }
+
 }
@@ -30,7 +30,7 @@ import com.ibm.wala.util.ref.CacheReference;
  * 
  * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
  */
-class AuxiliaryCache {
+class AuxiliaryCache implements IAuxiliaryCache {
 
   /**
    * A mapping from IMethod -> SSAOptions -> SoftReference -> IR
@@ -102,6 +102,13 @@ class AuxiliaryCache {
     }
   }
 
+  /**
+   * same as {@link #find}, since this cache keeps no statistics
+   */
+  public Object peek(IMethod m, Context c, SSAOptions options) {
+    return find(m, c, options);
+  }
+
   /**
    * cache new auxiliary information for an <m,options> pair
    * 
@@ -124,7 +131,7 @@ class AuxiliaryCache {
   /**
    * invalidate all cached information about a method
    */
-  public void invalidate(IMethod method, Context c) {
+  public synchronized void invalidate(IMethod method, Context c) {
     dictionary.remove(Pair.make(method, c));
   }
 }
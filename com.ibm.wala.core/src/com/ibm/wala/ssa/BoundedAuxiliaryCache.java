@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * A cache for auxiliary information based on an SSA representation, which holds its objects strongly up to a budget of
+ * (approximately) a given number of bytes, evicting the least recently used objects to stay within the budget.
+ * 
+ * Unlike an {@link AuxiliaryCache}, which relies on soft references, this cache never needs to be wiped to relieve memory
+ * pressure; size its budget instead.
+ */
+public class BoundedAuxiliaryCache implements IAuxiliaryCache {
+
+  /**
+   * approximate number of bytes per instruction, including its share of the basic blocks and def-use information
+   */
+  private final static int BYTES_PER_INSTRUCTION = 96;
+
+  /**
+   * approximate number of bytes per value number in a symbol table or {@link DefUse}
+   */
+  private final static int BYTES_PER_VALUE = 48;
+
+  /**
+   * approximate size of an object whose size we do not know how to estimate
+   */
+  private final static int DEFAULT_SIZE = 1024;
+
+  private final static class Key {
+    private final IMethod method;
+
+    private final Context context;
+
+    private final SSAOptions options;
+
+    Key(IMethod method, Context context, SSAOptions options) {
+      this.method = method;
+      this.context = context;
+      this.options = options;
+    }
+
+    @Override
+    public int hashCode() {
+      return method.hashCode() * 7919 + (context == null ? 0 : context.hashCode() * 31) + (options == null ? 0 : options.hashCode());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return method.equals(other.method) && (context == null ? other.context == null : context.equals(other.context))
+          && (options == null ? other.options == null : options.equals(other.options));
+    }
+  }
+
+  private final static class Entry {
+    private final Object value;
+
+    private final long size;
+
+    Entry(Object value, long size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+
+  /**
+   * maximum total size, in bytes, of the cached objects
+   */
+  private final long budget;
+
+  /**
+   * the cached objects, least recently used first
+   */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+  /**
+   * A mapping from (IMethod,Context) -> the options for which something is cached
+   */
+  private final Map<Pair<IMethod, Context>, Set<SSAOptions>> optionsByMethod = HashMapFactory.make();
+
+  /**
+   * total size, in bytes, of the cached objects
+   */
+  private long size = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long evictions = 0;
+
+  /**
+   * @param budget maximum total size, in bytes, of the cached objects
+   * @throws IllegalArgumentException if budget is not positive
+   */
+  public BoundedAuxiliaryCache(long budget) {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("invalid budget " + budget);
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * @return an estimate of the number of bytes retained by o, an {@link IR} or {@link DefUse}
+   */
+  protected long sizeOf(Object o) {
+    if (o instanceof IR) {
+      IR ir = (IR) o;
+      return (long) ir.getInstructions().length * BYTES_PER_INSTRUCTION + (long) ir.getSymbolTable().getMaxValueNumber()
+          * BYTES_PER_VALUE;
+    } else if (o instanceof DefUse) {
+      DefUse du = (DefUse) o;
+      return (long) du.allInstructions.size() * BYTES_PER_VALUE + (long) du.getMaxValueNumber() * BYTES_PER_VALUE;
+    } else {
+      return DEFAULT_SIZE;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.ssa.IAuxiliaryCache#find(com.ibm.wala.classLoader.IMethod, com.ibm.wala.ipa.callgraph.Context,
+   * com.ibm.wala.ssa.SSAOptions)
+   */
+  public synchronized Object find(IMethod m, Context c, SSAOptions options) {
+    Entry e = entries.get(new Key(m, c, options));
+    if (e == null) {
+      misses++;
+      return null;
+    } else {
+      hits++;
+      return e.value;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.ssa.IAuxiliaryCache#peek(com.ibm.wala.classLoader.IMethod, com.ibm.wala.ipa.callgraph.Context,
+   * com.ibm.wala.ssa.SSAOptions)
+   */
+  public synchronized Object peek(IMethod m, Context c, SSAOptions options) {
+    Entry e = entries.get(new Key(m, c, options));
+    return e == null ? null : e.value;
+  }
+
+  /*
+   * @see com.ibm.wala.ssa.IAuxiliaryCache#cache(com.ibm.wala.classLoader.IMethod, com.ibm.wala.ipa.callgraph.Context,
+   * com.ibm.wala.ssa.SSAOptions, java.lang.Object)
+   */
+  public synchronized void cache(IMethod m, Context c, SSAOptions options, Object aux) {
+    long s = sizeOf(aux);
+    if (s > budget) {
+      // would evict everything else, and then itself
+      evictions++;
+      return;
+    }
+    Entry old = entries.put(new Key(m, c, options), new Entry(aux, s));
+    if (old != null) {
+      size -= old.size;
+    } else {
+      Pair<IMethod, Context> p = Pair.make(m, c);
+      Set<SSAOptions> o = optionsByMethod.get(p);
+      if (o == null) {
+        o = HashSetFactory.make(2);
+        optionsByMethod.put(p, o);
+      }
+      o.add(options);
+    }
+    size += s;
+    for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); size > budget && it.hasNext();) {
+      Map.Entry<Key, Entry> e = it.next();
+      it.remove();
+      removed(e.getKey(), e.getValue());
+      evictions++;
+    }
+  }
+
+  private void removed(Key k, Entry e) {
+    size -= e.size;
+    Pair<IMethod, Context> p = Pair.make(k.method, k.context);
+    Set<SSAOptions> o = optionsByMethod.get(p);
+    o.remove(k.options);
+    if (o.isEmpty()) {
+      optionsByMethod.remove(p);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.ssa.IAuxiliaryCache#invalidate(com.ibm.wala.classLoader.IMethod, com.ibm.wala.ipa.callgraph.Context)
+   */
+  public synchronized void invalidate(IMethod method, Context c) {
+    Set<SSAOptions> o = optionsByMethod.remove(Pair.make(method, c));
+    if (o != null) {
+      for (SSAOptions opt : o) {
+        Entry e = entries.remove(new Key(method, c, opt));
+        size -= e.size;
+      }
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.ssa.IAuxiliaryCache#wipe()
+   */
+  public synchronized void wipe() {
+    entries.clear();
+    optionsByMethod.clear();
+    size = 0;
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return the estimated total size, in bytes, of the cached objects
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized int getNumberOfItems() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of objects evicted, or not cached at all because they alone exceeded the budget
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "BoundedAuxiliaryCache: " + entries.size() + " items, " + size + "/" + budget + " bytes, " + hits + " hits, " + misses
+        + " misses, " + evictions + " evictions";
+  }
+}
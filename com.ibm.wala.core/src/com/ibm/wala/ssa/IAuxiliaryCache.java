@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.Context;
+
+/**
+ * A cache for auxiliary information based on an SSA representation, as used by an {@link SSACache}
+ * 
+ * A mapping from (IMethod,Context) -> SSAOptions -> something
+ */
+public interface IAuxiliaryCache {
+
+  /**
+   * @param m a method
+   * @param options options governing ssa construction
+   * @return the object cached for m, or null if none found
+   */
+  public Object find(IMethod m, Context c, SSAOptions options);
+
+  /**
+   * Like {@link #find}, but not counted as a hit or miss by caches that keep such statistics; for a second look at an entry
+   * that was just found missing.
+   * 
+   * @return the object cached for m, or null if none found
+   */
+  public Object peek(IMethod m, Context c, SSAOptions options);
+
+  /**
+   * cache new auxiliary information for an <m,options> pair
+   * 
+   * @param m a method
+   * @param options options governing ssa construction
+   */
+  public void cache(IMethod m, Context c, SSAOptions options, Object aux);
+
+  /**
+   * invalidate all cached information about a method
+   */
+  public void invalidate(IMethod method, Context c);
+
+  /**
+   * clear the cache
+   */
+  public void wipe();
+}
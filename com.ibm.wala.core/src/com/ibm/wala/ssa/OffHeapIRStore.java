@@ -0,0 +1,1031 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ibm.wala.cfg.ShrikeCFG;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.shrikeBT.IBinaryOpInstruction;
+import com.ibm.wala.shrikeBT.IComparisonInstruction;
+import com.ibm.wala.shrikeBT.IConditionalBranchInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.IUnaryOpInstruction;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * A second-level store for the IRs of bytecode methods, which holds them in a compact binary form outside the Java heap, either
+ * in direct buffers or in a memory-mapped file, and rebuilds IR objects from that form on demand. Attach one to an
+ * {@link SSACache} with {@link SSACache#setSecondLevelStore(OffHeapIRStore)}; the cache then stores every IR it builds here, and
+ * rebuilds IRs from here rather than from bytecode once its first level has dropped them.
+ *
+ * The encoding holds the instructions, phis, catch instructions and symbol table of an IR. Value numbers are written as variable
+ * length integers; types, fields, methods and operators are written as indices into a constant pool kept on the heap, which is
+ * shared by all stored IRs. Objects enter the pool only when an IR that refers to them is stored, and leave it on {@link #wipe()}.
+ * The control-flow graph is not stored, but rebuilt from the bytecode, which is cheap compared to SSA
+ * construction. Source-level local names are not stored either; an IR rebuilt from this store computes them by building the IR
+ * afresh, the first time they are asked for.
+ *
+ * IRs with pi nodes or indirection data, or with instructions that do not come from Java bytecode, are not stored. Space is never
+ * reused, except after {@link #wipe()}: an invalidated IR keeps its space, and once the store is full, further IRs are not stored.
+ */
+public class OffHeapIRStore {
+
+  /**
+   * size of each buffer allocated for IRs
+   */
+  private final static int CHUNK_SIZE = 16 * 1024 * 1024;
+
+  // instruction codes; 0 is an empty slot in the instruction array
+  private final static byte NONE = 0;
+
+  private final static byte ARRAY_LENGTH = 1;
+
+  private final static byte ARRAY_LOAD = 2;
+
+  private final static byte ARRAY_STORE = 3;
+
+  private final static byte BINARY_OP = 4;
+
+  private final static byte CHECK_CAST = 5;
+
+  private final static byte COMPARISON = 6;
+
+  private final static byte CONDITIONAL_BRANCH = 7;
+
+  private final static byte CONVERSION = 8;
+
+  private final static byte GET_CAUGHT_EXCEPTION = 9;
+
+  private final static byte GET = 10;
+
+  private final static byte GET_STATIC = 11;
+
+  private final static byte GOTO = 12;
+
+  private final static byte INSTANCEOF = 13;
+
+  private final static byte INVOKE = 14;
+
+  private final static byte LOAD_METADATA = 15;
+
+  private final static byte MONITOR = 16;
+
+  private final static byte NEW = 17;
+
+  private final static byte PUT = 18;
+
+  private final static byte PUT_STATIC = 19;
+
+  private final static byte RETURN = 20;
+
+  private final static byte RETURN_VOID = 21;
+
+  private final static byte SWITCH = 22;
+
+  private final static byte THROW = 23;
+
+  private final static byte UNARY_OP = 24;
+
+  // constant tags
+  private final static byte NULL = 0;
+
+  private final static byte BOOLEAN = 1;
+
+  private final static byte INT = 2;
+
+  private final static byte LONG = 3;
+
+  private final static byte FLOAT = 4;
+
+  private final static byte DOUBLE = 5;
+
+  private final static byte STRING = 6;
+
+  /**
+   * maximum total size of the buffers, in bytes
+   */
+  private final long capacity;
+
+  /**
+   * if non-null, the buffers are mapped from this file rather than allocated directly
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * the buffers, all of {@link #CHUNK_SIZE} bytes except perhaps the last; IRs are written at the end of the last one
+   */
+  private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+  /**
+   * total size of the buffers
+   */
+  private long allocated = 0;
+
+  /**
+   * A mapping from (IMethod,Context) -> SSAOptions -> encoded IR
+   */
+  private final Map<Pair<IMethod, Context>, Map<SSAOptions, ByteBuffer>> index = HashMapFactory.make();
+
+  /**
+   * objects referred to by the encoded IRs
+   */
+  private final List<Object> pool = new ArrayList<Object>();
+
+  private final Map<Object, Integer> poolIndex = HashMapFactory.make();
+
+  /**
+   * held for reading while an encoded IR is decoded, and for writing while the buffers are released, so that a mapped file is
+   * never truncated under a reader. Acquire it before the monitor of this store.
+   */
+  private final ReadWriteLock buffersLock = new ReentrantReadWriteLock();
+
+  private int nStored = 0;
+
+  private int nRejected = 0;
+
+  private long bytesStored = 0;
+
+  /**
+   * Store IRs in direct buffers.
+   *
+   * @param capacity maximum number of bytes to allocate
+   * @throws IllegalArgumentException if capacity is not positive
+   */
+  public OffHeapIRStore(long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("invalid capacity " + capacity);
+    }
+    this.capacity = capacity;
+    this.file = null;
+  }
+
+  /**
+   * Store IRs in a memory-mapped file, which is overwritten.
+   *
+   * @param capacity maximum size of the file
+   * @throws IllegalArgumentException if file is null or capacity is not positive
+   * @throws IOException if the file cannot be opened
+   */
+  public OffHeapIRStore(File file, long capacity) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file is null");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("invalid capacity " + capacity);
+    }
+    this.capacity = capacity;
+    this.file = new RandomAccessFile(file, "rw");
+    this.file.setLength(0);
+  }
+
+  /**
+   * Release the file backing this store, if any. The store must not be used afterwards.
+   */
+  public void close() throws IOException {
+    buffersLock.writeLock().lock();
+    try {
+      synchronized (this) {
+        wipe();
+        if (file != null) {
+          file.close();
+        }
+      }
+    } finally {
+      buffersLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the IR stored for (m,c,options), rebuilt, or null if none is stored
+   */
+  IR find(IMethod m, Context c, SSAOptions options, IRFactory<IMethod> factory) {
+    buffersLock.readLock().lock();
+    try {
+      ByteBuffer b;
+      synchronized (this) {
+        Map<SSAOptions, ByteBuffer> forMethod = index.get(Pair.make(m, c));
+        b = forMethod == null ? null : forMethod.get(options);
+      }
+      return b == null ? null : decode((IBytecodeMethod) m, c, options, b.duplicate(), factory);
+    } finally {
+      buffersLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Store ir for (m,c,options), if it is an IR of a bytecode method that this store can encode and there is space for it.
+   */
+  void store(IMethod m, Context c, SSAOptions options, IR ir) {
+    if (!(m instanceof IBytecodeMethod) || ir == null) {
+      return;
+    }
+    Encoder e = new Encoder();
+    if (!encode(ir, e)) {
+      synchronized (this) {
+        nRejected++;
+      }
+      return;
+    }
+    synchronized (this) {
+      // the IR refers to the objects of its own pool by their indices there; a header maps those to indices in the shared pool,
+      // to which they are only added once the IR is stored
+      Encoder header = new Encoder();
+      header.writeInts(poolIndices(e.objects));
+      ByteBuffer b = allocate(header.size + e.size);
+      if (b == null) {
+        nRejected++;
+        return;
+      }
+      addToPool(e.objects);
+      b.put(header.bytes, 0, header.size);
+      b.put(e.bytes, 0, e.size);
+      b.flip();
+      Pair<IMethod, Context> p = Pair.make(m, c);
+      Map<SSAOptions, ByteBuffer> forMethod = index.get(p);
+      if (forMethod == null) {
+        forMethod = HashMapFactory.make(2);
+        index.put(p, forMethod);
+      }
+      forMethod.put(options, b);
+      nStored++;
+      bytesStored += e.size;
+    }
+  }
+
+  /**
+   * Forget the IRs stored for a <method,context> pair
+   */
+  synchronized void invalidate(IMethod m, Context c) {
+    index.remove(Pair.make(m, c));
+  }
+
+  /**
+   * Forget all stored IRs, and release the space they occupy. Waits for IRs being rebuilt from the store to be done.
+   */
+  public void wipe() {
+    buffersLock.writeLock().lock();
+    try {
+      synchronized (this) {
+        index.clear();
+        chunks.clear();
+        allocated = 0;
+        pool.clear();
+        poolIndex.clear();
+        if (file != null) {
+          try {
+            file.setLength(0);
+          } catch (IOException e) {
+            // no reader holds an old buffer; new mappings start over at the beginning of the file
+          }
+        }
+      }
+    } finally {
+      buffersLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return a buffer of size bytes, or null if there is no space
+   */
+  private ByteBuffer allocate(int size) {
+    ByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+    if (last == null || last.remaining() < size) {
+      int chunkSize = Math.max(CHUNK_SIZE, size);
+      if (allocated + chunkSize > capacity) {
+        chunkSize = size;
+        if (allocated + chunkSize > capacity) {
+          return null;
+        }
+      }
+      if (file == null) {
+        last = ByteBuffer.allocateDirect(chunkSize);
+      } else {
+        try {
+          last = file.getChannel().map(FileChannel.MapMode.READ_WRITE, allocated, chunkSize);
+        } catch (IOException e) {
+          return null;
+        }
+      }
+      chunks.add(last);
+      allocated += chunkSize;
+    }
+    ByteBuffer result = last.slice();
+    result.limit(size);
+    last.position(last.position() + size);
+    return result;
+  }
+
+  /**
+   * @return the indices in the pool that the objects referred to by an encoded IR will have once they are added to it; objects
+   *         not in the pool yet get the next free indices, in order
+   */
+  private int[] poolIndices(List<Object> objects) {
+    int[] result = new int[objects.size()];
+    int next = pool.size();
+    for (int i = 0; i < result.length; i++) {
+      Integer j = poolIndex.get(objects.get(i));
+      result[i] = j == null ? next++ : j.intValue();
+    }
+    return result;
+  }
+
+  /**
+   * add the objects referred to by an IR that is being stored to the pool
+   */
+  private void addToPool(List<Object> objects) {
+    for (Object o : objects) {
+      if (!poolIndex.containsKey(o)) {
+        poolIndex.put(o, Integer.valueOf(pool.size()));
+        pool.add(o);
+      }
+    }
+  }
+
+  /**
+   * @return the objects of the pool with the given indices
+   */
+  private synchronized Object[] pooledObjects(int[] indices) {
+    Object[] result = new Object[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      result[i] = pool.get(indices[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of IRs stored
+   */
+  public synchronized int getNumberOfIRs() {
+    return nStored;
+  }
+
+  /**
+   * @return the number of IRs that could not be stored, because they could not be encoded or the store was full
+   */
+  public synchronized int getNumberOfRejectedIRs() {
+    return nRejected;
+  }
+
+  /**
+   * @return the number of objects in the constant pool
+   */
+  public synchronized int getNumberOfPooledObjects() {
+    return pool.size();
+  }
+
+  /**
+   * @return the number of bytes of encoded IRs stored
+   */
+  public synchronized long getBytesStored() {
+    return bytesStored;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "OffHeapIRStore: " + nStored + " IRs, " + bytesStored + " bytes, " + nRejected + " rejected, " + pool.size()
+        + " pooled objects";
+  }
+
+  /**
+   * A growable byte array holding an encoded IR
+   */
+  private static class Encoder {
+    byte[] bytes = new byte[256];
+
+    int size = 0;
+
+    /**
+     * the objects the encoded IR refers to, by their index in this list
+     */
+    final List<Object> objects = new ArrayList<Object>();
+
+    private final Map<Object, Integer> objectIndex = HashMapFactory.make();
+
+    int poolIndex(Object o) {
+      Integer i = objectIndex.get(o);
+      if (i == null) {
+        i = Integer.valueOf(objects.size());
+        objects.add(o);
+        objectIndex.put(o, i);
+      }
+      return i.intValue();
+    }
+
+    void writeByte(int b) {
+      if (size == bytes.length) {
+        byte[] old = bytes;
+        bytes = new byte[2 * old.length];
+        System.arraycopy(old, 0, bytes, 0, size);
+      }
+      bytes[size++] = (byte) b;
+    }
+
+    /**
+     * write a zigzag-encoded variable length integer, so that small values, including -1, take one byte
+     */
+    void writeInt(int i) {
+      int v = (i << 1) ^ (i >> 31);
+      while ((v & ~0x7f) != 0) {
+        writeByte((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      writeByte(v);
+    }
+
+    void writeLong(long l) {
+      writeInt((int) (l >>> 32));
+      writeInt((int) l);
+    }
+
+    void writeInts(int[] a) {
+      writeInt(a.length);
+      for (int i : a) {
+        writeInt(i);
+      }
+    }
+  }
+
+  private static int readInt(ByteBuffer b) {
+    int v = 0;
+    int shift = 0;
+    int x;
+    do {
+      x = b.get();
+      v |= (x & 0x7f) << shift;
+      shift += 7;
+    } while ((x & 0x80) != 0);
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static long readLong(ByteBuffer b) {
+    long high = readInt(b);
+    return (high << 32) | (readInt(b) & 0xffffffffL);
+  }
+
+  private static int[] readInts(ByteBuffer b) {
+    int[] result = new int[readInt(b)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = readInt(b);
+    }
+    return result;
+  }
+
+  private static int[] uses(SSAInstruction s) {
+    int[] result = new int[s.getNumberOfUses()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = s.getUse(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return false if ir cannot be encoded
+   */
+  private boolean encode(IR ir, Encoder e) {
+    SSACFG cfg = ir.getControlFlowGraph();
+    SymbolTable symbolTable = ir.getSymbolTable();
+    SSAInstruction[] instructions = ir.getInstructions();
+    SSAIndirectionData<SSAIndirectionData.Name> indirections = ir.getIndirectionData();
+    if (indirections != null && !indirections.getNames().isEmpty()) {
+      return false;
+    }
+    e.writeInt(instructions.length);
+    e.writeInt(cfg.getNumberOfNodes());
+    e.writeInt(symbolTable.getNumberOfParameters());
+    e.writeInt(symbolTable.getMaxValueNumber());
+
+    for (SSAInstruction s : instructions) {
+      if (!encode(s, e)) {
+        return false;
+      }
+    }
+
+    int nCatchBlocks = 0;
+    int nPhiBlocks = 0;
+    for (Iterator<ISSABasicBlock> it = cfg.iterator(); it.hasNext();) {
+      SSACFG.BasicBlock bb = (SSACFG.BasicBlock) it.next();
+      if (bb.iteratePis().hasNext()) {
+        return false;
+      }
+      if (bb.hasPhi()) {
+        nPhiBlocks++;
+      }
+      if (bb instanceof SSACFG.ExceptionHandlerBasicBlock && ((SSACFG.ExceptionHandlerBasicBlock) bb).getCatchInstruction() != null) {
+        nCatchBlocks++;
+      }
+    }
+    e.writeInt(nPhiBlocks);
+    for (Iterator<ISSABasicBlock> it = cfg.iterator(); it.hasNext();) {
+      SSACFG.BasicBlock bb = (SSACFG.BasicBlock) it.next();
+      if (bb.hasPhi()) {
+        List<SSAPhiInstruction> phis = new ArrayList<SSAPhiInstruction>();
+        for (Iterator<SSAPhiInstruction> ps = bb.iteratePhis(); ps.hasNext();) {
+          phis.add(ps.next());
+        }
+        e.writeInt(bb.getNumber());
+        e.writeInt(phis.size());
+        for (SSAPhiInstruction phi : phis) {
+          e.writeInt(phi.getDef());
+          e.writeInts(uses(phi));
+        }
+      }
+    }
+    e.writeInt(nCatchBlocks);
+    for (Iterator<ISSABasicBlock> it = cfg.iterator(); it.hasNext();) {
+      ISSABasicBlock bb = it.next();
+      if (bb instanceof SSACFG.ExceptionHandlerBasicBlock) {
+        SSAGetCaughtExceptionInstruction s = ((SSACFG.ExceptionHandlerBasicBlock) bb).getCatchInstruction();
+        if (s != null) {
+          e.writeInt(bb.getNumber());
+          e.writeInt(s.getException());
+        }
+      }
+    }
+
+    // symbol table: constants and phi values; everything else is a plain symbol
+    for (int vn = 1; vn <= symbolTable.getMaxValueNumber(); vn++) {
+      Value v = symbolTable.getValue(vn);
+      if (v instanceof ConstantValue) {
+        Object o = ((ConstantValue) v).getValue();
+        e.writeInt(vn);
+        if (o == null) {
+          e.writeByte(NULL);
+        } else if (o instanceof Boolean) {
+          e.writeByte(BOOLEAN);
+          e.writeByte(((Boolean) o).booleanValue() ? 1 : 0);
+        } else if (o instanceof Integer) {
+          e.writeByte(INT);
+          e.writeInt(((Integer) o).intValue());
+        } else if (o instanceof Long) {
+          e.writeByte(LONG);
+          e.writeLong(((Long) o).longValue());
+        } else if (o instanceof Float) {
+          e.writeByte(FLOAT);
+          e.writeInt(Float.floatToRawIntBits(((Float) o).floatValue()));
+        } else if (o instanceof Double) {
+          e.writeByte(DOUBLE);
+          e.writeLong(Double.doubleToRawLongBits(((Double) o).doubleValue()));
+        } else if (o instanceof String) {
+          e.writeByte(STRING);
+          e.writeInt(e.poolIndex(o));
+        } else {
+          return false;
+        }
+      } else if (v instanceof PhiValue) {
+        e.writeInt(-vn);
+        e.writeInts(uses(((PhiValue) v).getPhiInstruction()));
+      } else if (v != null) {
+        return false;
+      }
+    }
+    e.writeInt(0);
+    return true;
+  }
+
+  /**
+   * @return false if s cannot be encoded
+   */
+  private boolean encode(SSAInstruction s, Encoder e) {
+    if (s == null) {
+      e.writeByte(NONE);
+    } else if (s instanceof SSAArrayLengthInstruction) {
+      e.writeByte(ARRAY_LENGTH);
+      e.writeInt(s.getDef());
+      e.writeInt(((SSAArrayLengthInstruction) s).getArrayRef());
+    } else if (s instanceof SSAArrayLoadInstruction) {
+      SSAArrayLoadInstruction a = (SSAArrayLoadInstruction) s;
+      e.writeByte(ARRAY_LOAD);
+      e.writeInt(a.getDef());
+      e.writeInt(a.getArrayRef());
+      e.writeInt(a.getIndex());
+      e.writeInt(e.poolIndex(a.getElementType()));
+    } else if (s instanceof SSAArrayStoreInstruction) {
+      SSAArrayStoreInstruction a = (SSAArrayStoreInstruction) s;
+      e.writeByte(ARRAY_STORE);
+      e.writeInt(a.getArrayRef());
+      e.writeInt(a.getIndex());
+      e.writeInt(a.getValue());
+      e.writeInt(e.poolIndex(a.getElementType()));
+    } else if (s instanceof SSABinaryOpInstruction) {
+      SSABinaryOpInstruction b = (SSABinaryOpInstruction) s;
+      e.writeByte(BINARY_OP);
+      e.writeInt(e.poolIndex(b.getOperator()));
+      e.writeInt(b.getDef());
+      e.writeInt(b.getUse(0));
+      e.writeInt(b.getUse(1));
+      e.writeByte(b.mayBeIntegerOp() ? 1 : 0);
+    } else if (s instanceof SSACheckCastInstruction) {
+      SSACheckCastInstruction c = (SSACheckCastInstruction) s;
+      TypeReference[] types = c.getDeclaredResultTypes();
+      e.writeByte(CHECK_CAST);
+      e.writeInt(c.getResult());
+      e.writeInt(c.getVal());
+      e.writeInt(types.length);
+      for (TypeReference t : types) {
+        e.writeInt(e.poolIndex(t));
+      }
+      e.writeByte(c.isPEI() ? 1 : 0);
+    } else if (s instanceof SSAComparisonInstruction) {
+      SSAComparisonInstruction c = (SSAComparisonInstruction) s;
+      e.writeByte(COMPARISON);
+      e.writeInt(e.poolIndex(c.getOperator()));
+      e.writeInt(c.getDef());
+      e.writeInt(c.getUse(0));
+      e.writeInt(c.getUse(1));
+    } else if (s instanceof SSAConditionalBranchInstruction) {
+      SSAConditionalBranchInstruction c = (SSAConditionalBranchInstruction) s;
+      e.writeByte(CONDITIONAL_BRANCH);
+      e.writeInt(e.poolIndex(c.getOperator()));
+      e.writeInt(e.poolIndex(c.getType()));
+      e.writeInt(c.getUse(0));
+      e.writeInt(c.getUse(1));
+    } else if (s instanceof SSAConversionInstruction) {
+      SSAConversionInstruction c = (SSAConversionInstruction) s;
+      e.writeByte(CONVERSION);
+      e.writeInt(c.getDef());
+      e.writeInt(c.getUse(0));
+      e.writeInt(e.poolIndex(c.getFromType()));
+      e.writeInt(e.poolIndex(c.getToType()));
+    } else if (s instanceof SSAGetCaughtExceptionInstruction) {
+      SSAGetCaughtExceptionInstruction g = (SSAGetCaughtExceptionInstruction) s;
+      e.writeByte(GET_CAUGHT_EXCEPTION);
+      e.writeInt(g.getBasicBlockNumber());
+      e.writeInt(g.getException());
+    } else if (s instanceof SSAGetInstruction) {
+      SSAGetInstruction g = (SSAGetInstruction) s;
+      if (g.isStatic()) {
+        e.writeByte(GET_STATIC);
+      } else {
+        e.writeByte(GET);
+        e.writeInt(g.getRef());
+      }
+      e.writeInt(g.getDef());
+      e.writeInt(e.poolIndex(g.getDeclaredField()));
+    } else if (s instanceof SSAGotoInstruction) {
+      e.writeByte(GOTO);
+    } else if (s instanceof SSAInstanceofInstruction) {
+      SSAInstanceofInstruction i = (SSAInstanceofInstruction) s;
+      e.writeByte(INSTANCEOF);
+      e.writeInt(i.getDef());
+      e.writeInt(i.getRef());
+      e.writeInt(e.poolIndex(i.getCheckedType()));
+    } else if (s instanceof SSAInvokeInstruction) {
+      SSAInvokeInstruction i = (SSAInvokeInstruction) s;
+      CallSiteReference site = i.getCallSite();
+      e.writeByte(INVOKE);
+      e.writeInt(i.getNumberOfReturnValues() == 0 ? -1 : i.getReturnValue(0));
+      e.writeInts(uses(i));
+      e.writeInt(i.getException());
+      e.writeInt(site.getProgramCounter());
+      e.writeInt(e.poolIndex(site.getDeclaredTarget()));
+      e.writeInt(e.poolIndex(site.getInvocationCode()));
+    } else if (s instanceof SSALoadMetadataInstruction) {
+      SSALoadMetadataInstruction l = (SSALoadMetadataInstruction) s;
+      e.writeByte(LOAD_METADATA);
+      e.writeInt(l.getDef());
+      e.writeInt(e.poolIndex(l.getType()));
+      e.writeInt(e.poolIndex(l.getToken()));
+    } else if (s instanceof SSAMonitorInstruction) {
+      SSAMonitorInstruction m = (SSAMonitorInstruction) s;
+      e.writeByte(MONITOR);
+      e.writeInt(m.getRef());
+      e.writeByte(m.isMonitorEnter() ? 1 : 0);
+    } else if (s instanceof SSANewInstruction) {
+      SSANewInstruction n = (SSANewInstruction) s;
+      e.writeByte(NEW);
+      e.writeInt(n.getDef());
+      e.writeInt(n.getNewSite().getProgramCounter());
+      e.writeInt(e.poolIndex(n.getNewSite().getDeclaredType()));
+      e.writeInts(uses(n));
+    } else if (s instanceof SSAPutInstruction) {
+      SSAPutInstruction p = (SSAPutInstruction) s;
+      if (p.isStatic()) {
+        e.writeByte(PUT_STATIC);
+      } else {
+        e.writeByte(PUT);
+        e.writeInt(p.getRef());
+      }
+      e.writeInt(p.getVal());
+      e.writeInt(e.poolIndex(p.getDeclaredField()));
+    } else if (s instanceof SSAReturnInstruction) {
+      SSAReturnInstruction r = (SSAReturnInstruction) s;
+      if (r.returnsVoid()) {
+        e.writeByte(RETURN_VOID);
+      } else {
+        e.writeByte(RETURN);
+        e.writeInt(r.getResult());
+        e.writeByte(r.returnsPrimitiveType() ? 1 : 0);
+      }
+    } else if (s instanceof SSASwitchInstruction) {
+      SSASwitchInstruction w = (SSASwitchInstruction) s;
+      e.writeByte(SWITCH);
+      e.writeInt(w.getUse(0));
+      e.writeInt(w.getDefault());
+      e.writeInts(w.getCasesAndLabels());
+    } else if (s instanceof SSAThrowInstruction) {
+      e.writeByte(THROW);
+      e.writeInt(((SSAThrowInstruction) s).getException());
+    } else if (s instanceof SSAUnaryOpInstruction) {
+      SSAUnaryOpInstruction u = (SSAUnaryOpInstruction) s;
+      e.writeByte(UNARY_OP);
+      e.writeInt(e.poolIndex(u.getOpcode()));
+      e.writeInt(u.getDef());
+      e.writeInt(u.getUse(0));
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private SSAInstruction decodeInstruction(ByteBuffer b, SSAInstructionFactory insts, Object[] pooled) {
+    byte code = b.get();
+    switch (code) {
+    case NONE:
+      return null;
+    case ARRAY_LENGTH: {
+      int def = readInt(b);
+      return insts.ArrayLengthInstruction(def, readInt(b));
+    }
+    case ARRAY_LOAD: {
+      int def = readInt(b);
+      int ref = readInt(b);
+      int index = readInt(b);
+      return insts.ArrayLoadInstruction(def, ref, index, (TypeReference) pooled[readInt(b)]);
+    }
+    case ARRAY_STORE: {
+      int ref = readInt(b);
+      int index = readInt(b);
+      int value = readInt(b);
+      return insts.ArrayStoreInstruction(ref, index, value, (TypeReference) pooled[readInt(b)]);
+    }
+    case BINARY_OP: {
+      IBinaryOpInstruction.IOperator op = (IBinaryOpInstruction.IOperator) pooled[readInt(b)];
+      int def = readInt(b);
+      int v1 = readInt(b);
+      int v2 = readInt(b);
+      return insts.BinaryOpInstruction(op, false, false, def, v1, v2, b.get() != 0);
+    }
+    case CHECK_CAST: {
+      int def = readInt(b);
+      int val = readInt(b);
+      TypeReference[] types = new TypeReference[readInt(b)];
+      for (int i = 0; i < types.length; i++) {
+        types[i] = (TypeReference) pooled[readInt(b)];
+      }
+      return insts.CheckCastInstruction(def, val, types, b.get() != 0);
+    }
+    case COMPARISON: {
+      IComparisonInstruction.Operator op = (IComparisonInstruction.Operator) pooled[readInt(b)];
+      int def = readInt(b);
+      int v1 = readInt(b);
+      return insts.ComparisonInstruction(op, def, v1, readInt(b));
+    }
+    case CONDITIONAL_BRANCH: {
+      IConditionalBranchInstruction.IOperator op = (IConditionalBranchInstruction.IOperator) pooled[readInt(b)];
+      TypeReference type = (TypeReference) pooled[readInt(b)];
+      int v1 = readInt(b);
+      return insts.ConditionalBranchInstruction(op, type, v1, readInt(b));
+    }
+    case CONVERSION: {
+      int def = readInt(b);
+      int val = readInt(b);
+      TypeReference from = (TypeReference) pooled[readInt(b)];
+      return insts.ConversionInstruction(def, val, from, (TypeReference) pooled[readInt(b)], false);
+    }
+    case GET_CAUGHT_EXCEPTION: {
+      int bb = readInt(b);
+      return insts.GetCaughtExceptionInstruction(bb, readInt(b));
+    }
+    case GET: {
+      int ref = readInt(b);
+      int def = readInt(b);
+      return insts.GetInstruction(def, ref, (FieldReference) pooled[readInt(b)]);
+    }
+    case GET_STATIC: {
+      int def = readInt(b);
+      return insts.GetInstruction(def, (FieldReference) pooled[readInt(b)]);
+    }
+    case GOTO:
+      return insts.GotoInstruction();
+    case INSTANCEOF: {
+      int def = readInt(b);
+      int ref = readInt(b);
+      return insts.InstanceofInstruction(def, ref, (TypeReference) pooled[readInt(b)]);
+    }
+    case INVOKE: {
+      int def = readInt(b);
+      int[] params = readInts(b);
+      int exception = readInt(b);
+      int pc = readInt(b);
+      MethodReference target = (MethodReference) pooled[readInt(b)];
+      IInvokeInstruction.IDispatch dispatch = (IInvokeInstruction.IDispatch) pooled[readInt(b)];
+      CallSiteReference site = CallSiteReference.make(pc, target, dispatch);
+      return def == -1 ? insts.InvokeInstruction(params, exception, site) : insts.InvokeInstruction(def, params, exception, site);
+    }
+    case LOAD_METADATA: {
+      int def = readInt(b);
+      TypeReference type = (TypeReference) pooled[readInt(b)];
+      return insts.LoadMetadataInstruction(def, type, pooled[readInt(b)]);
+    }
+    case MONITOR: {
+      int ref = readInt(b);
+      return insts.MonitorInstruction(ref, b.get() != 0);
+    }
+    case NEW: {
+      int def = readInt(b);
+      int pc = readInt(b);
+      NewSiteReference site = NewSiteReference.make(pc, (TypeReference) pooled[readInt(b)]);
+      int[] params = readInts(b);
+      return params.length == 0 ? insts.NewInstruction(def, site) : insts.NewInstruction(def, site, params);
+    }
+    case PUT: {
+      int ref = readInt(b);
+      int val = readInt(b);
+      return insts.PutInstruction(ref, val, (FieldReference) pooled[readInt(b)]);
+    }
+    case PUT_STATIC: {
+      int val = readInt(b);
+      return insts.PutInstruction(val, (FieldReference) pooled[readInt(b)]);
+    }
+    case RETURN: {
+      int val = readInt(b);
+      return insts.ReturnInstruction(val, b.get() != 0);
+    }
+    case RETURN_VOID:
+      return insts.ReturnInstruction();
+    case SWITCH: {
+      int val = readInt(b);
+      int defaultLabel = readInt(b);
+      return insts.SwitchInstruction(val, defaultLabel, readInts(b));
+    }
+    case THROW:
+      return insts.ThrowInstruction(readInt(b));
+    case UNARY_OP: {
+      IUnaryOpInstruction.IOperator op = (IUnaryOpInstruction.IOperator) pooled[readInt(b)];
+      int def = readInt(b);
+      return insts.UnaryOpInstruction(op, def, readInt(b));
+    }
+    default:
+      throw new IllegalStateException("bad instruction code " + code);
+    }
+  }
+
+  /**
+   * @return the IR encoded in b, or null if it no longer matches the method's bytecode
+   */
+  private IR decode(final IBytecodeMethod method, final Context c, final SSAOptions options, ByteBuffer b,
+      final IRFactory<IMethod> factory) {
+    Object[] pooled = pooledObjects(readInts(b));
+    int nInstructions = readInt(b);
+    int nBlocks = readInt(b);
+    int nParameters = readInt(b);
+    int maxValueNumber = readInt(b);
+
+    ShrikeCFG shrikeCFG = ShrikeCFG.make(method);
+    if (shrikeCFG.getNumberOfNodes() != nBlocks || shrikeCFG.getInstructions().length != nInstructions) {
+      return null;
+    }
+    SSAInstructionFactory insts = method.getDeclaringClass().getClassLoader().getInstructionFactory();
+    SSAInstruction[] instructions = new SSAInstruction[nInstructions];
+    for (int i = 0; i < nInstructions; i++) {
+      instructions[i] = decodeInstruction(b, insts, pooled);
+    }
+    SSACFG cfg = new SSACFG(method, shrikeCFG, instructions);
+
+    SymbolTable symbolTable = new SymbolTable(nParameters);
+    if (maxValueNumber > 0) {
+      symbolTable.ensureSymbol(maxValueNumber);
+    }
+
+    Map<Integer, SSAPhiInstruction> phis = HashMapFactory.make();
+    for (int n = readInt(b); n > 0; n--) {
+      SSACFG.BasicBlock bb = cfg.getNode(readInt(b));
+      int nPhis = readInt(b);
+      for (int i = 0; i < nPhis; i++) {
+        int def = readInt(b);
+        SSAPhiInstruction phi = insts.PhiInstruction(def, readInts(b));
+        // the slots of the phis are no longer needed after SSA construction; keep their order
+        bb.addPhiForLocal(i, phi);
+        phis.put(Integer.valueOf(def), phi);
+      }
+    }
+    for (int n = readInt(b); n > 0; n--) {
+      int bbNumber = readInt(b);
+      SSACFG.ExceptionHandlerBasicBlock bb = (SSACFG.ExceptionHandlerBasicBlock) cfg.getNode(bbNumber);
+      bb.setCatchInstruction(insts.GetCaughtExceptionInstruction(bbNumber, readInt(b)));
+    }
+
+    for (int vn = readInt(b); vn != 0; vn = readInt(b)) {
+      if (vn < 0) {
+        int[] uses = readInts(b);
+        SSAPhiInstruction phi = phis.get(Integer.valueOf(-vn));
+        // a phi that was removed as dead still leaves its value
+        symbolTable.restorePhiValue(-vn, phi != null ? phi : new SSAPhiInstruction(-vn, uses));
+        continue;
+      }
+      byte tag = b.get();
+      switch (tag) {
+      case NULL:
+        symbolTable.restoreConstant(vn, null);
+        break;
+      case BOOLEAN:
+        symbolTable.restoreConstant(vn, Boolean.valueOf(b.get() != 0));
+        break;
+      case INT:
+        symbolTable.restoreConstant(vn, Integer.valueOf(readInt(b)));
+        break;
+      case LONG:
+        symbolTable.restoreConstant(vn, Long.valueOf(readLong(b)));
+        break;
+      case FLOAT:
+        symbolTable.restoreConstant(vn, new Float(Float.intBitsToFloat(readInt(b))));
+        break;
+      case DOUBLE:
+        symbolTable.restoreConstant(vn, new Double(Double.longBitsToDouble(readLong(b))));
+        break;
+      case STRING:
+        symbolTable.restoreConstant(vn, pooled[readInt(b)]);
+        break;
+      default:
+        throw new IllegalStateException("bad constant tag " + tag);
+      }
+    }
+
+    return new IR(method, instructions, symbolTable, cfg, options) {
+      /**
+       * the IR built afresh, for its local names
+       */
+      private IR rebuilt;
+
+      {
+        setupLocationMap();
+      }
+
+      private synchronized IR rebuilt() {
+        if (rebuilt == null) {
+          rebuilt = factory.makeIR(method, c, options);
+        }
+        return rebuilt;
+      }
+
+      @Override
+      protected String instructionPosition(int instructionIndex) {
+        try {
+          int bcIndex = method.getBytecodeIndex(instructionIndex);
+          int lineNumber = method.getLineNumber(bcIndex);
+
+          if (lineNumber == -1) {
+            return "";
+          } else {
+            return "(line " + lineNumber + ")";
+          }
+        } catch (InvalidClassFileException e) {
+          return "";
+        }
+      }
+
+      @Override
+      protected SSA2LocalMap getLocalMap() {
+        return rebuilt().getLocalMap();
+      }
+
+      @Override
+      protected <T extends SSAIndirectionData.Name> SSAIndirectionData<T> getIndirectionData() {
+        // only IRs without indirections are stored
+        return null;
+      }
+    };
+  }
+}
@@ -10,14 +10,25 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.util.ThreadUtil;
+import com.ibm.wala.util.collections.Pair;
 
 /**
  * A mapping from IMethod -> SSAOptions -> SoftReference -> Something
  * 
- * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
+ * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it. For now, a cache with a
+ * fixed budget is available through {@link #makeBounded(IRFactory, long, long)}.
+ * 
+ * This class is thread-safe. Threads asking for the same IR (or DefUse) wait while one of them builds it; threads asking for
+ * different ones build them concurrently.
  */
 public class SSACache {
 
@@ -34,18 +45,89 @@ public class SSACache {
   /**
    * A cache of SSA IRs
    */
-  final private AuxiliaryCache irCache = new AuxiliaryCache();
+  final private IAuxiliaryCache irCache;
 
   /**
    * A cache of DefUse information
    */
-  final private AuxiliaryCache duCache = new AuxiliaryCache();
+  final private IAuxiliaryCache duCache;
+
+  /**
+   * if non-null, where IRs are stored when built, and found when the IR cache no longer holds them
+   */
+  private volatile OffHeapIRStore secondLevel;
+
+  /**
+   * IRs being built, by ((IMethod,Context),SSAOptions), so that threads asking for the same IR wait for one thread to build it
+   */
+  final private ConcurrentMap<Object, FutureTask<IR>> pendingIRs = new ConcurrentHashMap<Object, FutureTask<IR>>();
+
+  /**
+   * DefUse information being built, as for {@link #pendingIRs}
+   */
+  final private ConcurrentMap<Object, FutureTask<DefUse>> pendingDUs = new ConcurrentHashMap<Object, FutureTask<DefUse>>();
 
   /**
    * @param factory a factory for creating IRs
    */
   public SSACache(IRFactory<IMethod> factory) {
+    this(factory, new AuxiliaryCache(), new AuxiliaryCache());
+  }
+
+  /**
+   * @param factory a factory for creating IRs
+   * @param irCache where to cache IRs
+   * @param duCache where to cache DefUse information
+   * @throws IllegalArgumentException if irCache or duCache is null
+   */
+  public SSACache(IRFactory<IMethod> factory, IAuxiliaryCache irCache, IAuxiliaryCache duCache) {
+    if (irCache == null) {
+      throw new IllegalArgumentException("irCache is null");
+    }
+    if (duCache == null) {
+      throw new IllegalArgumentException("duCache is null");
+    }
     this.factory = factory;
+    this.irCache = irCache;
+    this.duCache = duCache;
+  }
+
+  /**
+   * @return an SSACache that holds IRs and DefUse information up to the given budgets, evicting the least recently used
+   * @see BoundedAuxiliaryCache
+   */
+  public static SSACache makeBounded(IRFactory<IMethod> factory, long irBudget, long duBudget) {
+    return new SSACache(factory, new BoundedAuxiliaryCache(irBudget), new BoundedAuxiliaryCache(duBudget));
+  }
+
+  public IAuxiliaryCache getIRCache() {
+    return irCache;
+  }
+
+  public IAuxiliaryCache getDUCache() {
+    return duCache;
+  }
+
+  /**
+   * Store the IRs this cache builds in store as well, and take IRs from there, rather than build them again, once the IR cache
+   * has dropped them.
+   * 
+   * @param store the store to use, or null for none
+   */
+  public void setSecondLevelStore(OffHeapIRStore store) {
+    secondLevel = store;
+  }
+
+  public OffHeapIRStore getSecondLevelStore() {
+    return secondLevel;
+  }
+
+  /**
+   * @return true if this cache holds its objects through soft references, and so may need {@link #wipe()} to relieve memory
+   *         pressure
+   */
+  public boolean isSoft() {
+    return irCache instanceof AuxiliaryCache || duCache instanceof AuxiliaryCache;
   }
 
   /**
@@ -54,7 +136,7 @@ public class SSACache {
    * @return an IR for m, built according to the specified options. null if m is abstract or native.
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
+  public IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
 
     if (m == null) {
       throw new IllegalArgumentException("m is null");
@@ -73,19 +155,54 @@ public class SSACache {
 
     IR ir = (IR) irCache.find(m, c, options);
     if (ir == null) {
-      ir = factory.makeIR(m, c, options);
-      irCache.cache(m, c, options, ir);
+      final Context C = c;
+      ir = singleFlight(pendingIRs, Pair.make(Pair.make(m, c), options), new Callable<IR>() {
+        public IR call() {
+          // another thread may have finished building it since we looked
+          IR result = (IR) irCache.peek(m, C, options);
+          if (result == null) {
+            OffHeapIRStore store = secondLevel;
+            result = store == null ? null : store.find(m, C, options, factory);
+            if (result == null) {
+              result = factory.makeIR(m, C, options);
+              if (store != null) {
+                store.store(m, C, options, result);
+              }
+            }
+            irCache.cache(m, C, options, result);
+          }
+          return result;
+        }
+      });
     }
     return ir;
   }
 
+  /**
+   * Compute the value for key, unless another thread is already computing it, in which case wait for that thread's result
+   * instead.
+   */
+  private static <T> T singleFlight(ConcurrentMap<Object, FutureTask<T>> pending, Object key, Callable<T> compute) {
+    FutureTask<T> task = new FutureTask<T>(compute);
+    FutureTask<T> existing = pending.putIfAbsent(key, task);
+    if (existing == null) {
+      try {
+        task.run();
+      } finally {
+        pending.remove(key, task);
+      }
+      existing = task;
+    }
+    return ThreadUtil.get(existing, "waiting for another thread");
+  }
+
   /**
    * @param m a method
    * @param options options governing ssa construction
    * @return DefUse information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
+  public DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
     if (m == null) {
       throw new IllegalArgumentException("m is null");
     }
@@ -99,8 +216,7 @@ public class SSACache {
     DefUse du = (DefUse) duCache.find(m, c, options);
     if (du == null) {
       IR ir = findOrCreateIR(m, c, options);
-      du = new DefUse(ir);
-      duCache.cache(m, c, options, du);
+      du = createDU(ir, c, options);
     }
     return du;
   }
@@ -109,20 +225,36 @@ public class SSACache {
    * @return {@link DefUse} information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if ir is null
    */
-  public synchronized DefUse findOrCreateDU(IR ir, Context C) {
+  public DefUse findOrCreateDU(IR ir, Context C) {
     if (ir == null) {
       throw new IllegalArgumentException("ir is null");
     }
     DefUse du = (DefUse) duCache.find(ir.getMethod(), C, ir.getOptions());
     if (du == null) {
-      du = new DefUse(ir);
-      duCache.cache(ir.getMethod(), C, ir.getOptions(), du);
+      du = createDU(ir, C, ir.getOptions());
     }
     return du;
   }
 
   /**
-   * The existence of this is unfortunate.
+   * Create DefUse information for ir, unless another thread is doing so already, and cache it
+   */
+  private DefUse createDU(final IR ir, final Context c, final SSAOptions options) {
+    return singleFlight(pendingDUs, Pair.make(Pair.make(ir.getMethod(), c), options), new Callable<DefUse>() {
+      public DefUse call() {
+        // another thread may have finished building it since we looked
+        DefUse result = (DefUse) duCache.peek(ir.getMethod(), c, options);
+        if (result == null) {
+          result = new DefUse(ir);
+          duCache.cache(ir.getMethod(), c, options, result);
+        }
+        return result;
+      }
+    });
+  }
+
+  /**
+   * The existence of this is unfortunate. A second-level store, which holds nothing on the heap, is left alone.
    */
   public void wipe() {
     irCache.wipe();
@@ -134,6 +266,10 @@ public class SSACache {
    */
   public void invalidateIR(IMethod method, Context c) {
     irCache.invalidate(method, c);
+    OffHeapIRStore store = secondLevel;
+    if (store != null) {
+      store.invalidate(method, c);
+    }
   }
 
   /**
@@ -130,6 +130,25 @@ public class SymbolTable implements Cloneable {
     return findOrCreateConstant(defaultValues[vn]);
   }
   
+  /**
+   * Record that value number vn holds the constant o, as {@link #findOrCreateConstant(Object)} would have; used when restoring a
+   * stored symbol table.
+   */
+  void restoreConstant(int vn, Object o) {
+    ensureSymbol(vn);
+    ConstantValue v = new ConstantValue(o);
+    constants.put(v, Integer.valueOf(vn));
+    values[vn] = v;
+  }
+
+  /**
+   * Record that value number vn is defined by phi; used when restoring a stored symbol table.
+   */
+  void restorePhiValue(int vn, SSAPhiInstruction phi) {
+    ensureSymbol(vn);
+    values[vn] = new PhiValue(phi);
+  }
+
   public int getNullConstant() {
     return findOrCreateConstant(null);
   }
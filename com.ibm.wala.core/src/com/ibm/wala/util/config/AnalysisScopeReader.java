@@ -121,6 +121,9 @@ public class AnalysisScopeReader {
     } else if ("jarFile".equals(entryType)) {
       Module M = fp.getJarFileModule(entryPathname, javaLoader);
       scope.addToScope(walaLoader, M);
+    } else if ("mappedJarFile".equals(entryType)) {
+      File jf = fp.getFile(entryPathname, javaLoader);
+      scope.addMappedJarFileToScope(walaLoader, jf);
     } else if ("loaderImpl".equals(entryType)) {
       scope.setLoaderImpl(walaLoader, entryPathname);
     } else if ("stdlib".equals(entryType)) {
@@ -68,7 +68,8 @@ public class ReferenceCleanser {
       return;
     }
     AnalysisCache cache = getAnalysisCache();
-    if (cache != null) {
+    // a bounded cache manages its own memory
+    if (cache != null && cache.getSSACache().isSoft()) {
       cache.getSSACache().wipe();
     }
     IClassHierarchy cha = getClassHierarchy();
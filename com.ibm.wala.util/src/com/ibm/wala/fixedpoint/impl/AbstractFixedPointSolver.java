@@ -10,8 +10,14 @@
  *******************************************************************************/
 package com.ibm.wala.fixedpoint.impl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.fixpoint.AbstractStatement;
@@ -24,6 +30,8 @@ import com.ibm.wala.fixpoint.UnaryStatement;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.ThreadUtil;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.debug.VerboseAction;
 
 /**
@@ -50,6 +58,17 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
 
   static public final int DEFAULT_PERIODIC_MAINTENANCE_INTERVAL = 100000;
 
+  /**
+   * In parallel mode, the maximum number of statements evaluated concurrently in one batch.
+   */
+  static public final int DEFAULT_MAX_BATCH_SIZE = 4096;
+
+  /**
+   * In parallel mode, batches smaller than this are evaluated on the calling thread, since handing them to the pool costs more than
+   * it saves.
+   */
+  static final int MIN_PARALLEL_BATCH_SIZE = 64;
+
   /**
    * A tuning parameter; how may new IStatementDefinitionss must be added before doing a new topological sort? TODO: Tune this
    * empirically.
@@ -101,6 +120,16 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
    */
   private boolean firstSolve = true;
 
+  /**
+   * How many threads may evaluate statements concurrently? 1 means the classic sequential solver.
+   */
+  private int numberOfThreads = 1;
+
+  /**
+   * In parallel mode, the maximum number of statements evaluated concurrently in one batch.
+   */
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
   protected abstract T[] makeStmtRHS(int size);
   
   /**
@@ -136,6 +165,10 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
       initForFirstSolve();
     }
 
+    if (numberOfThreads > 1) {
+      return solveInParallel(monitor);
+    }
+
     while (!workList.isEmpty()) {
       MonitorUtil.throwExceptionIfCanceled(monitor);
       orderStatements();
@@ -147,6 +180,7 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
         System.err.println(("Before evaluation " + s));
       }
       byte code = s.evaluate();
+      statementEvaluated(s, code);
       if (verbose) {
         nEvaluated++;
         if (nEvaluated % getVerboseInterval() == 0) {
@@ -171,6 +205,169 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     return globalChange;
   }
 
+  /**
+   * Parallel variant of {@link #solve(IProgressMonitor)}.
+   * 
+   * Statements are taken from the work list in order. Each maximal run of statements for which
+   * {@link #isConcurrentlyEvaluable(AbstractStatement)} holds, and which are pairwise independent (no statement of the batch
+   * reads or writes a variable that another statement of the batch writes), is evaluated concurrently. Since the statements of a
+   * batch cannot observe each other, the outcome of a batch does not depend on thread scheduling. The resulting work list and
+   * statement updates are then applied on the calling thread, in work list order. Other statements are evaluated exactly as in the
+   * sequential solver.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean solveInParallel(IProgressMonitor monitor) throws CancelException {
+    boolean globalChange = false;
+    ExecutorService pool = ThreadUtil.makeDaemonPool(numberOfThreads, "fixed-point solver worker");
+    try {
+      List<AbstractStatement> batch = new ArrayList<AbstractStatement>();
+      List<AbstractStatement> deferred = new ArrayList<AbstractStatement>();
+      Set<IVariable> defs = HashSetFactory.make();
+      Set<IVariable> uses = HashSetFactory.make();
+      while (!workList.isEmpty()) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        orderStatements();
+
+        AbstractStatement s = workList.takeStatement();
+        if (!isConcurrentlyEvaluable(s)) {
+          globalChange |= evaluateAndUpdate(s, s.evaluate());
+          continue;
+        }
+
+        // greedily collect a batch of independent statements. conflicting statements are deferred to a later round; scanning
+        // stops at the first statement that must be evaluated alone, so that it is not overtaken by later statements.
+        batch.clear();
+        deferred.clear();
+        defs.clear();
+        uses.clear();
+        addToBatch(s, batch, defs, uses);
+        int scanLimit = 2 * maxBatchSize;
+        while (batch.size() < maxBatchSize && deferred.size() < scanLimit && !workList.isEmpty()) {
+          AbstractStatement next = workList.takeStatement();
+          if (!isConcurrentlyEvaluable(next)) {
+            deferred.add(next);
+            break;
+          }
+          if (isIndependent(next, defs, uses)) {
+            addToBatch(next, batch, defs, uses);
+          } else {
+            deferred.add(next);
+          }
+        }
+        for (AbstractStatement d : deferred) {
+          workList.insertStatement(d);
+        }
+
+        byte[] codes = evaluateBatch(pool, batch);
+        for (int i = 0; i < codes.length; i++) {
+          globalChange |= evaluateAndUpdate(batch.get(i), codes[i]);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return globalChange;
+  }
+
+  /**
+   * Record the outcome of evaluating statement s: update counters, the work list and the system.
+   * 
+   * @return true iff the evaluation changed the value of some variable
+   */
+  @SuppressWarnings("unchecked")
+  private boolean evaluateAndUpdate(AbstractStatement s, byte code) {
+    statementEvaluated(s, code);
+    if (verbose) {
+      nEvaluated++;
+      if (nEvaluated % getVerboseInterval() == 0) {
+        performVerboseAction();
+      }
+      if (nEvaluated % getPeriodicMaintainInterval() == 0) {
+        periodicMaintenance();
+      }
+    }
+    if (isChanged(code)) {
+      updateWorkList(s);
+    }
+    if (isFixed(code)) {
+      removeStatement(s);
+    }
+    return isChanged(code);
+  }
+
+  private static IVariable[] getUses(AbstractStatement s) {
+    if (s instanceof UnaryStatement) {
+      return new IVariable[] { ((UnaryStatement) s).getRightHandSide() };
+    } else {
+      return s.getRHS();
+    }
+  }
+
+  private static boolean isIndependent(AbstractStatement s, Set<IVariable> defs, Set<IVariable> uses) {
+    IVariable lhs = s.getLHS();
+    if (lhs != null && (defs.contains(lhs) || uses.contains(lhs))) {
+      return false;
+    }
+    for (IVariable v : getUses(s)) {
+      if (v != null && defs.contains(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addToBatch(AbstractStatement s, List<AbstractStatement> batch, Set<IVariable> defs, Set<IVariable> uses) {
+    batch.add(s);
+    if (s.getLHS() != null) {
+      defs.add(s.getLHS());
+    }
+    for (IVariable v : getUses(s)) {
+      if (v != null) {
+        uses.add(v);
+      }
+    }
+  }
+
+  /**
+   * Evaluate a batch of independent statements, splitting the work among the threads of the pool.
+   * 
+   * @return the evaluation codes, index-aligned with the batch
+   */
+  private byte[] evaluateBatch(ExecutorService pool, final List<AbstractStatement> batch) {
+    final byte[] codes = new byte[batch.size()];
+    if (batch.size() < MIN_PARALLEL_BATCH_SIZE) {
+      for (int i = 0; i < codes.length; i++) {
+        codes[i] = batch.get(i).evaluate();
+      }
+      return codes;
+    }
+    int chunk = (codes.length + numberOfThreads - 1) / numberOfThreads;
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(numberOfThreads);
+    for (int start = 0; start < codes.length; start += chunk) {
+      final int from = start;
+      final int to = Math.min(start + chunk, codes.length);
+      futures.add(pool.submit(new Callable<Object>() {
+        public Object call() {
+          for (int i = from; i < to; i++) {
+            codes[i] = batch.get(i).evaluate();
+          }
+          return null;
+        }
+      }));
+    }
+    ThreadUtil.getAll(futures, "evaluating statements");
+    return codes;
+  }
+
+  /**
+   * In parallel mode, may statement s be evaluated concurrently with other statements? A statement may be evaluated concurrently
+   * only if its evaluation writes nothing but its lhs, reads nothing but its rhs and state that is not modified during a batch,
+   * and has no side effects on the system. Subclasses should override as desired; by default every statement is evaluated alone.
+   */
+  protected boolean isConcurrentlyEvaluable(AbstractStatement<T, ?> s) {
+    return false;
+  }
+
   public void performVerboseAction() {
     System.err.println("Evaluated " + nEvaluated);
     System.err.println("Created   " + nCreated);
@@ -286,6 +483,7 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
   private void incorporateNewStatement(boolean toWorkList, boolean eager, AbstractStatement s) {
     if (eager) {
       byte code = s.evaluate();
+      statementEvaluated(s, code);
       if (verbose) {
         nEvaluated++;
         if (nEvaluated % getVerboseInterval() == 0) {
@@ -565,6 +763,34 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     topologicalGrowthFactor = d;
   }
 
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * @param n how many threads may evaluate statements concurrently. 1 (the default) selects the sequential solver.
+   */
+  public void setNumberOfThreads(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + n);
+    }
+    numberOfThreads = n;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @param n in parallel mode, the maximum number of statements evaluated concurrently in one batch
+   */
+  public void setMaxBatchSize(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("invalid batch size: " + n);
+    }
+    maxBatchSize = n;
+  }
+
   public int getNumberOfEvaluations() {
     return nEvaluated;
   }
@@ -573,6 +799,13 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     nEvaluated++;
   }
 
+  /**
+   * a method that will be called after each evaluation of a statement, with the code the evaluation returned. subclasses should
+   * override as desired, but must not modify the system here.
+   */
+  protected void statementEvaluated(AbstractStatement<T, ?> s, byte code) {
+  }
+
   /**
    * a method that will be called every N evaluations. subclasses should override as desired.
    */
@@ -13,6 +13,7 @@ package com.ibm.wala.fixpoint;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 
 /**
  * A variable for dataflow analysis, representing a set of integers.
@@ -24,16 +25,62 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
 
   private MutableIntSet V;
 
+  /**
+   * Is V a canonical set shared with other variables? If so, V is copied before it is modified.
+   */
+  private boolean shared = false;
+
+  /**
+   * @return the factory that creates the set representation for the value of this variable
+   */
+  protected MutableIntSetFactory<?> getIntSetFactory() {
+    return IntSetUtil.getDefaultIntSetFactory();
+  }
+
+  /**
+   * Replace the value of this variable with an equal, shared set, e.g. one from an
+   * {@link com.ibm.wala.util.intset.IntSetRepository}. The variable copies the shared set before it changes its value again, so the
+   * shared set is never modified.
+   */
+  public void setSharedValue(MutableIntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    assert (V == null) ? s.isEmpty() : V.sameValue(s);
+    if (V != null) {
+      V = s;
+      shared = true;
+    }
+  }
+
+  /**
+   * @return true iff the value of this variable is a shared set
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * copy-on-write: replace a shared value with a private copy before modifying it
+   */
+  private void unshare() {
+    if (shared) {
+      V = getIntSetFactory().makeCopy(V);
+      shared = false;
+    }
+  }
+
   public void copyState(T other) {
     if (V == null) {
       if (other.V == null) {
         return;
       } else {
-        V = IntSetUtil.getDefaultIntSetFactory().makeCopy(other.V);
+        V = getIntSetFactory().makeCopy(other.V);
         return;
       }
     } else {
       if (other.V != null) {
+        unshare();
         V.copySet(other.V);
       }
     }
@@ -46,9 +93,15 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
    */
   public boolean addAll(IntSet B) {
     if (V == null) {
-      V = IntSetUtil.getDefaultIntSetFactory().makeCopy(B);
+      V = getIntSetFactory().makeCopy(B);
       return (B.size() > 0);
     } else {
+      if (shared) {
+        if (B.isSubset(V)) {
+          return false;
+        }
+        unshare();
+      }
       boolean result = V.addAll(B);
       return result;
     }
@@ -100,7 +153,12 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
    */
   public void add(int b) {
     if (V == null) {
-      V = IntSetUtil.getDefaultIntSetFactory().make();
+      V = getIntSetFactory().make();
+    } else if (shared) {
+      if (V.contains(b)) {
+        return;
+      }
+      unshare();
     }
     V.add(b);
   }
@@ -119,7 +177,8 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
   }
 
   /**
-   * @return the value of this variable as a MutableSparseIntSet ... null if the set is empty.
+   * @return the value of this variable as a MutableSparseIntSet ... null if the set is empty. If {@link #isShared()}, the result
+   *         must not be modified.
    */
   public MutableIntSet getValue() {
     return V;
@@ -130,6 +189,12 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
    */
   public void remove(int i) {
     if (V != null) {
+      if (shared) {
+        if (!V.contains(i)) {
+          return;
+        }
+        unshare();
+      }
       V.remove(i);
     }
   }
@@ -164,13 +229,14 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
 
   public boolean addAllInIntersection(IntSet other, IntSet filter) {
     if (V == null) {
-      V = IntSetUtil.getDefaultIntSetFactory().makeCopy(other);
+      V = getIntSetFactory().makeCopy(other);
       V.intersectWith(filter);
       if (V.isEmpty()) {
         V = null;
       }
       return (V != null);
     } else {
+      unshare();
       boolean result = V.addAllInIntersection(other, filter);
       return result;
     }
@@ -178,5 +244,6 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
 
   public void removeAll() {
     V = null;
+    shared = false;
   }
 }
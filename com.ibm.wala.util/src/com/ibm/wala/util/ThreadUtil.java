@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utilities for the worker pools of the parallel analyses.
+ */
+public class ThreadUtil {
+
+  /**
+   * @param name name of the worker threads
+   * @return a pool of nThreads daemon threads, so that a pool that is not shut down does not keep the VM alive
+   */
+  public static ExecutorService makeDaemonPool(int nThreads, final String name) {
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads " + nThreads);
+    }
+    return Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Wait for the result of f. An exception thrown by the computation is rethrown as is if it is unchecked, and wrapped in an
+   * {@link IllegalStateException} otherwise.
+   *
+   * @param what what f computes, for the message of the exception thrown if this thread is interrupted
+   * @throws IllegalStateException if this thread is interrupted while waiting; its interrupt status is then set again
+   */
+  public static <T> T get(Future<T> f, String what) {
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while " + what, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IllegalStateException(cause);
+      }
+    }
+  }
+
+  /**
+   * Wait for all of the futures, in order, as by {@link #get(Future, String)}.
+   */
+  public static void getAll(Collection<? extends Future<?>> futures, String what) {
+    for (Future<?> f : futures) {
+      get(f, what);
+    }
+  }
+}
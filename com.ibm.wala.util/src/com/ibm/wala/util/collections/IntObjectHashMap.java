@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * A hash map from int to non-null objects, with open addressing and linear probing over parallel key and value arrays, so there are
+ * no boxed keys and no entry objects. A null value marks a free slot.
+ *
+ * Iterators do not support concurrent modification.
+ */
+public class IntObjectHashMap<V> {
+
+  private final static int MIN_CAPACITY = 8;
+
+  private int[] keys;
+
+  private Object[] values;
+
+  private int size = 0;
+
+  /**
+   * resize when size exceeds this
+   */
+  private int threshold;
+
+  public IntObjectHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize number of entries to make room for
+   */
+  public IntObjectHashMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("invalid expectedSize: " + expectedSize);
+    }
+    allocate(capacityFor(expectedSize));
+  }
+
+  static int capacityFor(int expectedSize) {
+    int result = MIN_CAPACITY;
+    while (result * 3 / 4 < expectedSize) {
+      result <<= 1;
+    }
+    return result;
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    threshold = capacity * 3 / 4;
+  }
+
+  static int hash(int key, int mask) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private int find(int key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key, mask);; i = (i + 1) & mask) {
+      if (values[i] == null || keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    return (V) values[find(key)];
+  }
+
+  public boolean containsKey(int key) {
+    return values[find(key)] != null;
+  }
+
+  /**
+   * @return the previous value for key, or null if none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("null value");
+    }
+    int i = find(key);
+    V old = (V) values[i];
+    keys[i] = key;
+    values[i] = value;
+    if (old == null && ++size > threshold) {
+      rehash();
+    }
+    return old;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(2 * oldKeys.length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != null) {
+        int j = find(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * @return the removed value, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int i = find(key);
+    V old = (V) values[i];
+    if (old == null) {
+      return null;
+    }
+    size--;
+    // shift back later entries of the probe sequence, so lookups need no tombstones
+    int mask = keys.length - 1;
+    for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+      int k = hash(keys[j], mask);
+      if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    values[i] = null;
+    return old;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  public IntIterator keyIterator() {
+    return new IntIterator() {
+      private int i = nextSlot(values, 0);
+
+      public boolean hasNext() {
+        return i < values.length;
+      }
+
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int result = keys[i];
+        i = nextSlot(values, i + 1);
+        return result;
+      }
+    };
+  }
+
+  public Iterator<V> valueIterator() {
+    return new Iterator<V>() {
+      private int i = nextSlot(values, 0);
+
+      public boolean hasNext() {
+        return i < values.length;
+      }
+
+      @SuppressWarnings("unchecked")
+      public V next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        V result = (V) values[i];
+        i = nextSlot(values, i + 1);
+        return result;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @return the first index >= i of a non-null element of a, or a.length if none
+   */
+  static int nextSlot(Object[] a, int i) {
+    while (i < a.length && a[i] == null) {
+      i++;
+    }
+    return i;
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer("{");
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        if (result.length() > 1) {
+          result.append(", ");
+        }
+        result.append(keys[i]).append('=').append(values[i]);
+      }
+    }
+    return result.append('}').toString();
+  }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long to int, with open addressing and linear probing over parallel key and value arrays, so there are no boxed
+ * keys or values and no entry objects. Absent keys map to a default value.
+ *
+ * A key of 0 marks a free slot, so the entry for 0, if any, is kept aside.
+ */
+public class LongIntHashMap {
+
+  private long[] keys;
+
+  private int[] values;
+
+  /**
+   * number of entries in the arrays, not counting the one for key 0
+   */
+  private int size = 0;
+
+  /**
+   * resize when size exceeds this
+   */
+  private int threshold;
+
+  private boolean hasZero = false;
+
+  private int zeroValue;
+
+  private final int defaultValue;
+
+  /**
+   * @param defaultValue the value of keys not in the map
+   */
+  public LongIntHashMap(int defaultValue) {
+    this(defaultValue, 0);
+  }
+
+  /**
+   * @param defaultValue the value of keys not in the map
+   * @param expectedSize number of entries to make room for
+   */
+  public LongIntHashMap(int defaultValue, int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("invalid expectedSize: " + expectedSize);
+    }
+    this.defaultValue = defaultValue;
+    allocate(IntObjectHashMap.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    threshold = capacity * 3 / 4;
+  }
+
+  private static int hash(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32) ^ (h >>> 16)) & mask;
+  }
+
+  private int find(long key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key, mask);; i = (i + 1) & mask) {
+      if (keys[i] == 0 || keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * @return the value for key, or the default value if none
+   */
+  public int get(long key) {
+    if (key == 0) {
+      return hasZero ? zeroValue : defaultValue;
+    }
+    int i = find(key);
+    return keys[i] == 0 ? defaultValue : values[i];
+  }
+
+  public boolean containsKey(long key) {
+    return key == 0 ? hasZero : keys[find(key)] != 0;
+  }
+
+  /**
+   * @return the previous value for key, or the default value if none
+   */
+  public int put(long key, int value) {
+    if (key == 0) {
+      int old = hasZero ? zeroValue : defaultValue;
+      hasZero = true;
+      zeroValue = value;
+      return old;
+    }
+    int i = find(key);
+    if (keys[i] == 0) {
+      keys[i] = key;
+      values[i] = value;
+      if (++size > threshold) {
+        rehash();
+      }
+      return defaultValue;
+    } else {
+      int old = values[i];
+      values[i] = value;
+      return old;
+    }
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(2 * oldKeys.length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int j = find(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * @return the removed value, or the default value if there was none
+   */
+  public int remove(long key) {
+    if (key == 0) {
+      int old = hasZero ? zeroValue : defaultValue;
+      hasZero = false;
+      return old;
+    }
+    int i = find(key);
+    if (keys[i] == 0) {
+      return defaultValue;
+    }
+    int old = values[i];
+    size--;
+    // shift back later entries of the probe sequence, so lookups need no tombstones
+    int mask = keys.length - 1;
+    for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+      int k = hash(keys[j], mask);
+      if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = 0;
+    return old;
+  }
+
+  public int size() {
+    return hasZero ? size + 1 : size;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, 0);
+    size = 0;
+    hasZero = false;
+  }
+
+  public int getDefaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer("{");
+    if (hasZero) {
+      result.append("0=").append(zeroValue);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        if (result.length() > 1) {
+          result.append(", ");
+        }
+        result.append(keys[i]).append('=').append(values[i]);
+      }
+    }
+    return result.append('}').toString();
+  }
+}
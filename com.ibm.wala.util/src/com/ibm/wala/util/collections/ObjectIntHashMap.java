@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map from objects to int, with open addressing and linear probing over parallel key and value arrays, so there are no boxed
+ * values and no entry objects. Absent keys map to a default value.
+ *
+ * A null slot is free, so a null key is stored as a private sentinel.
+ *
+ * Iterators do not support concurrent modification.
+ */
+public class ObjectIntHashMap<K> {
+
+  private final static Object NULL_KEY = new Object();
+
+  private Object[] keys;
+
+  private int[] values;
+
+  private int size = 0;
+
+  /**
+   * resize when size exceeds this
+   */
+  private int threshold;
+
+  private final int defaultValue;
+
+  /**
+   * @param defaultValue the value of keys not in the map
+   */
+  public ObjectIntHashMap(int defaultValue) {
+    this(defaultValue, 0);
+  }
+
+  /**
+   * @param defaultValue the value of keys not in the map
+   * @param expectedSize number of entries to make room for
+   */
+  public ObjectIntHashMap(int defaultValue, int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("invalid expectedSize: " + expectedSize);
+    }
+    this.defaultValue = defaultValue;
+    allocate(IntObjectHashMap.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new int[capacity];
+    threshold = capacity * 3 / 4;
+  }
+
+  private int find(Object key) {
+    int mask = keys.length - 1;
+    for (int i = IntObjectHashMap.hash(key.hashCode(), mask);; i = (i + 1) & mask) {
+      Object k = keys[i];
+      if (k == null || k == key || key.equals(k)) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * @return the value for key, or the default value if none
+   */
+  public int get(K key) {
+    int i = find(key == null ? NULL_KEY : key);
+    return keys[i] == null ? defaultValue : values[i];
+  }
+
+  public boolean containsKey(K key) {
+    return keys[find(key == null ? NULL_KEY : key)] != null;
+  }
+
+  /**
+   * @return the previous value for key, or the default value if none
+   */
+  public int put(K key, int value) {
+    Object k = key == null ? NULL_KEY : key;
+    int i = find(k);
+    if (keys[i] == null) {
+      keys[i] = k;
+      values[i] = value;
+      if (++size > threshold) {
+        rehash();
+      }
+      return defaultValue;
+    } else {
+      int old = values[i];
+      values[i] = value;
+      return old;
+    }
+  }
+
+  private void rehash() {
+    Object[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(2 * oldKeys.length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int j = find(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * @return the removed value, or the default value if there was none
+   */
+  public int remove(K key) {
+    int i = find(key == null ? NULL_KEY : key);
+    if (keys[i] == null) {
+      return defaultValue;
+    }
+    int old = values[i];
+    size--;
+    // shift back later entries of the probe sequence, so lookups need no tombstones
+    int mask = keys.length - 1;
+    for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+      int k = IntObjectHashMap.hash(keys[j].hashCode(), mask);
+      if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = null;
+    return old;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, null);
+      size = 0;
+    }
+  }
+
+  public int getDefaultValue() {
+    return defaultValue;
+  }
+
+  public Iterator<K> keyIterator() {
+    return new Iterator<K>() {
+      private int i = IntObjectHashMap.nextSlot(keys, 0);
+
+      public boolean hasNext() {
+        return i < keys.length;
+      }
+
+      @SuppressWarnings("unchecked")
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        K result = keys[i] == NULL_KEY ? null : (K) keys[i];
+        i = IntObjectHashMap.nextSlot(keys, i + 1);
+        return result;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @return an unmodifiable view of the keys
+   */
+  public Set<K> keySet() {
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        return keyIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public boolean contains(Object o) {
+        return containsKey((K) o);
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer("{");
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        if (result.length() > 1) {
+          result.append(", ");
+        }
+        result.append(keys[i] == NULL_KEY ? null : keys[i]).append('=').append(values[i]);
+      }
+    }
+    return result.append('}').toString();
+  }
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.graph.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.util.collections.ObjectIntHashMap;
+import com.ibm.wala.util.graph.NumberedGraph;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * An immutable copy of a {@link NumberedGraph}, which keeps the node numbers of the original. Edges are held as sorted int arrays
+ * of node numbers, one successor and one predecessor array for the whole graph, with per-node offsets into them. This takes two
+ * ints per edge, instead of the per-node set objects of the mutable graphs.
+ */
+public class CompactNumberedGraph<T> implements NumberedGraph<T> {
+
+  /**
+   * node with each number; null for unused numbers
+   */
+  private final Object[] nodes;
+
+  private final ObjectIntHashMap<T> numbers;
+
+  /**
+   * successors of node i are succs[succStart[i]] ... succs[succStart[i+1]-1]
+   */
+  private final int[] succStart;
+
+  private final int[] succs;
+
+  private final int[] predStart;
+
+  private final int[] preds;
+
+  /**
+   * copy the nodes and edges of g
+   *
+   * @throws IllegalArgumentException if g is null
+   */
+  public static <T> CompactNumberedGraph<T> make(NumberedGraph<T> g) {
+    if (g == null) {
+      throw new IllegalArgumentException("g is null");
+    }
+    return new CompactNumberedGraph<T>(g);
+  }
+
+  private CompactNumberedGraph(NumberedGraph<T> g) {
+    int n = g.getNumberOfNodes() == 0 ? 0 : g.getMaxNumber() + 1;
+    nodes = new Object[n];
+    numbers = new ObjectIntHashMap<T>(-1, g.getNumberOfNodes());
+    for (T node : g) {
+      int i = g.getNumber(node);
+      nodes[i] = node;
+      numbers.put(node, i);
+    }
+
+    succStart = new int[n + 1];
+    int[] s = new int[Math.max(n, 1)];
+    int m = 0;
+    for (int i = 0; i < n; i++) {
+      succStart[i] = m;
+      if (nodes[i] != null) {
+        for (Iterator<? extends T> it = g.getSuccNodes(get(i)); it.hasNext();) {
+          if (m == s.length) {
+            s = Arrays.copyOf(s, 2 * m);
+          }
+          s[m++] = g.getNumber(it.next());
+        }
+        Arrays.sort(s, succStart[i], m);
+      }
+    }
+    succStart[n] = m;
+    succs = m == s.length ? s : Arrays.copyOf(s, m);
+
+    // predecessors are the transpose; filling by increasing source keeps each list sorted
+    predStart = new int[n + 1];
+    for (int j = 0; j < m; j++) {
+      predStart[succs[j] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      predStart[i + 1] += predStart[i];
+    }
+    preds = new int[m];
+    int[] fill = Arrays.copyOf(predStart, n);
+    for (int i = 0; i < n; i++) {
+      for (int j = succStart[i]; j < succStart[i + 1]; j++) {
+        preds[fill[succs[j]]++] = i;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private T get(int number) {
+    return (T) nodes[number];
+  }
+
+  /**
+   * @return the number of edges in this graph
+   */
+  public int getNumberOfEdges() {
+    return succs.length;
+  }
+
+  private Iterator<T> iterate(final int[] a, final int start, final int end) {
+    return new Iterator<T>() {
+      private int i = start;
+
+      public boolean hasNext() {
+        return i < end;
+      }
+
+      public T next() {
+        if (i >= end) {
+          throw new NoSuchElementException();
+        }
+        return get(a[i++]);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static IntSet toIntSet(int[] a, int start, int end) {
+    if (start == end) {
+      return MutableSparseIntSet.makeEmpty();
+    }
+    MutableSparseIntSet result = MutableSparseIntSet.createMutableSparseIntSet(end - start);
+    for (int i = start; i < end; i++) {
+      result.add(a[i]);
+    }
+    return result;
+  }
+
+  private int checkedNumber(T n) {
+    int i = numbers.get(n);
+    if (i == -1) {
+      throw new IllegalArgumentException("node not in graph: " + n);
+    }
+    return i;
+  }
+
+  public Iterator<T> getPredNodes(T n) {
+    int i = checkedNumber(n);
+    return iterate(preds, predStart[i], predStart[i + 1]);
+  }
+
+  public int getPredNodeCount(T n) {
+    int i = checkedNumber(n);
+    return predStart[i + 1] - predStart[i];
+  }
+
+  public IntSet getPredNodeNumbers(T node) {
+    int i = checkedNumber(node);
+    return toIntSet(preds, predStart[i], predStart[i + 1]);
+  }
+
+  public Iterator<T> getSuccNodes(T n) {
+    int i = checkedNumber(n);
+    return iterate(succs, succStart[i], succStart[i + 1]);
+  }
+
+  public int getSuccNodeCount(T n) {
+    int i = checkedNumber(n);
+    return succStart[i + 1] - succStart[i];
+  }
+
+  public IntSet getSuccNodeNumbers(T node) {
+    int i = checkedNumber(node);
+    return toIntSet(succs, succStart[i], succStart[i + 1]);
+  }
+
+  public boolean hasEdge(T src, T dst) {
+    int i = numbers.get(src);
+    int j = numbers.get(dst);
+    if (i == -1 || j == -1) {
+      return false;
+    }
+    return Arrays.binarySearch(succs, succStart[i], succStart[i + 1], j) >= 0;
+  }
+
+  public int getNumber(T N) {
+    return numbers.get(N);
+  }
+
+  public T getNode(int number) {
+    return number >= 0 && number < nodes.length ? get(number) : null;
+  }
+
+  public int getMaxNumber() {
+    return nodes.length - 1;
+  }
+
+  public Iterator<T> iterateNodes(IntSet s) {
+    return new NumberedNodeIterator<T>(s, this);
+  }
+
+  public Iterator<T> iterator() {
+    return numbers.keyIterator();
+  }
+
+  public int getNumberOfNodes() {
+    return numbers.size();
+  }
+
+  public boolean containsNode(T n) {
+    return numbers.containsKey(n);
+  }
+
+  public void addNode(T n) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeNode(T n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeNodeAndEdges(T n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void addEdge(T src, T dst) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeEdge(T src, T dst) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeAllIncidentEdges(T node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeIncomingEdges(T node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void removeOutgoingEdges(T node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer sb = new StringBuffer();
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i] != null) {
+        sb.append(nodes[i]).append(" -> ");
+        for (int j = succStart[i]; j < succStart[i + 1]; j++) {
+          sb.append(succs[j]).append(' ');
+        }
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+}
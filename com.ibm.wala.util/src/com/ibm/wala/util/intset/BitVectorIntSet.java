@@ -348,6 +348,8 @@ public final class BitVectorIntSet implements MutableIntSet {
       return sameValueInternal((SparseIntSet) that);
     } else if (that instanceof MutableSharedBitVectorIntSet) {
       return sameValue(((MutableSharedBitVectorIntSet) that).makeDenseCopy());
+    } else if (that instanceof CompressedBitmapIntSet) {
+      return that.sameValue(this);
     } else {
       Assertions.UNREACHABLE("unexpected argument type " + that.getClass());
       return false;
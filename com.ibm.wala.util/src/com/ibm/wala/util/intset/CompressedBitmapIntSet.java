@@ -0,0 +1,1229 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed bitmap implementation of {@link MutableIntSet}, in the style of "roaring" bitmaps.
+ *
+ * The set is split into chunks of 2^16 integers that share the same upper 16 bits. Each non-empty chunk is held in a container
+ * chosen by its density: a sorted array of the lower 16 bits for sparse chunks, a 2^16 bit bitmap for dense chunks, and a list of
+ * runs for chunks made of long intervals. This keeps sets that are clustered but spread over a huge range of integers (e.g.
+ * points-to sets over millions of instance keys) both small and fast to combine.
+ *
+ * Run containers are only created by {@link #runOptimize()}; a run container that is modified is first converted back to an array
+ * or a bitmap.
+ *
+ * Note that this is NOT a value with regard to hashCode and equals.
+ */
+public final class CompressedBitmapIntSet implements MutableIntSet {
+
+  /**
+   * The maximum cardinality of an array container; denser chunks are held in bitmaps.
+   */
+  private final static int MAX_ARRAY_SIZE = 4096;
+
+  /**
+   * Number of 64-bit words in a bitmap container
+   */
+  private final static int BITMAP_WORDS = 1024;
+
+  /**
+   * upper 16 bits of the elements of each container, sorted
+   */
+  private char[] keys;
+
+  private Container[] containers;
+
+  /**
+   * number of containers in use
+   */
+  private int nContainers = 0;
+
+  public CompressedBitmapIntSet() {
+    keys = new char[4];
+    containers = new Container[4];
+  }
+
+  public CompressedBitmapIntSet(IntSet S) throws IllegalArgumentException {
+    this();
+    if (S == null) {
+      throw new IllegalArgumentException("S == null");
+    }
+    copySet(S);
+  }
+
+  private static char highBits(int i) {
+    return (char) (i >>> 16);
+  }
+
+  private static char lowBits(int i) {
+    return (char) i;
+  }
+
+  private static void checkElement(int i) {
+    if (i < 0) {
+      throw new IllegalArgumentException("invalid element: " + i);
+    }
+  }
+
+  /**
+   * @return the index of the container for upper bits key, or (-(insertion point) - 1) if there is none
+   */
+  private int indexOf(char key) {
+    return Arrays.binarySearch(keys, 0, nContainers, key);
+  }
+
+  private void insertContainer(int index, char key, Container c) {
+    if (nContainers == keys.length) {
+      int newLength = keys.length * 2;
+      keys = Arrays.copyOf(keys, newLength);
+      containers = Arrays.copyOf(containers, newLength);
+    }
+    System.arraycopy(keys, index, keys, index + 1, nContainers - index);
+    System.arraycopy(containers, index, containers, index + 1, nContainers - index);
+    keys[index] = key;
+    containers[index] = c;
+    nContainers++;
+  }
+
+  private void removeContainer(int index) {
+    System.arraycopy(keys, index + 1, keys, index, nContainers - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, nContainers - index - 1);
+    nContainers--;
+    containers[nContainers] = null;
+  }
+
+  /**
+   * append a container with a key greater than all present; used when building a set in order
+   */
+  private void appendContainer(char key, Container c) {
+    insertContainer(nContainers, key, c);
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#clear()
+   */
+  public void clear() {
+    keys = new char[4];
+    containers = new Container[4];
+    nContainers = 0;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#copySet(com.ibm.wala.util.intset.IntSet)
+   */
+  public void copySet(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set == this) {
+      return;
+    }
+    if (set instanceof CompressedBitmapIntSet) {
+      CompressedBitmapIntSet S = (CompressedBitmapIntSet) set;
+      keys = Arrays.copyOf(S.keys, Math.max(4, S.nContainers));
+      containers = new Container[keys.length];
+      for (int i = 0; i < S.nContainers; i++) {
+        containers[i] = S.containers[i].copy();
+      }
+      nContainers = S.nContainers;
+    } else {
+      clear();
+      addAll(set);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#contains(int)
+   */
+  public boolean contains(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = indexOf(highBits(i));
+    return index >= 0 && containers[index].contains(lowBits(i));
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#add(int)
+   */
+  public boolean add(int i) {
+    checkElement(i);
+    char key = highBits(i);
+    int index = indexOf(key);
+    if (index >= 0) {
+      Container c = containers[index];
+      int before = c.cardinality();
+      c = c.add(lowBits(i));
+      containers[index] = c;
+      return c.cardinality() > before;
+    } else {
+      insertContainer(-index - 1, key, new ArrayContainer().add(lowBits(i)));
+      return true;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#remove(int)
+   */
+  public boolean remove(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = indexOf(highBits(i));
+    if (index < 0) {
+      return false;
+    }
+    Container c = containers[index];
+    int before = c.cardinality();
+    c = c.remove(lowBits(i));
+    if (c.cardinality() == 0) {
+      removeContainer(index);
+    } else {
+      containers[index] = c;
+    }
+    return c.cardinality() < before;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#addAll(com.ibm.wala.util.intset.IntSet)
+   */
+  public boolean addAll(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set instanceof CompressedBitmapIntSet) {
+      return addAllInternal((CompressedBitmapIntSet) set);
+    } else {
+      boolean result = false;
+      for (IntIterator it = set.intIterator(); it.hasNext();) {
+        result |= add(it.next());
+      }
+      return result;
+    }
+  }
+
+  private boolean addAllInternal(CompressedBitmapIntSet S) {
+    if (S == this || S.nContainers == 0) {
+      return false;
+    }
+    boolean result = false;
+    int i = 0;
+    for (int j = 0; j < S.nContainers; j++) {
+      char key = S.keys[j];
+      while (i < nContainers && keys[i] < key) {
+        i++;
+      }
+      if (i < nContainers && keys[i] == key) {
+        Container c = containers[i];
+        int before = c.cardinality();
+        c = c.or(S.containers[j]);
+        containers[i] = c;
+        result |= c.cardinality() > before;
+      } else {
+        insertContainer(i, key, S.containers[j].copy());
+        result = true;
+      }
+      i++;
+    }
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#intersectWith(com.ibm.wala.util.intset.IntSet)
+   */
+  public void intersectWith(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("null set");
+    }
+    if (set == this) {
+      return;
+    }
+    CompressedBitmapIntSet S = (set instanceof CompressedBitmapIntSet) ? (CompressedBitmapIntSet) set : (CompressedBitmapIntSet) intersection(set);
+    int k = 0;
+    int j = 0;
+    for (int i = 0; i < nContainers; i++) {
+      char key = keys[i];
+      while (j < S.nContainers && S.keys[j] < key) {
+        j++;
+      }
+      if (j < S.nContainers && S.keys[j] == key) {
+        Container c = containers[i].and(S.containers[j]);
+        if (c.cardinality() > 0) {
+          keys[k] = key;
+          containers[k] = c;
+          k++;
+        }
+      }
+    }
+    for (int i = k; i < nContainers; i++) {
+      containers[i] = null;
+    }
+    nContainers = k;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#addAllInIntersection(com.ibm.wala.util.intset.IntSet,
+   * com.ibm.wala.util.intset.IntSet)
+   */
+  public boolean addAllInIntersection(IntSet other, IntSet filter) throws IllegalArgumentException {
+    if (other == null) {
+      throw new IllegalArgumentException("other is null");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("filter is null");
+    }
+    if (other instanceof CompressedBitmapIntSet) {
+      return addAllInternal((CompressedBitmapIntSet) ((CompressedBitmapIntSet) other).intersection(filter));
+    } else if (filter instanceof CompressedBitmapIntSet) {
+      return addAllInternal((CompressedBitmapIntSet) ((CompressedBitmapIntSet) filter).intersection(other));
+    } else {
+      boolean result = false;
+      for (IntIterator it = other.intIterator(); it.hasNext();) {
+        int x = it.next();
+        if (filter.contains(x)) {
+          result |= add(x);
+        }
+      }
+      return result;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#intersection(com.ibm.wala.util.intset.IntSet)
+   */
+  public IntSet intersection(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("null that");
+    }
+    CompressedBitmapIntSet result = new CompressedBitmapIntSet();
+    if (that instanceof CompressedBitmapIntSet) {
+      CompressedBitmapIntSet S = (CompressedBitmapIntSet) that;
+      int i = 0;
+      int j = 0;
+      while (i < nContainers && j < S.nContainers) {
+        if (keys[i] < S.keys[j]) {
+          i++;
+        } else if (keys[i] > S.keys[j]) {
+          j++;
+        } else {
+          Container c = containers[i].and(S.containers[j]);
+          if (c.cardinality() > 0) {
+            result.appendContainer(keys[i], c);
+          }
+          i++;
+          j++;
+        }
+      }
+    } else {
+      for (IntIterator it = that.intIterator(); it.hasNext();) {
+        int x = it.next();
+        if (contains(x)) {
+          result.add(x);
+        }
+      }
+    }
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#union(com.ibm.wala.util.intset.IntSet)
+   */
+  public IntSet union(IntSet that) {
+    CompressedBitmapIntSet result = new CompressedBitmapIntSet(this);
+    result.addAll(that);
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#containsAny(com.ibm.wala.util.intset.IntSet)
+   */
+  public boolean containsAny(IntSet set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set instanceof CompressedBitmapIntSet) {
+      CompressedBitmapIntSet S = (CompressedBitmapIntSet) set;
+      int i = 0;
+      int j = 0;
+      while (i < nContainers && j < S.nContainers) {
+        if (keys[i] < S.keys[j]) {
+          i++;
+        } else if (keys[i] > S.keys[j]) {
+          j++;
+        } else {
+          if (containers[i].intersects(S.containers[j])) {
+            return true;
+          }
+          i++;
+          j++;
+        }
+      }
+      return false;
+    } else {
+      for (IntIterator it = set.intIterator(); it.hasNext();) {
+        if (contains(it.next())) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#isEmpty()
+   */
+  public boolean isEmpty() {
+    return nContainers == 0;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#size()
+   */
+  public int size() {
+    int result = 0;
+    for (int i = 0; i < nContainers; i++) {
+      result += containers[i].cardinality();
+    }
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#max()
+   */
+  public int max() {
+    if (nContainers == 0) {
+      return -1;
+    }
+    return (keys[nContainers - 1] << 16) | containers[nContainers - 1].last();
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#intIterator()
+   */
+  public IntIterator intIterator() {
+    return new IntIterator() {
+      private int index = 0;
+
+      private ContainerIterator current = (nContainers == 0) ? null : containers[0].iterator();
+
+      public boolean hasNext() {
+        while (current != null && !current.hasNext()) {
+          index++;
+          current = (index < nContainers) ? containers[index].iterator() : null;
+        }
+        return current != null;
+      }
+
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return (keys[index] << 16) | current.next();
+      }
+    };
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#foreach(com.ibm.wala.util.intset.IntSetAction)
+   */
+  public void foreach(IntSetAction action) {
+    if (action == null) {
+      throw new IllegalArgumentException("null action");
+    }
+    for (int i = 0; i < nContainers; i++) {
+      int high = keys[i] << 16;
+      for (ContainerIterator it = containers[i].iterator(); it.hasNext();) {
+        action.act(high | it.next());
+      }
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#foreachExcluding(com.ibm.wala.util.intset.IntSet,
+   * com.ibm.wala.util.intset.IntSetAction)
+   */
+  public void foreachExcluding(IntSet X, IntSetAction action) {
+    if (X == null) {
+      throw new IllegalArgumentException("null X");
+    }
+    if (action == null) {
+      throw new IllegalArgumentException("null action");
+    }
+    for (IntIterator it = intIterator(); it.hasNext();) {
+      int x = it.next();
+      if (!X.contains(x)) {
+        action.act(x);
+      }
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#sameValue(com.ibm.wala.util.intset.IntSet)
+   */
+  public boolean sameValue(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("that == null");
+    }
+    if (that instanceof CompressedBitmapIntSet) {
+      CompressedBitmapIntSet S = (CompressedBitmapIntSet) that;
+      if (nContainers != S.nContainers) {
+        return false;
+      }
+      for (int i = 0; i < nContainers; i++) {
+        if (keys[i] != S.keys[i] || containers[i].cardinality() != S.containers[i].cardinality()
+            || !containers[i].isSubset(S.containers[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      return size() == that.size() && isSubset(that);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#isSubset(com.ibm.wala.util.intset.IntSet)
+   */
+  public boolean isSubset(IntSet that) {
+    if (that == null) {
+      throw new IllegalArgumentException("null that");
+    }
+    if (that instanceof CompressedBitmapIntSet) {
+      CompressedBitmapIntSet S = (CompressedBitmapIntSet) that;
+      int j = 0;
+      for (int i = 0; i < nContainers; i++) {
+        while (j < S.nContainers && S.keys[j] < keys[i]) {
+          j++;
+        }
+        if (j == S.nContainers || S.keys[j] != keys[i] || !containers[i].isSubset(S.containers[j])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      for (IntIterator it = intIterator(); it.hasNext();) {
+        if (!that.contains(it.next())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Convert each container to the representation that takes the least space, possibly a run container. Call this on sets that are
+   * not expected to change much more.
+   */
+  public void runOptimize() {
+    for (int i = 0; i < nContainers; i++) {
+      containers[i] = containers[i].optimize();
+    }
+  }
+
+  private final static byte ARRAY = 0;
+
+  private final static byte BITMAP = 1;
+
+  private final static byte RUN = 2;
+
+  /**
+   * Write this set in a compact binary form, which {@link #read(ByteBuffer)} reads back. Call {@link #runOptimize()} first for
+   * the most compact form.
+   */
+  public void write(DataOutput out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("null out");
+    }
+    out.writeInt(nContainers);
+    for (int i = 0; i < nContainers; i++) {
+      out.writeChar(keys[i]);
+      containers[i].write(out);
+    }
+  }
+
+  /**
+   * Read a set written by {@link #write(DataOutput)}, starting at the current position of in.
+   */
+  public static CompressedBitmapIntSet read(ByteBuffer in) {
+    if (in == null) {
+      throw new IllegalArgumentException("null in");
+    }
+    CompressedBitmapIntSet result = new CompressedBitmapIntSet();
+    int n = in.getInt();
+    for (int i = 0; i < n; i++) {
+      char key = in.getChar();
+      result.appendContainer(key, readContainer(in));
+    }
+    return result;
+  }
+
+  private static Container readContainer(ByteBuffer in) {
+    byte kind = in.get();
+    switch (kind) {
+    case ARRAY: {
+      int card = in.getChar();
+      char[] content = new char[Math.max(4, card)];
+      for (int i = 0; i < card; i++) {
+        content[i] = in.getChar();
+      }
+      return new ArrayContainer(content, card);
+    }
+    case BITMAP: {
+      long[] words = new long[BITMAP_WORDS];
+      int card = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        words[i] = in.getLong();
+        card += Long.bitCount(words[i]);
+      }
+      return new BitmapContainer(words, card);
+    }
+    case RUN: {
+      int nRuns = in.getChar();
+      char[] starts = new char[nRuns];
+      char[] lengths = new char[nRuns];
+      int card = 0;
+      for (int i = 0; i < nRuns; i++) {
+        starts[i] = in.getChar();
+        lengths[i] = in.getChar();
+        card += lengths[i] + 1;
+      }
+      return new RunContainer(starts, lengths, card);
+    }
+    default:
+      throw new IllegalArgumentException("bad container kind " + kind);
+    }
+  }
+
+  /**
+   * @return an estimate of the number of bytes used by the containers of this set
+   */
+  public long getContainerBytes() {
+    long result = 2L * keys.length + 4L * containers.length;
+    for (int i = 0; i < nContainers; i++) {
+      result += containers[i].bytes();
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer sb = new StringBuffer("{ ");
+    for (IntIterator it = intIterator(); it.hasNext();) {
+      sb.append(it.next());
+      sb.append(" ");
+    }
+    sb.append("}");
+    return sb.toString();
+  }
+
+  /**
+   * iterator over the lower 16 bits of the elements of a container, in increasing order
+   */
+  private static interface ContainerIterator {
+    boolean hasNext();
+
+    int next();
+  }
+
+  /**
+   * A set of 16-bit integers. Mutators return the container that holds the result, which is this container or a new one in a more
+   * suitable representation.
+   */
+  private static abstract class Container {
+
+    abstract int cardinality();
+
+    abstract boolean contains(char x);
+
+    abstract Container add(char x);
+
+    abstract Container remove(char x);
+
+    /**
+     * @return the union of this and other, which may be this container updated in place
+     */
+    abstract Container or(Container other);
+
+    /**
+     * @return a new container holding the intersection of this and other
+     */
+    abstract Container and(Container other);
+
+    abstract boolean intersects(Container other);
+
+    abstract int last();
+
+    abstract ContainerIterator iterator();
+
+    abstract Container copy();
+
+    /**
+     * @return an estimate of the number of bytes used by this container
+     */
+    abstract int bytes();
+
+    abstract void write(DataOutput out) throws IOException;
+
+    boolean isSubset(Container other) {
+      for (ContainerIterator it = iterator(); it.hasNext();) {
+        if (!other.contains((char) it.next())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return the number of maximal runs of consecutive integers in this container
+     */
+    int numberOfRuns() {
+      int result = 0;
+      int prev = -2;
+      for (ContainerIterator it = iterator(); it.hasNext();) {
+        int x = it.next();
+        if (x != prev + 1) {
+          result++;
+        }
+        prev = x;
+      }
+      return result;
+    }
+
+    /**
+     * @return an equivalent container in the representation that takes the least space
+     */
+    Container optimize() {
+      int card = cardinality();
+      int runBytes = 4 * numberOfRuns();
+      int arrayBytes = 2 * card;
+      int bitmapBytes = 8 * BITMAP_WORDS;
+      if (runBytes < Math.min(arrayBytes, bitmapBytes)) {
+        return (this instanceof RunContainer) ? this : RunContainer.make(this);
+      } else {
+        return toArrayOrBitmap();
+      }
+    }
+
+    /**
+     * @return an equivalent array container if it is small enough, otherwise an equivalent bitmap container
+     */
+    Container toArrayOrBitmap() {
+      if (cardinality() <= MAX_ARRAY_SIZE) {
+        return (this instanceof ArrayContainer) ? this : ArrayContainer.make(this);
+      } else {
+        return (this instanceof BitmapContainer) ? this : BitmapContainer.make(this);
+      }
+    }
+  }
+
+  /**
+   * A sorted array of up to {@link CompressedBitmapIntSet#MAX_ARRAY_SIZE} values
+   */
+  private final static class ArrayContainer extends Container {
+    private char[] content;
+
+    private int card;
+
+    ArrayContainer() {
+      content = new char[4];
+    }
+
+    ArrayContainer(char[] content, int card) {
+      this.content = content;
+      this.card = card;
+    }
+
+    static ArrayContainer make(Container c) {
+      char[] content = new char[Math.max(4, c.cardinality())];
+      int n = 0;
+      for (ContainerIterator it = c.iterator(); it.hasNext();) {
+        content[n++] = (char) it.next();
+      }
+      return new ArrayContainer(content, n);
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(char x) {
+      return Arrays.binarySearch(content, 0, card, x) >= 0;
+    }
+
+    @Override
+    Container add(char x) {
+      int index = Arrays.binarySearch(content, 0, card, x);
+      if (index >= 0) {
+        return this;
+      }
+      if (card == MAX_ARRAY_SIZE) {
+        return BitmapContainer.make(this).add(x);
+      }
+      if (card == content.length) {
+        content = Arrays.copyOf(content, Math.min(MAX_ARRAY_SIZE, content.length * 2));
+      }
+      index = -index - 1;
+      System.arraycopy(content, index, content, index + 1, card - index);
+      content[index] = x;
+      card++;
+      return this;
+    }
+
+    @Override
+    Container remove(char x) {
+      int index = Arrays.binarySearch(content, 0, card, x);
+      if (index >= 0) {
+        System.arraycopy(content, index + 1, content, index, card - index - 1);
+        card--;
+      }
+      return this;
+    }
+
+    @Override
+    Container or(Container other) {
+      if (other instanceof ArrayContainer) {
+        ArrayContainer A = (ArrayContainer) other;
+        char[] merged = new char[card + A.card];
+        int i = 0, j = 0, n = 0;
+        while (i < card && j < A.card) {
+          if (content[i] < A.content[j]) {
+            merged[n++] = content[i++];
+          } else if (content[i] > A.content[j]) {
+            merged[n++] = A.content[j++];
+          } else {
+            merged[n++] = content[i++];
+            j++;
+          }
+        }
+        while (i < card) {
+          merged[n++] = content[i++];
+        }
+        while (j < A.card) {
+          merged[n++] = A.content[j++];
+        }
+        if (n == card) {
+          return this;
+        }
+        ArrayContainer result = new ArrayContainer(merged, n);
+        return (n <= MAX_ARRAY_SIZE) ? result : BitmapContainer.make(result);
+      } else {
+        return BitmapContainer.make(other).or(this).toArrayOrBitmap();
+      }
+    }
+
+    @Override
+    Container and(Container other) {
+      char[] result = new char[Math.max(4, Math.min(card, other.cardinality()))];
+      int n = 0;
+      for (int i = 0; i < card; i++) {
+        if (other.contains(content[i])) {
+          result[n++] = content[i];
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    boolean intersects(Container other) {
+      for (int i = 0; i < card; i++) {
+        if (other.contains(content[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    int last() {
+      return content[card - 1];
+    }
+
+    @Override
+    ContainerIterator iterator() {
+      return new ContainerIterator() {
+        private int i = 0;
+
+        public boolean hasNext() {
+          return i < card;
+        }
+
+        public int next() {
+          return content[i++];
+        }
+      };
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(content, Math.max(4, card)), card);
+    }
+
+    @Override
+    int bytes() {
+      return 16 + 2 * content.length;
+    }
+
+    @Override
+    void write(DataOutput out) throws IOException {
+      out.writeByte(ARRAY);
+      out.writeChar(card);
+      for (int i = 0; i < card; i++) {
+        out.writeChar(content[i]);
+      }
+    }
+  }
+
+  /**
+   * A bitmap of 2^16 bits
+   */
+  private final static class BitmapContainer extends Container {
+    private final long[] words;
+
+    private int card;
+
+    BitmapContainer(long[] words, int card) {
+      this.words = words;
+      this.card = card;
+    }
+
+    static BitmapContainer make(Container c) {
+      long[] words = new long[BITMAP_WORDS];
+      for (ContainerIterator it = c.iterator(); it.hasNext();) {
+        int x = it.next();
+        words[x >>> 6] |= 1L << x;
+      }
+      return new BitmapContainer(words, c.cardinality());
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(char x) {
+      return (words[x >>> 6] & (1L << x)) != 0;
+    }
+
+    @Override
+    Container add(char x) {
+      long w = words[x >>> 6];
+      long nw = w | (1L << x);
+      if (nw != w) {
+        words[x >>> 6] = nw;
+        card++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(char x) {
+      long w = words[x >>> 6];
+      long nw = w & ~(1L << x);
+      if (nw != w) {
+        words[x >>> 6] = nw;
+        card--;
+        if (card <= MAX_ARRAY_SIZE) {
+          return ArrayContainer.make(this);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    Container or(Container other) {
+      if (other instanceof BitmapContainer) {
+        long[] o = ((BitmapContainer) other).words;
+        int c = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          words[i] |= o[i];
+          c += Long.bitCount(words[i]);
+        }
+        card = c;
+      } else {
+        for (ContainerIterator it = other.iterator(); it.hasNext();) {
+          int x = it.next();
+          long w = words[x >>> 6];
+          long nw = w | (1L << x);
+          if (nw != w) {
+            words[x >>> 6] = nw;
+            card++;
+          }
+        }
+      }
+      return this;
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof BitmapContainer) {
+        long[] o = ((BitmapContainer) other).words;
+        long[] result = new long[BITMAP_WORDS];
+        int c = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          result[i] = words[i] & o[i];
+          c += Long.bitCount(result[i]);
+        }
+        BitmapContainer b = new BitmapContainer(result, c);
+        return (c <= MAX_ARRAY_SIZE) ? ArrayContainer.make(b) : b;
+      } else {
+        return other.and(this);
+      }
+    }
+
+    @Override
+    boolean intersects(Container other) {
+      if (other instanceof BitmapContainer) {
+        long[] o = ((BitmapContainer) other).words;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          if ((words[i] & o[i]) != 0) {
+            return true;
+          }
+        }
+        return false;
+      } else {
+        return other.intersects(this);
+      }
+    }
+
+    @Override
+    boolean isSubset(Container other) {
+      if (other instanceof BitmapContainer) {
+        long[] o = ((BitmapContainer) other).words;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          if ((words[i] & ~o[i]) != 0) {
+            return false;
+          }
+        }
+        return true;
+      } else {
+        return super.isSubset(other);
+      }
+    }
+
+    @Override
+    int last() {
+      for (int i = BITMAP_WORDS - 1; i >= 0; i--) {
+        if (words[i] != 0) {
+          return i * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    ContainerIterator iterator() {
+      return new ContainerIterator() {
+        private int index = 0;
+
+        private long word = words[0];
+
+        public boolean hasNext() {
+          while (word == 0) {
+            if (index == BITMAP_WORDS - 1) {
+              return false;
+            }
+            word = words[++index];
+          }
+          return true;
+        }
+
+        public int next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          int result = index * 64 + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          return result;
+        }
+      };
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), card);
+    }
+
+    @Override
+    int bytes() {
+      return 16 + 8 * BITMAP_WORDS;
+    }
+
+    @Override
+    void write(DataOutput out) throws IOException {
+      out.writeByte(BITMAP);
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        out.writeLong(words[i]);
+      }
+    }
+  }
+
+  /**
+   * A sorted list of disjoint, non-adjacent runs [start, start + length]. Run containers are read-only; mutators convert them to
+   * an array or a bitmap first.
+   */
+  private final static class RunContainer extends Container {
+    /**
+     * start of each run
+     */
+    private final char[] starts;
+
+    /**
+     * length of each run, minus one
+     */
+    private final char[] lengths;
+
+    private final int card;
+
+    RunContainer(char[] starts, char[] lengths, int card) {
+      this.starts = starts;
+      this.lengths = lengths;
+      this.card = card;
+    }
+
+    static RunContainer make(Container c) {
+      int nRuns = c.numberOfRuns();
+      char[] starts = new char[nRuns];
+      char[] lengths = new char[nRuns];
+      int r = -1;
+      int prev = -2;
+      for (ContainerIterator it = c.iterator(); it.hasNext();) {
+        int x = it.next();
+        if (x != prev + 1) {
+          r++;
+          starts[r] = (char) x;
+        } else {
+          lengths[r]++;
+        }
+        prev = x;
+      }
+      return new RunContainer(starts, lengths, c.cardinality());
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    int numberOfRuns() {
+      return starts.length;
+    }
+
+    @Override
+    boolean contains(char x) {
+      int index = Arrays.binarySearch(starts, x);
+      if (index >= 0) {
+        return true;
+      }
+      // the run that starts before x, if any
+      index = -index - 2;
+      return index >= 0 && x - starts[index] <= lengths[index];
+    }
+
+    @Override
+    Container add(char x) {
+      return contains(x) ? this : toArrayOrBitmap().add(x);
+    }
+
+    @Override
+    Container remove(char x) {
+      return contains(x) ? toArrayOrBitmap().remove(x) : this;
+    }
+
+    @Override
+    Container or(Container other) {
+      return BitmapContainer.make(this).or(other).toArrayOrBitmap();
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.and(this);
+      } else {
+        return BitmapContainer.make(this).and(other);
+      }
+    }
+
+    @Override
+    boolean intersects(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.intersects(this);
+      }
+      for (ContainerIterator it = iterator(); it.hasNext();) {
+        if (other.contains((char) it.next())) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    int last() {
+      int r = starts.length - 1;
+      return starts[r] + lengths[r];
+    }
+
+    @Override
+    ContainerIterator iterator() {
+      return new ContainerIterator() {
+        private int run = 0;
+
+        private int offset = 0;
+
+        public boolean hasNext() {
+          return run < starts.length;
+        }
+
+        public int next() {
+          int result = starts[run] + offset;
+          if (offset == lengths[run]) {
+            run++;
+            offset = 0;
+          } else {
+            offset++;
+          }
+          return result;
+        }
+      };
+    }
+
+    @Override
+    Container copy() {
+      // run containers are never modified in place
+      return this;
+    }
+
+    @Override
+    int bytes() {
+      return 32 + 4 * starts.length;
+    }
+
+    @Override
+    void write(DataOutput out) throws IOException {
+      out.writeByte(RUN);
+      out.writeChar(starts.length);
+      for (int i = 0; i < starts.length; i++) {
+        out.writeChar(starts[i]);
+        out.writeChar(lengths[i]);
+      }
+    }
+  }
+}
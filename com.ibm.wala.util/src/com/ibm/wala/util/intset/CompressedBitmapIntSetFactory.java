@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+/**
+ * A factory for {@link CompressedBitmapIntSet}s.
+ */
+public class CompressedBitmapIntSetFactory implements MutableIntSetFactory<CompressedBitmapIntSet> {
+
+  /**
+   * @param set
+   * @throws IllegalArgumentException if set is null
+   */
+  public CompressedBitmapIntSet make(int[] set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    CompressedBitmapIntSet result = new CompressedBitmapIntSet();
+    for (int i = 0; i < set.length; i++) {
+      result.add(set[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @param string
+   */
+  public CompressedBitmapIntSet parse(String string) throws NumberFormatException {
+    return make(SparseIntSet.parseIntArray(string));
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSetFactory#make(com.ibm.wala.util.intset.IntSet)
+   */
+  public CompressedBitmapIntSet makeCopy(IntSet x) throws IllegalArgumentException {
+    if (x == null) {
+      throw new IllegalArgumentException("x == null");
+    }
+    return new CompressedBitmapIntSet(x);
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSetFactory#make()
+   */
+  public CompressedBitmapIntSet make() {
+    return new CompressedBitmapIntSet();
+  }
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * A repository of hash-consed int sets: for each distinct value, the repository holds one canonical set, which clients share.
+ *
+ * Canonical sets are held in a compact representation, and must never be modified. Clients that need to change a shared value must
+ * copy it first; see {@link com.ibm.wala.fixpoint.IntSetVariable#setSharedValue(MutableIntSet)}.
+ */
+public class IntSetRepository {
+
+  /**
+   * A mapping from content hash code -> canonical sets with that hash code
+   */
+  private final Map<Integer, List<MutableIntSet>> buckets = HashMapFactory.make();
+
+  private int nCanonical = 0;
+
+  private int queries = 0;
+
+  /**
+   * @return the canonical set with the same value as s. The result must not be modified.
+   * @throws IllegalArgumentException if s is null
+   */
+  public MutableIntSet findOrCreate(IntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("s is null");
+    }
+    queries++;
+    Integer hash = Integer.valueOf(contentHash(s));
+    List<MutableIntSet> bucket = buckets.get(hash);
+    if (bucket == null) {
+      bucket = new ArrayList<MutableIntSet>(1);
+      buckets.put(hash, bucket);
+    }
+    int size = s.size();
+    for (MutableIntSet c : bucket) {
+      if (c.size() == size && c.sameValue(s)) {
+        return c;
+      }
+    }
+    MutableIntSet result = makeCompactCopy(s);
+    bucket.add(result);
+    nCanonical++;
+    return result;
+  }
+
+  /**
+   * A hash code of the contents of s that does not depend on the order in which s enumerates its elements.
+   */
+  private static int contentHash(IntSet s) {
+    int result = s.size();
+    for (IntIterator it = s.intIterator(); it.hasNext();) {
+      int x = it.next() * 0x9E3779B9;
+      result += x ^ (x >>> 16);
+    }
+    return result;
+  }
+
+  /**
+   * @return a copy of s in the representation that takes the least space: a sorted array for sparse sets, a bit vector for dense
+   *         ones
+   */
+  private static MutableIntSet makeCompactCopy(IntSet s) {
+    int size = s.size();
+    int max = s.max();
+    if (size > 0 && max / 32 < size) {
+      return new BitVectorIntSet(s);
+    } else {
+      return MutableSparseIntSet.make(s);
+    }
+  }
+
+  /**
+   * @return the number of distinct canonical sets in this repository
+   */
+  public int getNumberOfCanonicalSets() {
+    return nCanonical;
+  }
+
+  /**
+   * @return the number of sets that have been looked up in this repository
+   */
+  public int getNumberOfQueries() {
+    return queries;
+  }
+
+  @Override
+  public String toString() {
+    return "IntSetRepository: " + nCanonical + " canonical sets for " + queries + " queries";
+  }
+}
@@ -12,10 +12,9 @@ package com.ibm.wala.util.intset;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
 
 /**
  * A bit set mapping based on an object array. This is not terribly efficient, but is useful for prototyping.
@@ -35,9 +34,9 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
   private int nextIndex = 0;
 
   /**
-   * A mapping from object to Integer.
+   * A mapping from object to index, -1 if none.
    */
-  final HashMap<T, Integer> map = HashMapFactory.make();
+  final ObjectIntHashMap<T> map = new ObjectIntHashMap<T>(-1);
 
   /**
    * @throws IllegalArgumentException if array is null
@@ -50,7 +49,7 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
     this.array = new Object[2 * array.length];
     for (int i = 0; i < array.length; i++) {
       this.array[i] = array[i];
-      map.put((T) array[i], Integer.valueOf(i));
+      map.put((T) array[i], i);
     }
     nextIndex = array.length;
   }
@@ -70,17 +69,11 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
   }
 
   public int getMappedIndex(T o) {
-    Integer I = map.get(o);
-    if (I == null) {
-      return -1;
-    } else {
-      return I.intValue();
-    }
-
+    return map.get(o);
   }
 
   public boolean hasMappedIndex(T o) {
-    return map.get(o) != null;
+    return map.containsKey(o);
   }
 
   /**
@@ -89,11 +82,11 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
    * @return the integer to which the object is mapped.
    */
   public int add(T o) {
-    Integer I = map.get(o);
-    if (I != null) {
-      return I.intValue();
+    int i = map.get(o);
+    if (i != -1) {
+      return i;
     }
-    map.put(o, new Integer(nextIndex));
+    map.put(o, nextIndex);
     if (nextIndex >= array.length) {
       Object[] old = array;
       array = new Object[2 * array.length];
@@ -117,7 +110,7 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
    * @see com.ibm.wala.util.intset.OrdinalSetMapping#iterator()
    */
   public Iterator<T> iterator() {
-    return map.keySet().iterator();
+    return map.keyIterator();
   }
 
   /*
@@ -151,7 +144,7 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
       throw new IllegalArgumentException("first element does not exist in map");
     }
     map.remove(a);
-    map.put(b, new Integer(i));
+    map.put(b, i);
     array[i] = b;
   }
 
@@ -163,8 +156,7 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
     if (i < 0 || i > MAX_SIZE) {
       throw new IllegalArgumentException("invalid i: " + i);
     }
-    Integer I = Integer.valueOf(i);
-    map.put(o, I);
+    map.put(o, i);
     if (i >= array.length) {
       Object[] old = array;
       array = new Object[2 * i];